@@ -0,0 +1,481 @@
+package ict.bench;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fills an aib_db schema (sql/db.sql plus migrations) with production-sized
+ * synthetic data: shops spread over cities, fruits from several source
+ * countries, their source and central warehouses, inventory for every
+ * fruit and location, one login per location, and the requested number of
+ * reservations, borrowings and deliveries. Rows are appended to whatever the
+ * database already holds.
+ * <p>
+ * Activity is seasonal: every fruit has a peak month, weekends are quieter
+ * and volume grows over the generated period. Popular fruits (a Zipf-like
+ * share) and larger shops get most of the rows. Rows older than a couple of
+ * weeks are settled (Fulfilled, Delivered, Approved/Rejected/Returned); the
+ * most recent ones are left Pending/Approved/Shipped so that the approval
+ * and checkout screens have work to do. Generated users log in as
+ * load_shop_&lt;shopId&gt;, load_wh_&lt;warehouseId&gt; and load_manager, each with
+ * the password &lt;username&gt;pwd.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar ict.bench.DataGenerator --url=jdbc:mysql://localhost:3306/aib_db \
+ *     --user=root --password= --reservations=5000000 --borrowings=500000 --deliveries=100000 --years=3
+ * </pre>
+ *
+ * Same seed, same data.
+ */
+public final class DataGenerator {
+
+    private static final Logger LOGGER = Logger.getLogger(DataGenerator.class.getName());
+
+    private static final String[][] CITIES = {
+            { "Hong Kong", "Hong Kong" }, { "Kowloon", "Hong Kong" },
+            { "Tokyo", "Japan" }, { "Osaka", "Japan" },
+            { "New York", "USA" }, { "Los Angeles", "USA" }, { "Chicago", "USA" },
+            { "London", "UK" }, { "Manchester", "UK" },
+            { "Sydney", "Australia" }, { "Melbourne", "Australia" },
+            { "Singapore", "Singapore" },
+    };
+
+    /** Source country and the city of its source warehouse. */
+    private static final String[][] SOURCE_COUNTRIES = {
+            { "USA", "Seattle" }, { "Ecuador", "Guayaquil" }, { "Japan", "Aomori" }, { "Spain", "Valencia" },
+            { "Brazil", "Sao Paulo" }, { "New Zealand", "Auckland" }, { "Thailand", "Bangkok" },
+            { "Chile", "Santiago" }, { "Philippines", "Davao" }, { "South Africa", "Cape Town" },
+    };
+
+    private static final String[] FRUIT_NAMES = {
+            "Apple", "Banana", "Strawberry", "Orange", "Mango", "Pineapple", "Grape", "Kiwi", "Peach", "Cherry",
+            "Pear", "Lemon", "Lime", "Blueberry", "Raspberry", "Watermelon", "Papaya", "Lychee", "Avocado",
+            "Coconut", "Fig", "Plum", "Apricot", "Pomegranate", "Passion Fruit", "Guava", "Dragon Fruit",
+            "Persimmon", "Melon", "Durian",
+    };
+
+    private static final int OPEN_DAYS = 14;
+
+    private final int shopCount;
+    private final int fruitCount;
+    private final long reservationCount;
+    private final long borrowingCount;
+    private final long deliveryCount;
+    private final int years;
+    private final int batchSize;
+    private final Random random;
+    private final LocalDate today = LocalDate.now();
+    private final LocalDate firstDay;
+    private final int days;
+
+    private int[] fruitIds;
+    private String[] fruitSourceCountries;
+    private double[] fruitPopularity;
+    private double[][] fruitDayWeights;
+    private int[] shopIds;
+    private double[] shopSize;
+    private final Map<String, List<Integer>> shopsByCity = new LinkedHashMap<>();
+    private final Map<String, Integer> sourceWarehouseByCountry = new LinkedHashMap<>();
+    private final List<Integer> centralWarehouseIds = new ArrayList<>();
+
+    DataGenerator(Arguments args) {
+        this.shopCount = args.getInt("shops", 60);
+        this.fruitCount = args.getInt("fruits", 40);
+        this.reservationCount = args.getLong("reservations", 1_000_000L);
+        this.borrowingCount = args.getLong("borrowings", 200_000L);
+        this.deliveryCount = args.getLong("deliveries", 50_000L);
+        this.years = args.getInt("years", 3);
+        this.batchSize = args.getInt("batch", 5000);
+        this.random = new Random(args.getLong("seed", 42L));
+        this.firstDay = today.minusYears(years).plusDays(1);
+        this.days = (int) (today.toEpochDay() - firstDay.toEpochDay()) + 1;
+    }
+
+    public static void main(String[] argv) throws SQLException {
+        Arguments args = new Arguments(argv);
+        String url = args.get("url", "jdbc:mysql://localhost:3306/aib_db");
+        try (Connection conn = DriverManager.getConnection(withBatchRewrite(url), args.get("user", "root"),
+                args.get("password", ""))) {
+            new DataGenerator(args).generate(conn);
+        }
+    }
+
+    /** Lets Connector/J send each JDBC batch as one multi-row INSERT. */
+    public static String withBatchRewrite(String url) {
+        if (url.contains("rewriteBatchedStatements")) {
+            return url;
+        }
+        return url + (url.contains("?") ? "&" : "?") + "rewriteBatchedStatements=true";
+    }
+
+    public void generate(Connection conn) throws SQLException {
+        long started = System.currentTimeMillis();
+        conn.setAutoCommit(false);
+        try {
+            insertFruits(conn);
+            insertShops(conn);
+            insertWarehouses(conn);
+            insertUsers(conn);
+            insertInventory(conn);
+            recordOpeningMovements(conn);
+            conn.commit();
+            computeDayWeights();
+            insertReservations(conn);
+            insertBorrowings(conn);
+            insertDeliveries(conn);
+            rebuildConsumptionRollup(conn);
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        LOGGER.log(Level.INFO, "Generated {0} reservations, {1} borrowings, {2} deliveries over {3} days in {4} s",
+                new Object[] { reservationCount, borrowingCount, deliveryCount, days,
+                        (System.currentTimeMillis() - started) / 1000 });
+    }
+
+    private void insertFruits(Connection conn) throws SQLException {
+        fruitIds = new int[fruitCount];
+        fruitSourceCountries = new String[fruitCount];
+        fruitPopularity = new double[fruitCount];
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO fruits (fruit_name, source_country) VALUES (?, ?)", Statement.RETURN_GENERATED_KEYS)) {
+            for (int i = 0; i < fruitCount; i++) {
+                String name = FRUIT_NAMES[i % FRUIT_NAMES.length];
+                if (i >= FRUIT_NAMES.length) {
+                    name = name + " " + (i / FRUIT_NAMES.length + 1);
+                }
+                fruitSourceCountries[i] = SOURCE_COUNTRIES[i % SOURCE_COUNTRIES.length][0];
+                fruitPopularity[i] = 1.0 / Math.pow(i + 1, 0.8);
+                ps.setString(1, name);
+                ps.setString(2, fruitSourceCountries[i]);
+                fruitIds[i] = insertReturningKey(ps);
+            }
+        }
+    }
+
+    private void insertShops(Connection conn) throws SQLException {
+        shopIds = new int[shopCount];
+        shopSize = new double[shopCount];
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO shops (shop_name, city, country) VALUES (?, ?, ?)", Statement.RETURN_GENERATED_KEYS)) {
+            for (int i = 0; i < shopCount; i++) {
+                String[] city = CITIES[i % CITIES.length];
+                ps.setString(1, "Bakery " + city[0] + " " + (i / CITIES.length + 1));
+                ps.setString(2, city[0]);
+                ps.setString(3, city[1]);
+                shopIds[i] = insertReturningKey(ps);
+                shopSize[i] = 0.5 + random.nextDouble();
+                shopsByCity.computeIfAbsent(city[0], key -> new ArrayList<>()).add(i);
+            }
+        }
+    }
+
+    private void insertWarehouses(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO warehouses (warehouse_name, city, country, is_source) VALUES (?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            for (int i = 0; i < Math.min(fruitCount, SOURCE_COUNTRIES.length); i++) {
+                String[] source = SOURCE_COUNTRIES[i];
+                ps.setString(1, "Source " + source[1]);
+                ps.setString(2, source[1]);
+                ps.setString(3, source[0]);
+                ps.setInt(4, 1);
+                sourceWarehouseByCountry.put(source[0], insertReturningKey(ps));
+            }
+            Map<String, String> centralCityByCountry = new LinkedHashMap<>();
+            for (int i = 0; i < Math.min(shopCount, CITIES.length); i++) {
+                centralCityByCountry.putIfAbsent(CITIES[i][1], CITIES[i][0]);
+            }
+            for (Map.Entry<String, String> entry : centralCityByCountry.entrySet()) {
+                ps.setString(1, "Central " + entry.getValue());
+                ps.setString(2, entry.getValue());
+                ps.setString(3, entry.getKey());
+                ps.setInt(4, 0);
+                centralWarehouseIds.add(insertReturningKey(ps));
+            }
+        }
+    }
+
+    private void insertUsers(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT IGNORE INTO users (username, password, role, shop_id, warehouse_id, hash_version, userEmail) "
+                        + "VALUES (?, ?, ?, ?, ?, '1', ?)")) {
+            addUser(ps, "load_manager", "Senior Management", null, null);
+            for (int shopId : shopIds) {
+                addUser(ps, "load_shop_" + shopId, "Bakery shop staff", shopId, null);
+            }
+            for (int warehouseId : sourceWarehouseByCountry.values()) {
+                addUser(ps, "load_wh_" + warehouseId, "Warehouse Staff", null, warehouseId);
+            }
+            for (int warehouseId : centralWarehouseIds) {
+                addUser(ps, "load_wh_" + warehouseId, "Warehouse Staff", null, warehouseId);
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static void addUser(PreparedStatement ps, String username, String role, Integer shopId,
+            Integer warehouseId) throws SQLException {
+        ps.setString(1, username);
+        ps.setString(2, username + "pwd");
+        ps.setString(3, role);
+        ps.setObject(4, shopId);
+        ps.setObject(5, warehouseId);
+        ps.setString(6, username + "@example.com");
+        ps.addBatch();
+    }
+
+    private void insertInventory(Connection conn) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO inventory (fruit_id, shop_id, warehouse_id, quantity) VALUES (?, ?, ?, ?)")) {
+            for (int f = 0; f < fruitCount; f++) {
+                for (int shopId : shopIds) {
+                    addInventory(ps, fruitIds[f], shopId, null, random.nextInt(200));
+                }
+                for (int warehouseId : centralWarehouseIds) {
+                    addInventory(ps, fruitIds[f], null, warehouseId, 5000 + random.nextInt(15000));
+                }
+                addInventory(ps, fruitIds[f], null, sourceWarehouseByCountry.get(fruitSourceCountries[f]),
+                        50000 + random.nextInt(150000));
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private static void addInventory(PreparedStatement ps, int fruitId, Integer shopId, Integer warehouseId,
+            int quantity) throws SQLException {
+        ps.setInt(1, fruitId);
+        ps.setObject(2, shopId);
+        ps.setObject(3, warehouseId);
+        ps.setInt(4, quantity);
+        ps.addBatch();
+    }
+
+    /**
+     * Cumulative per-day weights for each fruit: a yearly cosine around the
+     * fruit's peak month, quieter weekends, busier Fridays and 15% growth a
+     * year.
+     */
+    private void computeDayWeights() {
+        fruitDayWeights = new double[fruitCount][days];
+        for (int f = 0; f < fruitCount; f++) {
+            int peakMonth = random.nextInt(12);
+            double total = 0;
+            for (int d = 0; d < days; d++) {
+                LocalDate date = firstDay.plusDays(d);
+                double season = 1 + 0.6 * Math.cos(2 * Math.PI * (date.getMonthValue() - 1 - peakMonth) / 12.0);
+                DayOfWeek dayOfWeek = date.getDayOfWeek();
+                double week = dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY ? 0.7
+                        : dayOfWeek == DayOfWeek.FRIDAY ? 1.2 : 1.0;
+                double growth = 1 + 0.15 * d / 365.0;
+                total += season * week * growth;
+                fruitDayWeights[f][d] = total;
+            }
+        }
+    }
+
+    private void insertReservations(Connection conn) throws SQLException {
+        double[] popularity = cumulative(fruitPopularity);
+        double[] shops = cumulative(shopSize);
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO reservations (fruit_id, shop_id, quantity, reservation_date, status) VALUES (?, ?, ?, ?, ?)")) {
+            for (long i = 1; i <= reservationCount; i++) {
+                int fruit = pick(popularity);
+                int day = pick(fruitDayWeights[fruit]);
+                ps.setInt(1, fruitIds[fruit]);
+                ps.setInt(2, shopIds[pick(shops)]);
+                ps.setInt(3, quantity(12, 500));
+                ps.setDate(4, Date.valueOf(firstDay.plusDays(day)));
+                ps.setString(5, reservationStatus(days - 1 - day));
+                addToBatch(conn, ps, i, "reservations");
+            }
+            flush(conn, ps);
+        }
+    }
+
+    private String reservationStatus(int ageDays) {
+        if (ageDays > OPEN_DAYS) {
+            return "Fulfilled";
+        }
+        int roll = random.nextInt(10);
+        return roll < 4 ? "Pending" : roll < 7 ? "Approved" : roll < 9 ? "Shipped" : "Fulfilled";
+    }
+
+    private void insertBorrowings(Connection conn) throws SQLException {
+        List<List<Integer>> cities = new ArrayList<>();
+        for (List<Integer> shopsInCity : shopsByCity.values()) {
+            if (shopsInCity.size() > 1) {
+                cities.add(shopsInCity);
+            }
+        }
+        if (cities.isEmpty()) {
+            LOGGER.warning("No city has two shops; skipping borrowings. Use --shops of at least 24.");
+            return;
+        }
+        double[] popularity = cumulative(fruitPopularity);
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO borrowings (fruit_id, borrowing_shop_id, receiving_shop_id, quantity, borrowing_date, status) "
+                        + "VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (long i = 1; i <= borrowingCount; i++) {
+                List<Integer> shopsInCity = cities.get(random.nextInt(cities.size()));
+                int lender = shopsInCity.get(random.nextInt(shopsInCity.size()));
+                int receiver = lender;
+                while (receiver == lender) {
+                    receiver = shopsInCity.get(random.nextInt(shopsInCity.size()));
+                }
+                int fruit = pick(popularity);
+                int day = pick(fruitDayWeights[fruit]);
+                ps.setInt(1, fruitIds[fruit]);
+                // borrowing_shop_id is the lending shop, as in BorrowingDB.
+                ps.setInt(2, shopIds[lender]);
+                ps.setInt(3, shopIds[receiver]);
+                ps.setInt(4, quantity(5, 50));
+                ps.setDate(5, Date.valueOf(firstDay.plusDays(day)));
+                ps.setString(6, borrowingStatus(days - 1 - day));
+                addToBatch(conn, ps, i, "borrowings");
+            }
+            flush(conn, ps);
+        }
+    }
+
+    private String borrowingStatus(int ageDays) {
+        int roll = random.nextInt(20);
+        if (ageDays > OPEN_DAYS / 2) {
+            return roll < 14 ? "Approved" : roll < 17 ? "Rejected" : "Returned";
+        }
+        return roll < 12 ? "Pending" : roll < 18 ? "Approved" : "Rejected";
+    }
+
+    private void insertDeliveries(Connection conn) throws SQLException {
+        if (centralWarehouseIds.isEmpty()) {
+            return;
+        }
+        double[] popularity = cumulative(fruitPopularity);
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO deliveries (fruit_id, from_warehouse_id, to_warehouse_id, quantity, delivery_date, status) "
+                        + "VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (long i = 1; i <= deliveryCount; i++) {
+                int fruit = pick(popularity);
+                int day = pick(fruitDayWeights[fruit]);
+                int ageDays = days - 1 - day;
+                ps.setInt(1, fruitIds[fruit]);
+                ps.setInt(2, sourceWarehouseByCountry.get(fruitSourceCountries[fruit]));
+                ps.setInt(3, centralWarehouseIds.get(random.nextInt(centralWarehouseIds.size())));
+                ps.setInt(4, 100 + quantity(400, 1900));
+                ps.setDate(5, Date.valueOf(firstDay.plusDays(day)));
+                ps.setString(6, ageDays > OPEN_DAYS ? "Delivered" : random.nextBoolean() ? "Scheduled" : "Shipped");
+                addToBatch(conn, ps, i, "deliveries");
+            }
+            flush(conn, ps);
+        }
+    }
+
+    /**
+     * Records the generated stock as OPENING movements, if the schema has
+     * the V005 history, so the inventory still reconciles with it.
+     */
+    private void recordOpeningMovements(Connection conn) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet tables = metaData.getTables(conn.getCatalog(), null, "stock_movements", null)) {
+            if (!tables.next()) {
+                return;
+            }
+        }
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate("INSERT INTO stock_movements (fruit_id, shop_id, warehouse_id, delta, cause) "
+                    + "SELECT i.fruit_id, i.shop_id, i.warehouse_id, i.quantity, 'OPENING' FROM inventory i "
+                    + "WHERE i.quantity <> 0 AND i.fruit_id IN (" + joinIds(fruitIds) + ") "
+                    + "ORDER BY i.inventory_id");
+        }
+    }
+
+    private static String joinIds(int[] ids) {
+        StringBuilder sb = new StringBuilder();
+        for (int id : ids) {
+            sb.append(sb.length() == 0 ? "" : ", ").append(id);
+        }
+        return sb.toString();
+    }
+
+    /** Recomputes the V003 consumption rollup, if the schema has it, from all fulfilled reservations. */
+    private void rebuildConsumptionRollup(Connection conn) throws SQLException {
+        DatabaseMetaData metaData = conn.getMetaData();
+        try (ResultSet tables = metaData.getTables(conn.getCatalog(), null, "consumption_daily", null)) {
+            if (!tables.next()) {
+                return;
+            }
+        }
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate("DELETE FROM consumption_daily");
+            st.executeUpdate("INSERT INTO consumption_daily "
+                    + "(consumption_date, fruit_id, shop_id, city, country, total_quantity) "
+                    + "SELECT r.reservation_date, r.fruit_id, r.shop_id, s.city, s.country, SUM(r.quantity) "
+                    + "FROM reservations r JOIN shops s ON r.shop_id = s.shop_id "
+                    + "WHERE r.status = 'Fulfilled' "
+                    + "GROUP BY r.reservation_date, r.fruit_id, r.shop_id, s.city, s.country");
+        }
+    }
+
+    private void addToBatch(Connection conn, PreparedStatement ps, long row, String table) throws SQLException {
+        ps.addBatch();
+        if (row % batchSize == 0) {
+            flush(conn, ps);
+            if (row % (batchSize * 100L) == 0) {
+                LOGGER.log(Level.INFO, "{0}: {1} rows", new Object[] { table, row });
+            }
+        }
+    }
+
+    private static void flush(Connection conn, PreparedStatement ps) throws SQLException {
+        ps.executeBatch();
+        conn.commit();
+    }
+
+    private static int insertReturningKey(PreparedStatement ps) throws SQLException {
+        ps.executeUpdate();
+        try (ResultSet keys = ps.getGeneratedKeys()) {
+            keys.next();
+            return keys.getInt(1);
+        }
+    }
+
+    /** Log-normal quantity around the median, capped at max. */
+    private int quantity(int median, int max) {
+        double value = Math.exp(Math.log(median) + 0.6 * random.nextGaussian());
+        return (int) Math.max(1, Math.min(max, Math.round(value)));
+    }
+
+    private static double[] cumulative(double[] weights) {
+        double[] cumulative = Arrays.copyOf(weights, weights.length);
+        for (int i = 1; i < cumulative.length; i++) {
+            cumulative[i] += cumulative[i - 1];
+        }
+        return cumulative;
+    }
+
+    /** Index drawn in proportion to the weights behind a cumulative array. */
+    private int pick(double[] cumulative) {
+        double target = random.nextDouble() * cumulative[cumulative.length - 1];
+        int index = Arrays.binarySearch(cumulative, target);
+        return index >= 0 ? index : Math.min(-index - 1, cumulative.length - 1);
+    }
+}
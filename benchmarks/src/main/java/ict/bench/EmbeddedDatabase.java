@@ -0,0 +1,177 @@
+package ict.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import ch.vorburger.exec.ManagedProcessException;
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import ict.db.ConnectionPool;
+
+/**
+ * An embedded MariaDB standing in for the production MySQL server, seeded
+ * with sql/master.sql and every migration in sql/migrations, in version
+ * order. The sql directory is taken from -Dbenchmark.sqlDir, or ../sql
+ * relative to the working directory (i.e. running from benchmarks/).
+ */
+public final class EmbeddedDatabase {
+
+    public static final String DATABASE = "aib_db";
+
+    /*
+     * The DAOs log every call at INFO; left on, the benchmarks would measure
+     * the console handler. Held here so the configured logger is not collected.
+     */
+    private static final Logger APPLICATION_LOGGER = Logger.getLogger("ict");
+
+    private final DB db;
+    private final String serverUrl;
+    private ConnectionPool pool;
+
+    private EmbeddedDatabase(DB db, int port) {
+        this.db = db;
+        this.serverUrl = "jdbc:mysql://localhost:" + port + "/";
+    }
+
+    /** Starts a fresh server on a free port and loads the schema and fixtures. */
+    public static EmbeddedDatabase start() throws ManagedProcessException, SQLException, IOException {
+        APPLICATION_LOGGER.setLevel(Level.WARNING);
+        DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder();
+        config.setPort(0);
+        if ("root".equals(System.getProperty("user.name"))) {
+            // mysqld refuses to run as root unless told to (e.g. in CI containers).
+            config.addArg("--user=root");
+        }
+        DB db = DB.newEmbeddedDB(config.build());
+        db.start();
+        EmbeddedDatabase database = new EmbeddedDatabase(db, config.getPort());
+        database.seed();
+        return database;
+    }
+
+    public static Path sqlDir() {
+        return Paths.get(System.getProperty("benchmark.sqlDir", "../sql"));
+    }
+
+    public String getUrl() {
+        return serverUrl + DATABASE;
+    }
+
+    /** A started connection pool on the seeded database; shut down by {@link #stop()}. */
+    public synchronized ConnectionPool getPool() throws SQLException {
+        if (pool == null) {
+            pool = new ConnectionPool(getUrl(), "root", "");
+            pool.start();
+        }
+        return pool;
+    }
+
+    /** Runs a script from the sql directory (or any path) against the seeded database. */
+    public void runScript(Path script) throws SQLException, IOException {
+        try (Connection conn = DriverManager.getConnection(getUrl(), "root", "")) {
+            execute(conn, script);
+        }
+    }
+
+    public synchronized void stop() throws ManagedProcessException {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        db.stop();
+    }
+
+    private void seed() throws SQLException, IOException {
+        Path sqlDir = sqlDir();
+        try (Connection conn = DriverManager.getConnection(serverUrl, "root", "");
+                Statement st = conn.createStatement()) {
+            st.execute("CREATE DATABASE " + DATABASE + " DEFAULT CHARACTER SET utf8mb4 COLLATE utf8mb4_general_ci");
+        }
+        List<Path> migrations;
+        try (Stream<Path> files = Files.list(sqlDir.resolve("migrations"))) {
+            migrations = files.filter(path -> path.getFileName().toString().endsWith(".sql"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        try (Connection conn = DriverManager.getConnection(getUrl(), "root", "")) {
+            execute(conn, sqlDir.resolve("master.sql"));
+            for (Path migration : migrations) {
+                execute(conn, migration);
+            }
+        }
+    }
+
+    private static void execute(Connection conn, Path script) throws SQLException, IOException {
+        String sql = new String(Files.readAllBytes(script), StandardCharsets.UTF_8);
+        try (Statement st = conn.createStatement()) {
+            for (String statement : splitStatements(sql)) {
+                // master.sql creates the database itself; it already exists here.
+                if (statement.regionMatches(true, 0, "CREATE DATABASE", 0, 15)) {
+                    continue;
+                }
+                try {
+                    st.execute(statement);
+                } catch (SQLException e) {
+                    throw new SQLException("Failed in " + script.getFileName() + ": " + statement, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits a dump into statements on semicolons outside quotes, dropping
+     * "--" and "#" comment lines. Enough for the files in sql/; not a
+     * general SQL parser.
+     */
+    static List<String> splitStatements(String sql) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        char quote = 0;
+        int length = sql.length();
+        for (int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                current.append(c);
+                if (c == '\\' && quote != '`' && i + 1 < length) {
+                    current.append(sql.charAt(++i));
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+                current.append(c);
+            } else if ((c == '-' && sql.startsWith("-- ", i)) || c == '#') {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? length : end;
+                current.append('\n');
+            } else if (c == ';') {
+                addStatement(statements, current);
+            } else {
+                current.append(c);
+            }
+        }
+        addStatement(statements, current);
+        return statements;
+    }
+
+    private static void addStatement(List<String> statements, StringBuilder current) {
+        String statement = current.toString().trim();
+        if (!statement.isEmpty()) {
+            statements.add(statement);
+        }
+        current.setLength(0);
+    }
+}
@@ -0,0 +1,409 @@
+package ict.bench;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a running deployment through its real servlet endpoints with a
+ * stepped concurrency ramp and prints p50/p99 latency per operation and
+ * stage.
+ * <p>
+ * Virtual users log in through /login as the users DataGenerator created
+ * (username prefix load_ by default; passwords are read from the users
+ * table) and loop over a weighted mix of:
+ * <ul>
+ * <li>order: POST /orderFromSource with one to three fruit lines,</li>
+ * <li>approve: POST /approveBorrow for a Pending borrowing, as its lending shop,</li>
+ * <li>checkout: POST /checkoutToShop for an Approved or Shipped reservation, as
+ * a central warehouse in the shop's country,</li>
+ * <li>report: GET one of the inventory, consumption, forecast and advanced
+ * reports as Senior Management.</li>
+ * </ul>
+ * The Pending borrowings and open reservations are read from the database
+ * before the run and handed out once each; when they run out, approve and
+ * checkout turn into orders and are counted as skipped. Redirects are not
+ * followed, so a transaction is timed up to its redirect. A redirect
+ * carrying error= counts as failed, 503 (bulkhead full or timed out) as
+ * rejected.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar ict.bench.LoadHarness --base=http://localhost:8080/assignment \
+ *     --db-url=jdbc:mysql://localhost:3306/aib_db --db-user=root --db-password= \
+ *     --ramp=1,8,32,64 --stage-seconds=30 --warmup-seconds=10 \
+ *     --mix=order:40,approve:20,checkout:20,report:20 --csv=load.csv
+ * </pre>
+ */
+public final class LoadHarness {
+
+    enum Operation {
+        ORDER, APPROVE, CHECKOUT, REPORT
+    }
+
+    private static final String[] REPORT_PATHS = {
+            "/viewInventoryReport?groupBy=city",
+            "/viewInventoryReport?groupBy=sourceCountry",
+            "/viewConsumptionReport?startDate=%1$s&endDate=%2$s",
+            "/viewForecastReport?startDate=%1$s&endDate=%2$s",
+            "/viewAdvancedReport?reportType=needs",
+    };
+
+    private final String base;
+    private final HttpClient client;
+    private final Operation[] mix;
+    private final List<Integer> fruitIds = new ArrayList<>();
+    private final List<String[]> shopUsers = new ArrayList<>();
+    private final Map<Integer, String[]> shopUserByShop = new HashMap<>();
+    private final Map<String, List<String[]>> centralUsersByCountry = new HashMap<>();
+    private final List<String[]> managers = new ArrayList<>();
+    private final Map<Integer, Queue<Integer>> pendingBorrowingsByLender = new ConcurrentHashMap<>();
+    private final Map<String, Queue<Integer>> openReservationsByCountry = new ConcurrentHashMap<>();
+    private final List<Integer> lenders = new ArrayList<>();
+    private final List<String> checkoutCountries = new ArrayList<>();
+
+    LoadHarness(String base, Operation[] mix) {
+        this.base = base.endsWith("/") ? base.substring(0, base.length() - 1) : base;
+        this.mix = mix;
+        this.client = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    public static void main(String[] argv) throws Exception {
+        Arguments args = new Arguments(argv);
+        LoadHarness harness = new LoadHarness(args.get("base", "http://localhost:8080/assignment"),
+                parseMix(args.get("mix", "order:40,approve:20,checkout:20,report:20")));
+        try (Connection conn = DriverManager.getConnection(args.get("db-url", "jdbc:mysql://localhost:3306/aib_db"),
+                args.get("db-user", "root"), args.get("db-password", ""))) {
+            harness.loadWork(conn, args.get("user-prefix", "load_"));
+        }
+
+        int warmupSeconds = args.getInt("warmup-seconds", 10);
+        int stageSeconds = args.getInt("stage-seconds", 30);
+        List<String> rows = new ArrayList<>();
+        rows.add("users,operation,count,ok,failed,rejected,errors,skipped,throughput_per_s,p50_ms,p99_ms,max_ms");
+        for (String step : args.get("ramp", "1,8,32").split(",")) {
+            int users = Integer.parseInt(step.trim());
+            if (warmupSeconds > 0) {
+                harness.runStage(users, warmupSeconds);
+            }
+            Map<Operation, Recorder> results = harness.runStage(users, stageSeconds);
+            System.out.println();
+            System.out.printf(Locale.ROOT, "%d virtual users, %d s%n", users, stageSeconds);
+            System.out.printf(Locale.ROOT, "%-9s %8s %8s %7s %8s %7s %7s %9s %9s %9s %9s%n", "operation", "count",
+                    "ok", "failed", "rejected", "errors", "skipped", "ops/s", "p50 ms", "p99 ms", "max ms");
+            for (Map.Entry<Operation, Recorder> entry : results.entrySet()) {
+                Recorder r = entry.getValue();
+                long[] latencies = r.sortedLatencies();
+                double throughput = latencies.length / (double) stageSeconds;
+                double p50 = percentileMillis(latencies, 0.50);
+                double p99 = percentileMillis(latencies, 0.99);
+                double max = latencies.length == 0 ? 0 : latencies[latencies.length - 1] / 1e6;
+                System.out.printf(Locale.ROOT, "%-9s %8d %8d %7d %8d %7d %7d %9.1f %9.2f %9.2f %9.2f%n",
+                        entry.getKey().name().toLowerCase(Locale.ROOT), latencies.length, r.ok.get(),
+                        r.failed.get(), r.rejected.get(), r.errors.get(), r.skipped.get(), throughput, p50, p99,
+                        max);
+                rows.add(String.format(Locale.ROOT, "%d,%s,%d,%d,%d,%d,%d,%d,%.1f,%.3f,%.3f,%.3f", users,
+                        entry.getKey().name().toLowerCase(Locale.ROOT), latencies.length, r.ok.get(),
+                        r.failed.get(), r.rejected.get(), r.errors.get(), r.skipped.get(), throughput, p50, p99,
+                        max));
+            }
+        }
+        if (args.has("csv")) {
+            Files.write(Paths.get(args.get("csv", "load.csv")), rows, StandardCharsets.UTF_8);
+        }
+    }
+
+    static Operation[] parseMix(String mix) {
+        List<Operation> weighted = new ArrayList<>();
+        for (String part : mix.split(",")) {
+            String[] nameAndWeight = part.trim().split(":");
+            Operation operation = Operation.valueOf(nameAndWeight[0].trim().toUpperCase(Locale.ROOT));
+            int weight = nameAndWeight.length > 1 ? Integer.parseInt(nameAndWeight[1].trim()) : 1;
+            for (int i = 0; i < weight; i++) {
+                weighted.add(operation);
+            }
+        }
+        return weighted.toArray(new Operation[0]);
+    }
+
+    /** Reads logins, fruits and the approvable/checkout-able work from the database. */
+    void loadWork(Connection conn, String userPrefix) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT fruit_id FROM fruits");
+                ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                fruitIds.add(rs.getInt(1));
+            }
+        }
+        String usersSql = "SELECT u.username, u.password, u.role, u.shop_id, w.country, w.is_source "
+                + "FROM users u LEFT JOIN warehouses w ON u.warehouse_id = w.warehouse_id WHERE u.username LIKE ?";
+        try (PreparedStatement ps = conn.prepareStatement(usersSql)) {
+            ps.setString(1, userPrefix + "%");
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String[] login = { rs.getString("username"), rs.getString("password") };
+                    String role = rs.getString("role");
+                    if ("Senior Management".equals(role)) {
+                        managers.add(login);
+                    } else if ("Bakery shop staff".equals(role) && rs.getObject("shop_id") != null) {
+                        shopUsers.add(login);
+                        shopUserByShop.put(rs.getInt("shop_id"), login);
+                    } else if ("Warehouse Staff".equals(role) && rs.getObject("country") != null
+                            && rs.getInt("is_source") == 0) {
+                        centralUsersByCountry.computeIfAbsent(rs.getString("country"), key -> new ArrayList<>())
+                                .add(login);
+                    }
+                }
+            }
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT borrowing_id, borrowing_shop_id FROM borrowings WHERE status = 'Pending'");
+                ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                int lender = rs.getInt("borrowing_shop_id");
+                if (shopUserByShop.containsKey(lender)) {
+                    pendingBorrowingsByLender.computeIfAbsent(lender, key -> new ConcurrentLinkedQueue<>())
+                            .add(rs.getInt("borrowing_id"));
+                }
+            }
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT r.reservation_id, s.country FROM reservations r JOIN shops s ON r.shop_id = s.shop_id "
+                        + "WHERE r.status IN ('Approved', 'Shipped')");
+                ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                String country = rs.getString("country");
+                if (centralUsersByCountry.containsKey(country)) {
+                    openReservationsByCountry.computeIfAbsent(country, key -> new ConcurrentLinkedQueue<>())
+                            .add(rs.getInt("reservation_id"));
+                }
+            }
+        }
+        lenders.addAll(pendingBorrowingsByLender.keySet());
+        checkoutCountries.addAll(openReservationsByCountry.keySet());
+        if (shopUsers.isEmpty() || managers.isEmpty() || fruitIds.isEmpty()) {
+            throw new IllegalStateException("No " + userPrefix + "* shop and manager logins or no fruits found. "
+                    + "Run DataGenerator against this database first.");
+        }
+        System.out.printf(Locale.ROOT, "%d shop logins, %d central warehouse countries, %d managers; "
+                + "%d pending borrowings, %d open reservations%n", shopUsers.size(), centralUsersByCountry.size(),
+                managers.size(), pendingBorrowingsByLender.values().stream().mapToInt(Queue::size).sum(),
+                openReservationsByCountry.values().stream().mapToInt(Queue::size).sum());
+    }
+
+    Map<Operation, Recorder> runStage(int users, int seconds) throws InterruptedException {
+        Map<Operation, Recorder> results = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            results.put(operation, new Recorder());
+        }
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch done = new CountDownLatch(users);
+        for (int i = 0; i < users; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    new VirtualUser().run(deadline, results);
+                } finally {
+                    done.countDown();
+                }
+            }, "load-user-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+        return results;
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /** Latency samples (ns) and outcome counts of one operation in one stage. */
+    static final class Recorder {
+        private long[] latencies = new long[1024];
+        private int size;
+        final AtomicLong ok = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong rejected = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong skipped = new AtomicLong();
+
+        synchronized void record(long nanos) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = nanos;
+        }
+
+        synchronized long[] sortedLatencies() {
+            long[] sorted = Arrays.copyOf(latencies, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+
+    /** One simulated user: a session cookie per login it has used. */
+    private final class VirtualUser {
+        private final Map<String, String> sessionCookies = new HashMap<>();
+        private final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        void run(long deadline, Map<Operation, Recorder> results) {
+            while (System.nanoTime() < deadline) {
+                Operation operation = mix[random.nextInt(mix.length)];
+                try {
+                    perform(operation, results);
+                } catch (IOException e) {
+                    results.get(operation).errors.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        private void perform(Operation operation, Map<Operation, Recorder> results)
+                throws IOException, InterruptedException {
+            switch (operation) {
+                case APPROVE: {
+                    Integer lender = lenders.isEmpty() ? null : lenders.get(random.nextInt(lenders.size()));
+                    Integer borrowingId = lender == null ? null : pendingBorrowingsByLender.get(lender).poll();
+                    if (borrowingId == null) {
+                        results.get(Operation.APPROVE).skipped.incrementAndGet();
+                        order(results);
+                        return;
+                    }
+                    post(Operation.APPROVE, results, shopUserByShop.get(lender), "/approveBorrow",
+                            "borrowingId=" + borrowingId + "&action=approve");
+                    return;
+                }
+                case CHECKOUT: {
+                    String country = checkoutCountries.isEmpty() ? null
+                            : checkoutCountries.get(random.nextInt(checkoutCountries.size()));
+                    Integer reservationId = country == null ? null : openReservationsByCountry.get(country).poll();
+                    if (reservationId == null) {
+                        results.get(Operation.CHECKOUT).skipped.incrementAndGet();
+                        order(results);
+                        return;
+                    }
+                    List<String[]> warehouseUsers = centralUsersByCountry.get(country);
+                    post(Operation.CHECKOUT, results, warehouseUsers.get(random.nextInt(warehouseUsers.size())),
+                            "/checkoutToShop", "reservationId=" + reservationId);
+                    return;
+                }
+                case REPORT: {
+                    LocalDate end = LocalDate.now();
+                    String path = String.format(Locale.ROOT, REPORT_PATHS[random.nextInt(REPORT_PATHS.length)],
+                            end.minusDays(90), end);
+                    String[] manager = managers.get(random.nextInt(managers.size()));
+                    send(Operation.REPORT, results, manager,
+                            HttpRequest.newBuilder(URI.create(base + path)).GET());
+                    return;
+                }
+                default:
+                    order(results);
+            }
+        }
+
+        private void order(Map<Operation, Recorder> results) throws IOException, InterruptedException {
+            StringBuilder form = new StringBuilder();
+            int lines = 1 + random.nextInt(3);
+            for (int i = 0; i < lines; i++) {
+                form.append(form.length() == 0 ? "" : "&").append("quantity_")
+                        .append(fruitIds.get(random.nextInt(fruitIds.size()))).append('=')
+                        .append(1 + random.nextInt(20));
+            }
+            post(Operation.ORDER, results, shopUsers.get(random.nextInt(shopUsers.size())), "/orderFromSource",
+                    form.toString());
+        }
+
+        private void post(Operation operation, Map<Operation, Recorder> results, String[] login, String path,
+                String form) throws IOException, InterruptedException {
+            send(operation, results, login, HttpRequest.newBuilder(URI.create(base + path))
+                    .header("Content-Type", "application/x-www-form-urlencoded")
+                    .POST(HttpRequest.BodyPublishers.ofString(form)));
+        }
+
+        private void send(Operation operation, Map<Operation, Recorder> results, String[] login,
+                HttpRequest.Builder request) throws IOException, InterruptedException {
+            String cookie = session(login);
+            long started = System.nanoTime();
+            HttpResponse<Void> response = client.send(request.header("Cookie", cookie).build(),
+                    HttpResponse.BodyHandlers.discarding());
+            long elapsed = System.nanoTime() - started;
+            Recorder recorder = results.get(operation);
+            recorder.record(elapsed);
+            int status = response.statusCode();
+            String location = response.headers().firstValue("Location").orElse("");
+            if (status == 503) {
+                recorder.rejected.incrementAndGet();
+            } else if (status >= 400 || location.contains("login.jsp")) {
+                recorder.errors.incrementAndGet();
+                sessionCookies.remove(login[0]);
+            } else if (location.contains("error=")) {
+                recorder.failed.incrementAndGet();
+            } else {
+                recorder.ok.incrementAndGet();
+            }
+        }
+
+        /** The JSESSIONID cookie for the login, logging in on first use. */
+        private String session(String[] login) throws IOException, InterruptedException {
+            String cookie = sessionCookies.get(login[0]);
+            if (cookie != null) {
+                return cookie;
+            }
+            String form = "username=" + URLEncoder.encode(login[0], StandardCharsets.UTF_8)
+                    + "&password=" + URLEncoder.encode(login[1], StandardCharsets.UTF_8);
+            HttpResponse<Void> response = client.send(HttpRequest.newBuilder(URI.create(base + "/login"))
+                    .header("Content-Type", "application/x-www-form-urlencoded")
+                    .POST(HttpRequest.BodyPublishers.ofString(form)).build(),
+                    HttpResponse.BodyHandlers.discarding());
+            for (String setCookie : response.headers().allValues("Set-Cookie")) {
+                if (setCookie.startsWith("JSESSIONID=")) {
+                    cookie = setCookie.substring(0, setCookie.indexOf(';') < 0 ? setCookie.length()
+                            : setCookie.indexOf(';'));
+                }
+            }
+            // A failed login forwards back to the login page, which may still hand out a session;
+            // AuthFilter only lets a logged-in session through to welcome.jsp.
+            HttpResponse<Void> check = cookie == null ? null
+                    : client.send(HttpRequest.newBuilder(URI.create(base + "/welcome.jsp"))
+                            .header("Cookie", cookie).GET().build(), HttpResponse.BodyHandlers.discarding());
+            if (check == null || check.statusCode() != 200) {
+                throw new IOException("Login failed for " + login[0] + " (HTTP " + response.statusCode() + ")");
+            }
+            sessionCookies.put(login[0], cookie);
+            return cookie;
+        }
+    }
+}
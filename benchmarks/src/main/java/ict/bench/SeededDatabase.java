@@ -0,0 +1,60 @@
+package ict.bench;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import ict.db.DaoRegistry;
+
+/**
+ * JMH state shared by the *Database benchmarks of a fork: one embedded
+ * database and the DAOs built on its pool, exactly as the application
+ * wires them.
+ * <p>
+ * The fixtures alone are tiny. To measure at production volume, pass
+ * DataGenerator options, comma-separated since JMH splits JVM arguments on
+ * spaces, e.g. -Dbenchmark.generate=reservations=1000000,borrowings=200000.
+ */
+@State(Scope.Benchmark)
+public class SeededDatabase {
+
+    private EmbeddedDatabase database;
+    private DaoRegistry daos;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        database = EmbeddedDatabase.start();
+        String generate = System.getProperty("benchmark.generate");
+        if (generate != null) {
+            try (Connection conn = DriverManager.getConnection(DataGenerator.withBatchRewrite(database.getUrl()),
+                    "root", "")) {
+                String[] options = generate.split(",");
+                for (int i = 0; i < options.length; i++) {
+                    options[i] = "--" + options[i].trim();
+                }
+                new DataGenerator(new Arguments(options)).generate(conn);
+            }
+        }
+        daos = new DaoRegistry(database.getPool());
+        daos.getInventoryLedger().start();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        daos.getInventoryLedger().shutdown();
+        database.stop();
+    }
+
+    public EmbeddedDatabase getDatabase() {
+        return database;
+    }
+
+    public DaoRegistry getDaos() {
+        return daos;
+    }
+}
@@ -0,0 +1,164 @@
+package ict.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ict.bean.BorrowableFruitInfoBean;
+import ict.bean.FruitBean;
+import ict.bean.LenderInfoBean;
+import ict.bench.EmbeddedDatabase;
+
+/**
+ * The /batchBorrowFruit page load at 100, 1,000 and 10,000 fruits:
+ * {@link BorrowingDB#getBorrowableFruitsWithLenderInfo}, which reads the
+ * fruit list and takes lender stock from the ledger, against the per-fruit
+ * loop it replaced, kept here as perFruitQueries.
+ * <p>
+ * Two more shops are opened in Tokyo, each stocking every fruit, so shop 1
+ * sees two lenders per fruit. The round-trips of each version are counted
+ * once at setup from the server's Questions counter and printed, since the
+ * latency figures alone do not show why one version grows with the catalog.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BorrowableFruitsBenchmark {
+
+    private static final String CITY = "Tokyo";
+    private static final int REQUESTING_SHOP_ID = 1;
+
+    @Param({ "100", "1000", "10000" })
+    public int fruits;
+
+    private EmbeddedDatabase database;
+    private DaoRegistry daos;
+
+    @Setup
+    public void setup() throws Exception {
+        database = EmbeddedDatabase.start();
+        try (Connection conn = database.getPool().getConnection()) {
+            seed(conn);
+        }
+        daos = new DaoRegistry(database.getPool());
+        daos.getInventoryLedger().start();
+
+        long ledger = roundTrips(this::ledgerRead);
+        long perFruit = roundTrips(this::perFruitQueries);
+        System.out.println();
+        System.out.println("# fruits=" + fruits + ": round-trips per page, ledger=" + ledger
+                + ", perFruit=" + perFruit);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        daos.getInventoryLedger().shutdown();
+        database.stop();
+    }
+
+    @Benchmark
+    public List<BorrowableFruitInfoBean> ledgerRead() {
+        return daos.getBorrowingDb().getBorrowableFruitsWithLenderInfo(CITY, REQUESTING_SHOP_ID);
+    }
+
+    /** The pre-rewrite shape: the fruit list, then one inventory query per fruit. */
+    @Benchmark
+    public List<BorrowableFruitInfoBean> perFruitQueries() {
+        List<BorrowableFruitInfoBean> resultList = new ArrayList<>();
+        List<FruitBean> allFruits = daos.getFruitDb().getAllFruits();
+        String inventorySql = "SELECT i.shop_id, s.shop_name, i.quantity " +
+                "FROM inventory i JOIN shops s ON i.shop_id = s.shop_id " +
+                "WHERE i.fruit_id = ? AND s.city = ? AND i.shop_id != ? AND i.quantity > 0";
+        try (Connection conn = database.getPool().getConnection();
+                PreparedStatement ps = conn.prepareStatement(inventorySql)) {
+            for (FruitBean fruit : allFruits) {
+                BorrowableFruitInfoBean info = new BorrowableFruitInfoBean(fruit);
+                ps.setInt(1, fruit.getFruitId());
+                ps.setString(2, CITY);
+                ps.setInt(3, REQUESTING_SHOP_ID);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        info.addLender(new LenderInfoBean(rs.getInt("shop_id"), rs.getString("shop_name"),
+                                rs.getInt("quantity")));
+                    }
+                }
+                resultList.add(info);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+        return resultList;
+    }
+
+    /** Tops the fixture catalog up to the parameter and stocks it in two Tokyo shops. */
+    private void seed(Connection conn) throws SQLException {
+        conn.setAutoCommit(false);
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate("INSERT INTO shops (shop_name, city, country) VALUES "
+                    + "('Bakery Shop Tokyo 2', 'Tokyo', 'Japan'), ('Bakery Shop Tokyo 3', 'Tokyo', 'Japan')");
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO fruits (fruit_name, source_country) VALUES (?, 'Japan')")) {
+            for (int i = countRows(conn, "fruits"); i < fruits; i++) {
+                ps.setString(1, String.format("Fruit %05d", i));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        try (Statement st = conn.createStatement()) {
+            st.executeUpdate("INSERT INTO inventory (fruit_id, shop_id, quantity) "
+                    + "SELECT f.fruit_id, s.shop_id, 10 + MOD(f.fruit_id, 50) FROM fruits f CROSS JOIN shops s "
+                    + "WHERE s.shop_name LIKE 'Bakery Shop Tokyo %'");
+        }
+        conn.commit();
+        conn.setAutoCommit(true);
+    }
+
+    private static int countRows(Connection conn, String table) throws SQLException {
+        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /** Statements the server ran for one call, net of the two status reads around it. */
+    private long roundTrips(Supplier<List<BorrowableFruitInfoBean>> page) throws SQLException {
+        try (Connection conn = database.getPool().getConnection()) {
+            long idle = questions(conn);
+            long before = questions(conn);
+            page.get();
+            long after = questions(conn);
+            return (after - before) - (before - idle);
+        }
+    }
+
+    private static long questions(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement();
+                ResultSet rs = st.executeQuery("SHOW GLOBAL STATUS LIKE 'Questions'")) {
+            rs.next();
+            return rs.getLong(2);
+        }
+    }
+}
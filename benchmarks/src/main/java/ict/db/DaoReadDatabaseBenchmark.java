@@ -0,0 +1,64 @@
+package ict.db;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ict.bean.BorrowingBean;
+import ict.bean.DeliveryBean;
+import ict.bean.InventoryBean;
+import ict.bean.ReservationBean;
+import ict.bench.SeededDatabase;
+
+/**
+ * The hot DAO reads end to end: pool checkout, query, mapping, over JDBC to
+ * the embedded database. Throughput, so runs with -t N show contention on
+ * the pool as well.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoReadDatabaseBenchmark {
+
+    private static final PageRequest FIRST_PAGE = new PageRequest(0, PageRequest.DEFAULT_LENGTH, 0, false, null,
+            null);
+
+    @Benchmark
+    public List<BorrowingBean> allBorrowings(SeededDatabase db) {
+        return db.getDaos().getBorrowingDb().getAllBorrowings();
+    }
+
+    @Benchmark
+    public Page<BorrowingBean> borrowingsPage(SeededDatabase db) {
+        return db.getDaos().getBorrowingDb().getBorrowingsPage(FIRST_PAGE, 1);
+    }
+
+    @Benchmark
+    public Page<ReservationBean> reservationsPage(SeededDatabase db) {
+        return db.getDaos().getReservationDb().getReservationsPage(FIRST_PAGE, null);
+    }
+
+    @Benchmark
+    public List<DeliveryBean> allDeliveries(SeededDatabase db) {
+        return db.getDaos().getDeliveryDb().getAllDeliveries();
+    }
+
+    @Benchmark
+    public List<InventoryBean> shopInventory(SeededDatabase db) {
+        return db.getDaos().getBorrowingDb().getInventoryForShop(1);
+    }
+
+    @Benchmark
+    public List<InventoryBean> allInventory(SeededDatabase db) {
+        return db.getDaos().getBorrowingDb().getAllInventory();
+    }
+}
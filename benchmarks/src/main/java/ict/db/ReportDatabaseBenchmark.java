@@ -0,0 +1,59 @@
+package ict.db;
+
+import java.sql.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ict.bean.AggregatedNeedBean;
+import ict.bean.ConsumptionDataBean;
+import ict.bean.ForecastBean;
+import ict.bean.InventorySummaryBean;
+import ict.bench.SeededDatabase;
+
+/**
+ * The report aggregations behind the inventory, consumption, advanced and
+ * forecast pages, over a date range covering the fixture data.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportDatabaseBenchmark {
+
+    private static final Date START = Date.valueOf("2024-01-01");
+    private static final Date END = Date.valueOf("2025-12-31");
+
+    @Benchmark
+    public List<InventorySummaryBean> inventoryBySourceCountry(SeededDatabase db) {
+        return db.getDaos().getBorrowingDb().getInventorySummaryBySourceCountry();
+    }
+
+    @Benchmark
+    public List<InventorySummaryBean> inventoryByCity(SeededDatabase db) {
+        return db.getDaos().getBorrowingDb().getInventorySummaryByCity();
+    }
+
+    @Benchmark
+    public List<ConsumptionDataBean> consumptionByFruit(SeededDatabase db) {
+        return db.getDaos().getBorrowingDb().getConsumptionSummaryByFruit(START, END);
+    }
+
+    @Benchmark
+    public List<AggregatedNeedBean> aggregatedNeedsByCity(SeededDatabase db) {
+        return db.getDaos().getReservationDb().getAggregatedNeeds("city", "Hong Kong", START, END);
+    }
+
+    @Benchmark
+    public List<ForecastBean> forecast(SeededDatabase db) {
+        return db.getDaos().getBorrowingDb().getAverageDailyConsumptionByFruitAndCountry(START, END);
+    }
+}
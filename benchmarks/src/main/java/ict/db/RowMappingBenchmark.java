@@ -0,0 +1,134 @@
+package ict.db;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ict.bean.BorrowingBean;
+import ict.bean.DeliveryBean;
+import ict.bean.ReservationBean;
+
+/**
+ * ResultSet-to-bean mapping of the list queries, without a database: each
+ * benchmark maps the given number of rows from an in-memory CachedRowSet
+ * shaped like the DAO's query. Run with -prof gc for allocation per
+ * operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowMappingBenchmark {
+
+    @Param({ "25", "1000" })
+    public int rows;
+
+    private CachedRowSet borrowings;
+    private CachedRowSet reservations;
+    private CachedRowSet deliveries;
+
+    @Setup
+    public void setup() throws SQLException {
+        Date date = Date.valueOf("2025-03-28");
+        String[] statuses = { "Pending", "Approved", "Rejected", "Fulfilled" };
+
+        borrowings = rowSet(
+                new String[] { "borrowing_id", "fruit_id", "borrowing_shop_id", "receiving_shop_id", "quantity",
+                        "borrowing_date", "status", "fruit_name", "borrowing_shop_name", "receiving_shop_name" },
+                new int[] { Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.DATE,
+                        Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR });
+        reservations = rowSet(
+                new String[] { "reservation_id", "fruit_id", "shop_id", "quantity", "reservation_date", "status",
+                        "fruit_name" },
+                new int[] { Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.DATE, Types.VARCHAR,
+                        Types.VARCHAR });
+        deliveries = rowSet(
+                new String[] { "delivery_id", "fruit_id", "from_warehouse_id", "to_warehouse_id", "quantity",
+                        "delivery_date", "status", "fruit_name", "from_warehouse_name", "to_warehouse_name" },
+                new int[] { Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.INTEGER, Types.DATE,
+                        Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR });
+
+        for (int i = 1; i <= rows; i++) {
+            String status = statuses[i % statuses.length];
+            String fruit = "Fruit " + (i % 40);
+            insert(borrowings, i, i % 40, i % 12, (i + 1) % 12, i % 50, date, status, fruit,
+                    "Shop " + (i % 12), "Shop " + ((i + 1) % 12));
+            insert(reservations, i, i % 40, i % 12, i % 50, date, status, fruit);
+            insert(deliveries, i, i % 40, i % 3, 3 + i % 3, i % 500, date, status, fruit,
+                    "Source " + (i % 3), "Central " + (i % 3));
+        }
+    }
+
+    @Benchmark
+    public List<BorrowingBean> mapBorrowings() throws SQLException {
+        List<BorrowingBean> beans = new ArrayList<>();
+        borrowings.beforeFirst();
+        while (borrowings.next()) {
+            beans.add(BorrowingDB.mapRowToBorrowingBean(borrowings));
+        }
+        return beans;
+    }
+
+    @Benchmark
+    public List<ReservationBean> mapReservations() throws SQLException {
+        List<ReservationBean> beans = new ArrayList<>();
+        reservations.beforeFirst();
+        while (reservations.next()) {
+            beans.add(ReservationDB.mapRowToReservationBean(reservations));
+        }
+        return beans;
+    }
+
+    @Benchmark
+    public List<DeliveryBean> mapDeliveries() throws SQLException {
+        List<DeliveryBean> beans = new ArrayList<>();
+        deliveries.beforeFirst();
+        while (deliveries.next()) {
+            beans.add(DeliveryDB.mapRowToDeliveryBean(deliveries));
+        }
+        return beans;
+    }
+
+    private static CachedRowSet rowSet(String[] labels, int[] types) throws SQLException {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(labels.length);
+        for (int i = 0; i < labels.length; i++) {
+            metaData.setColumnName(i + 1, labels[i]);
+            metaData.setColumnLabel(i + 1, labels[i]);
+            metaData.setColumnType(i + 1, types[i]);
+        }
+        CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+        rowSet.setMetaData(metaData);
+        return rowSet;
+    }
+
+    private static void insert(CachedRowSet rowSet, Object... values) throws SQLException {
+        rowSet.moveToInsertRow();
+        for (int i = 0; i < values.length; i++) {
+            rowSet.updateObject(i + 1, values[i]);
+        }
+        rowSet.insertRow();
+        rowSet.moveToCurrentRow();
+    }
+}
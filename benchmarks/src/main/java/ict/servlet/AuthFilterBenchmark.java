@@ -0,0 +1,75 @@
+package ict.servlet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * AuthFilter's per-request decision: the route lookup in the compiled
+ * {@link AccessRules} plus the role test, over a mix of public, allowed,
+ * denied and unknown paths. The rules are the ones AuthFilter.init builds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthFilterBenchmark {
+
+    private static final String[][] REQUESTS = {
+            { "/login", null },
+            { "/resources/css/style.css", null },
+            { "/assignment/resources/inventory", "/shops/1" },
+            { "/listFruits", null },
+            { "/viewInventoryReport", null },
+            { "/orderFromSource", null },
+            { "/checkoutToShop", null },
+            { "/welcome.jsp", null },
+            { "/noSuchPage", null },
+    };
+
+    private AccessRules rules;
+    private int[] roleBits;
+
+    @Setup
+    public void setup() {
+        rules = AuthFilter.defaultRules();
+        roleBits = new int[] {
+                rules.roleBit(AuthFilter.ROLE_SENIOR_MANAGEMENT),
+                rules.roleBit(AuthFilter.ROLE_WAREHOUSE_STAFF),
+                rules.roleBit(AuthFilter.ROLE_BAKERY_SHOP_STAFF),
+        };
+    }
+
+    /** One decision per path and role; the score is per batch of all of them. */
+    @Benchmark
+    public void decide(Blackhole blackhole) {
+        for (String[] request : REQUESTS) {
+            int allowed = rules.lookup(request[0], request[1]);
+            for (int roleBit : roleBits) {
+                blackhole.consume(allowed == AccessRules.PUBLIC || (allowed & roleBit) != 0);
+            }
+        }
+    }
+
+    @Benchmark
+    public int lookupProtected() {
+        return rules.lookup("/viewConsumptionReport", null);
+    }
+
+    @Benchmark
+    public int lookupPublicPrefix() {
+        return rules.lookup("/resources/js/pagedTable.js", null);
+    }
+}
@@ -0,0 +1,143 @@
+package ict.bench;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+
+import ict.db.DaoRegistry;
+
+/**
+ * Runs every statement of sql/checks/explain_checks.sql against the embedded
+ * database and asserts the `-- expect:` lines above it, one dynamic test per
+ * statement, named after the DAO method in its comment.
+ * <p>
+ * The fixtures alone are so small that the optimizer scans every table, so
+ * the schema is first filled with a modest DataGenerator run, stock
+ * movements, a snapshot and a pending journal, and analyzed.
+ */
+class ExplainChecksTest {
+
+    private static final String CHECKS = "checks/explain_checks.sql";
+    private static final String EXPECT = "-- expect:";
+
+    private static EmbeddedDatabase database;
+
+    @BeforeAll
+    static void startDatabase() throws Exception {
+        database = EmbeddedDatabase.start();
+        try (Connection conn = DriverManager.getConnection(DataGenerator.withBatchRewrite(database.getUrl()),
+                "root", "")) {
+            new DataGenerator(new Arguments(new String[] { "--reservations=20000", "--borrowings=5000",
+                    "--deliveries=1000", "--years=1" })).generate(conn);
+            conn.setAutoCommit(true);
+            try (Statement st = conn.createStatement()) {
+                for (int i = 0; i < 5; i++) {
+                    st.executeUpdate("INSERT INTO stock_movements (fruit_id, shop_id, warehouse_id, delta, cause) "
+                            + "SELECT fruit_id, shop_id, warehouse_id, quantity, 'ADJUSTMENT' FROM inventory");
+                }
+            }
+            new DaoRegistry(database.getPool()).getStockHistory().takeSnapshot();
+            try (Statement st = conn.createStatement()) {
+                st.executeUpdate("INSERT INTO inventory_journal (fruit_id, shop_id, warehouse_id, delta, cause) "
+                        + "SELECT fruit_id, shop_id, warehouse_id, 1, 'ADJUSTMENT' FROM inventory");
+                st.execute("ANALYZE TABLE inventory, inventory_journal, stock_movements, stock_snapshots, "
+                        + "stock_snapshot_rows, reservations, borrowings, consumption_daily, fruits, shops, warehouses");
+            }
+        }
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        database.stop();
+    }
+
+    @TestFactory
+    List<DynamicTest> explainChecks() throws Exception {
+        List<DynamicTest> tests = new ArrayList<>();
+        List<String> expectations = new ArrayList<>();
+        String name = null;
+        StringBuilder statement = new StringBuilder();
+        for (String line : Files.readAllLines(EmbeddedDatabase.sqlDir().resolve(CHECKS), StandardCharsets.UTF_8)) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith(EXPECT)) {
+                expectations.add(trimmed.substring(EXPECT.length()).trim());
+            } else if (trimmed.startsWith("--")) {
+                if (statement.length() == 0 && expectations.isEmpty() && trimmed.length() > 2) {
+                    name = trimmed.substring(2).trim();
+                }
+            } else if (!trimmed.isEmpty()) {
+                statement.append(statement.length() == 0 ? "" : "\n").append(line);
+                if (trimmed.endsWith(";")) {
+                    String sql = statement.substring(0, statement.length() - 1);
+                    List<String> expected = new ArrayList<>(expectations);
+                    tests.add(DynamicTest.dynamicTest(name, () -> check(sql, expected)));
+                    statement.setLength(0);
+                    expectations.clear();
+                    name = null;
+                }
+            }
+        }
+        assertFalse(tests.isEmpty(), "no statements in " + CHECKS);
+        return tests;
+    }
+
+    private static void check(String sql, List<String> expectations) throws SQLException {
+        assertFalse(expectations.isEmpty(), "no -- expect: line for\n" + sql);
+        List<String[]> plan = new ArrayList<>();
+        try (Connection conn = database.getPool().getConnection();
+                Statement st = conn.createStatement();
+                ResultSet rs = st.executeQuery(sql)) {
+            while (rs.next()) {
+                plan.add(new String[] { rs.getString("table"), orNull(rs.getString("type")),
+                        orNull(rs.getString("key")) });
+            }
+        }
+        for (String expectation : expectations) {
+            String[] words = expectation.split("\\s+");
+            List<String> keys = null;
+            List<String> types = null;
+            for (int i = 1; i < words.length; i++) {
+                if (words[i].startsWith("key=")) {
+                    keys = Arrays.asList(words[i].substring(4).split("\\|"));
+                } else if (words[i].startsWith("type=")) {
+                    types = Arrays.asList(words[i].substring(5).split("\\|"));
+                }
+            }
+            boolean met = false;
+            for (String[] row : plan) {
+                met |= words[0].equals(row[0]) && (keys == null || keys.contains(row[2]))
+                        && (types == null || types.contains(row[1]));
+            }
+            assertTrue(met, "expected " + expectation + ", plan was " + describe(plan) + " for\n" + sql);
+        }
+    }
+
+    /** A missing key or type as the mysql client prints it. */
+    private static String orNull(String value) {
+        return value == null ? "NULL" : value;
+    }
+
+    private static String describe(List<String[]> plan) {
+        StringBuilder sb = new StringBuilder();
+        for (String[] row : plan) {
+            sb.append(sb.length() == 0 ? "" : "; ").append(row[0]).append(" type=").append(row[1])
+                    .append(" key=").append(row[2]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,243 @@
+package ict.db;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ict.bean.ActionOutcomeBean;
+import ict.bench.EmbeddedDatabase;
+
+/**
+ * 64 requesters approve borrow requests against one lending shop's stock at
+ * once through BorrowingDB.approveBorrowRequest, each request by two of
+ * them, on the embedded database. The stock covers only some of the
+ * requests, so every run proves three things: the lender never goes below
+ * zero, no request moves stock twice, and no stock is lost, i.e. exactly as
+ * many requests are approved as the stock allows.
+ * <p>
+ * Two more runs edit the lender's row by hand behind the ledger. Once a
+ * flush has found the edit, approvals stop at what the row holds. Approvals
+ * made before that were checked against the old stock; the ledger holds
+ * their deltas back, shows the lender as empty and refuses approvals there
+ * until a stock count covers them.
+ */
+class OversellStressTest {
+
+    private static final int THREADS = 64;
+    private static final int REQUESTS = 640;
+    private static final int QUANTITY = 3;
+    private static final int STOCK = 600;
+    private static final int FRUIT_ID = 1;
+    private static final int LENDER_ID = 1;
+    private static final int RECEIVER_ID = 2;
+
+    private EmbeddedDatabase database;
+    private ConnectionPool pool;
+    // The fixture has borrowings of its own; the test's requests are the ids from here on.
+    private int firstId;
+
+    @BeforeEach
+    void startDatabase() throws Exception {
+        database = EmbeddedDatabase.start();
+        pool = new ConnectionPool(database.getUrl(), "root", "");
+        pool.setMaxPoolSize(THREADS);
+        pool.start();
+        firstId = count("SELECT COALESCE(MAX(borrowing_id), 0) + 1 FROM borrowings");
+        try (Connection conn = pool.getConnection();
+                PreparedStatement ps = conn.prepareStatement("INSERT INTO borrowings "
+                        + "(fruit_id, borrowing_shop_id, receiving_shop_id, quantity, borrowing_date, status) "
+                        + "VALUES (?, ?, ?, ?, CURDATE(), 'Pending')")) {
+            for (int i = 0; i < REQUESTS; i++) {
+                ps.setInt(1, FRUIT_ID);
+                ps.setInt(2, LENDER_ID);
+                ps.setInt(3, RECEIVER_ID);
+                ps.setInt(4, QUANTITY);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    @AfterEach
+    void stopDatabase() throws Exception {
+        pool.shutdown();
+        database.stop();
+    }
+
+    @Test
+    void ledgerNeverOversells() throws Exception {
+        DaoRegistry daos = new DaoRegistry(pool);
+        InventoryLedger ledger = daos.getInventoryLedger();
+        ledger.start();
+        BorrowingDB borrowingDb = daos.getBorrowingDb();
+        assertTrue(borrowingDb.setShopInventoryQuantity(FRUIT_ID, LENDER_ID, STOCK));
+        assertTrue(borrowingDb.setShopInventoryQuantity(FRUIT_ID, RECEIVER_ID, 0));
+
+        int approved = runRequesters(id -> borrowingDb.approveBorrowRequest(id, LENDER_ID).isSuccess());
+        int lenderInLedger = ledger.getQuantity(InventoryLedger.shopKey(FRUIT_ID, LENDER_ID));
+        ledger.shutdown();
+
+        assertOutcome(approved, tableQuantity(LENDER_ID), tableQuantity(RECEIVER_ID));
+        assertEquals(tableQuantity(LENDER_ID), lenderInLedger);
+        assertEquals(0, count("SELECT COUNT(*) FROM inventory_journal"));
+        assertEquals(0, daos.getStockHistory().reconcile());
+    }
+
+    @Test
+    void approvalsStopAtHandEditedRowOnceFound() throws Exception {
+        DaoRegistry daos = new DaoRegistry(pool);
+        InventoryLedger ledger = daos.getInventoryLedger();
+        ledger.setFlushIntervalMs(600000);
+        ledger.start();
+        BorrowingDB borrowingDb = daos.getBorrowingDb();
+        assertTrue(borrowingDb.setShopInventoryQuantity(FRUIT_ID, LENDER_ID, STOCK));
+        assertTrue(borrowingDb.setShopInventoryQuantity(FRUIT_ID, RECEIVER_ID, 0));
+        ledger.flushPending();
+        handEditLender(30);
+        // The next flush that writes the lender's row finds the edit.
+        assertTrue(borrowingDb.approveBorrowRequest(firstId, LENDER_ID).isSuccess());
+        ledger.flushPending();
+        assertEquals(30 - QUANTITY, ledger.getQuantity(InventoryLedger.shopKey(FRUIT_ID, LENDER_ID)));
+
+        int approved = runRequesters(id -> borrowingDb.approveBorrowRequest(id, LENDER_ID).isSuccess());
+        ledger.flushPending();
+        int held = ledger.getHeldJournalRowCount();
+        ledger.shutdown();
+
+        assertEquals((30 - QUANTITY) / QUANTITY, approved, "approvals stop at what the edited row holds");
+        assertEquals(0, tableQuantity(LENDER_ID));
+        assertEquals(30, tableQuantity(RECEIVER_ID));
+        assertEquals(0, held);
+        assertEquals(1, count("SELECT COUNT(*) FROM stock_movements WHERE cause = 'EXTERNAL'"));
+        assertEquals(0, daos.getStockHistory().reconcile());
+    }
+
+    @Test
+    void ledgerHoldsApprovalsMadeBeforeHandEditIsFound() throws Exception {
+        DaoRegistry daos = new DaoRegistry(pool);
+        InventoryLedger ledger = daos.getInventoryLedger();
+        // Nothing is flushed until the run is over, so the whole run's sales meet the edited row at once.
+        ledger.setFlushIntervalMs(600000);
+        ledger.start();
+        BorrowingDB borrowingDb = daos.getBorrowingDb();
+        long lenderKey = InventoryLedger.shopKey(FRUIT_ID, LENDER_ID);
+        assertTrue(borrowingDb.setShopInventoryQuantity(FRUIT_ID, LENDER_ID, STOCK));
+        ledger.flushPending();
+        handEditLender(30);
+
+        int approved = runRequesters(id -> borrowingDb.approveBorrowRequest(id, LENDER_ID).isSuccess());
+        assertEquals(Math.min(REQUESTS, STOCK / QUANTITY), approved, "the edit is not found before a flush");
+        ledger.flushPending();
+        assertTrue(ledger.getHeldJournalRowCount() > 0, "decrements the row cannot cover stay in the journal");
+        assertEquals(30, tableQuantity(LENDER_ID), "the table never goes below zero");
+        assertEquals(0, ledger.getQuantity(lenderKey), "a held location shows no stock");
+        int pendingId = count("SELECT MIN(borrowing_id) FROM borrowings WHERE status = 'Pending' "
+                + "AND borrowing_id >= " + firstId);
+        ActionOutcomeBean refused = borrowingDb.approveBorrowRequest(pendingId, LENDER_ID);
+        assertEquals(ActionOutcomeBean.Reason.CONFLICT, refused.getReason(), "a held location refuses approvals");
+
+        // A stock count of what is physically there covers the held rows and releases the location.
+        assertTrue(borrowingDb.setShopInventoryQuantity(FRUIT_ID, LENDER_ID, 30));
+        ledger.flushPending();
+        assertEquals(0, ledger.getHeldJournalRowCount());
+        assertEquals(30, ledger.getQuantity(lenderKey));
+        assertTrue(borrowingDb.approveBorrowRequest(pendingId, LENDER_ID).isSuccess());
+        ledger.flushPending();
+        ledger.shutdown();
+
+        assertEquals(30 - QUANTITY, tableQuantity(LENDER_ID));
+        assertEquals(1, count("SELECT COUNT(*) FROM stock_movements WHERE cause = 'EXTERNAL'"));
+        assertEquals(0, count("SELECT COUNT(*) FROM inventory_journal"));
+        assertEquals(0, daos.getStockHistory().reconcile());
+    }
+
+    @Test
+    void secondLedgerRefusesToStart() throws Exception {
+        InventoryLedger first = new InventoryLedger(pool);
+        first.start();
+        try {
+            assertThrows(SQLException.class, () -> new InventoryLedger(pool).start());
+        } finally {
+            first.shutdown();
+        }
+        InventoryLedger next = new InventoryLedger(pool);
+        next.start();
+        next.shutdown();
+    }
+
+    /** The requests are split into THREADS / 2 slices, each walked by two requesters at once. */
+    private int runRequesters(IntPredicate approve) throws Exception {
+        AtomicInteger approved = new AtomicInteger();
+        CountDownLatch go = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            Future<?>[] requesters = new Future<?>[THREADS];
+            for (int t = 0; t < THREADS; t++) {
+                int slice = REQUESTS / (THREADS / 2);
+                int offset = (t % (THREADS / 2)) * slice;
+                requesters[t] = executor.submit(() -> {
+                    go.await();
+                    for (int i = 0; i < slice; i++) {
+                        if (approve.test(firstId + offset + i)) {
+                            approved.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+            go.countDown();
+            for (Future<?> requester : requesters) {
+                requester.get(5, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return approved.get();
+    }
+
+    private void assertOutcome(int approved, int lender, int receiver) throws SQLException {
+        assertTrue(lender >= 0, "lender stock went negative: " + lender);
+        assertEquals(Math.min(REQUESTS, STOCK / QUANTITY), approved, "approvals");
+        assertEquals(approved, count("SELECT COUNT(*) FROM borrowings WHERE status = 'Approved' AND borrowing_id >= "
+                + firstId));
+        assertEquals(STOCK - approved * QUANTITY, lender);
+        assertEquals(approved * QUANTITY, receiver);
+    }
+
+    /** Someone changes the lender's row outside the application; the ledger still believes what it wrote. */
+    private void handEditLender(int quantity) throws SQLException {
+        try (Connection conn = pool.getConnection(); Statement st = conn.createStatement()) {
+            st.executeUpdate("UPDATE inventory SET quantity = " + quantity + " WHERE fruit_id = " + FRUIT_ID
+                    + " AND shop_id = " + LENDER_ID);
+        }
+    }
+
+    private int tableQuantity(int shopId) throws SQLException {
+        return count("SELECT quantity FROM inventory WHERE fruit_id = " + FRUIT_ID + " AND shop_id = " + shopId);
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Connection conn = pool.getConnection(); Statement st = conn.createStatement();
+                ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+-- EXPLAIN regression checks for the DAO queries that the V002-V006 indexes target.
+-- ict.bench.ExplainChecksTest in the benchmarks module runs this file on every build, against the
+-- embedded database filled with DataGenerator data (cd benchmarks && mvn test). To check a real
+-- server by hand:
+--   mysql aib_db < sql/checks/explain_checks.sql
+--
+-- Each statement mirrors the DAO query named above it, with sample values for the parameters.
+-- The `-- expect:` lines above a statement are what the test asserts:
+--   -- expect: <table> key=<index>[|<index>...] [type=<type>[|<type>...]]
+-- <table> is the `table` column of the plan, i.e. the alias where the query uses one. At least
+-- one plan row for that table must use one of the listed keys (and join types). type=ALL is only
+-- ever expected for the ledger's startup load; elsewhere a full scan of reservations, borrowings,
+-- inventory, inventory_journal or stock_movements is a regression.
+-- Keep this file in step with the DAOs: a query that is changed or removed here belongs in the
+-- same commit as the code change.
+
+-- InventoryLedger.load (once at startup; every row is wanted)
+-- expect: inventory key=NULL type=ALL
+EXPLAIN SELECT inventory_id, fruit_id, shop_id, warehouse_id, quantity FROM inventory;
+
+-- InventoryLedger.acquireLease
+-- expect: inventory_ledger_lease key=PRIMARY type=const
+EXPLAIN SELECT owner, TIMESTAMPDIFF(MICROSECOND, renewed_at, NOW(3)) DIV 1000 AS idle_ms
+FROM inventory_ledger_lease WHERE lease_name = 'inventory' FOR UPDATE;
+
+-- InventoryLedger.renewLease / releaseLease
+-- expect: inventory_ledger_lease key=PRIMARY type=range
+EXPLAIN UPDATE inventory_ledger_lease SET renewed_at = NOW(3) WHERE lease_name = 'inventory' AND owner = 'x';
+
+-- InventoryLedger.checkLease (inside every flush transaction)
+-- expect: inventory_ledger_lease key=PRIMARY type=const
+EXPLAIN SELECT owner FROM inventory_ledger_lease WHERE lease_name = 'inventory' LOCK IN SHARE MODE;
+
+-- InventoryLedger.flushBatch, next batch of journal rows after the cursor
+-- expect: inventory_journal key=PRIMARY type=range
+EXPLAIN SELECT journal_id, fruit_id, shop_id, warehouse_id, delta FROM inventory_journal
+WHERE journal_id > 0 ORDER BY journal_id LIMIT 1000;
+
+-- InventoryLedger.applyDeltas, guarded fast path (one row per batch entry)
+-- expect: inventory key=PRIMARY type=range
+EXPLAIN UPDATE inventory SET quantity = quantity + -3 WHERE inventory_id = 1 AND quantity = 50 AND quantity + -3 >= 0;
+
+-- InventoryLedger.applyLocked, shop row
+-- expect: inventory key=uk_inventory_fruit_shop type=const|eq_ref|ref
+EXPLAIN SELECT inventory_id, quantity FROM inventory WHERE fruit_id = 1 AND shop_id = 1 FOR UPDATE;
+
+-- InventoryLedger.applyLocked, warehouse row
+-- expect: inventory key=uk_inventory_fruit_warehouse type=const|eq_ref|ref
+EXPLAIN SELECT inventory_id, quantity FROM inventory WHERE fruit_id = 1 AND warehouse_id = 1 AND shop_id IS NULL FOR UPDATE;
+
+-- InventoryLedger.applyLocked, absolute write after a drift
+-- expect: inventory key=PRIMARY type=range
+EXPLAIN UPDATE inventory SET quantity = 47 WHERE inventory_id = 1;
+
+-- InventoryLedger.flushBatch, journal rows copied to stock_movements
+-- expect: inventory_journal key=PRIMARY type=range
+EXPLAIN INSERT INTO stock_movements (fruit_id, shop_id, warehouse_id, delta, cause, reference_id, occurred_at)
+SELECT fruit_id, shop_id, warehouse_id, delta, cause, reference_id, created_at
+FROM inventory_journal WHERE journal_id IN (1, 2, 3) ORDER BY journal_id;
+
+-- InventoryLedger.flushBatch, applied journal rows removed
+-- expect: inventory_journal key=PRIMARY type=range
+EXPLAIN DELETE FROM inventory_journal WHERE journal_id IN (1, 2, 3);
+
+-- StockHistory.lastMovementId (the last movement recorded by a point in time)
+-- expect: stock_movements key=idx_stock_movements_recorded type=range
+EXPLAIN SELECT COALESCE(MAX(movement_id), 0) FROM stock_movements WHERE recorded_at <= NOW(3) - INTERVAL 1 DAY;
+
+-- StockHistory.findSnapshot
+-- expect: stock_snapshots key=through_movement_id type=range|index
+EXPLAIN SELECT snapshot_id, through_movement_id FROM stock_snapshots
+WHERE through_movement_id <= 100 ORDER BY through_movement_id DESC LIMIT 1;
+
+-- StockHistory.getShopStockAt (snapshot rows plus the movements after it)
+-- expect: stock_snapshot_rows key=idx_stock_snapshot_rows_shop type=ref
+-- expect: stock_movements key=idx_stock_movements_shop type=range
+EXPLAIN SELECT x.fruit_id, f.fruit_name, SUM(x.quantity) AS quantity FROM (
+  SELECT fruit_id, quantity FROM stock_snapshot_rows WHERE snapshot_id = 1 AND shop_id = 1
+  UNION ALL
+  SELECT fruit_id, delta FROM stock_movements WHERE shop_id = 1 AND movement_id > 0 AND movement_id <= 100
+) x JOIN fruits f ON x.fruit_id = f.fruit_id GROUP BY x.fruit_id, f.fruit_name;
+
+-- StockHistory.getWarehouseStockAt
+-- expect: stock_snapshot_rows key=idx_stock_snapshot_rows_warehouse type=ref
+-- expect: stock_movements key=idx_stock_movements_warehouse type=range
+EXPLAIN SELECT x.fruit_id, f.fruit_name, SUM(x.quantity) AS quantity FROM (
+  SELECT fruit_id, quantity FROM stock_snapshot_rows WHERE snapshot_id = 1 AND warehouse_id = 1
+  UNION ALL
+  SELECT fruit_id, delta FROM stock_movements WHERE warehouse_id = 1 AND movement_id > 0 AND movement_id <= 100
+) x JOIN fruits f ON x.fruit_id = f.fruit_id GROUP BY x.fruit_id, f.fruit_name;
+
+-- BorrowingDB.getInventoryForLocations (bulk API reads; single shops and warehouses come from the ledger)
+-- expect: i key=shop_id,warehouse_id type=index_merge
+EXPLAIN SELECT i.inventory_id, i.fruit_id, i.shop_id, i.warehouse_id, i.quantity, f.fruit_name, f.source_country
+FROM inventory i JOIN fruits f ON i.fruit_id = f.fruit_id
+WHERE i.shop_id IN (1, 2) OR (i.shop_id IS NULL AND i.warehouse_id IN (1, 4))
+ORDER BY i.shop_id, i.warehouse_id, f.fruit_name;
+
+-- BorrowingDB.decideBorrowRequests, requests locked before the decision
+-- expect: borrowings key=PRIMARY type=range
+EXPLAIN SELECT borrowing_id, fruit_id, borrowing_shop_id, receiving_shop_id, quantity, status
+FROM borrowings WHERE borrowing_id IN (1, 2, 3) ORDER BY borrowing_id FOR UPDATE;
+
+-- BorrowingDB.getPendingBorrowRequests
+-- expect: b key=idx_borrowings_shop_status type=ref
+EXPLAIN SELECT b.*, f.fruit_name, rs.shop_name AS receiving_shop_name
+FROM borrowings b
+JOIN fruits f ON b.fruit_id = f.fruit_id
+JOIN shops rs ON b.receiving_shop_id = rs.shop_id
+WHERE b.borrowing_shop_id = 1 AND b.status = 'Pending'
+ORDER BY b.borrowing_date ASC, b.borrowing_id ASC;
+
+-- BorrowingDB.getAllBorrowingsForShop
+-- expect: b key=idx_borrowings_shop_status,receiving_shop_id type=index_merge
+EXPLAIN SELECT b.*, f.fruit_name, bs.shop_name AS borrowing_shop_name, rs.shop_name AS receiving_shop_name
+FROM borrowings b
+JOIN fruits f ON b.fruit_id = f.fruit_id
+JOIN shops bs ON b.borrowing_shop_id = bs.shop_id
+JOIN shops rs ON b.receiving_shop_id = rs.shop_id
+WHERE b.borrowing_shop_id = 1 OR b.receiving_shop_id = 1
+ORDER BY b.borrowing_date DESC, b.borrowing_id DESC;
+
+-- BorrowingDB.checkoutFulfillableForShop, the shop's open reservations locked
+-- expect: r key=shop_id|idx_reservations_status_date
+EXPLAIN SELECT r.reservation_id, r.fruit_id, r.shop_id, r.quantity, r.status,
+(SELECT s.country FROM shops s WHERE s.shop_id = r.shop_id) AS country FROM reservations r
+WHERE r.shop_id = 1 AND r.status IN ('Approved', 'Shipped')
+ORDER BY r.reservation_id FOR UPDATE;
+
+-- BorrowingDB/ReservationDB.getConsumptionSummaryByFruit (V003 rollup)
+-- expect: c key=PRIMARY type=range
+EXPLAIN SELECT f.fruit_name, SUM(c.total_quantity) AS total_consumed
+FROM consumption_daily c JOIN fruits f ON c.fruit_id = f.fruit_id
+WHERE c.consumption_date BETWEEN '2025-01-01' AND '2025-12-31'
+GROUP BY f.fruit_name ORDER BY total_consumed DESC;
+
+-- ReservationDB.getSeasonalConsumption, country filter (V003 rollup)
+-- expect: c key=idx_consumption_country_date type=range
+EXPLAIN SELECT f.fruit_name, SUM(c.total_quantity) AS total_consumed
+FROM consumption_daily c JOIN fruits f ON c.fruit_id = f.fruit_id
+WHERE c.country = 'Hong Kong' AND c.consumption_date BETWEEN '2025-01-01' AND '2025-12-31'
+GROUP BY f.fruit_name;
+
+-- BorrowingDB.getAllAggregatedNeeds
+-- expect: r key=idx_reservations_status_date type=range
+EXPLAIN SELECT f.fruit_name, f.fruit_id, SUM(r.quantity) AS total_needed_quantity
+FROM reservations r JOIN fruits f ON r.fruit_id = f.fruit_id
+WHERE r.status IN ('Pending', 'Approved')
+GROUP BY f.fruit_name, f.fruit_id HAVING SUM(r.quantity) > 0 ORDER BY f.fruit_name;
+
+-- ReservationDB.getAggregatedNeedsByCountry
+-- expect: r key=idx_reservations_status_date|idx_reservations_fruit_status type=ref
+EXPLAIN SELECT f.source_country, r.fruit_id, f.fruit_name, SUM(r.quantity) AS total_needed_quantity
+FROM reservations r JOIN fruits f ON r.fruit_id = f.fruit_id
+WHERE r.status = 'Pending' AND f.source_country = 'Japan'
+GROUP BY f.source_country, r.fruit_id, f.fruit_name HAVING SUM(r.quantity) > 0
+ORDER BY f.fruit_name;
+
+-- ReservationDB.approveReservationsForFruit
+-- expect: r key=idx_reservations_fruit_status
+EXPLAIN UPDATE reservations r JOIN fruits f ON r.fruit_id = f.fruit_id
+SET r.status = 'Approved'
+WHERE r.fruit_id = 3 AND f.source_country = 'Japan' AND r.status = 'Pending';
+
+-- ReservationDB.arrangeDeliveryTransaction (approved reservations locked for shipping)
+-- expect: reservations key=idx_reservations_fruit_status
+EXPLAIN SELECT reservation_id, quantity FROM reservations
+WHERE fruit_id = 1 AND status = 'Approved'
+AND shop_id IN (SELECT shop_id FROM shops WHERE country = 'Hong Kong')
+ORDER BY reservation_id FOR UPDATE;
+
+-- ReservationDB.planDeliveries (every approved reservation of the source warehouse's fruits, locked)
+-- expect: r key=idx_reservations_fruit_status|idx_reservations_status_date
+EXPLAIN SELECT r.reservation_id, r.fruit_id, r.quantity,
+(SELECT f.fruit_name FROM fruits f WHERE f.fruit_id = r.fruit_id) AS fruit_name,
+(SELECT s.country FROM shops s WHERE s.shop_id = r.shop_id) AS target_country
+FROM reservations r WHERE r.status = 'Approved' AND r.fruit_id IN (
+  SELECT f.fruit_id FROM fruits f JOIN warehouses w ON f.source_country = w.country
+  WHERE w.warehouse_id = 1 AND w.is_source = 1)
+ORDER BY r.reservation_id FOR UPDATE;
+
+-- ReservationDB.getApprovedNeedsGroupedByFruitAndCountry
+-- expect: r key=idx_reservations_status_date|idx_reservations_fruit_status
+EXPLAIN SELECT r.fruit_id, f.fruit_name, s.country AS target_country, SUM(r.quantity) AS total_approved_quantity
+FROM reservations r
+JOIN fruits f ON r.fruit_id = f.fruit_id
+JOIN shops s ON r.shop_id = s.shop_id
+JOIN warehouses w_source ON f.source_country = w_source.country
+WHERE r.status = 'Approved' AND w_source.warehouse_id = 1 AND w_source.is_source = 1
+GROUP BY r.fruit_id, f.fruit_name, s.country HAVING SUM(r.quantity) > 0
+ORDER BY s.country, f.fruit_name;
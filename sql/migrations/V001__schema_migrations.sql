@@ -0,0 +1,12 @@
+-- V001: migration bookkeeping.
+-- Apply the files in this directory in version order on top of db.sql (or master.sql).
+-- Each migration records itself in schema_migrations; skip any version already listed there.
+
+CREATE TABLE IF NOT EXISTS `schema_migrations` (
+  `version` int(11) NOT NULL,
+  `description` varchar(255) NOT NULL,
+  `applied_at` timestamp NOT NULL DEFAULT current_timestamp(),
+  PRIMARY KEY (`version`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+INSERT INTO `schema_migrations` (`version`, `description`) VALUES (1, 'schema_migrations table');
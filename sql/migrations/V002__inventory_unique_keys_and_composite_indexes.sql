@@ -0,0 +1,46 @@
+-- V002: unique inventory keys and composite indexes for the hot DAO queries.
+-- See sql/checks/explain_checks.sql for the plans these indexes are expected to produce.
+
+-- inventory: fold duplicate stock rows into the oldest row before adding the unique keys.
+-- Shop rows have warehouse_id NULL and warehouse rows have shop_id NULL, so each key only
+-- constrains its own kind of row (NULLs never collide in a UNIQUE index).
+UPDATE inventory keep_row
+JOIN (SELECT MIN(inventory_id) AS keep_id, SUM(quantity) AS total_quantity
+      FROM inventory WHERE shop_id IS NOT NULL
+      GROUP BY fruit_id, shop_id HAVING COUNT(*) > 1) dup ON keep_row.inventory_id = dup.keep_id
+SET keep_row.quantity = dup.total_quantity;
+
+DELETE extra_row FROM inventory extra_row
+JOIN inventory keep_row ON keep_row.fruit_id = extra_row.fruit_id AND keep_row.shop_id = extra_row.shop_id
+ AND keep_row.inventory_id < extra_row.inventory_id;
+
+UPDATE inventory keep_row
+JOIN (SELECT MIN(inventory_id) AS keep_id, SUM(quantity) AS total_quantity
+      FROM inventory WHERE shop_id IS NULL AND warehouse_id IS NOT NULL
+      GROUP BY fruit_id, warehouse_id HAVING COUNT(*) > 1) dup ON keep_row.inventory_id = dup.keep_id
+SET keep_row.quantity = dup.total_quantity;
+
+DELETE extra_row FROM inventory extra_row
+JOIN inventory keep_row ON keep_row.fruit_id = extra_row.fruit_id AND keep_row.warehouse_id = extra_row.warehouse_id
+ AND keep_row.shop_id IS NULL AND extra_row.shop_id IS NULL
+ AND keep_row.inventory_id < extra_row.inventory_id;
+
+-- The unique keys replace the single-column fruit_id index (their leading column serves the FK).
+ALTER TABLE `inventory`
+  ADD UNIQUE KEY `uk_inventory_fruit_shop` (`fruit_id`, `shop_id`),
+  ADD UNIQUE KEY `uk_inventory_fruit_warehouse` (`fruit_id`, `warehouse_id`),
+  DROP KEY `fruit_id`;
+
+-- reservations: report range scans by status/date and per-fruit status lookups, both covering
+-- the columns the reports aggregate.
+ALTER TABLE `reservations`
+  ADD KEY `idx_reservations_status_date` (`status`, `reservation_date`, `fruit_id`, `shop_id`, `quantity`),
+  ADD KEY `idx_reservations_fruit_status` (`fruit_id`, `status`, `shop_id`, `quantity`),
+  DROP KEY `fruit_id`;
+
+-- borrowings: pending requests per lending shop.
+ALTER TABLE `borrowings`
+  ADD KEY `idx_borrowings_shop_status` (`borrowing_shop_id`, `status`, `borrowing_date`),
+  DROP KEY `borrowing_shop_id`;
+
+INSERT INTO `schema_migrations` (`version`, `description`) VALUES (2, 'inventory unique keys and composite indexes');
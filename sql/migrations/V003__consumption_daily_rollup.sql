@@ -0,0 +1,29 @@
+-- V003: daily consumption rollup read by the consumption, seasonal and forecast reports.
+-- One row per reservation date, fruit and shop with the fulfilled quantity. city/country are copied
+-- from shops so the reports filter and group without joining shops. BorrowingDB.checkoutDeliveryToShop
+-- adds to it in the same transaction that marks a reservation Fulfilled.
+
+CREATE TABLE `consumption_daily` (
+  `consumption_date` date NOT NULL,
+  `fruit_id` int(11) NOT NULL,
+  `shop_id` int(11) NOT NULL,
+  `city` varchar(255) NOT NULL,
+  `country` varchar(255) NOT NULL,
+  `total_quantity` bigint(20) NOT NULL DEFAULT 0,
+  PRIMARY KEY (`consumption_date`, `fruit_id`, `shop_id`),
+  KEY `idx_consumption_country_date` (`country`, `consumption_date`),
+  KEY `idx_consumption_city_date` (`city`, `consumption_date`),
+  KEY `idx_consumption_shop_date` (`shop_id`, `consumption_date`),
+  KEY `fruit_id` (`fruit_id`),
+  CONSTRAINT `consumption_daily_ibfk_1` FOREIGN KEY (`fruit_id`) REFERENCES `fruits` (`fruit_id`),
+  CONSTRAINT `consumption_daily_ibfk_2` FOREIGN KEY (`shop_id`) REFERENCES `shops` (`shop_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+-- Backfill from the reservation history.
+INSERT INTO consumption_daily (consumption_date, fruit_id, shop_id, city, country, total_quantity)
+SELECT r.reservation_date, r.fruit_id, r.shop_id, s.city, s.country, SUM(r.quantity)
+FROM reservations r JOIN shops s ON r.shop_id = s.shop_id
+WHERE r.status = 'Fulfilled'
+GROUP BY r.reservation_date, r.fruit_id, r.shop_id, s.city, s.country;
+
+INSERT INTO `schema_migrations` (`version`, `description`) VALUES (3, 'consumption_daily rollup');
@@ -0,0 +1,25 @@
+-- V004: write-behind journal for the in-memory inventory ledger (ict.db.InventoryLedger).
+-- Every stock change is appended here in the same transaction as the borrowing, reservation or
+-- delivery change that caused it; a background flusher folds the rows into inventory in batches
+-- and deletes them. Rows left over after a crash are applied before the ledger loads at startup.
+-- Exactly one of shop_id / warehouse_id is set, matching the inventory row the delta belongs to.
+-- The foreign keys mirror inventory's, so a delta the flusher could not apply fails in the caller's
+-- transaction instead of blocking the flush.
+
+CREATE TABLE `inventory_journal` (
+  `journal_id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `fruit_id` int(11) NOT NULL,
+  `shop_id` int(11) DEFAULT NULL,
+  `warehouse_id` int(11) DEFAULT NULL,
+  `delta` int(11) NOT NULL,
+  `created_at` timestamp(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  PRIMARY KEY (`journal_id`),
+  KEY `fruit_id` (`fruit_id`),
+  KEY `shop_id` (`shop_id`),
+  KEY `warehouse_id` (`warehouse_id`),
+  CONSTRAINT `inventory_journal_ibfk_1` FOREIGN KEY (`fruit_id`) REFERENCES `fruits` (`fruit_id`),
+  CONSTRAINT `inventory_journal_ibfk_2` FOREIGN KEY (`shop_id`) REFERENCES `shops` (`shop_id`),
+  CONSTRAINT `inventory_journal_ibfk_3` FOREIGN KEY (`warehouse_id`) REFERENCES `warehouses` (`warehouse_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+INSERT INTO `schema_migrations` (`version`, `description`) VALUES (4, 'inventory ledger journal');
@@ -0,0 +1,71 @@
+-- V005: append-only stock movement history (ict.db.StockHistory).
+-- stock_movements holds every inventory delta with its cause and the borrowing, reservation or
+-- delivery behind it. Rows are only ever inserted, by the inventory ledger's flusher, in the same
+-- transaction that folds them into inventory, so inventory is always the sum of the history and
+-- movement_id follows commit order. occurred_at is when the causing transaction ran; recorded_at
+-- is when the movement reached inventory, and is the time axis for point-in-time rebuilds.
+-- stock_snapshots / stock_snapshot_rows hold the quantity of every location after a given
+-- movement, taken periodically, so a rebuild only sums the movements since the nearest snapshot.
+-- The current inventory is recorded as an OPENING movement per row plus a first snapshot.
+
+ALTER TABLE `inventory_journal`
+  ADD COLUMN `cause` varchar(20) NOT NULL DEFAULT 'ADJUSTMENT' AFTER `delta`,
+  ADD COLUMN `reference_id` int(11) DEFAULT NULL AFTER `cause`;
+
+CREATE TABLE `stock_movements` (
+  `movement_id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `fruit_id` int(11) NOT NULL,
+  `shop_id` int(11) DEFAULT NULL,
+  `warehouse_id` int(11) DEFAULT NULL,
+  `delta` int(11) NOT NULL,
+  `cause` varchar(20) NOT NULL,
+  `reference_id` int(11) DEFAULT NULL,
+  `occurred_at` timestamp(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  `recorded_at` timestamp(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  PRIMARY KEY (`movement_id`),
+  KEY `fruit_id` (`fruit_id`),
+  KEY `idx_stock_movements_shop` (`shop_id`, `movement_id`),
+  KEY `idx_stock_movements_warehouse` (`warehouse_id`, `movement_id`),
+  KEY `idx_stock_movements_recorded` (`recorded_at`),
+  KEY `idx_stock_movements_cause` (`cause`, `reference_id`),
+  CONSTRAINT `stock_movements_ibfk_1` FOREIGN KEY (`fruit_id`) REFERENCES `fruits` (`fruit_id`),
+  CONSTRAINT `stock_movements_ibfk_2` FOREIGN KEY (`shop_id`) REFERENCES `shops` (`shop_id`),
+  CONSTRAINT `stock_movements_ibfk_3` FOREIGN KEY (`warehouse_id`) REFERENCES `warehouses` (`warehouse_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+CREATE TABLE `stock_snapshots` (
+  `snapshot_id` int(11) NOT NULL AUTO_INCREMENT,
+  `through_movement_id` bigint(20) NOT NULL,
+  `taken_at` timestamp(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+  PRIMARY KEY (`snapshot_id`),
+  UNIQUE KEY `through_movement_id` (`through_movement_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+CREATE TABLE `stock_snapshot_rows` (
+  `snapshot_row_id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `snapshot_id` int(11) NOT NULL,
+  `fruit_id` int(11) NOT NULL,
+  `shop_id` int(11) DEFAULT NULL,
+  `warehouse_id` int(11) DEFAULT NULL,
+  `quantity` int(11) NOT NULL,
+  PRIMARY KEY (`snapshot_row_id`),
+  KEY `idx_stock_snapshot_rows_shop` (`snapshot_id`, `shop_id`),
+  KEY `idx_stock_snapshot_rows_warehouse` (`snapshot_id`, `warehouse_id`),
+  CONSTRAINT `stock_snapshot_rows_ibfk_1` FOREIGN KEY (`snapshot_id`) REFERENCES `stock_snapshots` (`snapshot_id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+INSERT INTO `stock_movements` (`fruit_id`, `shop_id`, `warehouse_id`, `delta`, `cause`)
+SELECT `fruit_id`, `shop_id`, `warehouse_id`, `quantity`, 'OPENING'
+FROM `inventory`
+WHERE `quantity` <> 0
+ORDER BY `inventory_id`;
+
+INSERT INTO `stock_snapshots` (`through_movement_id`)
+SELECT COALESCE(MAX(`movement_id`), 0) FROM `stock_movements`;
+
+INSERT INTO `stock_snapshot_rows` (`snapshot_id`, `fruit_id`, `shop_id`, `warehouse_id`, `quantity`)
+SELECT s.`snapshot_id`, m.`fruit_id`, m.`shop_id`, m.`warehouse_id`, m.`delta`
+FROM `stock_movements` m
+JOIN `stock_snapshots` s ON s.`through_movement_id` >= m.`movement_id`;
+
+INSERT INTO `schema_migrations` (`version`, `description`) VALUES (5, 'stock movement history and snapshots');
@@ -0,0 +1,16 @@
+-- V006: single-owner lease for the in-memory inventory ledger (ict.db.InventoryLedger).
+-- The ledger holds the authoritative stock of a running instance, so only one instance may own it.
+-- An instance takes the lease at startup when the row names no owner or the owner has not renewed
+-- it within the lease timeout (measured on the database clock), renews it in the background and
+-- clears it on shutdown. A second instance started against the same database refuses to start.
+
+CREATE TABLE `inventory_ledger_lease` (
+  `lease_name` varchar(64) NOT NULL,
+  `owner` varchar(255) DEFAULT NULL,
+  `renewed_at` timestamp(3) NULL DEFAULT NULL,
+  PRIMARY KEY (`lease_name`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_general_ci;
+
+INSERT INTO `inventory_ledger_lease` (`lease_name`) VALUES ('inventory');
+
+INSERT INTO `schema_migrations` (`version`, `description`) VALUES (6, 'inventory ledger lease');
@@ -0,0 +1,80 @@
+package ict.bean;
+
+import java.io.Serializable;
+
+/**
+ * Result of one action (a borrow decision, a checkout line, an order):
+ * whether it went through, why not if it did not, and the message to show
+ * for it. Callers decide on the reason, never on the message text.
+ */
+public class ActionOutcomeBean implements Serializable {
+
+    /** Why an action did not go through. */
+    public enum Reason {
+        /** The input was malformed or out of range. */
+        INVALID,
+        /** A row the action names does not exist. */
+        NOT_FOUND,
+        /** The caller may not act on the row. */
+        NOT_AUTHORIZED,
+        /** The row's state or the stock does not allow the action right now. */
+        CONFLICT,
+        /** The database failed; nothing was changed. */
+        ERROR
+    }
+
+    private boolean success;
+    private Reason reason;
+    private String message;
+
+    public ActionOutcomeBean() {
+    }
+
+    public static ActionOutcomeBean succeeded(String message) {
+        ActionOutcomeBean outcome = new ActionOutcomeBean();
+        outcome.setSuccess(true);
+        outcome.setMessage(message);
+        return outcome;
+    }
+
+    public static ActionOutcomeBean failed(Reason reason, String message) {
+        ActionOutcomeBean outcome = new ActionOutcomeBean();
+        outcome.setReason(reason);
+        outcome.setMessage(message);
+        return outcome;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public void setSuccess(boolean success) {
+        this.success = success;
+    }
+
+    /** Why the action failed; null when it succeeded. */
+    public Reason getReason() {
+        return reason;
+    }
+
+    public void setReason(Reason reason) {
+        this.reason = reason;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return "ActionOutcomeBean{" +
+                "success=" + success +
+                ", reason=" + reason +
+                ", message='" + message + '\'' +
+                '}';
+    }
+}
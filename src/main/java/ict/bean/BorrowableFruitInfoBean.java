@@ -1,23 +1,32 @@
 package ict.bean;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 public class BorrowableFruitInfoBean extends FruitBean implements Serializable {
 
-    private List<Map<String, Object>> lenderInfo;
+    private List<LenderInfoBean> lenderInfo;
 
     public BorrowableFruitInfoBean(FruitBean fruit) {
         super(fruit.getFruitId(), fruit.getFruitName(), fruit.getSourceCountry());
-        this.lenderInfo = new java.util.ArrayList<>();
+        this.lenderInfo = new ArrayList<>();
     }
 
-    public List<Map<String, Object>> getLenderInfo() {
+    public BorrowableFruitInfoBean(int fruitId, String fruitName, String sourceCountry) {
+        super(fruitId, fruitName, sourceCountry);
+        this.lenderInfo = new ArrayList<>();
+    }
+
+    public void addLender(LenderInfoBean lender) {
+        lenderInfo.add(lender);
+    }
+
+    public List<LenderInfoBean> getLenderInfo() {
         return lenderInfo;
     }
 
-    public void setLenderInfo(List<Map<String, Object>> lenderInfo) {
+    public void setLenderInfo(List<LenderInfoBean> lenderInfo) {
         this.lenderInfo = lenderInfo;
     }
 
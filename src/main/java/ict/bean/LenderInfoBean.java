@@ -0,0 +1,52 @@
+package ict.bean;
+
+import java.io.Serializable;
+
+public class LenderInfoBean implements Serializable {
+
+    private int shopId;
+    private String shopName;
+    private int quantity;
+
+    public LenderInfoBean() {
+    }
+
+    public LenderInfoBean(int shopId, String shopName, int quantity) {
+        this.shopId = shopId;
+        this.shopName = shopName;
+        this.quantity = quantity;
+    }
+
+    public int getShopId() {
+        return shopId;
+    }
+
+    public void setShopId(int shopId) {
+        this.shopId = shopId;
+    }
+
+    public String getShopName() {
+        return shopName;
+    }
+
+    public void setShopName(String shopName) {
+        this.shopName = shopName;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    @Override
+    public String toString() {
+        return "LenderInfoBean{" +
+                "shopId=" + shopId +
+                ", shopName='" + shopName + '\'' +
+                ", quantity=" + quantity +
+                '}';
+    }
+}
@@ -2,55 +2,33 @@ package ict.db;
 
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 
+import javax.sql.DataSource;
+
 import ict.bean.BakeryShopBean;
 
 public class BakeryShopDB {
 
-    String dburl, username, password;
-
-    public String getUrl() {
-        return dburl;
-    }
-
-    public void setUrl(String url) {
-        this.dburl = url;
-    }
-
-    public String getUsername() {
-        return username;
-    }
-
-    public void setUsername(String username) {
-        this.username = username;
-    }
-
-    public String getPassword() {
-        return password;
-    }
+    private static final int CACHE_MAX_SIZE = 1000;
+    private static final long CACHE_TTL_MILLIS = 10 * 60 * 1000L;
+    private final DataSource dataSource;
+    private final ReferenceCache<Integer, BakeryShopBean> shopCache = new ReferenceCache<>("shops", CACHE_MAX_SIZE,
+            CACHE_TTL_MILLIS);
 
-    public void setPassword(String password) {
-        this.password = password;
+    public BakeryShopDB(DataSource dataSource) {
+        this.dataSource = dataSource;
     }
 
-    public BakeryShopDB(String dburl, String dbUser, String dbPassword) {
-        this.dburl = dburl;
-        this.username = dbUser;
-        this.password = dbPassword;
+    public ReferenceCache<Integer, BakeryShopBean> getShopCache() {
+        return shopCache;
     }
 
     public Connection getConnection() throws SQLException, IOException {
-        try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
-        }
-        return DriverManager.getConnection(dburl, username, password);
+        return dataSource.getConnection();
     }
 
     public ArrayList<BakeryShopBean> getBakeryShop() throws SQLException, IOException {
@@ -74,6 +52,12 @@ public class BakeryShopDB {
     }
 
     public BakeryShopBean getShopById(int shopId) {
+        BakeryShopBean cached = shopCache.get(shopId, this::loadShopById);
+        return cached == null ? null
+                : new BakeryShopBean(cached.getShop_id(), cached.getShop_name(), cached.getCity(), cached.getCountry());
+    }
+
+    private BakeryShopBean loadShopById(int shopId) {
         BakeryShopBean shop = null;
 
         String sql = "SELECT shop_id, shop_name, city, country FROM shops WHERE shop_id = ?";
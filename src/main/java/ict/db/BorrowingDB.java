@@ -4,17 +4,29 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.sql.Connection;
 import java.sql.Date;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.sql.DataSource;
+
+import ict.bean.ActionOutcomeBean;
+import ict.bean.ActionOutcomeBean.Reason;
 import ict.bean.AggregatedNeedBean;
 import ict.bean.BakeryShopBean;
 import ict.bean.BorrowableFruitInfoBean;
@@ -24,6 +36,7 @@ import ict.bean.ForecastBean;
 import ict.bean.FruitBean;
 import ict.bean.InventoryBean;
 import ict.bean.InventorySummaryBean;
+import ict.bean.LenderInfoBean;
 import ict.bean.OrderableFruitBean;
 import ict.bean.ReservationBean;
 import ict.bean.WarehouseBean;
@@ -32,29 +45,35 @@ import ict.db.ReservationDB.SeasonalConsumptionBean;
 public class BorrowingDB {
 
     private static final Logger LOGGER = Logger.getLogger(BorrowingDB.class.getName());
-    private String dburl, username, password;
-    private BakeryShopDB bakeryShopDb;
-    private WarehouseDB warehouseDb;
-    private FruitDB fruitDb;
-
-    public BorrowingDB(String dburl, String dbUser, String dbPassword) {
-        this.dburl = dburl;
-        this.username = dbUser;
-        this.password = dbPassword;
-
-        this.bakeryShopDb = new BakeryShopDB(dburl, dbUser, dbPassword);
-        this.warehouseDb = new WarehouseDB(dburl, dbUser, dbPassword);
-        this.fruitDb = new FruitDB(dburl, dbUser, dbPassword);
+    private final DataSource dataSource;
+    private final BakeryShopDB bakeryShopDb;
+    private final WarehouseDB warehouseDb;
+    private final FruitDB fruitDb;
+    private final DataVersions dataVersions;
+    private final InventoryLedger inventoryLedger;
+
+    public BorrowingDB(DataSource dataSource, BakeryShopDB bakeryShopDb, WarehouseDB warehouseDb, FruitDB fruitDb,
+            DataVersions dataVersions, InventoryLedger inventoryLedger) {
+        this.dataSource = dataSource;
+        this.bakeryShopDb = bakeryShopDb;
+        this.warehouseDb = warehouseDb;
+        this.fruitDb = fruitDb;
+        this.dataVersions = dataVersions;
+        this.inventoryLedger = inventoryLedger;
     }
 
     public Connection getConnection() throws SQLException, IOException {
-        try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-        } catch (ClassNotFoundException e) {
-            LOGGER.log(Level.SEVERE, "MySQL JDBC Driver not found.", e);
-            throw new IOException("Database driver not found.", e);
-        }
-        return DriverManager.getConnection(dburl, username, password);
+        return dataSource.getConnection();
+    }
+
+    /**
+     * A connection for a query that reads the inventory table, taken after
+     * the ledger has flushed every committed change, so the query sees the
+     * same stock as the ledger.
+     */
+    private Connection getInventoryConnection() throws SQLException, IOException {
+        inventoryLedger.flushPending();
+        return getConnection();
     }
 
     private void closeQuietly(AutoCloseable resource) {
@@ -67,19 +86,45 @@ public class BorrowingDB {
         }
     }
 
-    private boolean addBorrowingRecord(int fruitId, int lendingShopId, int borrowingShopId, int quantity, String status,
-            Connection conn) throws SQLException {
+    /**
+     * Inserts one borrowing per line through a single prepared statement and
+     * JDBC batch (sent as one multi-row INSERT when the driver runs with
+     * rewriteBatchedStatements=true). Returns the generated borrowing ids in
+     * line order, or null if any line was not inserted.
+     */
+    private List<Integer> addBorrowingRecords(List<Integer> fruitIds, List<Integer> quantities, int lendingShopId,
+            int borrowingShopId, String status, Connection conn) throws SQLException {
         String sql = "INSERT INTO borrowings (fruit_id, borrowing_shop_id, receiving_shop_id, quantity, borrowing_date, status) VALUES (?, ?, ?, ?, CURDATE(), ?)";
         PreparedStatement ps = null;
+        ResultSet keys = null;
         try {
-            ps = conn.prepareStatement(sql);
-            ps.setInt(1, fruitId);
-            ps.setInt(2, lendingShopId);
-            ps.setInt(3, borrowingShopId);
-            ps.setInt(4, quantity);
-            ps.setString(5, status);
-            return ps.executeUpdate() >= 1;
+            ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            for (int i = 0; i < fruitIds.size(); i++) {
+                ps.setInt(1, fruitIds.get(i));
+                ps.setInt(2, lendingShopId);
+                ps.setInt(3, borrowingShopId);
+                ps.setInt(4, quantities.get(i));
+                ps.setString(5, status);
+                ps.addBatch();
+            }
+            int[] counts = ps.executeBatch();
+            if (counts.length != fruitIds.size()) {
+                return null;
+            }
+            for (int count : counts) {
+                if (count != 1 && count != Statement.SUCCESS_NO_INFO) {
+                    return null;
+                }
+            }
+
+            List<Integer> generatedIds = new ArrayList<>(fruitIds.size());
+            keys = ps.getGeneratedKeys();
+            while (keys.next()) {
+                generatedIds.add(keys.getInt(1));
+            }
+            return generatedIds.size() == fruitIds.size() ? generatedIds : null;
         } finally {
+            closeQuietly(keys);
             closeQuietly(ps);
         }
     }
@@ -126,9 +171,10 @@ public class BorrowingDB {
         return requests;
     }
 
-    public String approveBorrowRequest(int borrowingId, int lendingShopId) {
+    public ActionOutcomeBean approveBorrowRequest(int borrowingId, int lendingShopId) {
         Connection conn = null;
-        String statusMessage = "Approval failed: Unknown error.";
+        InventoryLedger.Change stock = null;
+        ActionOutcomeBean outcome = ActionOutcomeBean.failed(Reason.ERROR, "Approval failed: Unknown error.");
         BorrowingBean requestDetails = null;
 
         try {
@@ -136,14 +182,17 @@ public class BorrowingDB {
             requestDetails = getBorrowingById(borrowingId);
 
             if (requestDetails == null) {
-                return "Approval failed: Borrow request ID " + borrowingId + " not found.";
+                return ActionOutcomeBean.failed(Reason.NOT_FOUND,
+                        "Approval failed: Borrow request ID " + borrowingId + " not found.");
             }
             if (requestDetails.getBorrowingShopId() != lendingShopId) {
-                return "Approval failed: You are not authorized to approve this request.";
+                return ActionOutcomeBean.failed(Reason.NOT_AUTHORIZED,
+                        "Approval failed: You are not authorized to approve this request.");
             }
             if (!"Pending".equalsIgnoreCase(requestDetails.getStatus())) {
-                return "Approval failed: Request is not in 'Pending' status (Current: " + requestDetails.getStatus()
-                        + ").";
+                return ActionOutcomeBean.failed(Reason.CONFLICT,
+                        "Approval failed: Request is not in 'Pending' status (Current: " + requestDetails.getStatus()
+                                + ").");
             }
 
             int fruitId = requestDetails.getFruitId();
@@ -151,51 +200,43 @@ public class BorrowingDB {
             int quantity = requestDetails.getQuantity();
 
             if (quantity <= 0) {
-                return "Approval failed: Invalid quantity in request.";
+                return ActionOutcomeBean.failed(Reason.INVALID, "Approval failed: Invalid quantity in request.");
             }
 
             conn = getConnection();
             conn.setAutoCommit(false);
 
-            int currentLenderStock = getInventoryQuantityForShop(fruitId, lendingShopId, conn);
-            if (currentLenderStock < quantity) {
-                conn.rollback();
-
-                return "Approval failed: Insufficient stock (" + currentLenderStock + ") to fulfill request.";
-            }
-            LOGGER.log(Level.INFO,
-                    "[TX-ApproveBorrow] Lender inventory check passed for ShopID={0}, FruitID={1}. Have: {2}, Need: {3}",
-                    new Object[] { lendingShopId, fruitId, currentLenderStock, quantity });
-
-            boolean statusUpdated = updateBorrowingStatus(borrowingId, "Approved", conn);
+            // Claim the request first: only one concurrent approver can move it out of Pending.
+            boolean statusUpdated = updateBorrowingStatus(borrowingId, "Pending", "Approved", conn);
             if (!statusUpdated) {
                 conn.rollback();
-                return "Approval failed: Could not update borrowing status.";
+                return ActionOutcomeBean.failed(Reason.CONFLICT,
+                        "Approval failed: Request is no longer in 'Pending' status.");
             }
             LOGGER.log(Level.INFO, "[TX-ApproveBorrow] Borrowing status updated to Approved.");
 
-            boolean lenderInvUpdated = updateShopInventory(fruitId, lendingShopId, -quantity, conn);
-            if (!lenderInvUpdated) {
-                conn.rollback();
-                return "Approval failed: Could not decrease lending shop inventory.";
-            }
-            LOGGER.log(Level.INFO, "[TX-ApproveBorrow] Lender inventory decreased.");
-
-            boolean borrowerInvUpdated = addOrUpdateShopInventory(fruitId, receivingShopId, quantity, conn);
-            if (!borrowerInvUpdated) {
+            stock = inventoryLedger.change(InventoryLedger.Cause.BORROW_APPROVAL, borrowingId)
+                    .add(InventoryLedger.shopKey(fruitId, lendingShopId), -quantity)
+                    .add(InventoryLedger.shopKey(fruitId, receivingShopId), quantity);
+            if (!stock.apply()) {
                 conn.rollback();
-
-                return "Approval failed: Could not increase receiving shop inventory.";
+                return ActionOutcomeBean.failed(Reason.CONFLICT,
+                        "Approval failed: Insufficient stock (" + stock.getShortQuantity() + ") to fulfill request.");
             }
-            LOGGER.log(Level.INFO, "[TX-ApproveBorrow] Borrower inventory increased.");
+            stock.journal(conn);
+            LOGGER.log(Level.INFO, "[TX-ApproveBorrow] Moved {0} of FruitID={1} from ShopID={2} to ShopID={3}.",
+                    new Object[] { quantity, fruitId, lendingShopId, receivingShopId });
 
             conn.commit();
-            statusMessage = "Borrow request ID " + borrowingId + " approved successfully!";
+            stock.committed();
+            dataVersions.bump(DataVersions.Dataset.BORROWINGS, DataVersions.Dataset.INVENTORY);
+            outcome = ActionOutcomeBean.succeeded("Borrow request ID " + borrowingId + " approved successfully!");
             LOGGER.log(Level.INFO, "[TX-ApproveBorrow] Transaction committed successfully.");
 
         } catch (SQLException | IOException e) {
             LOGGER.log(Level.SEVERE, "Error during borrowing approval transaction for ID " + borrowingId, e);
-            statusMessage = "Approval failed: Database error occurred (" + e.getMessage() + ")";
+            outcome = ActionOutcomeBean.failed(Reason.ERROR,
+                    "Approval failed: Database error occurred (" + e.getMessage() + ")");
             if (conn != null) {
                 try {
                     conn.rollback();
@@ -203,6 +244,9 @@ public class BorrowingDB {
                     LOGGER.log(Level.SEVERE, "Rollback failed", ex);
                 }
             }
+            if (stock != null) {
+                stock.revert();
+            }
         } finally {
             if (conn != null) {
                 try {
@@ -213,12 +257,12 @@ public class BorrowingDB {
                 }
             }
         }
-        return statusMessage;
+        return outcome;
     }
 
-    public String rejectBorrowRequest(int borrowingId, int lendingShopId) {
+    public ActionOutcomeBean rejectBorrowRequest(int borrowingId, int lendingShopId) {
         Connection conn = null;
-        String statusMessage = "Rejection failed: Unknown error.";
+        ActionOutcomeBean outcome = ActionOutcomeBean.failed(Reason.ERROR, "Rejection failed: Unknown error.");
         BorrowingBean requestDetails = null;
 
         try {
@@ -226,34 +270,39 @@ public class BorrowingDB {
             requestDetails = getBorrowingById(borrowingId);
 
             if (requestDetails == null) {
-                return "Rejection failed: Borrow request ID " + borrowingId + " not found.";
+                return ActionOutcomeBean.failed(Reason.NOT_FOUND,
+                        "Rejection failed: Borrow request ID " + borrowingId + " not found.");
             }
             if (requestDetails.getBorrowingShopId() != lendingShopId) {
-                return "Rejection failed: You are not authorized to reject this request.";
+                return ActionOutcomeBean.failed(Reason.NOT_AUTHORIZED,
+                        "Rejection failed: You are not authorized to reject this request.");
             }
             if (!"Pending".equalsIgnoreCase(requestDetails.getStatus())) {
-                return "Rejection failed: Request is not in 'Pending' status (Current: " + requestDetails.getStatus()
-                        + ").";
+                return ActionOutcomeBean.failed(Reason.CONFLICT,
+                        "Rejection failed: Request is not in 'Pending' status (Current: " + requestDetails.getStatus()
+                                + ").");
             }
 
             conn = getConnection();
             conn.setAutoCommit(false);
 
-            boolean statusUpdated = updateBorrowingStatus(borrowingId, "Rejected", conn);
+            boolean statusUpdated = updateBorrowingStatus(borrowingId, "Pending", "Rejected", conn);
 
             if (statusUpdated) {
                 conn.commit();
-                statusMessage = "Borrow request ID " + borrowingId + " rejected.";
+                dataVersions.bump(DataVersions.Dataset.BORROWINGS);
+                outcome = ActionOutcomeBean.succeeded("Borrow request ID " + borrowingId + " rejected.");
                 LOGGER.log(Level.INFO, "[TX-RejectBorrow] Borrowing status updated to Rejected. Tx committed.");
             } else {
                 conn.rollback();
-                statusMessage = "Rejection failed: Could not update borrowing status.";
+                outcome = ActionOutcomeBean.failed(Reason.CONFLICT, "Rejection failed: Could not update borrowing status.");
                 LOGGER.log(Level.WARNING, "[TX-RejectBorrow] Failed to update status. Tx rolled back.");
             }
 
         } catch (SQLException | IOException e) {
             LOGGER.log(Level.SEVERE, "Error during borrowing rejection for ID " + borrowingId, e);
-            statusMessage = "Rejection failed: Database error occurred (" + e.getMessage() + ")";
+            outcome = ActionOutcomeBean.failed(Reason.ERROR,
+                    "Rejection failed: Database error occurred (" + e.getMessage() + ")");
             if (conn != null) {
                 try {
                     conn.rollback();
@@ -271,7 +320,175 @@ public class BorrowingDB {
                 }
             }
         }
-        return statusMessage;
+        return outcome;
+    }
+
+    /**
+     * Approves and rejects several of a lending shop's pending borrow requests
+     * in one transaction. The selected borrowings are locked together, each
+     * approval's stock is taken from the ledger on its own, and the status
+     * changes and stock movements are written as one batch each. Returns one
+     * outcome per requested id, in the order given; an item that fails (not
+     * found, not this shop's, no longer Pending, insufficient stock) does not
+     * stop the others.
+     */
+    public Map<Integer, ActionOutcomeBean> decideBorrowRequests(int lendingShopId, List<Integer> approveIds,
+            List<Integer> rejectIds) {
+        Map<Integer, ActionOutcomeBean> outcomes = new LinkedHashMap<>();
+        Map<Integer, String> actions = new TreeMap<>();
+        for (int id : approveIds) {
+            actions.put(id, "Approved");
+            outcomes.put(id, ActionOutcomeBean.failed(Reason.ERROR, "Approval failed: Unknown error."));
+        }
+        for (int id : rejectIds) {
+            if (actions.containsKey(id)) {
+                actions.remove(id);
+                outcomes.put(id, ActionOutcomeBean.failed(Reason.INVALID,
+                        "Action failed: Request " + id + " was both approved and rejected."));
+            } else if (!outcomes.containsKey(id)) {
+                actions.put(id, "Rejected");
+                outcomes.put(id, ActionOutcomeBean.failed(Reason.ERROR, "Rejection failed: Unknown error."));
+            }
+        }
+        if (actions.isEmpty()) {
+            return outcomes;
+        }
+
+        String lockSql = "SELECT borrowing_id, fruit_id, borrowing_shop_id, receiving_shop_id, quantity, status "
+                + "FROM borrowings WHERE borrowing_id IN (" + SqlLists.placeholders(actions.size()) + ") "
+                + "ORDER BY borrowing_id FOR UPDATE";
+        String updateSql = "UPDATE borrowings SET status = ? WHERE borrowing_id = ? AND status = 'Pending'";
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        InventoryLedger.Change stock = null;
+        Map<Integer, String> decided = new TreeMap<>();
+        Set<Integer> refused = new HashSet<>();
+
+        try {
+            conn = getConnection();
+            conn.setAutoCommit(false);
+
+            Map<Integer, BorrowingBean> locked = new HashMap<>();
+            ps = conn.prepareStatement(lockSql);
+            SqlLists.bindIds(ps, 1, actions.keySet());
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                BorrowingBean bean = new BorrowingBean();
+                bean.setBorrowingId(rs.getInt("borrowing_id"));
+                bean.setFruitId(rs.getInt("fruit_id"));
+                bean.setBorrowingShopId(rs.getInt("borrowing_shop_id"));
+                bean.setReceivingShopId(rs.getInt("receiving_shop_id"));
+                bean.setQuantity(rs.getInt("quantity"));
+                bean.setStatus(rs.getString("status"));
+                locked.put(bean.getBorrowingId(), bean);
+            }
+            closeQuietly(rs);
+            closeQuietly(ps);
+            rs = null;
+            ps = null;
+
+            stock = inventoryLedger.change(InventoryLedger.Cause.BORROW_APPROVAL, null);
+            for (Map.Entry<Integer, String> action : actions.entrySet()) {
+                int borrowingId = action.getKey();
+                boolean approve = "Approved".equals(action.getValue());
+                String failure = approve ? "Approval failed: " : "Rejection failed: ";
+                BorrowingBean request = locked.get(borrowingId);
+                Reason why = Reason.CONFLICT;
+                String reason = null;
+                if (request == null) {
+                    why = Reason.NOT_FOUND;
+                    reason = "Borrow request ID " + borrowingId + " not found.";
+                } else if (request.getBorrowingShopId() != lendingShopId) {
+                    why = Reason.NOT_AUTHORIZED;
+                    reason = "You are not authorized to " + (approve ? "approve" : "reject") + " request "
+                            + borrowingId + ".";
+                } else if (!"Pending".equalsIgnoreCase(request.getStatus())) {
+                    reason = "Request " + borrowingId + " is not in 'Pending' status (Current: "
+                            + request.getStatus() + ").";
+                } else if (!approve) {
+                    decided.put(borrowingId, "Rejected");
+                } else if (request.getQuantity() <= 0) {
+                    why = Reason.INVALID;
+                    reason = "Invalid quantity in request " + borrowingId + ".";
+                } else if (!stock.move(InventoryLedger.shopKey(request.getFruitId(), lendingShopId),
+                        InventoryLedger.shopKey(request.getFruitId(), request.getReceivingShopId()),
+                        request.getQuantity(), borrowingId)) {
+                    reason = "Insufficient stock (" + stock.getShortQuantity() + ") to fulfill request "
+                            + borrowingId + ".";
+                } else {
+                    decided.put(borrowingId, "Approved");
+                }
+                if (reason != null) {
+                    outcomes.put(borrowingId, ActionOutcomeBean.failed(why, failure + reason));
+                    refused.add(borrowingId);
+                }
+            }
+
+            if (decided.isEmpty()) {
+                conn.rollback();
+                return outcomes;
+            }
+
+            ps = conn.prepareStatement(updateSql);
+            for (Map.Entry<Integer, String> decision : decided.entrySet()) {
+                ps.setString(1, decision.getValue());
+                ps.setInt(2, decision.getKey());
+                ps.addBatch();
+            }
+            int[] updated = ps.executeBatch();
+            for (int count : updated) {
+                if (count != 1 && count != Statement.SUCCESS_NO_INFO) {
+                    throw new SQLException("A locked borrowing left 'Pending' during the batch update.");
+                }
+            }
+            closeQuietly(ps);
+            ps = null;
+
+            stock.journal(conn);
+            conn.commit();
+            stock.committed();
+            dataVersions.bump(DataVersions.Dataset.BORROWINGS, DataVersions.Dataset.INVENTORY);
+            for (Map.Entry<Integer, String> decision : decided.entrySet()) {
+                outcomes.put(decision.getKey(), ActionOutcomeBean.succeeded("Approved".equals(decision.getValue())
+                        ? "Borrow request ID " + decision.getKey() + " approved successfully!"
+                        : "Borrow request ID " + decision.getKey() + " rejected."));
+            }
+            LOGGER.log(Level.INFO, "[TX-DecideBorrows] ShopID={0} decided {1} of {2} requests in one transaction.",
+                    new Object[] { lendingShopId, decided.size(), actions.size() });
+
+        } catch (SQLException | IOException e) {
+            LOGGER.log(Level.SEVERE, "Error during bulk borrowing decision for ShopID " + lendingShopId, e);
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    LOGGER.log(Level.SEVERE, "Rollback failed", ex);
+                }
+            }
+            if (stock != null) {
+                stock.revert();
+            }
+            for (Map.Entry<Integer, String> action : actions.entrySet()) {
+                if (!refused.contains(action.getKey())) {
+                    outcomes.put(action.getKey(), ActionOutcomeBean.failed(Reason.ERROR,
+                            ("Approved".equals(action.getValue()) ? "Approval" : "Rejection")
+                                    + " failed: Database error occurred (" + e.getMessage() + ")"));
+                }
+            }
+        } finally {
+            closeQuietly(rs);
+            closeQuietly(ps);
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException e) {
+                    LOGGER.log(Level.SEVERE, "Failed to close connection", e);
+                }
+            }
+        }
+        return outcomes;
     }
 
     public BorrowingBean getBorrowingById(int borrowingId) {
@@ -305,211 +522,96 @@ public class BorrowingDB {
         return bean;
     }
 
-    private boolean updateBorrowingStatus(int borrowingId, String newStatus, Connection conn) throws SQLException {
-        String sql = "UPDATE borrowings SET status = ? WHERE borrowing_id = ?";
+    /**
+     * Moves a borrowing from expectedStatus to newStatus. Returns false when the
+     * row is no longer in expectedStatus, e.g. because a concurrent request
+     * already approved or rejected it.
+     */
+    private boolean updateBorrowingStatus(int borrowingId, String expectedStatus, String newStatus, Connection conn)
+            throws SQLException {
+        String sql = "UPDATE borrowings SET status = ? WHERE borrowing_id = ? AND status = ?";
         PreparedStatement ps = null;
         try {
             ps = conn.prepareStatement(sql);
             ps.setString(1, newStatus);
             ps.setInt(2, borrowingId);
+            ps.setString(3, expectedStatus);
             return ps.executeUpdate() == 1;
         } finally {
             closeQuietly(ps);
         }
     }
 
-    private int getInventoryQuantityForShop(int fruitId, int shopId, Connection conn) throws SQLException {
-        int quantity = 0;
-        String sql = "SELECT quantity FROM inventory WHERE fruit_id = ? AND shop_id = ?";
-        PreparedStatement ps = null;
-        ResultSet rs = null;
-        try {
-            ps = conn.prepareStatement(sql);
-            ps.setInt(1, fruitId);
-            ps.setInt(2, shopId);
-            rs = ps.executeQuery();
-            if (rs.next())
-                quantity = rs.getInt("quantity");
-        } finally {
-            closeQuietly(rs);
-            closeQuietly(ps);
-        }
-        return quantity;
-    }
-
-    private boolean updateShopInventory(int fruitId, int shopId, int quantityChange, Connection conn)
-            throws SQLException {
-        String sql = "UPDATE inventory SET quantity = quantity + ? WHERE fruit_id = ? AND shop_id = ?";
-        if (quantityChange < 0)
-            sql += " AND quantity >= ?";
-        PreparedStatement ps = null;
-        try {
-            ps = conn.prepareStatement(sql);
-            ps.setInt(1, quantityChange);
-            ps.setInt(2, fruitId);
-            ps.setInt(3, shopId);
-            if (quantityChange < 0)
-                ps.setInt(4, -quantityChange);
-            int rowsAffected = ps.executeUpdate();
-            if (rowsAffected == 0 && quantityChange < 0)
-                return false;
-            return rowsAffected >= 1;
-        } finally {
-            closeQuietly(ps);
-        }
-    }
-
-    private boolean addOrUpdateShopInventory(int fruitId, int shopId, int quantityChange, Connection conn)
-            throws SQLException {
-        boolean updated = updateShopInventory(fruitId, shopId, quantityChange, conn);
-        if (updated)
-            return true;
-        else if (quantityChange > 0) {
-            String insertSql = "INSERT INTO inventory (fruit_id, shop_id, quantity, warehouse_id) VALUES (?, ?, ?, NULL)";
-            PreparedStatement psInsert = null;
-            try {
-                psInsert = conn.prepareStatement(insertSql);
-                psInsert.setInt(1, fruitId);
-                psInsert.setInt(2, shopId);
-                psInsert.setInt(3, quantityChange);
-                return psInsert.executeUpdate() >= 1;
-            } finally {
-                closeQuietly(psInsert);
-            }
-        } else
-            return false;
+    public List<InventoryBean> getInventoryForShop(int shopId) {
+        return withFruitNames(inventoryLedger.getStockAt(false, shopId));
     }
 
-    public List<InventoryBean> getInventoryForShop(int shopId) {
-        List<InventoryBean> inventoryList = new ArrayList<>();
-        String sql = "SELECT i.inventory_id, i.fruit_id, i.shop_id, i.warehouse_id, i.quantity, f.fruit_name " +
-                "FROM inventory i JOIN fruits f ON i.fruit_id = f.fruit_id " +
-                "WHERE i.shop_id = ? ORDER BY f.fruit_name";
-        Connection conn = null;
-        PreparedStatement ps = null;
-        ResultSet rs = null;
-        try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
-            ps.setInt(1, shopId);
-            rs = ps.executeQuery();
-            while (rs.next()) {
-                InventoryBean item = new InventoryBean();
-                item.setInventoryId(rs.getInt("inventory_id"));
-                item.setFruitId(rs.getInt("fruit_id"));
-                item.setShopId(rs.getInt("shop_id"));
-                item.setWarehouseId(rs.getObject("warehouse_id") != null ? rs.getInt("warehouse_id") : null);
-                item.setQuantity(rs.getInt("quantity"));
-                item.setFruitName(rs.getString("fruit_name"));
+    /**
+     * Fills in fruit name and source country from the fruit cache and sorts
+     * by fruit name, as the inventory queries used to. Rows whose fruit no
+     * longer exists are dropped.
+     */
+    private List<InventoryBean> withFruitNames(List<InventoryBean> stock) {
+        List<InventoryBean> inventoryList = new ArrayList<>(stock.size());
+        for (InventoryBean item : stock) {
+            FruitBean fruit = fruitDb.getFruitById(item.getFruitId());
+            if (fruit != null) {
+                item.setFruitName(fruit.getFruitName());
+                item.setSourceCountry(fruit.getSourceCountry());
                 inventoryList.add(item);
             }
-        } catch (SQLException | IOException e) {
-            LOGGER.log(Level.SEVERE, "Error fetching inventory for shop " + shopId, e);
-        } finally {
-            closeQuietly(rs);
-            closeQuietly(ps);
-            closeQuietly(conn);
         }
+        inventoryList.sort(Comparator.comparing(InventoryBean::getFruitName, String.CASE_INSENSITIVE_ORDER));
         return inventoryList;
     }
 
     public boolean setShopInventoryQuantity(int fruitId, int shopId, int newQuantity) {
         if (newQuantity < 0)
             return false;
+        return setInventoryQuantity(InventoryLedger.shopKey(fruitId, shopId), newQuantity);
+    }
+
+    /** Applies a manual stock count through the ledger as one journaled delta. */
+    private boolean setInventoryQuantity(long key, int newQuantity) {
         Connection conn = null;
-        PreparedStatement psCheck = null;
-        PreparedStatement psUpdate = null;
-        PreparedStatement psInsert = null;
-        ResultSet rsCheck = null;
+        InventoryLedger.Change stock = null;
         boolean success = false;
-        String checkSql = "SELECT inventory_id FROM inventory WHERE fruit_id = ? AND shop_id = ?";
-        String updateSql = "UPDATE inventory SET quantity = ? WHERE inventory_id = ?";
-        String insertSql = "INSERT INTO inventory (fruit_id, shop_id, quantity, warehouse_id) VALUES (?, ?, ?, NULL)";
         try {
+            stock = inventoryLedger.changeTo(key, newQuantity);
             conn = getConnection();
-            conn.setAutoCommit(false);
-            psCheck = conn.prepareStatement(checkSql);
-            psCheck.setInt(1, fruitId);
-            psCheck.setInt(2, shopId);
-            rsCheck = psCheck.executeQuery();
-            int inventoryId = rsCheck.next() ? rsCheck.getInt("inventory_id") : -1;
-            closeQuietly(rsCheck);
-            closeQuietly(psCheck);
-
-            if (inventoryId != -1) {
-                psUpdate = conn.prepareStatement(updateSql);
-                psUpdate.setInt(1, newQuantity);
-                psUpdate.setInt(2, inventoryId);
-                success = psUpdate.executeUpdate() > 0;
-                closeQuietly(psUpdate);
-            } else {
-                psInsert = conn.prepareStatement(insertSql);
-                psInsert.setInt(1, fruitId);
-                psInsert.setInt(2, shopId);
-                psInsert.setInt(3, newQuantity);
-                success = psInsert.executeUpdate() > 0;
-                closeQuietly(psInsert);
-            }
-            if (success)
-                conn.commit();
-            else
-                conn.rollback();
+            stock.journal(conn);
+            stock.committed();
+            dataVersions.bump(DataVersions.Dataset.INVENTORY);
+            success = true;
         } catch (SQLException | IOException e) {
-            LOGGER.log(Level.SEVERE, "Error setting shop inventory", e);
-            if (conn != null)
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                }
-            success = false;
+            LOGGER.log(Level.SEVERE, "Error setting inventory quantity for " + InventoryLedger.describeKey(key)
+                    + " to " + newQuantity, e);
+            if (stock != null) {
+                stock.revert();
+            }
         } finally {
-            if (conn != null)
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                } catch (SQLException e) {
-                }
+            closeQuietly(conn);
         }
         return success;
     }
 
     public List<InventoryBean> getInventoryForWarehouse(int warehouseId) {
-        List<InventoryBean> inventoryList = new ArrayList<>();
-
-        String sql = "SELECT i.inventory_id, i.fruit_id, i.shop_id, i.warehouse_id, i.quantity, f.fruit_name, f.source_country "
-                +
-                "FROM inventory i " +
-                "JOIN fruits f ON i.fruit_id = f.fruit_id " +
-                "WHERE i.warehouse_id = ? AND i.shop_id IS NULL " +
-                "ORDER BY f.fruit_name";
-        Connection conn = null;
-        PreparedStatement ps = null;
-        ResultSet rs = null;
-        try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
-            ps.setInt(1, warehouseId);
-            rs = ps.executeQuery();
-            while (rs.next()) {
-                InventoryBean item = new InventoryBean();
-                item.setInventoryId(rs.getInt("inventory_id"));
-                item.setFruitId(rs.getInt("fruit_id"));
-                item.setShopId(rs.getObject("shop_id") != null ? rs.getInt("shop_id") : null);
-                item.setWarehouseId(rs.getInt("warehouse_id"));
-                item.setQuantity(rs.getInt("quantity"));
-                item.setFruitName(rs.getString("fruit_name"));
-                item.setSourceCountry(rs.getString("source_country"));
+        return withFruitNames(inventoryLedger.getStockAt(true, warehouseId));
+    }
 
-                inventoryList.add(item);
-            }
-            LOGGER.log(Level.INFO, "Fetched {0} inventory items for WarehouseID={1}",
-                    new Object[] { inventoryList.size(), warehouseId });
-        } catch (SQLException | IOException e) {
-            LOGGER.log(Level.SEVERE, "Error fetching inventory for warehouse " + warehouseId, e);
-        } finally {
-            closeQuietly(rs);
-            closeQuietly(ps);
-            closeQuietly(conn);
+    /**
+     * Inventory rows of several shops and warehouses from the ledger, for
+     * bulk API reads: warehouses then shops, each by id and then by fruit
+     * name, as the query this replaced ordered them.
+     */
+    public List<InventoryBean> getInventoryForLocations(Collection<Integer> shopIds,
+            Collection<Integer> warehouseIds) {
+        List<InventoryBean> inventoryList = new ArrayList<>();
+        for (int warehouseId : new TreeSet<>(warehouseIds)) {
+            inventoryList.addAll(withFruitNames(inventoryLedger.getStockAt(true, warehouseId)));
+        }
+        for (int shopId : new TreeSet<>(shopIds)) {
+            inventoryList.addAll(withFruitNames(inventoryLedger.getStockAt(false, shopId)));
         }
         return inventoryList;
     }
@@ -517,61 +619,7 @@ public class BorrowingDB {
     public boolean setWarehouseInventoryQuantity(int fruitId, int warehouseId, int newQuantity) {
         if (newQuantity < 0)
             return false;
-        Connection conn = null;
-        PreparedStatement psCheck = null;
-        PreparedStatement psUpdate = null;
-        PreparedStatement psInsert = null;
-        ResultSet rsCheck = null;
-        boolean success = false;
-        String checkSql = "SELECT inventory_id FROM inventory WHERE fruit_id = ? AND warehouse_id = ? AND shop_id IS NULL";
-        String updateSql = "UPDATE inventory SET quantity = ? WHERE inventory_id = ?";
-        String insertSql = "INSERT INTO inventory (fruit_id, warehouse_id, quantity, shop_id) VALUES (?, ?, ?, NULL)";
-        try {
-            conn = getConnection();
-            conn.setAutoCommit(false);
-            psCheck = conn.prepareStatement(checkSql);
-            psCheck.setInt(1, fruitId);
-            psCheck.setInt(2, warehouseId);
-            rsCheck = psCheck.executeQuery();
-            int inventoryId = rsCheck.next() ? rsCheck.getInt("inventory_id") : -1;
-            closeQuietly(rsCheck);
-            closeQuietly(psCheck);
-
-            if (inventoryId != -1) {
-                psUpdate = conn.prepareStatement(updateSql);
-                psUpdate.setInt(1, newQuantity);
-                psUpdate.setInt(2, inventoryId);
-                success = psUpdate.executeUpdate() > 0;
-                closeQuietly(psUpdate);
-            } else {
-                psInsert = conn.prepareStatement(insertSql);
-                psInsert.setInt(1, fruitId);
-                psInsert.setInt(2, warehouseId);
-                psInsert.setInt(3, newQuantity);
-                success = psInsert.executeUpdate() > 0;
-                closeQuietly(psInsert);
-            }
-            if (success)
-                conn.commit();
-            else
-                conn.rollback();
-        } catch (SQLException | IOException e) {
-            LOGGER.log(Level.SEVERE, "Error setting warehouse inventory", e);
-            if (conn != null)
-                try {
-                    conn.rollback();
-                } catch (SQLException ex) {
-                }
-            success = false;
-        } finally {
-            if (conn != null)
-                try {
-                    conn.setAutoCommit(true);
-                    conn.close();
-                } catch (SQLException e) {
-                }
-        }
-        return success;
+        return setInventoryQuantity(InventoryLedger.warehouseKey(fruitId, warehouseId), newQuantity);
     }
 
     public static class DeliveryNeedBean implements Serializable {
@@ -661,6 +709,7 @@ public class BorrowingDB {
 
     public String checkoutDeliveryToShop(int reservationId, int centralWarehouseId) {
         Connection conn = null;
+        InventoryLedger.Change stock = null;
         String statusMessage = "Checkout failed: Unknown error.";
         ReservationBean reservation = null;
         try {
@@ -681,29 +730,27 @@ public class BorrowingDB {
             conn = getConnection();
             conn.setAutoCommit(false);
 
-            int currentWarehouseStock = getInventoryQuantityForWarehouse(fruitId, centralWarehouseId, conn);
-            if (currentWarehouseStock < quantity) {
-                conn.rollback();
-                return "Checkout failed: Insufficient stock (" + currentWarehouseStock + ") at central warehouse "
-                        + centralWarehouseId + ".";
-            }
-            boolean warehouseInvUpdated = updateWarehouseInventory(fruitId, centralWarehouseId, -quantity, conn);
-            if (!warehouseInvUpdated) {
-                conn.rollback();
-                return "Checkout failed: Could not decrease central warehouse inventory.";
-            }
-            boolean shopInvUpdated = addOrUpdateShopInventory(fruitId, shopId, quantity, conn);
-            if (!shopInvUpdated) {
+            // Claim the reservation first so a double-submitted checkout cannot move the stock twice.
+            boolean statusUpdated = markReservationFulfilled(reservationId, conn);
+            if (!statusUpdated) {
                 conn.rollback();
-                return "Checkout failed: Could not increase shop inventory (ShopID: " + shopId + ").";
+                return "Checkout failed: Reservation " + reservationId + " has already been checked out.";
             }
-            boolean statusUpdated = updateReservationStatus(reservationId, "Fulfilled", conn);
-            if (!statusUpdated) {
+            addToConsumptionRollup(reservationId, conn);
+
+            stock = inventoryLedger.change(InventoryLedger.Cause.CHECKOUT, reservationId)
+                    .add(InventoryLedger.warehouseKey(fruitId, centralWarehouseId), -quantity)
+                    .add(InventoryLedger.shopKey(fruitId, shopId), quantity);
+            if (!stock.apply()) {
                 conn.rollback();
-                return "Checkout failed: Could not update reservation status.";
+                return "Checkout failed: Insufficient stock (" + stock.getShortQuantity() + ") at central warehouse "
+                        + centralWarehouseId + ".";
             }
+            stock.journal(conn);
 
             conn.commit();
+            stock.committed();
+            dataVersions.bump(DataVersions.Dataset.RESERVATIONS, DataVersions.Dataset.INVENTORY);
             statusMessage = "Checkout successful for Reservation ID " + reservationId + ".";
         } catch (SQLException | IOException e) {
             LOGGER.log(Level.SEVERE, "Error during checkout transaction for Reservation ID " + reservationId, e);
@@ -714,6 +761,8 @@ public class BorrowingDB {
                 } catch (SQLException ex) {
                     LOGGER.log(Level.SEVERE, "Rollback failed", ex);
                 }
+            if (stock != null)
+                stock.revert();
         } finally {
             if (conn != null)
                 try {
@@ -726,45 +775,178 @@ public class BorrowingDB {
         return statusMessage;
     }
 
-    private int getInventoryQuantityForWarehouse(int fruitId, int warehouseId, Connection conn) throws SQLException {
-        int quantity = 0;
-        String sql = "SELECT quantity FROM inventory WHERE fruit_id = ? AND warehouse_id = ? AND shop_id IS NULL";
+    /**
+     * Checks out the given reservations from a central warehouse in one
+     * transaction; see {@link #checkoutFulfillableForShop(int, int)}.
+     */
+    public Map<Integer, ActionOutcomeBean> checkoutReservations(List<Integer> reservationIds, int centralWarehouseId) {
+        return checkoutInBulk(reservationIds, null, centralWarehouseId);
+    }
+
+    /**
+     * Checks out every Approved or Shipped reservation of one shop from a
+     * central warehouse in its country, in one transaction. The reservations
+     * are locked with one query; stock comes from the inventory ledger in
+     * reservation id order, so when a fruit runs short the earliest
+     * reservations are served and only the rest fail. The status change, the
+     * consumption rollup and the stock movements are each one statement or
+     * batch. Returns one outcome per reservation.
+     */
+    public Map<Integer, ActionOutcomeBean> checkoutFulfillableForShop(int shopId, int centralWarehouseId) {
+        return checkoutInBulk(null, shopId, centralWarehouseId);
+    }
+
+    private Map<Integer, ActionOutcomeBean> checkoutInBulk(List<Integer> reservationIds, Integer shopId,
+            int centralWarehouseId) {
+        Map<Integer, ActionOutcomeBean> outcomes = new LinkedHashMap<>();
+        if (reservationIds != null) {
+            for (int id : reservationIds) {
+                outcomes.put(id, ActionOutcomeBean.failed(Reason.NOT_FOUND,
+                        "Checkout failed: Reservation ID " + id + " not found."));
+            }
+            if (outcomes.isEmpty()) {
+                return outcomes;
+            }
+        }
+        WarehouseBean centralWarehouse = warehouseDb.getWarehouseById(centralWarehouseId);
+        if (centralWarehouse == null || centralWarehouse.getCountry() == null) {
+            LOGGER.log(Level.SEVERE, "Cannot determine country for central warehouse ID: {0}", centralWarehouseId);
+            for (ActionOutcomeBean outcome : outcomes.values()) {
+                outcome.setReason(Reason.NOT_FOUND);
+                outcome.setMessage("Checkout failed: Unknown central warehouse " + centralWarehouseId + ".");
+            }
+            return outcomes;
+        }
+
+        String lockSql = "SELECT r.reservation_id, r.fruit_id, r.shop_id, r.quantity, r.status, "
+                + "(SELECT s.country FROM shops s WHERE s.shop_id = r.shop_id) AS country FROM reservations r "
+                + (reservationIds != null
+                        ? "WHERE r.reservation_id IN (" + SqlLists.placeholders(outcomes.size()) + ") "
+                        : "WHERE r.shop_id = ? AND r.status IN ('Approved', 'Shipped') ")
+                + "ORDER BY r.reservation_id FOR UPDATE";
+        Connection conn = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
+        InventoryLedger.Change stock = null;
+        List<Integer> fulfilled = new ArrayList<>();
+        boolean locked = false;
+
         try {
-            ps = conn.prepareStatement(sql);
-            ps.setInt(1, fruitId);
-            ps.setInt(2, warehouseId);
+            conn = getConnection();
+            conn.setAutoCommit(false);
+
+            ps = conn.prepareStatement(lockSql);
+            if (reservationIds != null) {
+                SqlLists.bindIds(ps, 1, outcomes.keySet());
+            } else {
+                ps.setInt(1, shopId);
+            }
             rs = ps.executeQuery();
-            if (rs.next())
-                quantity = rs.getInt("quantity");
-        } finally {
+            stock = inventoryLedger.change(InventoryLedger.Cause.CHECKOUT, null);
+            while (rs.next()) {
+                int reservationId = rs.getInt("reservation_id");
+                int fruitId = rs.getInt("fruit_id");
+                int quantity = rs.getInt("quantity");
+                String status = rs.getString("status");
+                Reason why = Reason.CONFLICT;
+                String message;
+                if (!"Approved".equalsIgnoreCase(status) && !"Shipped".equalsIgnoreCase(status)) {
+                    message = "Checkout failed: Reservation " + reservationId + " status is '" + status
+                            + "', not 'Approved' or 'Shipped'.";
+                } else if (!centralWarehouse.getCountry().equalsIgnoreCase(rs.getString("country"))) {
+                    message = "Checkout failed: Reservation " + reservationId + " is for a shop outside "
+                            + centralWarehouse.getCountry() + ".";
+                } else if (quantity <= 0) {
+                    why = Reason.INVALID;
+                    message = "Checkout failed: Reservation " + reservationId + " quantity is zero or negative.";
+                } else if (!stock.move(InventoryLedger.warehouseKey(fruitId, centralWarehouseId),
+                        InventoryLedger.shopKey(fruitId, rs.getInt("shop_id")), quantity, reservationId)) {
+                    message = "Checkout failed: Insufficient stock (" + stock.getShortQuantity()
+                            + ") at central warehouse " + centralWarehouseId + " for Reservation " + reservationId
+                            + ".";
+                } else {
+                    fulfilled.add(reservationId);
+                    message = "Checkout failed: Unknown error.";
+                }
+                outcomes.put(reservationId, ActionOutcomeBean.failed(why, message));
+            }
+            locked = true;
             closeQuietly(rs);
             closeQuietly(ps);
-        }
-        return quantity;
-    }
+            rs = null;
+            ps = null;
 
-    private boolean updateWarehouseInventory(int fruitId, int warehouseId, int quantityChange, Connection conn)
-            throws SQLException {
-        String sql = "UPDATE inventory SET quantity = quantity + ? WHERE fruit_id = ? AND warehouse_id = ? AND shop_id IS NULL";
-        if (quantityChange < 0)
-            sql += " AND quantity >= ?";
-        PreparedStatement ps = null;
-        try {
-            ps = conn.prepareStatement(sql);
-            ps.setInt(1, quantityChange);
-            ps.setInt(2, fruitId);
-            ps.setInt(3, warehouseId);
-            if (quantityChange < 0)
-                ps.setInt(4, -quantityChange);
-            int rowsAffected = ps.executeUpdate();
-            if (rowsAffected == 0 && quantityChange < 0)
-                return false;
-            return rowsAffected > 0;
+            if (fulfilled.isEmpty()) {
+                conn.rollback();
+                return outcomes;
+            }
+
+            String idList = SqlLists.placeholders(fulfilled.size());
+            ps = conn.prepareStatement("UPDATE reservations SET status = 'Fulfilled' "
+                    + "WHERE reservation_id IN (" + idList + ") AND status IN ('Approved', 'Shipped')");
+            SqlLists.bindIds(ps, 1, fulfilled);
+            int updated = ps.executeUpdate();
+            closeQuietly(ps);
+            ps = null;
+            if (updated != fulfilled.size()) {
+                throw new SQLException("Only " + updated + " of " + fulfilled.size()
+                        + " locked reservations could be marked Fulfilled.");
+            }
+
+            ps = conn.prepareStatement("INSERT INTO consumption_daily "
+                    + "(consumption_date, fruit_id, shop_id, city, country, total_quantity) "
+                    + "SELECT r.reservation_date, r.fruit_id, r.shop_id, s.city, s.country, SUM(r.quantity) "
+                    + "FROM reservations r JOIN shops s ON r.shop_id = s.shop_id "
+                    + "WHERE r.reservation_id IN (" + idList + ") "
+                    + "GROUP BY r.reservation_date, r.fruit_id, r.shop_id, s.city, s.country "
+                    + "ON DUPLICATE KEY UPDATE total_quantity = total_quantity + VALUES(total_quantity)");
+            SqlLists.bindIds(ps, 1, fulfilled);
+            ps.executeUpdate();
+            closeQuietly(ps);
+            ps = null;
+
+            stock.journal(conn);
+            conn.commit();
+            stock.committed();
+            dataVersions.bump(DataVersions.Dataset.RESERVATIONS, DataVersions.Dataset.INVENTORY);
+            for (int reservationId : fulfilled) {
+                outcomes.put(reservationId,
+                        ActionOutcomeBean.succeeded("Checkout successful for Reservation ID " + reservationId + "."));
+            }
+            LOGGER.log(Level.INFO, "[TX-BulkCheckout] Checked out {0} of {1} reservations from WarehouseID={2}.",
+                    new Object[] { fulfilled.size(), outcomes.size(), centralWarehouseId });
+
+        } catch (SQLException | IOException e) {
+            LOGGER.log(Level.SEVERE, "Error during bulk checkout from WarehouseID " + centralWarehouseId, e);
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    LOGGER.log(Level.SEVERE, "Rollback failed", ex);
+                }
+            }
+            if (stock != null) {
+                stock.revert();
+            }
+            for (Map.Entry<Integer, ActionOutcomeBean> outcome : outcomes.entrySet()) {
+                if (!locked || fulfilled.contains(outcome.getKey())) {
+                    outcome.setValue(ActionOutcomeBean.failed(Reason.ERROR,
+                            "Checkout failed: Database error occurred (" + e.getMessage() + ")"));
+                }
+            }
         } finally {
+            closeQuietly(rs);
             closeQuietly(ps);
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException e) {
+                    LOGGER.log(Level.SEVERE, "Failed to close connection", e);
+                }
+            }
         }
+        return outcomes;
     }
 
     private ReservationBean getReservationById(int reservationId) {
@@ -797,29 +979,50 @@ public class BorrowingDB {
         return bean;
     }
 
-    private boolean updateReservationStatus(int reservationId, String newStatus, Connection conn) throws SQLException {
-        String sql = "UPDATE reservations SET status = ? WHERE reservation_id = ?";
+    /**
+     * Adds a just-fulfilled reservation to the consumption_daily rollup in the
+     * same transaction, so the consumption reports never see a fulfilment that
+     * was rolled back. The rollup is keyed by reservation date, like the
+     * reports that used to scan reservations directly.
+     */
+    private void addToConsumptionRollup(int reservationId, Connection conn) throws SQLException {
+        String sql = "INSERT INTO consumption_daily (consumption_date, fruit_id, shop_id, city, country, total_quantity) "
+                + "SELECT r.reservation_date, r.fruit_id, r.shop_id, s.city, s.country, r.quantity "
+                + "FROM reservations r JOIN shops s ON r.shop_id = s.shop_id WHERE r.reservation_id = ? "
+                + "ON DUPLICATE KEY UPDATE total_quantity = total_quantity + VALUES(total_quantity)";
         PreparedStatement ps = null;
         try {
             ps = conn.prepareStatement(sql);
-            ps.setString(1, newStatus);
-            ps.setInt(2, reservationId);
+            ps.setInt(1, reservationId);
+            ps.executeUpdate();
+        } finally {
+            closeQuietly(ps);
+        }
+    }
+
+    private boolean markReservationFulfilled(int reservationId, Connection conn) throws SQLException {
+        String sql = "UPDATE reservations SET status = 'Fulfilled' WHERE reservation_id = ? AND status IN ('Approved', 'Shipped')";
+        PreparedStatement ps = null;
+        try {
+            ps = conn.prepareStatement(sql);
+            ps.setInt(1, reservationId);
             return ps.executeUpdate() == 1;
         } finally {
             closeQuietly(ps);
         }
     }
 
+    private static final String CONSUMPTION_BY_FRUIT_SQL =
+            "SELECT f.fruit_name, SUM(c.total_quantity) as total_consumed " +
+            "FROM consumption_daily c " +
+            "JOIN fruits f ON c.fruit_id = f.fruit_id " +
+            "WHERE c.consumption_date BETWEEN ? AND ? " +
+            "GROUP BY f.fruit_name " +
+            "ORDER BY total_consumed DESC";
+
     public List<ConsumptionDataBean> getConsumptionSummaryByFruit(Date startDate, Date endDate) {
         List<ConsumptionDataBean> reportData = new ArrayList<>();
 
-        String sql = "SELECT f.fruit_name, SUM(r.quantity) as total_consumed " +
-                "FROM reservations r " +
-                "JOIN fruits f ON r.fruit_id = f.fruit_id " +
-                "WHERE r.status = 'Fulfilled' AND r.reservation_date BETWEEN ? AND ? " +
-                "GROUP BY f.fruit_name " +
-                "ORDER BY total_consumed DESC";
-
         Connection conn = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
@@ -832,7 +1035,7 @@ public class BorrowingDB {
 
         try {
             conn = getConnection();
-            ps = conn.prepareStatement(sql);
+            ps = conn.prepareStatement(CONSUMPTION_BY_FRUIT_SQL);
             ps.setDate(1, startDate);
             ps.setDate(2, endDate);
             rs = ps.executeQuery();
@@ -855,23 +1058,24 @@ public class BorrowingDB {
         return reportData;
     }
 
+    private static final String INVENTORY_BY_SOURCE_COUNTRY_SQL =
+            "SELECT f.source_country, i.fruit_id, f.fruit_name, SUM(i.quantity) AS total_quantity " +
+            "FROM inventory i " +
+            "JOIN fruits f ON i.fruit_id = f.fruit_id " +
+            "GROUP BY f.source_country, i.fruit_id, f.fruit_name " +
+            "HAVING SUM(i.quantity) > 0 " +
+            "ORDER BY f.source_country, f.fruit_name";
+
     public List<InventorySummaryBean> getInventorySummaryBySourceCountry() {
         List<InventorySummaryBean> summaryList = new ArrayList<>();
 
-        String sql = "SELECT f.source_country, i.fruit_id, f.fruit_name, SUM(i.quantity) AS total_quantity " +
-                "FROM inventory i " +
-                "JOIN fruits f ON i.fruit_id = f.fruit_id " +
-                "GROUP BY f.source_country, i.fruit_id, f.fruit_name " +
-                "HAVING SUM(i.quantity) > 0 " +
-                "ORDER BY f.source_country, f.fruit_name";
-
         Connection conn = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
 
         try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
+            conn = getInventoryConnection();
+            ps = conn.prepareStatement(INVENTORY_BY_SOURCE_COUNTRY_SQL);
             rs = ps.executeQuery();
 
             while (rs.next()) {
@@ -913,18 +1117,7 @@ public class BorrowingDB {
             ps = conn.prepareStatement(sql);
             rs = ps.executeQuery();
             while (rs.next()) {
-                BorrowingBean bean = new BorrowingBean();
-                bean.setBorrowingId(rs.getInt("borrowing_id"));
-                bean.setFruitId(rs.getInt("fruit_id"));
-                bean.setBorrowingShopId(rs.getInt("borrowing_shop_id"));
-                bean.setReceivingShopId(rs.getInt("receiving_shop_id"));
-                bean.setQuantity(rs.getInt("quantity"));
-                bean.setBorrowingDate(rs.getDate("borrowing_date"));
-                bean.setStatus(rs.getString("status"));
-                bean.setFruitName(rs.getString("fruit_name"));
-                bean.setBorrowingShopName(rs.getString("borrowing_shop_name"));
-                bean.setReceivingShopName(rs.getString("receiving_shop_name"));
-                borrowings.add(bean);
+                borrowings.add(mapRowToBorrowingBean(rs));
             }
             LOGGER.log(Level.INFO, "Fetched {0} total borrowing records.", borrowings.size());
         } catch (SQLException | IOException e) {
@@ -937,6 +1130,44 @@ public class BorrowingDB {
         return borrowings;
     }
 
+    /**
+     * One window of the borrowings list for DataTables server-side mode. Column
+     * indexes follow listBorrowings.jsp. shopId restricts the list to borrowings
+     * the shop lends or receives; null lists all.
+     */
+    public Page<BorrowingBean> getBorrowingsPage(PageRequest request, Integer shopId) {
+        PagedQuery query = new PagedQuery(
+                "b.*, f.fruit_name, bs.shop_name AS borrowing_shop_name, rs.shop_name AS receiving_shop_name",
+                "FROM borrowings b " +
+                        "JOIN fruits f ON b.fruit_id = f.fruit_id " +
+                        "JOIN shops bs ON b.borrowing_shop_id = bs.shop_id " +
+                        "JOIN shops rs ON b.receiving_shop_id = rs.shop_id",
+                "b.borrowing_id")
+                .keyColumn(0, "b.borrowing_id")
+                .sortColumn(1, "f.fruit_name")
+                .sortColumn(2, "bs.shop_name")
+                .sortColumn(3, "rs.shop_name")
+                .sortColumn(4, "b.quantity")
+                .dateKeyColumn(5, "b.borrowing_date")
+                .sortColumn(6, "b.status")
+                .searchable("f.fruit_name", "bs.shop_name", "rs.shop_name", "b.status")
+                .defaultOrder(5, false);
+        if (shopId != null) {
+            query.where("(b.borrowing_shop_id = ? OR b.receiving_shop_id = ?)", shopId, shopId);
+        }
+
+        Connection conn = null;
+        try {
+            conn = getConnection();
+            return query.fetch(conn, request, BorrowingDB::mapRowToBorrowingBean);
+        } catch (SQLException | IOException e) {
+            LOGGER.log(Level.SEVERE, "Error fetching borrowings page", e);
+            return new Page<>(new ArrayList<>(), 0, 0, null);
+        } finally {
+            closeQuietly(conn);
+        }
+    }
+
     public List<BorrowingBean> getAllBorrowingsForShop(int shopId) {
         List<BorrowingBean> borrowings = new ArrayList<>();
 
@@ -959,18 +1190,7 @@ public class BorrowingDB {
             ps.setInt(2, shopId);
             rs = ps.executeQuery();
             while (rs.next()) {
-                BorrowingBean bean = new BorrowingBean();
-                bean.setBorrowingId(rs.getInt("borrowing_id"));
-                bean.setFruitId(rs.getInt("fruit_id"));
-                bean.setBorrowingShopId(rs.getInt("borrowing_shop_id"));
-                bean.setReceivingShopId(rs.getInt("receiving_shop_id"));
-                bean.setQuantity(rs.getInt("quantity"));
-                bean.setBorrowingDate(rs.getDate("borrowing_date"));
-                bean.setStatus(rs.getString("status"));
-                bean.setFruitName(rs.getString("fruit_name"));
-                bean.setBorrowingShopName(rs.getString("borrowing_shop_name"));
-                bean.setReceivingShopName(rs.getString("receiving_shop_name"));
-                borrowings.add(bean);
+                borrowings.add(mapRowToBorrowingBean(rs));
             }
             LOGGER.log(Level.INFO, "Fetched {0} borrowing records for ShopID={1}",
                     new Object[] { borrowings.size(), shopId });
@@ -984,116 +1204,126 @@ public class BorrowingDB {
         return borrowings;
     }
 
+    /**
+     * Every fruit whose source country has a source warehouse, with that
+     * warehouse's stock from the ledger.
+     */
     public List<OrderableFruitBean> getOrderableFruitsFromSource() {
         List<OrderableFruitBean> orderableFruits = new ArrayList<>();
-
-        String sql = "SELECT f.fruit_id, f.fruit_name, f.source_country, " +
-                "       w.warehouse_id AS source_warehouse_id, " +
-                "       COALESCE(inv.quantity, 0) AS available_quantity " +
-                "FROM fruits f " +
-                "JOIN warehouses w ON f.source_country = w.country AND w.is_source = 1 " +
-                "LEFT JOIN inventory inv ON f.fruit_id = inv.fruit_id AND inv.warehouse_id = w.warehouse_id AND inv.shop_id IS NULL "
-                +
-                "ORDER BY f.fruit_name";
-
-        Connection conn = null;
-        PreparedStatement ps = null;
-        ResultSet rs = null;
-
-        try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
-            rs = ps.executeQuery();
-
-            while (rs.next()) {
-                OrderableFruitBean bean = new OrderableFruitBean(
-                        rs.getInt("fruit_id"),
-                        rs.getString("fruit_name"),
-                        rs.getString("source_country"),
-                        rs.getInt("available_quantity"),
-                        rs.getInt("source_warehouse_id"));
-                orderableFruits.add(bean);
+        Map<Integer, Map<Integer, Integer>> stockByWarehouse = new HashMap<>();
+        for (FruitBean fruit : fruitDb.getAllFruits()) {
+            int sourceWarehouseId = warehouseDb.findSourceWarehouseInCountry(fruit.getSourceCountry());
+            if (sourceWarehouseId == -1) {
+                continue;
             }
-            LOGGER.log(Level.INFO, "Fetched {0} orderable fruits from source warehouses.", orderableFruits.size());
-
-        } catch (SQLException | IOException e) {
-            LOGGER.log(Level.SEVERE, "Error fetching orderable fruits from source", e);
-        } finally {
-            closeQuietly(rs);
-            closeQuietly(ps);
-            closeQuietly(conn);
+            Map<Integer, Integer> stock = stockByWarehouse.computeIfAbsent(sourceWarehouseId, id -> {
+                Map<Integer, Integer> quantities = new HashMap<>();
+                for (InventoryBean item : inventoryLedger.getStockAt(true, id)) {
+                    quantities.put(item.getFruitId(), item.getQuantity());
+                }
+                return quantities;
+            });
+            orderableFruits.add(new OrderableFruitBean(fruit.getFruitId(), fruit.getFruitName(),
+                    fruit.getSourceCountry(), stock.getOrDefault(fruit.getFruitId(), 0), sourceWarehouseId));
         }
+        LOGGER.log(Level.INFO, "Fetched {0} orderable fruits from source warehouses.", orderableFruits.size());
         return orderableFruits;
     }
 
-    public String createMultipleReservations(int shopId, List<Integer> fruitIds, List<Integer> quantities) {
+    public ActionOutcomeBean createMultipleReservations(int shopId, List<Integer> fruitIds, List<Integer> quantities) {
         Connection conn = null;
-        String statusMessage = "Order failed: Unknown error.";
+        InventoryLedger.Change sourceChange = null;
+        ActionOutcomeBean outcome = ActionOutcomeBean.failed(Reason.ERROR, "Order failed: Unknown error.");
 
         if (fruitIds == null || quantities == null || fruitIds.size() != quantities.size() || fruitIds.isEmpty()) {
-            return "Order failed: Invalid order data provided.";
+            return ActionOutcomeBean.failed(Reason.INVALID, "Order failed: Invalid order data provided.");
         }
 
         for (int qty : quantities) {
             if (qty <= 0) {
-                return "Order failed: All quantities must be positive.";
+                return ActionOutcomeBean.failed(Reason.INVALID, "Order failed: All quantities must be positive.");
             }
         }
 
+        // Total per fruit, so that an order naming the same fruit twice is validated against the sum.
+        Map<Integer, Integer> totalByFruit = new TreeMap<>();
+        for (int i = 0; i < fruitIds.size(); i++) {
+            totalByFruit.merge(fruitIds.get(i), quantities.get(i), Integer::sum);
+        }
+
         try {
             conn = getConnection();
             conn.setAutoCommit(false);
 
+            Map<Integer, SourceStock> stockByFruit = findSourceStock(totalByFruit.keySet(), conn);
+            for (Map.Entry<Integer, SourceStock> entry : stockByFruit.entrySet()) {
+                SourceStock source = entry.getValue();
+                if (source.warehouseId != -1) {
+                    source.quantity = inventoryLedger.getQuantity(
+                            InventoryLedger.warehouseKey(entry.getKey(), source.warehouseId));
+                }
+            }
+
+            Map<Integer, Integer> remainingByFruit = new HashMap<>();
             for (int i = 0; i < fruitIds.size(); i++) {
                 int fruitId = fruitIds.get(i);
                 int quantity = quantities.get(i);
 
-                int sourceWarehouseId = getSourceWarehouseId(fruitId, conn);
-                if (sourceWarehouseId == -1) {
+                SourceStock stock = stockByFruit.get(fruitId);
+                if (stock == null || stock.warehouseId == -1) {
                     conn.rollback();
-                    return "Order failed: Could not find source warehouse for Fruit ID " + fruitId + ".";
+                    return ActionOutcomeBean.failed(Reason.NOT_FOUND,
+                            "Order failed: Could not find source warehouse for Fruit ID " + fruitId + ".");
                 }
 
-                int currentQuantity = getInventoryQuantityForWarehouse(fruitId, sourceWarehouseId, conn);
+                int currentQuantity = remainingByFruit.getOrDefault(fruitId, stock.quantity);
                 if (currentQuantity < quantity) {
                     conn.rollback();
 
-                    String fruitName = fruitDb.getFruitById(fruitId) != null
-                            ? fruitDb.getFruitById(fruitId).getFruitName()
-                            : "ID " + fruitId;
-                    return "Order failed: Insufficient stock for " + fruitName + ". Available: " + currentQuantity
-                            + ", Requested: " + quantity;
+                    String fruitName = stock.fruitName != null ? stock.fruitName : "ID " + fruitId;
+                    return ActionOutcomeBean.failed(Reason.CONFLICT, "Order failed: Insufficient stock for "
+                            + fruitName + ". Available: " + currentQuantity + ", Requested: " + quantity);
                 }
-                LOGGER.log(Level.INFO,
+                remainingByFruit.put(fruitId, currentQuantity - quantity);
+                LOGGER.log(Level.FINE,
                         "[TX-MultiOrder] Inventory check passed for FruitID={0}, WarehouseID={1}. Have: {2}, Need: {3}",
-                        new Object[] { fruitId, sourceWarehouseId, currentQuantity, quantity });
-
-                boolean reservationAdded = addReservationRecord(fruitId, shopId, quantity, "Pending", conn);
-                if (!reservationAdded) {
-                    conn.rollback();
-                    return "Order failed: Could not create reservation record for Fruit ID " + fruitId + ".";
-                }
-                LOGGER.log(Level.INFO, "[TX-MultiOrder] Reservation record added for FruitID={0}, ShopID={1}, Qty={2}",
-                        new Object[] { fruitId, shopId, quantity });
+                        new Object[] { fruitId, stock.warehouseId, currentQuantity, quantity });
+            }
 
-                boolean inventoryUpdated = updateWarehouseInventory(fruitId, sourceWarehouseId, -quantity, conn);
-                if (!inventoryUpdated) {
-                    conn.rollback();
-                    return "Order failed: Could not update source inventory for Fruit ID " + fruitId
-                            + ". Stock might have changed.";
-                }
-                LOGGER.log(Level.INFO, "[TX-MultiOrder] Inventory updated for FruitID={0}, WarehouseID={1}, Change={2}",
-                        new Object[] { fruitId, sourceWarehouseId, -quantity });
+            List<Integer> reservationIds = addReservationRecords(shopId, fruitIds, quantities, "Pending", conn);
+            if (reservationIds.size() != fruitIds.size()) {
+                conn.rollback();
+                return ActionOutcomeBean.failed(Reason.ERROR, "Order failed: Could not create reservation record "
+                        + "for Fruit ID " + fruitIds.get(reservationIds.size()) + ".");
+            }
+            LOGGER.log(Level.INFO, "[TX-MultiOrder] {0} reservation records added for ShopID={1}",
+                    new Object[] { fruitIds.size(), shopId });
 
+            // One movement per order line, so each is traceable to its reservation.
+            sourceChange = inventoryLedger.change(InventoryLedger.Cause.ORDER, null);
+            for (int i = 0; i < fruitIds.size(); i++) {
+                int warehouseId = stockByFruit.get(fruitIds.get(i)).warehouseId;
+                sourceChange.add(InventoryLedger.warehouseKey(fruitIds.get(i), warehouseId), -quantities.get(i),
+                        reservationIds.get(i));
             }
+            if (!sourceChange.apply()) {
+                conn.rollback();
+                return ActionOutcomeBean.failed(Reason.CONFLICT, "Order failed: Could not update source inventory. "
+                        + "Stock might have changed (Available: " + sourceChange.getShortQuantity() + ").");
+            }
+            sourceChange.journal(conn);
+            LOGGER.log(Level.INFO, "[TX-MultiOrder] Source inventory updated for {0} fruits.", totalByFruit.size());
 
             conn.commit();
-            statusMessage = "Order submitted successfully! " + fruitIds.size() + " item(s) reserved.";
+            sourceChange.committed();
+            dataVersions.bump(DataVersions.Dataset.RESERVATIONS, DataVersions.Dataset.INVENTORY);
+            outcome = ActionOutcomeBean.succeeded(
+                    "Order submitted successfully! " + fruitIds.size() + " item(s) reserved.");
             LOGGER.log(Level.INFO, "[TX-MultiOrder] Transaction committed for multiple reservations.");
 
         } catch (SQLException | IOException e) {
             LOGGER.log(Level.SEVERE, "Error during multiple reservation transaction for Shop ID " + shopId, e);
-            statusMessage = "Order failed: Database error occurred.";
+            outcome = ActionOutcomeBean.failed(Reason.ERROR, "Order failed: Database error occurred.");
             if (conn != null) {
                 try {
                     conn.rollback();
@@ -1101,6 +1331,9 @@ public class BorrowingDB {
                     LOGGER.log(Level.SEVERE, "Rollback failed", ex);
                 }
             }
+            if (sourceChange != null) {
+                sourceChange.revert();
+            }
         } finally {
             if (conn != null) {
                 try {
@@ -1111,83 +1344,105 @@ public class BorrowingDB {
                 }
             }
         }
-        return statusMessage;
+        return outcome;
     }
 
-    private int getSourceWarehouseId(int fruitId, Connection conn) throws SQLException {
-        int sourceWarehouseId = -1;
-
-        if (this.fruitDb == null) {
-            LOGGER.log(Level.SEVERE, "FruitDB dependency is null. Cannot get source country for FruitID={0}", fruitId);
-            return -1;
-        }
-
-        FruitBean fruit = fruitDb.getFruitById(fruitId);
-        if (fruit == null || fruit.getSourceCountry() == null || fruit.getSourceCountry().trim().isEmpty()) {
-            LOGGER.log(Level.WARNING, "Fruit not found or source country missing for fruit ID: {0}", fruitId);
-            return -1;
-        }
-        String sourceCountry = fruit.getSourceCountry();
-        LOGGER.log(Level.FINER, "Finding source warehouse for fruit ID {0} from country: {1}",
-                new Object[] { fruitId, sourceCountry });
+    private static final class SourceStock {
+        private String fruitName;
+        private int warehouseId = -1;
+        private int quantity;
+    }
 
-        String sql = "SELECT warehouse_id FROM warehouses WHERE country = ? AND is_source = 1 LIMIT 1";
+    /**
+     * Resolves the name and source warehouse of every ordered fruit in one
+     * query. When a country has several source warehouses the lowest id is
+     * used. Fruits without a source warehouse keep warehouseId -1.
+     */
+    private Map<Integer, SourceStock> findSourceStock(Collection<Integer> fruitIds, Connection conn)
+            throws SQLException {
+        Map<Integer, SourceStock> stockByFruit = new HashMap<>();
+        String sql = "SELECT f.fruit_id, f.fruit_name, MIN(w.warehouse_id) AS warehouse_id "
+                + "FROM fruits f "
+                + "LEFT JOIN warehouses w ON w.country = f.source_country AND w.is_source = 1 "
+                + "WHERE f.fruit_id IN (" + SqlLists.placeholders(fruitIds.size()) + ") "
+                + "GROUP BY f.fruit_id, f.fruit_name";
         PreparedStatement ps = null;
         ResultSet rs = null;
         try {
             ps = conn.prepareStatement(sql);
-            ps.setString(1, sourceCountry);
+            SqlLists.bindIds(ps, 1, fruitIds);
             rs = ps.executeQuery();
-            if (rs.next()) {
-                sourceWarehouseId = rs.getInt("warehouse_id");
-                LOGGER.log(Level.FINER, "Source warehouse found: ID={0}", sourceWarehouseId);
-            } else {
-                LOGGER.log(Level.WARNING, "No source warehouse found for country: {0}", sourceCountry);
+            while (rs.next()) {
+                SourceStock stock = new SourceStock();
+                stock.fruitName = rs.getString("fruit_name");
+                int warehouseId = rs.getInt("warehouse_id");
+                if (!rs.wasNull()) {
+                    stock.warehouseId = warehouseId;
+                }
+                stockByFruit.put(rs.getInt("fruit_id"), stock);
             }
         } finally {
-
             closeQuietly(rs);
             closeQuietly(ps);
         }
-        return sourceWarehouseId;
+        return stockByFruit;
     }
 
-    private boolean addReservationRecord(int fruitId, int shopId, int quantity, String status, Connection conn)
-            throws SQLException {
+    /**
+     * Inserts one reservation per order line in a single JDBC batch. Returns
+     * the new reservation ids in line order; the list is shorter than the
+     * order from the first line that was not inserted.
+     */
+    private List<Integer> addReservationRecords(int shopId, List<Integer> fruitIds, List<Integer> quantities,
+            String status, Connection conn) throws SQLException {
         String sql = "INSERT INTO reservations (fruit_id, shop_id, quantity, reservation_date, status) VALUES (?, ?, ?, CURDATE(), ?)";
+        List<Integer> reservationIds = new ArrayList<>();
         PreparedStatement ps = null;
+        ResultSet rs = null;
         try {
-            ps = conn.prepareStatement(sql);
-            ps.setInt(1, fruitId);
-            ps.setInt(2, shopId);
-            ps.setInt(3, quantity);
-            ps.setString(4, status);
-            int rowsAffected = ps.executeUpdate();
-            return rowsAffected == 1;
+            ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            for (int i = 0; i < fruitIds.size(); i++) {
+                ps.setInt(1, fruitIds.get(i));
+                ps.setInt(2, shopId);
+                ps.setInt(3, quantities.get(i));
+                ps.setString(4, status);
+                ps.addBatch();
+            }
+            int[] counts = ps.executeBatch();
+            int inserted = 0;
+            while (inserted < counts.length && (counts[inserted] == 1 || counts[inserted] == Statement.SUCCESS_NO_INFO)) {
+                inserted++;
+            }
+            rs = ps.getGeneratedKeys();
+            while (reservationIds.size() < inserted && rs.next()) {
+                reservationIds.add(rs.getInt(1));
+            }
+            return reservationIds;
         } finally {
-
+            closeQuietly(rs);
             closeQuietly(ps);
         }
     }
 
+    private static final String INVENTORY_BY_SHOP_SQL =
+            "SELECT s.shop_name, i.fruit_id, f.fruit_name, SUM(i.quantity) AS total_quantity " +
+            "FROM inventory i " +
+            "JOIN fruits f ON i.fruit_id = f.fruit_id " +
+            "JOIN shops s ON i.shop_id = s.shop_id " +
+            "WHERE i.shop_id IS NOT NULL " +
+            "GROUP BY s.shop_name, i.fruit_id, f.fruit_name " +
+            "HAVING SUM(i.quantity) > 0 " +
+            "ORDER BY s.shop_name, f.fruit_name";
+
     public List<InventorySummaryBean> getInventorySummaryByShop() {
         List<InventorySummaryBean> summaryList = new ArrayList<>();
 
-        String sql = "SELECT s.shop_name, i.fruit_id, f.fruit_name, SUM(i.quantity) AS total_quantity " +
-                "FROM inventory i " +
-                "JOIN fruits f ON i.fruit_id = f.fruit_id " +
-                "JOIN shops s ON i.shop_id = s.shop_id " +
-                "WHERE i.shop_id IS NOT NULL " +
-                "GROUP BY s.shop_name, i.fruit_id, f.fruit_name " +
-                "HAVING SUM(i.quantity) > 0 " +
-                "ORDER BY s.shop_name, f.fruit_name";
-
         Connection conn = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
         try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
+            conn = getInventoryConnection();
+            ps = conn.prepareStatement(INVENTORY_BY_SHOP_SQL);
             rs = ps.executeQuery();
             while (rs.next()) {
                 InventorySummaryBean item = new InventorySummaryBean();
@@ -1208,29 +1463,30 @@ public class BorrowingDB {
         return summaryList;
     }
 
+    private static final String INVENTORY_BY_CITY_SQL =
+            "SELECT " +
+            "  COALESCE(s.city, w.city) AS location_city, " +
+            "  i.fruit_id, " +
+            "  f.fruit_name, " +
+            "  SUM(i.quantity) AS total_quantity " +
+            "FROM inventory i " +
+            "JOIN fruits f ON i.fruit_id = f.fruit_id " +
+            "LEFT JOIN shops s ON i.shop_id = s.shop_id " +
+            "LEFT JOIN warehouses w ON i.warehouse_id = w.warehouse_id " +
+            "WHERE COALESCE(s.city, w.city) IS NOT NULL " +
+            "GROUP BY location_city, i.fruit_id, f.fruit_name " +
+            "HAVING SUM(i.quantity) > 0 " +
+            "ORDER BY location_city, f.fruit_name";
+
     public List<InventorySummaryBean> getInventorySummaryByCity() {
         List<InventorySummaryBean> summaryList = new ArrayList<>();
 
-        String sql = "SELECT " +
-                "  COALESCE(s.city, w.city) AS location_city, " +
-                "  i.fruit_id, " +
-                "  f.fruit_name, " +
-                "  SUM(i.quantity) AS total_quantity " +
-                "FROM inventory i " +
-                "JOIN fruits f ON i.fruit_id = f.fruit_id " +
-                "LEFT JOIN shops s ON i.shop_id = s.shop_id " +
-                "LEFT JOIN warehouses w ON i.warehouse_id = w.warehouse_id " +
-                "WHERE COALESCE(s.city, w.city) IS NOT NULL " +
-                "GROUP BY location_city, i.fruit_id, f.fruit_name " +
-                "HAVING SUM(i.quantity) > 0 " +
-                "ORDER BY location_city, f.fruit_name";
-
         Connection conn = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
         try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
+            conn = getInventoryConnection();
+            ps = conn.prepareStatement(INVENTORY_BY_CITY_SQL);
             rs = ps.executeQuery();
             while (rs.next()) {
                 InventorySummaryBean item = new InventorySummaryBean();
@@ -1251,29 +1507,30 @@ public class BorrowingDB {
         return summaryList;
     }
 
+    private static final String INVENTORY_BY_COUNTRY_SQL =
+            "SELECT " +
+            "  COALESCE(s.country, w.country) AS location_country, " +
+            "  i.fruit_id, " +
+            "  f.fruit_name, " +
+            "  SUM(i.quantity) AS total_quantity " +
+            "FROM inventory i " +
+            "JOIN fruits f ON i.fruit_id = f.fruit_id " +
+            "LEFT JOIN shops s ON i.shop_id = s.shop_id " +
+            "LEFT JOIN warehouses w ON i.warehouse_id = w.warehouse_id " +
+            "WHERE COALESCE(s.country, w.country) IS NOT NULL " +
+            "GROUP BY location_country, i.fruit_id, f.fruit_name " +
+            "HAVING SUM(i.quantity) > 0 " +
+            "ORDER BY location_country, f.fruit_name";
+
     public List<InventorySummaryBean> getInventorySummaryByCountry() {
         List<InventorySummaryBean> summaryList = new ArrayList<>();
 
-        String sql = "SELECT " +
-                "  COALESCE(s.country, w.country) AS location_country, " +
-                "  i.fruit_id, " +
-                "  f.fruit_name, " +
-                "  SUM(i.quantity) AS total_quantity " +
-                "FROM inventory i " +
-                "JOIN fruits f ON i.fruit_id = f.fruit_id " +
-                "LEFT JOIN shops s ON i.shop_id = s.shop_id " +
-                "LEFT JOIN warehouses w ON i.warehouse_id = w.warehouse_id " +
-                "WHERE COALESCE(s.country, w.country) IS NOT NULL " +
-                "GROUP BY location_country, i.fruit_id, f.fruit_name " +
-                "HAVING SUM(i.quantity) > 0 " +
-                "ORDER BY location_country, f.fruit_name";
-
         Connection conn = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
         try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
+            conn = getInventoryConnection();
+            ps = conn.prepareStatement(INVENTORY_BY_COUNTRY_SQL);
             rs = ps.executeQuery();
             while (rs.next()) {
                 InventorySummaryBean item = new InventorySummaryBean();
@@ -1296,118 +1553,125 @@ public class BorrowingDB {
 
     public List<InventoryBean> getInventoryForOtherShopsInCity(String city, int requestingShopId) {
         List<InventoryBean> inventoryList = new ArrayList<>();
-        String sql = "SELECT i.inventory_id, i.fruit_id, i.shop_id, i.quantity, f.fruit_name, s.shop_name " +
-                "FROM inventory i " +
-                "JOIN fruits f ON i.fruit_id = f.fruit_id " +
-                "JOIN shops s ON i.shop_id = s.shop_id " +
-                "WHERE i.shop_id IS NOT NULL AND s.city = ? AND i.shop_id != ? " +
-                "ORDER BY s.shop_name, f.fruit_name";
-        Connection conn = null;
-        PreparedStatement ps = null;
-        ResultSet rs = null;
-        try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
-            ps.setString(1, city);
-            ps.setInt(2, requestingShopId);
-            rs = ps.executeQuery();
-            while (rs.next()) {
-                InventoryBean item = new InventoryBean();
-                item.setInventoryId(rs.getInt("inventory_id"));
-                item.setFruitId(rs.getInt("fruit_id"));
-                item.setShopId(rs.getInt("shop_id"));
-                item.setQuantity(rs.getInt("quantity"));
-                item.setFruitName(rs.getString("fruit_name"));
-                item.setLocationName(rs.getString("shop_name"));
+        for (BakeryShopBean shop : stockedShopsInCity(city, requestingShopId)) {
+            int shopId = Integer.parseInt(shop.getShop_id());
+            for (InventoryBean item : withFruitNames(inventoryLedger.getStockAt(false, shopId))) {
+                item.setLocationName(shop.getShop_name());
                 inventoryList.add(item);
             }
-            LOGGER.log(Level.INFO, "Fetched {0} inventory items for other shops in city {1}",
-                    new Object[] { inventoryList.size(), city });
-        } catch (SQLException | IOException e) {
-            LOGGER.log(Level.SEVERE, "Error fetching inventory for other shops in city " + city, e);
-        } finally {
-            closeQuietly(rs);
-            closeQuietly(ps);
-            closeQuietly(conn);
         }
+        LOGGER.log(Level.INFO, "Fetched {0} inventory items for other shops in city {1}",
+                new Object[] { inventoryList.size(), city });
         return inventoryList;
     }
 
-    public List<InventoryBean> getInventoryForSourceWarehouses(String country) {
+    /**
+     * Shops in the city other than the requesting one that have held stock,
+     * by shop name. The ledger names the shops and the shop cache their
+     * cities, so no query runs once the cache is warm.
+     */
+    private List<BakeryShopBean> stockedShopsInCity(String city, int requestingShopId) {
+        List<BakeryShopBean> shops = new ArrayList<>();
+        for (int shopId : inventoryLedger.getLocationIds(false)) {
+            if (shopId == requestingShopId) {
+                continue;
+            }
+            BakeryShopBean shop = bakeryShopDb.getShopById(shopId);
+            if (shop != null && shop.getCity() != null && shop.getCity().equalsIgnoreCase(city)) {
+                shops.add(shop);
+            }
+        }
+        shops.sort(Comparator.comparing(BakeryShopBean::getShop_name, String.CASE_INSENSITIVE_ORDER));
+        return shops;
+    }
+
+    /** Source (source true) or central warehouses in the country that have held stock, by name. */
+    private List<WarehouseBean> stockedWarehousesInCountry(String country, boolean source) {
+        List<WarehouseBean> warehouses = new ArrayList<>();
+        for (int warehouseId : inventoryLedger.getLocationIds(true)) {
+            WarehouseBean warehouse = warehouseDb.getWarehouseById(warehouseId);
+            if (warehouse != null && warehouse.getCountry() != null && warehouse.getCountry().equalsIgnoreCase(country)
+                    && "1".equals(warehouse.getIs_source()) == source) {
+                warehouses.add(warehouse);
+            }
+        }
+        warehouses.sort(Comparator.comparing(WarehouseBean::getWarehouse_name, String.CASE_INSENSITIVE_ORDER));
+        return warehouses;
+    }
+
+    /** Stock of the warehouses from the ledger, each row labelled with its warehouse name and suffix. */
+    private List<InventoryBean> stockOfWarehouses(List<WarehouseBean> warehouses, String suffix) {
         List<InventoryBean> inventoryList = new ArrayList<>();
-        String sql = "SELECT i.inventory_id, i.fruit_id, i.warehouse_id, i.quantity, f.fruit_name, w.warehouse_name " +
-                "FROM inventory i " +
-                "JOIN fruits f ON i.fruit_id = f.fruit_id " +
-                "JOIN warehouses w ON i.warehouse_id = w.warehouse_id " +
-                "WHERE i.shop_id IS NULL AND w.country = ? AND w.is_source = 1 " +
-                "ORDER BY w.warehouse_name, f.fruit_name";
-        Connection conn = null;
-        PreparedStatement ps = null;
-        ResultSet rs = null;
-        try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
-            ps.setString(1, country);
-            rs = ps.executeQuery();
-            while (rs.next()) {
-                InventoryBean item = new InventoryBean();
-                item.setInventoryId(rs.getInt("inventory_id"));
-                item.setFruitId(rs.getInt("fruit_id"));
-                item.setWarehouseId(rs.getInt("warehouse_id"));
-                item.setQuantity(rs.getInt("quantity"));
-                item.setFruitName(rs.getString("fruit_name"));
-                item.setLocationName(rs.getString("warehouse_name") + " (Source)");
+        for (WarehouseBean warehouse : warehouses) {
+            int warehouseId = Integer.parseInt(warehouse.getWarehouse_id());
+            for (InventoryBean item : withFruitNames(inventoryLedger.getStockAt(true, warehouseId))) {
+                item.setLocationName(warehouse.getWarehouse_name() + suffix);
                 inventoryList.add(item);
             }
-            LOGGER.log(Level.INFO, "Fetched {0} inventory items for source warehouses in {1}",
-                    new Object[] { inventoryList.size(), country });
-        } catch (SQLException | IOException e) {
-            LOGGER.log(Level.SEVERE, "Error fetching source warehouse inventory for " + country, e);
-        } finally {
-            closeQuietly(rs);
-            closeQuietly(ps);
-            closeQuietly(conn);
         }
         return inventoryList;
     }
 
+    public List<InventoryBean> getInventoryForSourceWarehouses(String country) {
+        List<InventoryBean> inventoryList = stockOfWarehouses(stockedWarehousesInCountry(country, true),
+                " (Source)");
+        LOGGER.log(Level.INFO, "Fetched {0} inventory items for source warehouses in {1}",
+                new Object[] { inventoryList.size(), country });
+        return inventoryList;
+    }
+
     public List<InventoryBean> getInventoryForCentralWarehouses(String country) {
-        List<InventoryBean> inventoryList = new ArrayList<>();
-        String sql = "SELECT i.inventory_id, i.fruit_id, i.warehouse_id, i.quantity, f.fruit_name, w.warehouse_name " +
+        List<InventoryBean> inventoryList = stockOfWarehouses(stockedWarehousesInCountry(country, false),
+                " (Central)");
+        LOGGER.log(Level.INFO, "Fetched {0} inventory items for central warehouses in {1}",
+                new Object[] { inventoryList.size(), country });
+        return inventoryList;
+    }
+
+    /**
+     * One window of the all-inventory list for DataTables server-side mode.
+     * Column indexes follow listAllInventory.jsp.
+     */
+    public Page<InventoryBean> getInventoryPage(PageRequest request) {
+        String locationName = "CONCAT(COALESCE(s.shop_name, w.warehouse_name), "
+                + "CASE WHEN i.shop_id IS NOT NULL THEN ' (Shop)' ELSE ' (Warehouse)' END)";
+        PagedQuery query = new PagedQuery(
+                "i.inventory_id, i.fruit_id, i.shop_id, i.warehouse_id, i.quantity, f.fruit_name, "
+                        + locationName + " AS location_name",
                 "FROM inventory i " +
-                "JOIN fruits f ON i.fruit_id = f.fruit_id " +
-                "JOIN warehouses w ON i.warehouse_id = w.warehouse_id " +
-                "WHERE i.shop_id IS NULL AND w.country = ? AND (w.is_source = 0 OR w.is_source IS NULL) " +
+                        "JOIN fruits f ON i.fruit_id = f.fruit_id " +
+                        "LEFT JOIN shops s ON i.shop_id = s.shop_id " +
+                        "LEFT JOIN warehouses w ON i.warehouse_id = w.warehouse_id",
+                "i.inventory_id")
+                .sortColumn(0, locationName)
+                .sortColumn(1, "f.fruit_name")
+                .sortColumn(2, "i.quantity")
+                .keyColumn(3, "i.inventory_id")
+                .sortColumn(4, "i.shop_id")
+                .sortColumn(5, "i.warehouse_id")
+                .searchable("f.fruit_name", "s.shop_name", "w.warehouse_name")
+                .defaultOrder(0, true);
 
-                "ORDER BY w.warehouse_name, f.fruit_name";
         Connection conn = null;
-        PreparedStatement ps = null;
-        ResultSet rs = null;
         try {
-            conn = getConnection();
-            ps = conn.prepareStatement(sql);
-            ps.setString(1, country);
-            rs = ps.executeQuery();
-            while (rs.next()) {
+            conn = getInventoryConnection();
+            return query.fetch(conn, request, rs -> {
                 InventoryBean item = new InventoryBean();
                 item.setInventoryId(rs.getInt("inventory_id"));
                 item.setFruitId(rs.getInt("fruit_id"));
-                item.setWarehouseId(rs.getInt("warehouse_id"));
+                item.setShopId(rs.getObject("shop_id") != null ? rs.getInt("shop_id") : null);
+                item.setWarehouseId(rs.getObject("warehouse_id") != null ? rs.getInt("warehouse_id") : null);
                 item.setQuantity(rs.getInt("quantity"));
                 item.setFruitName(rs.getString("fruit_name"));
-                item.setLocationName(rs.getString("warehouse_name") + " (Central)");
-                inventoryList.add(item);
-            }
-            LOGGER.log(Level.INFO, "Fetched {0} inventory items for central warehouses in {1}",
-                    new Object[] { inventoryList.size(), country });
+                item.setLocationName(rs.getString("location_name"));
+                return item;
+            });
         } catch (SQLException | IOException e) {
-            LOGGER.log(Level.SEVERE, "Error fetching central warehouse inventory for " + country, e);
+            LOGGER.log(Level.SEVERE, "Error fetching inventory page", e);
+            return new Page<>(new ArrayList<>(), 0, 0, null);
         } finally {
-            closeQuietly(rs);
-            closeQuietly(ps);
             closeQuietly(conn);
         }
-        return inventoryList;
     }
 
     public List<InventoryBean> getAllInventory() {
@@ -1428,7 +1692,7 @@ public class BorrowingDB {
         PreparedStatement ps = null;
         ResultSet rs = null;
         try {
-            conn = getConnection();
+            conn = getInventoryConnection();
             ps = conn.prepareStatement(sql);
             rs = ps.executeQuery();
             while (rs.next()) {
@@ -1456,6 +1720,18 @@ public class BorrowingDB {
         return inventoryList;
     }
 
+    private static final String CONSUMPTION_BY_FRUIT_AND_COUNTRY_SQL =
+            "SELECT " +
+            "  c.country AS target_country, " +
+            "  c.fruit_id, " +
+            "  f.fruit_name, " +
+            "  SUM(c.total_quantity) AS total_consumed " +
+            "FROM consumption_daily c " +
+            "JOIN fruits f ON c.fruit_id = f.fruit_id " +
+            "WHERE c.consumption_date BETWEEN ? AND ? " +
+            "GROUP BY c.country, c.fruit_id, f.fruit_name " +
+            "ORDER BY c.country, f.fruit_name";
+
     public List<ForecastBean> getAverageDailyConsumptionByFruitAndCountry(Date startDate, Date endDate) {
         List<ForecastBean> forecastData = new ArrayList<>();
 
@@ -1472,26 +1748,13 @@ public class BorrowingDB {
             return forecastData;
         }
 
-        String sql = "SELECT " +
-                "  s.country AS target_country, " +
-                "  r.fruit_id, " +
-                "  f.fruit_name, " +
-                "  SUM(r.quantity) AS total_consumed " +
-                "FROM reservations r " +
-                "JOIN fruits f ON r.fruit_id = f.fruit_id " +
-                "JOIN shops s ON r.shop_id = s.shop_id " +
-                "WHERE r.status = 'Fulfilled' " +
-                "  AND r.reservation_date BETWEEN ? AND ? " +
-                "GROUP BY s.country, r.fruit_id, f.fruit_name " +
-                "ORDER BY s.country, f.fruit_name";
-
         Connection conn = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
 
         try {
             conn = getConnection();
-            ps = conn.prepareStatement(sql);
+            ps = conn.prepareStatement(CONSUMPTION_BY_FRUIT_AND_COUNTRY_SQL);
             ps.setDate(1, startDate);
             ps.setDate(2, endDate);
             rs = ps.executeQuery();
@@ -1562,6 +1825,16 @@ public class BorrowingDB {
 
     public String createMultipleBorrowRequests(int borrowingShopId, int lendingShopId, List<Integer> fruitIds,
             List<Integer> quantities) {
+        return createMultipleBorrowRequests(borrowingShopId, lendingShopId, fruitIds, quantities, null);
+    }
+
+    /**
+     * Same as {@link #createMultipleBorrowRequests(int, int, List, List)}; on
+     * success the generated borrowing ids are appended to createdBorrowingIds
+     * (if not null) in request line order.
+     */
+    public String createMultipleBorrowRequests(int borrowingShopId, int lendingShopId, List<Integer> fruitIds,
+            List<Integer> quantities, List<Integer> createdBorrowingIds) {
         Connection conn = null;
         String statusMessage = "Borrow request submission failed: Unknown error.";
 
@@ -1581,28 +1854,21 @@ public class BorrowingDB {
             conn = getConnection();
             conn.setAutoCommit(false);
 
-            for (int i = 0; i < fruitIds.size(); i++) {
-                int fruitId = fruitIds.get(i);
-                int quantity = quantities.get(i);
-
-                boolean requestAdded = addBorrowingRecord(fruitId, lendingShopId, borrowingShopId, quantity, "Pending",
-                        conn);
-
-                if (!requestAdded) {
-                    conn.rollback();
-
-                    String fruitName = fruitDb != null
-                            ? (fruitDb.getFruitById(fruitId) != null ? fruitDb.getFruitById(fruitId).getFruitName()
-                                    : "ID " + fruitId)
-                            : "ID " + fruitId;
-                    return "Borrow request failed: Could not create request record for " + fruitName + ".";
-                }
-                LOGGER.log(Level.INFO,
-                        "[TX-MultiBorrow] Pending borrow record added for FruitID={0}, Qty={1}, Lender={2}, Borrower={3}",
-                        new Object[] { fruitId, quantity, lendingShopId, borrowingShopId });
+            List<Integer> borrowingIds = addBorrowingRecords(fruitIds, quantities, lendingShopId, borrowingShopId,
+                    "Pending", conn);
+            if (borrowingIds == null) {
+                conn.rollback();
+                return "Borrow request failed: Could not create request records.";
             }
+            LOGGER.log(Level.INFO,
+                    "[TX-MultiBorrow] {0} pending borrow records added, Lender={1}, Borrower={2}, IDs={3}",
+                    new Object[] { borrowingIds.size(), lendingShopId, borrowingShopId, borrowingIds });
 
             conn.commit();
+            dataVersions.bump(DataVersions.Dataset.BORROWINGS);
+            if (createdBorrowingIds != null) {
+                createdBorrowingIds.addAll(borrowingIds);
+            }
             statusMessage = "Borrow request submitted successfully for " + fruitIds.size()
                     + " item(s)! Waiting for approval from the lending shop.";
             LOGGER.log(Level.INFO, "[TX-MultiBorrow] Transaction committed.");
@@ -1631,86 +1897,58 @@ public class BorrowingDB {
         return statusMessage;
     }
 
+    /**
+     * Every fruit with the other shops in the city that hold some of it.
+     * The fruit list is one query; lender stock comes from the ledger.
+     */
     public List<BorrowableFruitInfoBean> getBorrowableFruitsWithLenderInfo(String city, int requestingShopId) {
-        List<BorrowableFruitInfoBean> resultList = new ArrayList<>();
-
-        if (this.fruitDb == null) {
-            LOGGER.log(Level.SEVERE, "FruitDB dependency is null in BorrowingDB. Cannot get all fruits.");
-            return resultList;
-        }
-
-        List<FruitBean> allFruits = fruitDb.getAllFruits();
-
-        if (allFruits == null || allFruits.isEmpty()) {
-            LOGGER.log(Level.WARNING, "No fruits found in the database.");
-            return resultList;
-        }
-
-        String inventorySql = "SELECT i.shop_id, s.shop_name, i.quantity " +
-                "FROM inventory i JOIN shops s ON i.shop_id = s.shop_id " +
-                "WHERE i.fruit_id = ? AND s.city = ? AND i.shop_id != ? AND i.quantity > 0";
-
-        Connection conn = null;
-        PreparedStatement psInv = null;
-        ResultSet rsInv = null;
-
-        try {
-            conn = getConnection();
-            psInv = conn.prepareStatement(inventorySql);
-
-            for (FruitBean fruit : allFruits) {
-                BorrowableFruitInfoBean infoBean = new BorrowableFruitInfoBean(fruit);
-                List<Map<String, Object>> lenders = new ArrayList<>();
-
-                psInv.setInt(1, fruit.getFruitId());
-                psInv.setString(2, city);
-                psInv.setInt(3, requestingShopId);
-
-                rsInv = psInv.executeQuery();
-
-                while (rsInv.next()) {
-                    Map<String, Object> lender = new HashMap<>();
-                    lender.put("shopId", rsInv.getInt("shop_id"));
-                    lender.put("shopName", rsInv.getString("shop_name"));
-                    lender.put("quantity", rsInv.getInt("quantity"));
-                    lenders.add(lender);
+        Map<Integer, List<LenderInfoBean>> lendersByFruit = new HashMap<>();
+        for (BakeryShopBean shop : stockedShopsInCity(city, requestingShopId)) {
+            int shopId = Integer.parseInt(shop.getShop_id());
+            for (InventoryBean item : inventoryLedger.getStockAt(false, shopId)) {
+                if (item.getQuantity() > 0) {
+                    lendersByFruit.computeIfAbsent(item.getFruitId(), id -> new ArrayList<>())
+                            .add(new LenderInfoBean(shopId, shop.getShop_name(), item.getQuantity()));
                 }
-                closeQuietly(rsInv);
-
-                infoBean.setLenderInfo(lenders);
-                resultList.add(infoBean);
             }
-            LOGGER.log(Level.INFO, "Processed lender info for {0} fruits in city {1}",
-                    new Object[] { resultList.size(), city });
-
-        } catch (SQLException | IOException e) {
-            LOGGER.log(Level.SEVERE, "Error fetching borrowable fruits with lender info for city " + city, e);
-        } finally {
+        }
 
-            closeQuietly(psInv);
-            closeQuietly(conn);
+        List<BorrowableFruitInfoBean> resultList = new ArrayList<>();
+        for (FruitBean fruit : fruitDb.getAllFruits()) {
+            BorrowableFruitInfoBean info = new BorrowableFruitInfoBean(fruit);
+            for (LenderInfoBean lender : lendersByFruit.getOrDefault(fruit.getFruitId(),
+                    Collections.emptyList())) {
+                info.addLender(lender);
+            }
+            resultList.add(info);
+        }
+        if (resultList.isEmpty()) {
+            LOGGER.log(Level.WARNING, "No fruits found in the database.");
         }
+        LOGGER.log(Level.INFO, "Processed lender info for {0} fruits in city {1}",
+                new Object[] { resultList.size(), city });
         return resultList;
     }
 
+    private static final String AGGREGATED_NEEDS_SQL =
+            "SELECT f.fruit_name, f.fruit_id, SUM(r.quantity) AS total_needed_quantity " +
+            "FROM reservations r " +
+            "JOIN fruits f ON r.fruit_id = f.fruit_id " +
+            "WHERE r.status IN ('Pending', 'Approved') " +
+            "GROUP BY f.fruit_name, f.fruit_id " +
+            "HAVING SUM(r.quantity) > 0 " +
+            "ORDER BY f.fruit_name";
+
     public List<AggregatedNeedBean> getAllAggregatedNeeds() {
         List<AggregatedNeedBean> needs = new ArrayList<>();
 
-        String sql = "SELECT f.fruit_name, f.fruit_id, SUM(r.quantity) AS total_needed_quantity " +
-                "FROM reservations r " +
-                "JOIN fruits f ON r.fruit_id = f.fruit_id " +
-                "WHERE r.status IN ('Pending', 'Approved') " +
-                "GROUP BY f.fruit_name, f.fruit_id " +
-                "HAVING SUM(r.quantity) > 0 " +
-                "ORDER BY f.fruit_name";
-
         Connection conn = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
 
         try {
             conn = getConnection();
-            ps = conn.prepareStatement(sql);
+            ps = conn.prepareStatement(AGGREGATED_NEEDS_SQL);
             rs = ps.executeQuery();
             while (rs.next()) {
 
@@ -1732,31 +1970,31 @@ public class BorrowingDB {
         return needs;
     }
 
+    private static final String SEASONAL_CONSUMPTION_SQL =
+            "SELECT " +
+            "  CASE " +
+            "    WHEN MONTH(c.consumption_date) IN (3, 4, 5) THEN 'Spring' " +
+            "    WHEN MONTH(c.consumption_date) IN (6, 7, 8) THEN 'Summer' " +
+            "    WHEN MONTH(c.consumption_date) IN (9, 10, 11) THEN 'Autumn' " +
+            "    ELSE 'Winter' " +
+            "  END AS season, " +
+            "  f.fruit_name, " +
+            "  SUM(c.total_quantity) as total_consumed " +
+            "FROM consumption_daily c " +
+            "JOIN fruits f ON c.fruit_id = f.fruit_id " +
+            "GROUP BY season, f.fruit_name " +
+            "ORDER BY FIELD(season, 'Spring', 'Summer', 'Autumn', 'Winter'), f.fruit_name";
+
     public List<SeasonalConsumptionBean> getAllSeasonalConsumption() {
         List<SeasonalConsumptionBean> consumption = new ArrayList<>();
 
-        String sql = "SELECT " +
-                "  CASE " +
-                "    WHEN MONTH(r.reservation_date) IN (3, 4, 5) THEN 'Spring' " +
-                "    WHEN MONTH(r.reservation_date) IN (6, 7, 8) THEN 'Summer' " +
-                "    WHEN MONTH(r.reservation_date) IN (9, 10, 11) THEN 'Autumn' " +
-                "    ELSE 'Winter' " +
-                "  END AS season, " +
-                "  f.fruit_name, " +
-                "  SUM(r.quantity) as total_consumed " +
-                "FROM reservations r " +
-                "JOIN fruits f ON r.fruit_id = f.fruit_id " +
-                "WHERE r.status = 'Fulfilled' " +
-                "GROUP BY season, f.fruit_name " +
-                "ORDER BY FIELD(season, 'Spring', 'Summer', 'Autumn', 'Winter'), f.fruit_name";
-
         Connection conn = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
 
         try {
             conn = getConnection();
-            ps = conn.prepareStatement(sql);
+            ps = conn.prepareStatement(SEASONAL_CONSUMPTION_SQL);
             rs = ps.executeQuery();
             while (rs.next()) {
                 SeasonalConsumptionBean item = new SeasonalConsumptionBean();
@@ -1776,4 +2014,241 @@ public class BorrowingDB {
         return consumption;
     }
 
-}
\ No newline at end of file
+    private static final String FULFILLED_RESERVATIONS_SQL =
+            "SELECT r.reservation_date, r.reservation_id, s.shop_name, s.city, s.country, f.fruit_name, " +
+            "  r.quantity " +
+            "FROM reservations r " +
+            "JOIN shops s ON r.shop_id = s.shop_id " +
+            "JOIN fruits f ON r.fruit_id = f.fruit_id " +
+            "WHERE r.status = 'Fulfilled' AND r.reservation_date BETWEEN ? AND ? " +
+            "ORDER BY r.reservation_date, r.reservation_id";
+
+    /**
+     * Connector/J's signal to stream a result set: rows are read from the
+     * socket one at a time as the caller advances, instead of the whole
+     * result being buffered in the driver first.
+     */
+    private static final int EXPORT_FETCH_SIZE = Integer.MIN_VALUE;
+
+    /** Reads the current row of an export query as its cells, in column order. */
+    private interface ExportRowMapper {
+        Object[] cells(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Streams the inventory summary for groupBy (sourceCountry, shop, city or
+     * country) to sink; returns the number of rows written.
+     */
+    public long exportInventorySummary(String groupBy, RowSink sink) throws SQLException, IOException {
+        String sql;
+        String dimension;
+        String column;
+        switch (groupBy) {
+            case "sourceCountry":
+                sql = INVENTORY_BY_SOURCE_COUNTRY_SQL;
+                dimension = "Source Country";
+                column = "source_country";
+                break;
+            case "shop":
+                sql = INVENTORY_BY_SHOP_SQL;
+                dimension = "Shop Name";
+                column = "shop_name";
+                break;
+            case "city":
+                sql = INVENTORY_BY_CITY_SQL;
+                dimension = "City";
+                column = "location_city";
+                break;
+            case "country":
+                sql = INVENTORY_BY_COUNTRY_SQL;
+                dimension = "Country";
+                column = "location_country";
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown inventory grouping: " + groupBy);
+        }
+
+        Connection conn = null;
+        try {
+            conn = getInventoryConnection();
+            long rows = streamRows(conn, sql, sink,
+                    new String[] { dimension, "Fruit ID", "Fruit Name", "Total Quantity" },
+                    rs -> new Object[] { rs.getString(column), rs.getInt("fruit_id"), rs.getString("fruit_name"),
+                            rs.getLong("total_quantity") });
+            LOGGER.log(Level.INFO, "Exported {0} rows of inventory summary by {1}.", new Object[] { rows, groupBy });
+            return rows;
+        } finally {
+            closeQuietly(conn);
+        }
+    }
+
+    /** Streams the consumption summary by fruit for the date range to sink. */
+    public long exportConsumptionSummary(Date startDate, Date endDate, RowSink sink)
+            throws SQLException, IOException {
+        Connection conn = null;
+        try {
+            conn = getConnection();
+            long rows = streamRows(conn, CONSUMPTION_BY_FRUIT_SQL, sink,
+                    new String[] { "Fruit Name", "Total Quantity Consumed (Fulfilled)" },
+                    rs -> new Object[] { rs.getString("fruit_name"), rs.getLong("total_consumed") },
+                    startDate, endDate);
+            LOGGER.log(Level.INFO, "Exported {0} rows of consumption summary between {1} and {2}",
+                    new Object[] { rows, startDate, endDate });
+            return rows;
+        } finally {
+            closeQuietly(conn);
+        }
+    }
+
+    /**
+     * Streams every Fulfilled reservation dated within the range, oldest
+     * first, to sink. This is the detail behind the consumption report and
+     * may run to millions of rows for a multi-year range.
+     */
+    public long exportFulfilledReservations(Date startDate, Date endDate, RowSink sink)
+            throws SQLException, IOException {
+        Connection conn = null;
+        try {
+            conn = getConnection();
+            long rows = streamRows(conn, FULFILLED_RESERVATIONS_SQL, sink,
+                    new String[] { "Reservation Date", "Reservation ID", "Shop Name", "City", "Country",
+                            "Fruit Name", "Quantity" },
+                    rs -> new Object[] { rs.getDate("reservation_date"), rs.getInt("reservation_id"),
+                            rs.getString("shop_name"), rs.getString("city"), rs.getString("country"),
+                            rs.getString("fruit_name"), rs.getInt("quantity") },
+                    startDate, endDate);
+            LOGGER.log(Level.INFO, "Exported {0} fulfilled reservations between {1} and {2}",
+                    new Object[] { rows, startDate, endDate });
+            return rows;
+        } finally {
+            closeQuietly(conn);
+        }
+    }
+
+    /**
+     * Streams the average daily consumption by country and fruit for the
+     * date range to sink, rounded as in
+     * {@link #getAverageDailyConsumptionByFruitAndCountry(Date, Date)}.
+     */
+    public long exportAverageDailyConsumption(Date startDate, Date endDate, RowSink sink)
+            throws SQLException, IOException {
+        if (startDate == null || endDate == null || startDate.after(endDate)) {
+            throw new IllegalArgumentException("Invalid forecast date range: " + startDate + " to " + endDate);
+        }
+        java.math.BigDecimal periodDays = new java.math.BigDecimal(
+                java.time.temporal.ChronoUnit.DAYS.between(startDate.toLocalDate(), endDate.toLocalDate()) + 1);
+
+        Connection conn = null;
+        try {
+            conn = getConnection();
+            long rows = streamRows(conn, CONSUMPTION_BY_FRUIT_AND_COUNTRY_SQL, sink,
+                    new String[] { "Target Country", "Fruit ID", "Fruit Name",
+                            "Avg. Daily Consumption (Forecasted Need)" },
+                    rs -> new Object[] { rs.getString("target_country"), rs.getInt("fruit_id"),
+                            rs.getString("fruit_name"),
+                            new java.math.BigDecimal(rs.getLong("total_consumed")).divide(periodDays, 2,
+                                    java.math.RoundingMode.HALF_UP) },
+                    startDate, endDate);
+            LOGGER.log(Level.INFO, "Exported {0} rows of average daily consumption between {1} and {2}",
+                    new Object[] { rows, startDate, endDate });
+            return rows;
+        } finally {
+            closeQuietly(conn);
+        }
+    }
+
+    /** Streams the aggregated Pending/Approved reservation needs to sink. */
+    public long exportAggregatedNeeds(RowSink sink) throws SQLException, IOException {
+        Connection conn = null;
+        try {
+            conn = getConnection();
+            return streamRows(conn, AGGREGATED_NEEDS_SQL, sink,
+                    new String[] { "Fruit ID", "Fruit Name", "Total Needed Quantity (Pending/Approved)" },
+                    rs -> new Object[] { rs.getInt("fruit_id"), rs.getString("fruit_name"),
+                            rs.getLong("total_needed_quantity") });
+        } finally {
+            closeQuietly(conn);
+        }
+    }
+
+    /** Streams the all-time consumption by season and fruit to sink. */
+    public long exportSeasonalConsumption(RowSink sink) throws SQLException, IOException {
+        Connection conn = null;
+        try {
+            conn = getConnection();
+            return streamRows(conn, SEASONAL_CONSUMPTION_SQL, sink,
+                    new String[] { "Season", "Fruit Name", "Total Consumed Quantity (Fulfilled)" },
+                    rs -> new Object[] { rs.getString("season"), rs.getString("fruit_name"),
+                            rs.getLong("total_consumed") });
+        } finally {
+            closeQuietly(conn);
+        }
+    }
+
+    /**
+     * Runs sql on conn through a forward-only, read-only, streaming result
+     * set and hands each row to sink as soon as it is read, so memory use
+     * does not grow with the number of rows. The sink sees the column labels
+     * only once the query has executed.
+     * <p>
+     * Closing a streaming result set reads every remaining row off the
+     * socket, so if the sink or mapper fails midway the statement is
+     * cancelled first. Connector/J ignores cancel() once executeQuery has
+     * returned, so the connection is aborted as well; the pool then discards
+     * it instead of draining the rest of the export.
+     */
+    private long streamRows(Connection conn, String sql, RowSink sink, String[] labels, ExportRowMapper mapper,
+            Object... params) throws SQLException, IOException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        boolean drained = false;
+        try {
+            ps = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(EXPORT_FETCH_SIZE);
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            rs = ps.executeQuery();
+            sink.columns(labels);
+            long rows = 0;
+            while (rs.next()) {
+                sink.row(mapper.cells(rs));
+                rows++;
+            }
+            drained = true;
+            return rows;
+        } finally {
+            boolean aborted = false;
+            if (rs != null && !drained) {
+                try {
+                    ps.cancel();
+                    conn.abort(Runnable::run);
+                    aborted = true;
+                } catch (SQLException e) {
+                    LOGGER.log(Level.WARNING, "Failed to cancel abandoned export query", e);
+                }
+            }
+            // An aborted connection has already released its statement and result set.
+            if (!aborted) {
+                closeQuietly(rs);
+                closeQuietly(ps);
+            }
+        }
+    }
+
+    /** Maps a borrowings row joined with fruit_name, borrowing_shop_name and receiving_shop_name. */
+    static BorrowingBean mapRowToBorrowingBean(ResultSet rs) throws SQLException {
+        BorrowingBean bean = new BorrowingBean();
+        bean.setBorrowingId(rs.getInt("borrowing_id"));
+        bean.setFruitId(rs.getInt("fruit_id"));
+        bean.setBorrowingShopId(rs.getInt("borrowing_shop_id"));
+        bean.setReceivingShopId(rs.getInt("receiving_shop_id"));
+        bean.setQuantity(rs.getInt("quantity"));
+        bean.setBorrowingDate(rs.getDate("borrowing_date"));
+        bean.setStatus(rs.getString("status"));
+        bean.setFruitName(rs.getString("fruit_name"));
+        bean.setBorrowingShopName(rs.getString("borrowing_shop_name"));
+        bean.setReceivingShopName(rs.getString("receiving_shop_name"));
+        return bean;
+    }
+}
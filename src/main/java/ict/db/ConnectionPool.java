@@ -0,0 +1,498 @@
+package ict.db;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * Bounded JDBC connection pool shared by all ict.db classes.
+ * <p>
+ * Connections are handed out as proxies whose close() returns the physical
+ * connection to the pool. Idle connections are validated on borrow, evicted
+ * after the idle timeout, and borrowed connections held longer than the leak
+ * detection threshold are logged together with the stack that borrowed them.
+ */
+public class ConnectionPool implements DataSource {
+
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+
+    private final String dburl, username, password;
+
+    private int maxPoolSize = 20;
+    private int minIdle = 2;
+    private long connectionTimeoutMs = 10000;
+    private long idleTimeoutMs = 600000;
+    private long validationIntervalMs = 1000;
+    private int validationTimeoutSeconds = 2;
+    private long leakDetectionThresholdMs = 60000;
+    private long housekeepingIntervalMs = 30000;
+
+    private Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowedConnections = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService housekeeper;
+    private volatile boolean started;
+    private volatile boolean shutdown;
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong closedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public ConnectionPool(String dburl, String dbUser, String dbPassword) {
+        this.dburl = dburl;
+        this.username = dbUser;
+        this.password = dbPassword;
+    }
+
+    public synchronized void start() throws SQLException {
+        if (started) {
+            return;
+        }
+        try {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+        } catch (ClassNotFoundException e) {
+            LOGGER.log(Level.SEVERE, "MySQL JDBC Driver not found.", e);
+            throw new SQLException("MySQL JDBC Driver not found", e);
+        }
+        if (minIdle > maxPoolSize) {
+            minIdle = maxPoolSize;
+        }
+        permits = new Semaphore(maxPoolSize, true);
+        housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ict-db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeep, housekeepingIntervalMs, housekeepingIntervalMs,
+                TimeUnit.MILLISECONDS);
+        started = true;
+
+        for (int i = 0; i < minIdle; i++) {
+            try {
+                idleConnections.offerLast(createPooledConnection());
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "Could not pre-fill connection pool; connections will be opened on demand.", e);
+                break;
+            }
+        }
+        LOGGER.log(Level.INFO, "Connection pool started for {0} (max={1}, minIdle={2}, idle={3})",
+                new Object[] { dburl, maxPoolSize, minIdle, idleConnections.size() });
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!started || shutdown) {
+            throw new SQLException("Connection pool is not running.");
+        }
+        long waitStart = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(connectionTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection.", e);
+        }
+        if (!acquired) {
+            timeoutCount.incrementAndGet();
+            LOGGER.log(Level.WARNING, "Timed out after {0} ms waiting for a database connection (active={1}, idle={2})",
+                    new Object[] { connectionTimeoutMs, getActiveConnections(), getIdleConnections() });
+            throw new SQLTransientConnectionException(
+                    "Timed out after " + connectionTimeoutMs + " ms waiting for a database connection.");
+        }
+
+        PooledConnection pooled;
+        try {
+            pooled = takeValidConnection();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        recordWait(System.nanoTime() - waitStart);
+        borrowCount.incrementAndGet();
+
+        pooled.borrowedAt = System.currentTimeMillis();
+        pooled.leakReported = false;
+        pooled.borrowStack = leakDetectionThresholdMs > 0 ? new Throwable("Connection borrowed here") : null;
+        borrowedConnections.add(pooled);
+        return pooled.newHandle();
+    }
+
+    @Override
+    public Connection getConnection(String user, String pwd) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Pooled connections use the configured credentials.");
+    }
+
+    private PooledConnection takeValidConnection() throws SQLException {
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            long idleFor = System.currentTimeMillis() - pooled.lastReturnedAt;
+            if (idleFor < validationIntervalMs || isAlive(pooled)) {
+                return pooled;
+            }
+            validationFailureCount.incrementAndGet();
+            LOGGER.log(Level.FINE, "Discarding pooled connection that failed validation after {0} ms idle.", idleFor);
+            closePhysical(pooled);
+        }
+        return createPooledConnection();
+    }
+
+    private boolean isAlive(PooledConnection pooled) {
+        try {
+            return pooled.physical.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection createPooledConnection() throws SQLException {
+        Connection physical = DriverManager.getConnection(dburl, username, password);
+        createdCount.incrementAndGet();
+        LOGGER.log(Level.FINE, "Database connection established to {0}", dburl);
+        return new PooledConnection(physical);
+    }
+
+    private void release(PooledConnection pooled) {
+        borrowedConnections.remove(pooled);
+        pooled.borrowStack = null;
+        boolean reusable = !shutdown;
+        try {
+            if (pooled.physical.isClosed()) {
+                reusable = false;
+            } else if (!pooled.physical.getAutoCommit()) {
+                LOGGER.log(Level.FINE, "Rolling back uncommitted work on returned connection.");
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Failed to reset returned connection; discarding it.", e);
+            reusable = false;
+        }
+
+        if (reusable) {
+            pooled.lastReturnedAt = System.currentTimeMillis();
+            idleConnections.offerFirst(pooled);
+        } else {
+            closePhysical(pooled);
+        }
+        permits.release();
+    }
+
+    private void closePhysical(PooledConnection pooled) {
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "Failed to close physical connection", e);
+        }
+        closedCount.incrementAndGet();
+    }
+
+    private void recordWait(long nanos) {
+        totalWaitNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxWaitNanos.get())) {
+            if (maxWaitNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+    }
+
+    private void housekeep() {
+        try {
+            long now = System.currentTimeMillis();
+
+            Iterator<PooledConnection> it = idleConnections.descendingIterator();
+            while (it.hasNext() && idleConnections.size() > minIdle) {
+                PooledConnection pooled = it.next();
+                if (now - pooled.lastReturnedAt > idleTimeoutMs && idleConnections.remove(pooled)) {
+                    closePhysical(pooled);
+                    LOGGER.log(Level.FINE, "Evicted connection idle for {0} ms.", now - pooled.lastReturnedAt);
+                }
+            }
+
+            if (leakDetectionThresholdMs > 0) {
+                for (PooledConnection pooled : borrowedConnections) {
+                    Throwable stack = pooled.borrowStack;
+                    if (!pooled.leakReported && stack != null && now - pooled.borrowedAt > leakDetectionThresholdMs) {
+                        pooled.leakReported = true;
+                        leakCount.incrementAndGet();
+                        LOGGER.log(Level.WARNING, "Possible connection leak: connection held for "
+                                + (now - pooled.borrowedAt) + " ms without being returned.", stack);
+                    }
+                }
+            }
+            LOGGER.log(Level.FINE, "Pool stats: {0}", getStatistics());
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Connection pool housekeeping failed.", e);
+        }
+    }
+
+    public synchronized void shutdown() {
+        if (shutdown) {
+            return;
+        }
+        shutdown = true;
+        if (housekeeper != null) {
+            housekeeper.shutdownNow();
+        }
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            closePhysical(pooled);
+        }
+        if (!borrowedConnections.isEmpty()) {
+            LOGGER.log(Level.WARNING, "Connection pool shut down with {0} connection(s) still borrowed.",
+                    borrowedConnections.size());
+        }
+        LOGGER.log(Level.INFO, "Connection pool shut down. Final stats: {0}", getStatistics());
+    }
+
+    public int getActiveConnections() {
+        return borrowedConnections.size();
+    }
+
+    public int getIdleConnections() {
+        return idleConnections.size();
+    }
+
+    public int getTotalConnections() {
+        return getActiveConnections() + getIdleConnections();
+    }
+
+    public int getThreadsAwaitingConnection() {
+        return permits == null ? 0 : permits.getQueueLength();
+    }
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getClosedCount() {
+        return closedCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public long getValidationFailureCount() {
+        return validationFailureCount.get();
+    }
+
+    public long getLeakCount() {
+        return leakCount.get();
+    }
+
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.get();
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    public String getStatistics() {
+        long borrows = borrowCount.get();
+        return "active=" + getActiveConnections()
+                + ", idle=" + getIdleConnections()
+                + ", waiting=" + getThreadsAwaitingConnection()
+                + ", borrows=" + borrows
+                + ", created=" + createdCount.get()
+                + ", closed=" + closedCount.get()
+                + ", timeouts=" + timeoutCount.get()
+                + ", validationFailures=" + validationFailureCount.get()
+                + ", leaks=" + leakCount.get()
+                + ", avgWaitMs=" + (borrows == 0 ? 0 : totalWaitNanos.get() / borrows / 1000000.0)
+                + ", maxWaitMs=" + maxWaitNanos.get() / 1000000.0;
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public void setMaxPoolSize(int maxPoolSize) {
+        checkNotStarted();
+        this.maxPoolSize = Math.max(1, maxPoolSize);
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public void setMinIdle(int minIdle) {
+        checkNotStarted();
+        this.minIdle = Math.max(0, minIdle);
+    }
+
+    public long getConnectionTimeoutMs() {
+        return connectionTimeoutMs;
+    }
+
+    public void setConnectionTimeoutMs(long connectionTimeoutMs) {
+        this.connectionTimeoutMs = Math.max(0, connectionTimeoutMs);
+    }
+
+    public long getIdleTimeoutMs() {
+        return idleTimeoutMs;
+    }
+
+    public void setIdleTimeoutMs(long idleTimeoutMs) {
+        this.idleTimeoutMs = Math.max(0, idleTimeoutMs);
+    }
+
+    public long getValidationIntervalMs() {
+        return validationIntervalMs;
+    }
+
+    public void setValidationIntervalMs(long validationIntervalMs) {
+        this.validationIntervalMs = Math.max(0, validationIntervalMs);
+    }
+
+    public long getLeakDetectionThresholdMs() {
+        return leakDetectionThresholdMs;
+    }
+
+    public void setLeakDetectionThresholdMs(long leakDetectionThresholdMs) {
+        this.leakDetectionThresholdMs = Math.max(0, leakDetectionThresholdMs);
+    }
+
+    public void setHousekeepingIntervalMs(long housekeepingIntervalMs) {
+        checkNotStarted();
+        this.housekeepingIntervalMs = Math.max(1000, housekeepingIntervalMs);
+    }
+
+    private void checkNotStarted() {
+        if (started) {
+            throw new IllegalStateException("Pool size settings cannot be changed after start().");
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        setConnectionTimeoutMs(seconds * 1000L);
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return (int) (connectionTimeoutMs / 1000);
+    }
+
+    @Override
+    public Logger getParentLogger() {
+        return LOGGER;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("ConnectionPool does not wrap " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    private final class PooledConnection {
+        private final Connection physical;
+        private volatile long lastReturnedAt = System.currentTimeMillis();
+        private volatile long borrowedAt;
+        private volatile boolean leakReported;
+        private volatile Throwable borrowStack;
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        private Connection newHandle() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new Handle(this));
+        }
+    }
+
+    /**
+     * Per-borrow view of a pooled connection. Closing it returns the physical
+     * connection to the pool; any further use of the handle fails.
+     */
+    private final class Handle implements InvocationHandler {
+        private PooledConnection pooled;
+
+        private Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    PooledConnection toRelease;
+                    synchronized (this) {
+                        toRelease = pooled;
+                        pooled = null;
+                    }
+                    if (toRelease != null) {
+                        release(toRelease);
+                    }
+                    return null;
+                case "isClosed":
+                    return pooled == null || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + (pooled == null ? "closed" : pooled.physical) + "]";
+                default:
+                    break;
+            }
+            PooledConnection current = pooled;
+            if (current == null) {
+                throw new SQLException("Connection is closed.");
+            }
+            try {
+                return method.invoke(current.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package ict.db;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+/**
+ * Per-DAO-method database metrics: how long the method held its connection,
+ * how long it waited for one, how many rows it read and how many calls
+ * ended in a SQLException.
+ * <p>
+ * The DAOs need no changes: {@link #meter(DataSource)} wraps the data source
+ * they are built on, and each connection is attributed to the ict.db method
+ * that asked for it. The connection is held from checkout to close, so its
+ * hold time is the method's time in the database; a method that takes a
+ * second connection (e.g. through another DAO) shows up as two calls, under
+ * each method's own name.
+ */
+public class DaoMetrics {
+
+    private static final double[] SECONDS = { 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5,
+            10, 30 };
+    private static final double[] ROWS = { 0, 1, 10, 100, 1000, 10000, 100000, 1000000 };
+
+    private final ConcurrentHashMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+    private volatile DataSource pool;
+
+    static final class MethodMetrics {
+        private final Histogram duration = new Histogram(SECONDS);
+        private final Histogram connectionWait = new Histogram(SECONDS);
+        private final Histogram rows = new Histogram(ROWS);
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder connectionFailures = new LongAdder();
+    }
+
+    /** Returns a data source whose connections report to these metrics. */
+    public DataSource meter(DataSource dataSource) {
+        return meter(dataSource, null);
+    }
+
+    /**
+     * As {@link #meter(DataSource)}, also passing statements over the slow
+     * query threshold to slowQueryLog (may be null).
+     */
+    public DataSource meter(DataSource dataSource, SlowQueryLog slowQueryLog) {
+        this.pool = dataSource;
+        return new MeteredDataSource(dataSource, this, slowQueryLog);
+    }
+
+    MethodMetrics forMethod(String method) {
+        MethodMetrics metrics = methods.get(method);
+        return metrics != null ? metrics : methods.computeIfAbsent(method, key -> new MethodMetrics());
+    }
+
+    void recordConnectionWait(MethodMetrics metrics, long nanos) {
+        metrics.connectionWait.observe(nanos / 1e9);
+    }
+
+    void recordConnectionFailure(MethodMetrics metrics) {
+        metrics.connectionFailures.increment();
+    }
+
+    void recordCall(MethodMetrics metrics, long heldNanos, long rowsRead, boolean failed) {
+        metrics.duration.observe(heldNanos / 1e9);
+        metrics.rows.observe(rowsRead);
+        if (failed) {
+            metrics.errors.increment();
+        }
+    }
+
+    /** Writes every method's metrics and the pool gauges in the Prometheus text format (0.0.4). */
+    public void writePrometheus(PrintWriter out) {
+        Map<String, MethodMetrics> sorted = new TreeMap<>(methods);
+
+        out.append("# HELP ict_dao_call_duration_seconds Time a DAO method held its database connection.").append('\n');
+        out.append("# TYPE ict_dao_call_duration_seconds histogram").append('\n');
+        for (Map.Entry<String, MethodMetrics> entry : sorted.entrySet()) {
+            entry.getValue().duration.write(out, "ict_dao_call_duration_seconds", label(entry.getKey()));
+        }
+        out.append("# HELP ict_dao_connection_wait_seconds Time a DAO method waited for a pooled connection.").append('\n');
+        out.append("# TYPE ict_dao_connection_wait_seconds histogram").append('\n');
+        for (Map.Entry<String, MethodMetrics> entry : sorted.entrySet()) {
+            entry.getValue().connectionWait.write(out, "ict_dao_connection_wait_seconds", label(entry.getKey()));
+        }
+        out.append("# HELP ict_dao_rows_returned Rows a DAO method read from its result sets per call.").append('\n');
+        out.append("# TYPE ict_dao_rows_returned histogram").append('\n');
+        for (Map.Entry<String, MethodMetrics> entry : sorted.entrySet()) {
+            entry.getValue().rows.write(out, "ict_dao_rows_returned", label(entry.getKey()));
+        }
+        out.append("# HELP ict_dao_call_errors_total DAO calls in which a statement failed with a SQLException.").append('\n');
+        out.append("# TYPE ict_dao_call_errors_total counter").append('\n');
+        for (Map.Entry<String, MethodMetrics> entry : sorted.entrySet()) {
+            out.append("ict_dao_call_errors_total{").append(label(entry.getKey())).append("} ")
+                    .append(Long.toString(entry.getValue().errors.sum())).append('\n');
+        }
+        out.append("# HELP ict_dao_connection_failures_total DAO calls that could not get a connection.").append('\n');
+        out.append("# TYPE ict_dao_connection_failures_total counter").append('\n');
+        for (Map.Entry<String, MethodMetrics> entry : sorted.entrySet()) {
+            out.append("ict_dao_connection_failures_total{").append(label(entry.getKey())).append("} ")
+                    .append(Long.toString(entry.getValue().connectionFailures.sum())).append('\n');
+        }
+
+        if (pool instanceof ConnectionPool) {
+            writePool(out, (ConnectionPool) pool);
+        }
+    }
+
+    private static void writePool(PrintWriter out, ConnectionPool pool) {
+        out.append("# HELP ict_db_pool_connections Pooled connections by state.").append('\n');
+        out.append("# TYPE ict_db_pool_connections gauge").append('\n');
+        out.append("ict_db_pool_connections{state=\"active\"} " + pool.getActiveConnections()).append('\n');
+        out.append("ict_db_pool_connections{state=\"idle\"} " + pool.getIdleConnections()).append('\n');
+        out.append("# HELP ict_db_pool_max_connections Configured pool size.").append('\n');
+        out.append("# TYPE ict_db_pool_max_connections gauge").append('\n');
+        out.append("ict_db_pool_max_connections " + pool.getMaxPoolSize()).append('\n');
+        out.append("# HELP ict_db_pool_threads_waiting Threads waiting for a connection.").append('\n');
+        out.append("# TYPE ict_db_pool_threads_waiting gauge").append('\n');
+        out.append("ict_db_pool_threads_waiting " + pool.getThreadsAwaitingConnection()).append('\n');
+        out.append("# TYPE ict_db_pool_borrows_total counter").append('\n');
+        out.append("ict_db_pool_borrows_total " + pool.getBorrowCount()).append('\n');
+        out.append("# TYPE ict_db_pool_timeouts_total counter").append('\n');
+        out.append("ict_db_pool_timeouts_total " + pool.getTimeoutCount()).append('\n');
+        out.append("# TYPE ict_db_pool_leaks_total counter").append('\n');
+        out.append("ict_db_pool_leaks_total " + pool.getLeakCount()).append('\n');
+    }
+
+    private static String label(String method) {
+        return "method=\"" + method + "\"";
+    }
+}
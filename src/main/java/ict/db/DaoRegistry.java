@@ -0,0 +1,117 @@
+package ict.db;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+/**
+ * Holds the single, shared instance of each DAO. Built once at deploy time by
+ * the servlet context listener; the DAOs are stateless apart from their
+ * collaborators, so the same instances are safe to use from every request
+ * thread.
+ * <p>
+ * The DAOs are built on a metered view of the data source, so every DAO
+ * method's database time shows up in {@link #getDaoMetrics()}; given a
+ * {@link SlowQueryLog}, statements over its threshold are logged there too.
+ */
+public class DaoRegistry {
+
+    private final DataSource dataSource;
+    private final DaoMetrics daoMetrics;
+    private final SlowQueryLog slowQueryLog;
+    private final DataVersions dataVersions;
+    private final InventoryLedger inventoryLedger;
+    private final StockHistory stockHistory;
+    private final FruitDB fruitDb;
+    private final WarehouseDB warehouseDb;
+    private final BakeryShopDB bakeryShopDb;
+    private final DeliveryDB deliveryDb;
+    private final UserDB userDb;
+    private final ReservationDB reservationDb;
+    private final BorrowingDB borrowingDb;
+
+    public DaoRegistry(DataSource dataSource) {
+        this(dataSource, null);
+    }
+
+    public DaoRegistry(DataSource dataSource, SlowQueryLog slowQueryLog) {
+        this.daoMetrics = new DaoMetrics();
+        this.slowQueryLog = slowQueryLog;
+        this.dataSource = daoMetrics.meter(dataSource, slowQueryLog);
+        this.dataVersions = new DataVersions();
+        this.inventoryLedger = new InventoryLedger(this.dataSource);
+        this.stockHistory = new StockHistory(this.dataSource);
+        this.fruitDb = new FruitDB(this.dataSource, dataVersions);
+        this.warehouseDb = new WarehouseDB(this.dataSource);
+        this.bakeryShopDb = new BakeryShopDB(this.dataSource);
+        this.deliveryDb = new DeliveryDB(this.dataSource);
+        this.userDb = new UserDB(this.dataSource);
+        this.reservationDb = new ReservationDB(this.dataSource, fruitDb, warehouseDb, dataVersions, inventoryLedger);
+        this.borrowingDb = new BorrowingDB(this.dataSource, bakeryShopDb, warehouseDb, fruitDb, dataVersions,
+                inventoryLedger);
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public DaoMetrics getDaoMetrics() {
+        return daoMetrics;
+    }
+
+    /** The slow query log the DAOs report to, or null if there is none. */
+    public SlowQueryLog getSlowQueryLog() {
+        return slowQueryLog;
+    }
+
+    /** Stock levels shared by the DAOs; must be started before they are used. */
+    public InventoryLedger getInventoryLedger() {
+        return inventoryLedger;
+    }
+
+    /** Movement history and snapshots behind the inventory table. */
+    public StockHistory getStockHistory() {
+        return stockHistory;
+    }
+
+    /** Every reference data cache of the DAOs, for metrics. */
+    public List<ReferenceCache<?, ?>> getReferenceCaches() {
+        return Collections.unmodifiableList(Arrays.asList(fruitDb.getFruitCache(), bakeryShopDb.getShopCache(),
+                warehouseDb.getWarehouseCache(), warehouseDb.getCentralWarehouseCache(),
+                warehouseDb.getSourceWarehouseCache()));
+    }
+
+    public DataVersions getDataVersions() {
+        return dataVersions;
+    }
+
+    public FruitDB getFruitDb() {
+        return fruitDb;
+    }
+
+    public WarehouseDB getWarehouseDb() {
+        return warehouseDb;
+    }
+
+    public BakeryShopDB getBakeryShopDb() {
+        return bakeryShopDb;
+    }
+
+    public DeliveryDB getDeliveryDb() {
+        return deliveryDb;
+    }
+
+    public UserDB getUserDb() {
+        return userDb;
+    }
+
+    public ReservationDB getReservationDb() {
+        return reservationDb;
+    }
+
+    public BorrowingDB getBorrowingDb() {
+        return borrowingDb;
+    }
+}
@@ -0,0 +1,61 @@
+package ict.db;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-dataset change counters. Every DAO method that writes inventory,
+ * reservations, borrowings, deliveries or fruits bumps the matching dataset
+ * once its transaction has committed, so a page built from those datasets can
+ * be revalidated (ETag / Last-Modified) without querying MySQL.
+ *
+ * The counters live in memory and only see writes made through this
+ * application instance. The epoch, taken at startup, is part of every tag so
+ * that tags from before a restart never match.
+ */
+public class DataVersions {
+
+    public enum Dataset {
+        FRUITS, INVENTORY, RESERVATIONS, BORROWINGS, DELIVERIES
+    }
+
+    private final long epoch;
+    private final AtomicLongArray versions = new AtomicLongArray(Dataset.values().length);
+    private final AtomicLongArray modifiedAt = new AtomicLongArray(Dataset.values().length);
+
+    public DataVersions() {
+        this.epoch = System.currentTimeMillis();
+        for (int i = 0; i < modifiedAt.length(); i++) {
+            modifiedAt.set(i, epoch);
+        }
+    }
+
+    public void bump(Dataset... datasets) {
+        long now = System.currentTimeMillis();
+        for (Dataset dataset : datasets) {
+            versions.incrementAndGet(dataset.ordinal());
+            modifiedAt.accumulateAndGet(dataset.ordinal(), now, Math::max);
+        }
+    }
+
+    public long getVersion(Dataset dataset) {
+        return versions.get(dataset.ordinal());
+    }
+
+    /** Latest change time of any of the datasets, in milliseconds. */
+    public long getLastModified(Dataset... datasets) {
+        long latest = epoch;
+        for (Dataset dataset : datasets) {
+            latest = Math.max(latest, modifiedAt.get(dataset.ordinal()));
+        }
+        return latest;
+    }
+
+    /** A short token that changes whenever any of the datasets changes. */
+    public String tag(Dataset... datasets) {
+        StringBuilder tag = new StringBuilder(Long.toString(epoch, 36));
+        for (Dataset dataset : datasets) {
+            tag.append('.').append(Long.toString(versions.get(dataset.ordinal()), 36));
+        }
+        return tag.toString();
+    }
+}
@@ -2,7 +2,6 @@ package ict.db;
 
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -11,26 +10,21 @@ import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.sql.DataSource;
+
 import ict.bean.DeliveryBean;
 
 public class DeliveryDB {
 
     private static final Logger LOGGER = Logger.getLogger(DeliveryDB.class.getName());
-    private String dburl, username, password;
+    private final DataSource dataSource;
 
-    public DeliveryDB(String dburl, String dbUser, String dbPassword) {
-        this.dburl = dburl;
-        this.username = dbUser;
-        this.password = dbPassword;
+    public DeliveryDB(DataSource dataSource) {
+        this.dataSource = dataSource;
     }
 
     public Connection getConnection() throws SQLException, IOException {
-        try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-        } catch (ClassNotFoundException e) {
-            throw new IOException("Database driver not found.", e);
-        }
-        return DriverManager.getConnection(dburl, username, password);
+        return dataSource.getConnection();
     }
 
     private void closeQuietly(AutoCloseable resource) {
@@ -43,6 +37,44 @@ public class DeliveryDB {
         }
     }
 
+    /**
+     * One window of the deliveries list for DataTables server-side mode. Column
+     * indexes follow listDeliveries.jsp. warehouseId restricts the list to
+     * deliveries from or to that warehouse; null lists all.
+     */
+    public Page<DeliveryBean> getDeliveriesPage(PageRequest request, Integer warehouseId) {
+        PagedQuery query = new PagedQuery(
+                "d.*, f.fruit_name, w_from.warehouse_name AS from_warehouse_name, w_to.warehouse_name AS to_warehouse_name",
+                "FROM deliveries d " +
+                        "JOIN fruits f ON d.fruit_id = f.fruit_id " +
+                        "JOIN warehouses w_from ON d.from_warehouse_id = w_from.warehouse_id " +
+                        "JOIN warehouses w_to ON d.to_warehouse_id = w_to.warehouse_id",
+                "d.delivery_id")
+                .keyColumn(0, "d.delivery_id")
+                .sortColumn(1, "f.fruit_name")
+                .sortColumn(2, "w_from.warehouse_name")
+                .sortColumn(3, "w_to.warehouse_name")
+                .sortColumn(4, "d.quantity")
+                .dateKeyColumn(5, "d.delivery_date")
+                .sortColumn(6, "d.status")
+                .searchable("f.fruit_name", "w_from.warehouse_name", "w_to.warehouse_name", "d.status")
+                .defaultOrder(5, false);
+        if (warehouseId != null) {
+            query.where("(d.from_warehouse_id = ? OR d.to_warehouse_id = ?)", warehouseId, warehouseId);
+        }
+
+        Connection conn = null;
+        try {
+            conn = getConnection();
+            return query.fetch(conn, request, DeliveryDB::mapRowToDeliveryBean);
+        } catch (SQLException | IOException e) {
+            LOGGER.log(Level.SEVERE, "Error fetching deliveries page", e);
+            return new Page<>(new ArrayList<>(), 0, 0, null);
+        } finally {
+            closeQuietly(conn);
+        }
+    }
+
     public List<DeliveryBean> getAllDeliveries() {
         List<DeliveryBean> deliveries = new ArrayList<>();
         String sql = "SELECT d.*, f.fruit_name, w_from.warehouse_name AS from_warehouse_name, w_to.warehouse_name AS to_warehouse_name "
@@ -106,7 +138,7 @@ public class DeliveryDB {
         return deliveries;
     }
 
-    private DeliveryBean mapRowToDeliveryBean(ResultSet rs) throws SQLException {
+    static DeliveryBean mapRowToDeliveryBean(ResultSet rs) throws SQLException {
         DeliveryBean bean = new DeliveryBean();
         bean.setDeliveryId(rs.getInt("delivery_id"));
         bean.setFruitId(rs.getInt("fruit_id"));
@@ -2,7 +2,6 @@ package ict.db;
 
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -10,30 +9,31 @@ import java.util.ArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.sql.DataSource;
+
 import ict.bean.FruitBean;
 
 public class FruitDB {
 
     private static final Logger LOGGER = Logger.getLogger(FruitDB.class.getName());
-    private String dburl, username, password;
+    private static final int CACHE_MAX_SIZE = 2000;
+    private static final long CACHE_TTL_MILLIS = 10 * 60 * 1000L;
+    private final DataSource dataSource;
+    private final DataVersions dataVersions;
+    private final ReferenceCache<Integer, FruitBean> fruitCache = new ReferenceCache<>("fruits", CACHE_MAX_SIZE,
+            CACHE_TTL_MILLIS);
+
+    public FruitDB(DataSource dataSource, DataVersions dataVersions) {
+        this.dataSource = dataSource;
+        this.dataVersions = dataVersions;
+    }
 
-    public FruitDB(String dburl, String dbUser, String dbPassword) {
-        this.dburl = dburl;
-        this.username = dbUser;
-        this.password = dbPassword;
+    public ReferenceCache<Integer, FruitBean> getFruitCache() {
+        return fruitCache;
     }
 
     public Connection getConnection() throws SQLException, IOException {
-        try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            LOGGER.log(Level.FINE, "MySQL JDBC Driver loaded.");
-        } catch (ClassNotFoundException e) {
-            LOGGER.log(Level.SEVERE, "MySQL JDBC Driver not found.", e);
-            throw new IOException("Database driver not found.", e);
-        }
-        Connection conn = DriverManager.getConnection(dburl, username, password);
-        LOGGER.log(Level.FINE, "Database connection established to {0}", dburl);
-        return conn;
+        return dataSource.getConnection();
     }
 
     public boolean addFruit(String fruitName, String sourceCountry) {
@@ -61,6 +61,7 @@ public class FruitDB {
 
             if (rowsAffected >= 1) {
                 isSuccess = true;
+                dataVersions.bump(DataVersions.Dataset.FRUITS);
                 LOGGER.log(Level.INFO, "Fruit '{0}' added successfully.", fruitName.trim());
             } else {
                 LOGGER.log(Level.WARNING, "Fruit add operation affected 0 rows for name: {0}", fruitName.trim());
@@ -94,6 +95,8 @@ public class FruitDB {
         PreparedStatement ps = null;
         ResultSet rs = null;
 
+        // Read before the query so a fruit updated while it runs is not primed.
+        long cacheGeneration = fruitCache.generation();
         try {
             c = getConnection();
             ps = c.prepareStatement(sql);
@@ -106,6 +109,9 @@ public class FruitDB {
                 fruit.setFruitName(rs.getString("fruit_name"));
                 fruit.setSourceCountry(rs.getString("source_country"));
                 fruits.add(fruit);
+                fruitCache.put(fruit.getFruitId(),
+                        new FruitBean(fruit.getFruitId(), fruit.getFruitName(), fruit.getSourceCountry()),
+                        cacheGeneration);
             }
             LOGGER.log(Level.INFO, "Fetched {0} fruits.", fruits.size());
 
@@ -143,6 +149,8 @@ public class FruitDB {
             int row = ps.executeUpdate();
             if (row >= 1) {
                 isSuccess = true;
+                fruitCache.invalidate(fruitId);
+                dataVersions.bump(DataVersions.Dataset.FRUITS);
                 LOGGER.log(Level.INFO, "Fruit updated successfully: ID={0}", fruitId);
             } else {
                 LOGGER.log(Level.WARNING, "Fruit update failed: No rows affected for ID={0}", fruitId);
@@ -163,6 +171,12 @@ public class FruitDB {
     }
 
     public FruitBean getFruitById(int fruitId) {
+        FruitBean cached = fruitCache.get(fruitId, this::loadFruitById);
+        return cached == null ? null
+                : new FruitBean(cached.getFruitId(), cached.getFruitName(), cached.getSourceCountry());
+    }
+
+    private FruitBean loadFruitById(int fruitId) {
         Connection c = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
@@ -208,6 +222,8 @@ public class FruitDB {
             int row = ps.executeUpdate();
             if (row >= 1) {
                 isSuccess = true;
+                fruitCache.invalidate(fruitId);
+                dataVersions.bump(DataVersions.Dataset.FRUITS);
                 LOGGER.log(Level.INFO, "Fruit deleted successfully with ID: {0}", fruitId);
             } else {
                 LOGGER.log(Level.WARNING, "Fruit deletion failed. No fruit found with ID: {0}", fruitId);
@@ -0,0 +1,54 @@
+package ict.db;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-bucket histogram that can be updated from any thread without
+ * locking, written out in the Prometheus text format.
+ */
+final class Histogram {
+
+    private final double[] upperBounds;
+    private final LongAdder[] buckets;
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder sum = new DoubleAdder();
+
+    /** upperBounds must be ascending; a final +Inf bucket is implied. */
+    Histogram(double[] upperBounds) {
+        this.upperBounds = upperBounds;
+        this.buckets = new LongAdder[upperBounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void observe(double value) {
+        int i = 0;
+        while (i < upperBounds.length && value > upperBounds[i]) {
+            i++;
+        }
+        buckets[i].increment();
+        count.increment();
+        sum.add(value);
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    /** Writes the _bucket (cumulative), _sum and _count samples for one label set. */
+    void write(PrintWriter out, String name, String labels) {
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i].sum();
+            String le = i < upperBounds.length ? Double.toString(upperBounds[i]) : "+Inf";
+            out.append(name).append("_bucket{").append(labels).append(",le=\"").append(le).append("\"} ")
+                    .append(Long.toString(cumulative)).append('\n');
+        }
+        out.append(name).append("_sum{").append(labels).append("} ").append(Double.toString(sum.sum())).append('\n');
+        out.append(name).append("_count{").append(labels).append("} ").append(Long.toString(cumulative))
+                .append('\n');
+    }
+}
@@ -0,0 +1,1225 @@
+package ict.db;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import ict.bean.InventoryBean;
+
+/**
+ * Authoritative in-memory stock levels for every (fruit, shop) and
+ * (fruit, warehouse) pair, persisted write-behind to the inventory table.
+ * <p>
+ * Stock is read and changed here instead of with SELECT ... FOR UPDATE on
+ * the inventory rows. A stock-moving transaction builds a {@link Change},
+ * {@link Change#apply() applies} it (decrements are checked and taken at
+ * once, so two transactions can never both spend the same stock),
+ * {@link Change#journal(Connection) journals} the deltas to
+ * inventory_journal inside its own database transaction and, after
+ * commit, calls {@link Change#committed()}, which makes the increments
+ * visible. A rollback calls {@link Change#revert()} to give the decrements
+ * back.
+ * Increments therefore never become spendable before they are durable.
+ * <p>
+ * A background thread moves committed journal rows into the append-only
+ * stock_movements history and folds them into inventory in the same
+ * transaction, so inventory is always the materialized sum of the history
+ * (see {@link StockHistory}). Stock by location is read from memory
+ * ({@link #getStockAt}, {@link #getLocationIds}); only the aggregate
+ * reports still query the table, and they call {@link #flushPending()}
+ * first, so they see every committed change. On {@link #start()} leftover journal rows
+ * are applied first, then the table is loaded.
+ * <p>
+ * The flush never trusts memory alone. Each location's delta is applied only
+ * if the row still holds the quantity the ledger last wrote and the result
+ * is not negative. A row changed outside the ledger is re-read, the
+ * difference is recorded as an EXTERNAL movement and taken into the
+ * in-memory stock. Sales made between such an edit and the flush that finds
+ * it were checked against the old stock; if the row cannot cover them, their
+ * delta is held in the journal and retried on every flush, the location is
+ * logged, shown as holding nothing and refuses withdrawals until a stock
+ * count ({@link #changeTo}) covers the held rows, so stock is never oversold
+ * silently.
+ * <p>
+ * Only one application instance may own the ledger. {@link #start()} takes
+ * the inventory_ledger_lease row and refuses to start while another instance
+ * has renewed it within the lease timeout. The lease is renewed in the
+ * background, checked in every flush transaction and released on shutdown.
+ * An instance that has not renewed it for half the timeout refuses stock
+ * changes until it does, so it has stopped well before another
+ * instance may take over; one that finds the lease taken stops for good.
+ */
+public class InventoryLedger {
+
+    private static final Logger LOGGER = Logger.getLogger(InventoryLedger.class.getName());
+    private static final long WAREHOUSE_FLAG = 1L << 31;
+    private static final long LOCATION_MASK = WAREHOUSE_FLAG - 1;
+    private static final String LEASE_NAME = "inventory";
+
+    private final DataSource dataSource;
+    private long flushIntervalMs = 250;
+    private int flushBatchSize = 1000;
+    private long leaseTimeoutMs = 30000;
+
+    private final Object tableLock = new Object();
+    private final Object flushLock = new Object();
+    private volatile Table table = new Table(new Cell[0]);
+    private final AtomicLong journaled = new AtomicLong();
+    private volatile long flushedThrough = -1;
+    private ScheduledExecutorService flusher;
+    private volatile boolean started;
+
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + " " + UUID.randomUUID();
+    private volatile long leaseRenewedAt;
+    private volatile boolean fenced;
+    // Guarded by flushLock: locations whose journal rows are held back.
+    private final Set<Long> heldKeys = new HashSet<>();
+
+    private final AtomicLong flushedRows = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+    private final AtomicLong externalChanges = new AtomicLong();
+    private volatile int heldRows;
+
+    public InventoryLedger(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    static long shopKey(int fruitId, int shopId) {
+        return ((long) fruitId << 32) | (shopId & LOCATION_MASK);
+    }
+
+    static long warehouseKey(int fruitId, int warehouseId) {
+        return ((long) fruitId << 32) | WAREHOUSE_FLAG | (warehouseId & LOCATION_MASK);
+    }
+
+    /** "FruitID=n, ShopID=m" or "FruitID=n, WarehouseID=m", for log messages. */
+    static String describeKey(long key) {
+        return "FruitID=" + fruitOf(key) + (isWarehouse(key) ? ", WarehouseID=" : ", ShopID=") + locationOf(key);
+    }
+
+    private static int fruitOf(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static boolean isWarehouse(long key) {
+        return (key & WAREHOUSE_FLAG) != 0;
+    }
+
+    private static int locationOf(long key) {
+        return (int) (key & LOCATION_MASK);
+    }
+
+    /** The key bits naming the shop or warehouse, the same for every fruit held there. */
+    private static long placeOf(long key) {
+        return key & (WAREHOUSE_FLAG | LOCATION_MASK);
+    }
+
+    /**
+     * Takes the lease, applies leftover journal rows, loads the inventory
+     * table and starts the flusher. Throws if another instance holds the
+     * lease.
+     */
+    public synchronized void start() throws SQLException {
+        if (started) {
+            return;
+        }
+        acquireLease();
+        try {
+            int recovered = flushAll();
+            if (recovered > 0) {
+                LOGGER.log(Level.WARNING, "Applied {0} inventory journal rows left over from the last run.",
+                        recovered);
+            }
+            load();
+        } catch (SQLException | RuntimeException e) {
+            releaseLease();
+            throw e;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ict-db-inventory-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        long renewMs = Math.max(10, leaseTimeoutMs / 3);
+        flusher.scheduleWithFixedDelay(this::renewLease, renewMs, renewMs, TimeUnit.MILLISECONDS);
+        fenced = false;
+        started = true;
+        LOGGER.log(Level.INFO, "Inventory ledger started with {0} stock rows (flush every {1} ms).",
+                new Object[] { table.size, flushIntervalMs });
+    }
+
+    /** Stops the flusher and writes out everything journaled so far. */
+    public synchronized void shutdown() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flushAll();
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Final inventory flush failed; the journal is applied on next start.", e);
+        }
+        releaseLease();
+    }
+
+    private void checkStarted() {
+        if (!started) {
+            throw new IllegalStateException("Inventory ledger is not started.");
+        }
+    }
+
+    /**
+     * As {@link #checkStarted()}, and fails with a SQLException, so callers
+     * roll back like on any database error, unless this instance still
+     * holds the lease.
+     */
+    private void checkOwned() throws SQLException {
+        checkStarted();
+        if (fenced) {
+            throw new SQLException("Inventory ledger has stopped: another instance owns the inventory.");
+        }
+        if (System.nanoTime() - leaseRenewedAt > TimeUnit.MILLISECONDS.toNanos(leaseTimeoutMs / 2)) {
+            // Another instance may take over once leaseTimeoutMs has passed; stop well before that.
+            throw new SQLException("Inventory ledger lease has not been renewed for " + leaseTimeoutMs / 2
+                    + " ms; stock cannot change until it is.");
+        }
+    }
+
+    /**
+     * Takes the lease row for this instance, unless another owner renewed it
+     * less than leaseTimeoutMs ago by the database clock.
+     */
+    private void acquireLease() throws SQLException {
+        String selectSql = "SELECT owner, TIMESTAMPDIFF(MICROSECOND, renewed_at, NOW(3)) DIV 1000 AS idle_ms "
+                + "FROM inventory_ledger_lease WHERE lease_name = ? FOR UPDATE";
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(false);
+            ps = conn.prepareStatement(selectSql);
+            ps.setString(1, LEASE_NAME);
+            rs = ps.executeQuery();
+            if (!rs.next()) {
+                throw new SQLException("No inventory_ledger_lease row; apply migration V006.");
+            }
+            String holder = rs.getString("owner");
+            long idleMs = rs.getLong("idle_ms");
+            closeQuietly(rs);
+            closeQuietly(ps);
+            rs = null;
+            ps = null;
+            if (holder != null && !holder.equals(owner) && idleMs < leaseTimeoutMs) {
+                throw new SQLException("The inventory ledger is owned by another instance (" + holder
+                        + ", renewed " + idleMs + " ms ago). Only one instance may run against this database; "
+                        + "stop the other one, or wait " + leaseTimeoutMs + " ms if it has died.");
+            }
+            if (holder != null && !holder.equals(owner)) {
+                LOGGER.log(Level.WARNING, "Taking over the inventory ledger lease from {0}, silent for {1} ms.",
+                        new Object[] { holder, idleMs });
+            }
+            ps = conn.prepareStatement(
+                    "UPDATE inventory_ledger_lease SET owner = ?, renewed_at = NOW(3) WHERE lease_name = ?");
+            ps.setString(1, owner);
+            ps.setString(2, LEASE_NAME);
+            ps.executeUpdate();
+            conn.commit();
+            leaseRenewedAt = System.nanoTime();
+        } catch (SQLException | RuntimeException e) {
+            rollbackQuietly(conn);
+            throw e;
+        } finally {
+            closeQuietly(rs);
+            closeQuietly(ps);
+            closeTransaction(conn);
+        }
+    }
+
+    private void renewLease() {
+        Connection conn = null;
+        PreparedStatement ps = null;
+        try {
+            conn = dataSource.getConnection();
+            ps = conn.prepareStatement("UPDATE inventory_ledger_lease SET renewed_at = NOW(3) "
+                    + "WHERE lease_name = ? AND owner = ?");
+            ps.setString(1, LEASE_NAME);
+            ps.setString(2, owner);
+            if (ps.executeUpdate() == 1) {
+                leaseRenewedAt = System.nanoTime();
+            } else {
+                fence("another instance has taken its lease");
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Could not renew the inventory ledger lease; retrying.", e);
+        } finally {
+            closeQuietly(ps);
+            closeQuietly(conn);
+        }
+    }
+
+    private void releaseLease() {
+        Connection conn = null;
+        PreparedStatement ps = null;
+        try {
+            conn = dataSource.getConnection();
+            ps = conn.prepareStatement("UPDATE inventory_ledger_lease SET owner = NULL, renewed_at = NULL "
+                    + "WHERE lease_name = ? AND owner = ?");
+            ps.setString(1, LEASE_NAME);
+            ps.setString(2, owner);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Could not release the inventory ledger lease; it expires on its own.", e);
+        } finally {
+            closeQuietly(ps);
+            closeQuietly(conn);
+        }
+    }
+
+    /** Takes a share lock on the lease row in conn's transaction and fails unless this instance owns it. */
+    private void checkLease(Connection conn) throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = conn.prepareStatement(
+                    "SELECT owner FROM inventory_ledger_lease WHERE lease_name = ? LOCK IN SHARE MODE");
+            ps.setString(1, LEASE_NAME);
+            rs = ps.executeQuery();
+            if (!rs.next() || !owner.equals(rs.getString("owner"))) {
+                fence("another instance has taken its lease");
+                throw new SQLException("This instance no longer owns the inventory ledger lease.");
+            }
+        } finally {
+            closeQuietly(rs);
+            closeQuietly(ps);
+        }
+    }
+
+    private void fence(String reason) {
+        if (!fenced) {
+            fenced = true;
+            LOGGER.log(Level.SEVERE, "Inventory ledger stopped: {0}. Restart this instance once it is the only "
+                    + "one running against the database.", reason);
+        }
+    }
+
+    /** Current quantity, or 0 if the location has never held the fruit or is held (see {@link Cell#held}). */
+    int getQuantity(long key) throws SQLException {
+        checkOwned();
+        Cell cell = table.find(key);
+        return cell == null ? 0 : cell.available();
+    }
+
+    /**
+     * Stock rows held at one shop (warehouse false) or warehouse, without
+     * fruit names. Locations that have never held stock in the table are
+     * left out, like the rows a query would not find.
+     */
+    List<InventoryBean> getStockAt(boolean warehouse, int locationId) {
+        checkStarted();
+        long place = warehouse ? warehouseKey(0, locationId) : shopKey(0, locationId);
+        Cell[] cells = table.at(place);
+        List<InventoryBean> rows = new ArrayList<>(cells.length);
+        for (Cell cell : cells) {
+            int quantity = cell.available();
+            if (cell.inventoryId == 0 && quantity == 0) {
+                continue;
+            }
+            InventoryBean item = new InventoryBean();
+            item.setInventoryId(cell.inventoryId);
+            item.setFruitId(fruitOf(cell.key));
+            item.setShopId(warehouse ? null : locationId);
+            item.setWarehouseId(warehouse ? locationId : null);
+            item.setQuantity(quantity);
+            rows.add(item);
+        }
+        return rows;
+    }
+
+    /**
+     * Ids of the shops (warehouse false) or warehouses that have held stock,
+     * in no particular order; callers resolve them to cities and countries
+     * through the reference caches.
+     */
+    List<Integer> getLocationIds(boolean warehouse) {
+        checkStarted();
+        List<Integer> ids = new ArrayList<>();
+        for (long place : table.places()) {
+            if (isWarehouse(place) == warehouse) {
+                ids.add(locationOf(place));
+            }
+        }
+        return ids;
+    }
+
+    /** Why stock moved; recorded with every delta in stock_movements. */
+    public enum Cause {
+        /** Stock opening balance, written once by the V005 migration. */
+        OPENING,
+        /** Shop order taken from a source warehouse (reference: none, one order spans several reservations). */
+        ORDER,
+        /** Borrowing approved by the lending shop (reference: borrowing id). */
+        BORROW_APPROVAL,
+        /** Reservation checked out to a shop (reference: reservation id). */
+        CHECKOUT,
+        /** Stock shipped from a source warehouse to a central warehouse (reference: delivery id). */
+        DELIVERY,
+        /** Stock count entered by hand. */
+        ADJUSTMENT,
+        /** Difference found by the flush in a row changed outside the ledger (reference: none). */
+        EXTERNAL
+    }
+
+    /** referenceId is the borrowing, reservation or other record behind the change, or null. */
+    Change change(Cause cause, Integer referenceId) throws SQLException {
+        checkOwned();
+        return new Change(cause, referenceId);
+    }
+
+    /**
+     * A manual stock count: key is set to quantity at once (see
+     * {@link Change#set}); journal and commit it like any other change.
+     */
+    Change changeTo(long key, int quantity) throws SQLException {
+        return change(Cause.ADJUSTMENT, null).set(key, quantity);
+    }
+
+    /**
+     * Stock deltas of one transaction, keyed like the ledger, with the cause
+     * and reference they are journaled under. Deltas for the same key and
+     * reference are merged, except those recorded by {@link #set}.
+     */
+    final class Change {
+        private final Cause cause;
+        private final Integer referenceId;
+        private long[] keys = new long[4];
+        private int[] deltas = new int[4];
+        private Integer[] referenceIds = new Integer[4];
+        private boolean[] counted = new boolean[4];
+        private int size;
+        private int taken;
+        private boolean applied;
+        private boolean done;
+        private long shortKey;
+        private int shortQuantity;
+
+        private Change(Cause cause, Integer referenceId) {
+            this.cause = cause;
+            this.referenceId = referenceId;
+        }
+
+        Change add(long key, int delta) {
+            return add(key, delta, referenceId);
+        }
+
+        /** Adds a delta journaled under its own reference, for changes that span several records. */
+        Change add(long key, int delta, Integer referenceId) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key && Objects.equals(referenceIds[i], referenceId) && !counted[i]) {
+                    deltas[i] += delta;
+                    return this;
+                }
+            }
+            append(key, delta, referenceId, false);
+            return this;
+        }
+
+        private void append(long key, int delta, Integer referenceId, boolean count) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                deltas = Arrays.copyOf(deltas, size * 2);
+                referenceIds = Arrays.copyOf(referenceIds, size * 2);
+                counted = Arrays.copyOf(counted, size * 2);
+            }
+            keys[size] = key;
+            deltas[size] = delta;
+            referenceIds[size] = referenceId;
+            counted[size] = count;
+            size++;
+        }
+
+        /**
+         * Sets key to quantity in one compare-and-set on its cell and records
+         * the difference from what the cell held at that moment as the delta,
+         * so concurrent changes are never lost in between. A count is stock
+         * that is physically there, so an increase is visible before commit;
+         * {@link #revert()} takes exactly the difference back. Deltas added
+         * before must have been applied.
+         */
+        Change set(long key, int quantity) {
+            if (taken != size) {
+                throw new IllegalStateException("Apply the pending deltas before setting a count.");
+            }
+            if (quantity < 0) {
+                throw new IllegalArgumentException("Stock count must not be negative: " + quantity);
+            }
+            Cell cell = cell(key);
+            int current;
+            do {
+                current = cell.quantity;
+            } while (!QUANTITY.compareAndSet(cell, current, quantity));
+            append(key, quantity - current, referenceId, true);
+            taken = size;
+            applied = true;
+            return this;
+        }
+
+        /**
+         * Takes every decrement, or none of them if any location holds too
+         * little; see {@link #getShortQuantity()}.
+         */
+        boolean apply() {
+            for (int i = taken; i < size; i++) {
+                if (deltas[i] < 0 && !take(keys[i], -deltas[i])) {
+                    for (int j = taken; j < i; j++) {
+                        if (deltas[j] < 0) {
+                            table.find(keys[j]).add(-deltas[j]);
+                        }
+                    }
+                    return false;
+                }
+            }
+            taken = size;
+            applied = true;
+            return true;
+        }
+
+        /**
+         * Adds a move of quantity from one key to another and takes the
+         * decrement at once, for changes built item by item where each item
+         * may fail on its own. Returns false, leaving the change as it was,
+         * if the source holds too little. Deltas added before must have been
+         * applied.
+         */
+        boolean move(long fromKey, long toKey, int quantity, Integer referenceId) {
+            if (!withdraw(fromKey, quantity, referenceId)) {
+                return false;
+            }
+            add(toKey, quantity, referenceId);
+            taken = size;
+            return true;
+        }
+
+        /** As {@link #move}, for stock that leaves the ledger's locations (e.g. goods in transit). */
+        boolean withdraw(long key, int quantity, Integer referenceId) {
+            if (taken != size) {
+                throw new IllegalStateException("Apply the pending deltas before adding moves.");
+            }
+            if (quantity <= 0) {
+                throw new IllegalArgumentException("Move quantity must be positive: " + quantity);
+            }
+            if (!take(key, quantity)) {
+                return false;
+            }
+            add(key, -quantity, referenceId);
+            taken = size;
+            applied = true;
+            return true;
+        }
+
+        private boolean take(long key, int amount) {
+            Cell cell = table.find(key);
+            while (true) {
+                int current = cell == null ? 0 : cell.quantity;
+                if (current < amount || (cell != null && cell.held)) {
+                    shortKey = key;
+                    shortQuantity = cell == null ? 0 : cell.available();
+                    return false;
+                }
+                if (QUANTITY.compareAndSet(cell, current, current - amount)) {
+                    return true;
+                }
+            }
+        }
+
+        /** Quantity held at the location that failed {@link #apply()} or {@link #move}. */
+        int getShortQuantity() {
+            return shortQuantity;
+        }
+
+        long getShortKey() {
+            return shortKey;
+        }
+
+        /** Appends the non-zero deltas to inventory_journal on conn, in the caller's transaction. */
+        void journal(Connection conn) throws SQLException {
+            String sql = "INSERT INTO inventory_journal (fruit_id, shop_id, warehouse_id, delta, cause, reference_id) "
+                    + "VALUES (?, ?, ?, ?, ?, ?)";
+            PreparedStatement ps = null;
+            try {
+                ps = conn.prepareStatement(sql);
+                int rows = 0;
+                for (int i = 0; i < size; i++) {
+                    if (deltas[i] == 0) {
+                        continue;
+                    }
+                    bindLocation(ps, keys[i]);
+                    ps.setInt(4, deltas[i]);
+                    ps.setString(5, cause.name());
+                    if (referenceIds[i] == null) {
+                        ps.setNull(6, Types.INTEGER);
+                    } else {
+                        ps.setInt(6, referenceIds[i]);
+                    }
+                    ps.addBatch();
+                    rows++;
+                }
+                if (rows > 0) {
+                    ps.executeBatch();
+                }
+            } finally {
+                closeQuietly(ps);
+            }
+        }
+
+        /** The journal rows are committed: make the increments visible. */
+        void committed() {
+            if (done) {
+                return;
+            }
+            done = true;
+            for (int i = 0; i < size; i++) {
+                if (deltas[i] > 0 && !counted[i]) {
+                    cell(keys[i]).add(deltas[i]);
+                }
+            }
+            journaled.incrementAndGet();
+        }
+
+        /** The transaction rolled back: give back what {@link #apply()} took. Safe to call more than once. */
+        void revert() {
+            if (done || !applied) {
+                return;
+            }
+            done = true;
+            for (int i = 0; i < taken; i++) {
+                if (deltas[i] < 0 || counted[i]) {
+                    table.find(keys[i]).add(-deltas[i]);
+                }
+            }
+        }
+    }
+
+    /** Sets (fruit, shop, warehouse) parameters 1-3 for key. */
+    private static void bindLocation(PreparedStatement ps, long key) throws SQLException {
+        ps.setInt(1, fruitOf(key));
+        if (isWarehouse(key)) {
+            ps.setNull(2, Types.INTEGER);
+            ps.setInt(3, locationOf(key));
+        } else {
+            ps.setInt(2, locationOf(key));
+            ps.setNull(3, Types.INTEGER);
+        }
+    }
+
+    private Cell cell(long key) {
+        Cell cell = table.find(key);
+        if (cell != null) {
+            return cell;
+        }
+        synchronized (tableLock) {
+            cell = table.find(key);
+            if (cell == null) {
+                cell = new Cell(key, 0, 0);
+                table = table.with(cell);
+            }
+            return cell;
+        }
+    }
+
+    private void load() throws SQLException {
+        String sql = "SELECT inventory_id, fruit_id, shop_id, warehouse_id, quantity FROM inventory";
+        List<Cell> cells = new ArrayList<>();
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            conn = dataSource.getConnection();
+            ps = conn.prepareStatement(sql);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                int fruitId = rs.getInt("fruit_id");
+                int shopId = rs.getInt("shop_id");
+                boolean shopRow = !rs.wasNull();
+                int warehouseId = rs.getInt("warehouse_id");
+                if (!shopRow && rs.wasNull()) {
+                    continue;
+                }
+                long key = shopRow ? shopKey(fruitId, shopId) : warehouseKey(fruitId, warehouseId);
+                cells.add(new Cell(key, rs.getInt("quantity"), rs.getInt("inventory_id")));
+            }
+        } finally {
+            closeQuietly(rs);
+            closeQuietly(ps);
+            closeQuietly(conn);
+        }
+        synchronized (tableLock) {
+            table = new Table(cells.toArray(new Cell[0]));
+        }
+    }
+
+    /**
+     * Folds the journal rows committed so far into inventory, for a query
+     * about to read the table. Returns at once if nothing was committed
+     * since the last flush.
+     */
+    public void flushPending() throws SQLException {
+        if (started && journaled.get() != flushedThrough) {
+            flushAll();
+        }
+    }
+
+    private void flushQuietly() {
+        if (journaled.get() == flushedThrough && heldRows == 0) {
+            return;
+        }
+        try {
+            flushAll();
+        } catch (SQLException | RuntimeException e) {
+            flushFailures.incrementAndGet();
+            LOGGER.log(Level.WARNING, "Inventory flush failed; retrying on the next run.", e);
+        }
+    }
+
+    /**
+     * Folds all committed journal rows into inventory, except those held
+     * back because they would take a row below zero. Returns the number of
+     * rows applied.
+     */
+    int flushAll() throws SQLException {
+        synchronized (flushLock) {
+            long signal = journaled.get();
+            FlushResult pass = new FlushResult();
+            FlushResult batch;
+            do {
+                batch = flushBatch(pass.lastJournalId);
+                pass.lastJournalId = batch.lastJournalId;
+                pass.applied += batch.applied;
+                pass.held += batch.held;
+            } while (batch.selected == flushBatchSize);
+            heldRows = pass.held;
+            flushedThrough = signal;
+            return pass.applied;
+        }
+    }
+
+    /** Rows selected, applied and held by one flush batch, or totals over a pass. */
+    private static final class FlushResult {
+        private int selected;
+        private int applied;
+        private int held;
+        private long lastJournalId;
+    }
+
+    /**
+     * Applies up to flushBatchSize journal rows after afterJournalId in one
+     * transaction, holding a share lock on the lease row throughout. The
+     * deltas are summed per location and applied with a guarded update (see
+     * {@link #applyDeltas}), then the applied rows are appended to
+     * stock_movements in journal order and deleted by id (never by range,
+     * since a lower id may belong to a transaction that has not committed
+     * yet). Only this thread writes stock_movements, so its ids follow commit
+     * order and a movement id range is a consistent cut of the history.
+     * The in-memory bookkeeping is updated only after the commit.
+     */
+    private FlushResult flushBatch(long afterJournalId) throws SQLException {
+        String selectSql = "SELECT journal_id, fruit_id, shop_id, warehouse_id, delta FROM inventory_journal "
+                + "WHERE journal_id > ? ORDER BY journal_id LIMIT ?";
+        FlushResult result = new FlushResult();
+        result.lastJournalId = afterJournalId;
+        Map<Long, Integer> deltaByKey = new TreeMap<>();
+        List<Long> journalIds = new ArrayList<>();
+        List<Long> journalKeys = new ArrayList<>();
+        Map<Long, Applied> outcome = new HashMap<>();
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(false);
+            checkLease(conn);
+            ps = conn.prepareStatement(selectSql);
+            ps.setLong(1, afterJournalId);
+            ps.setInt(2, flushBatchSize);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                journalIds.add(rs.getLong("journal_id"));
+                int fruitId = rs.getInt("fruit_id");
+                int shopId = rs.getInt("shop_id");
+                long key = rs.wasNull() ? warehouseKey(fruitId, rs.getInt("warehouse_id")) : shopKey(fruitId, shopId);
+                journalKeys.add(key);
+                deltaByKey.merge(key, rs.getInt("delta"), Integer::sum);
+            }
+            closeQuietly(rs);
+            closeQuietly(ps);
+            rs = null;
+            ps = null;
+            result.selected = journalIds.size();
+            if (journalIds.isEmpty()) {
+                conn.rollback();
+                return result;
+            }
+            result.lastJournalId = journalIds.get(journalIds.size() - 1);
+
+            applyDeltas(conn, deltaByKey, outcome);
+            List<Long> appliedIds = new ArrayList<>();
+            for (int i = 0; i < journalIds.size(); i++) {
+                Applied applied = outcome.get(journalKeys.get(i));
+                if (applied == null || !applied.held) {
+                    appliedIds.add(journalIds.get(i));
+                } else {
+                    result.held++;
+                }
+            }
+
+            if (!appliedIds.isEmpty()) {
+                String idList = SqlLists.placeholders(appliedIds.size());
+                ps = conn.prepareStatement("INSERT INTO stock_movements "
+                        + "(fruit_id, shop_id, warehouse_id, delta, cause, reference_id, occurred_at) "
+                        + "SELECT fruit_id, shop_id, warehouse_id, delta, cause, reference_id, created_at "
+                        + "FROM inventory_journal WHERE journal_id IN (" + idList + ") ORDER BY journal_id");
+                SqlLists.bindIds(ps, 1, appliedIds);
+                ps.executeUpdate();
+                closeQuietly(ps);
+                ps = null;
+
+                ps = conn.prepareStatement("DELETE FROM inventory_journal WHERE journal_id IN (" + idList + ")");
+                SqlLists.bindIds(ps, 1, appliedIds);
+                ps.executeUpdate();
+                closeQuietly(ps);
+                ps = null;
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            rollbackQuietly(conn);
+            throw e;
+        } finally {
+            closeQuietly(rs);
+            closeQuietly(ps);
+            closeTransaction(conn);
+        }
+
+        for (Map.Entry<Long, Applied> entry : outcome.entrySet()) {
+            long key = entry.getKey();
+            Applied applied = entry.getValue();
+            Cell cell = table.find(key);
+            if (cell != null) {
+                cell.stored = applied.stored;
+                if (applied.inventoryId != 0) {
+                    cell.inventoryId = applied.inventoryId;
+                }
+                if (applied.external != 0) {
+                    cell.add(applied.external);
+                }
+                cell.held = applied.held;
+            }
+            if (applied.external != 0) {
+                externalChanges.incrementAndGet();
+            }
+            if (applied.held && heldKeys.add(key)) {
+                LOGGER.log(Level.SEVERE, "Inventory for {0} would go below zero (row holds {1}, journal delta {2}); "
+                        + "more was sold than it holds. Its journal rows are held and it refuses withdrawals "
+                        + "until a stock count covers them.",
+                        new Object[] { describeKey(key), applied.stored, deltaByKey.get(key) });
+            } else if (!applied.held && heldKeys.remove(key)) {
+                LOGGER.log(Level.INFO, "Held inventory journal rows for {0} have been applied; "
+                        + "withdrawals are allowed again.", describeKey(key));
+            }
+        }
+        result.applied = result.selected - result.held;
+        flushedRows.addAndGet(result.applied);
+        return result;
+    }
+
+    /** What a flush did to one location, applied to its cell after commit. */
+    private static final class Applied {
+        private int stored;
+        private int inventoryId;
+        private int external;
+        private boolean held;
+    }
+
+    /**
+     * Applies each location's summed delta to inventory. A row the ledger
+     * has written before is updated only if it still holds the quantity the
+     * ledger last stored there and stays non-negative, all in one batch. Any
+     * other location is locked and read: a difference from the stored
+     * quantity is an edit made outside the ledger, recorded as an EXTERNAL
+     * movement and taken into the cell, and a delta that would leave the row
+     * negative is held back instead of applied. During the recovery flush in
+     * start() there are no cells yet, so every location takes the second way
+     * and only the non-negative check applies.
+     */
+    private void applyDeltas(Connection conn, Map<Long, Integer> deltaByKey, Map<Long, Applied> outcome)
+            throws SQLException {
+        List<Long> guarded = new ArrayList<>();
+        List<Long> locked = new ArrayList<>();
+        PreparedStatement ps = null;
+        try {
+            for (Map.Entry<Long, Integer> entry : deltaByKey.entrySet()) {
+                Cell cell = table.find(entry.getKey());
+                if (entry.getValue() == 0) {
+                    // Nothing to write, but a count that cancels held rows releases the location.
+                    if (cell != null) {
+                        Applied applied = new Applied();
+                        applied.stored = cell.stored;
+                        outcome.put(entry.getKey(), applied);
+                    }
+                    continue;
+                }
+                if (cell != null && cell.inventoryId != 0 && cell.stored + entry.getValue() >= 0) {
+                    if (ps == null) {
+                        ps = conn.prepareStatement("UPDATE inventory SET quantity = quantity + ? "
+                                + "WHERE inventory_id = ? AND quantity = ? AND quantity + ? >= 0");
+                    }
+                    ps.setInt(1, entry.getValue());
+                    ps.setInt(2, cell.inventoryId);
+                    ps.setInt(3, cell.stored);
+                    ps.setInt(4, entry.getValue());
+                    ps.addBatch();
+                    guarded.add(entry.getKey());
+                } else {
+                    locked.add(entry.getKey());
+                }
+            }
+            if (ps != null) {
+                int[] counts = ps.executeBatch();
+                for (int i = 0; i < guarded.size(); i++) {
+                    long key = guarded.get(i);
+                    if (counts[i] == 1) {
+                        Applied applied = new Applied();
+                        applied.stored = table.find(key).stored + deltaByKey.get(key);
+                        outcome.put(key, applied);
+                    } else {
+                        locked.add(key);
+                    }
+                }
+            }
+        } finally {
+            closeQuietly(ps);
+        }
+        for (long key : locked) {
+            outcome.put(key, applyLocked(conn, key, deltaByKey.get(key)));
+        }
+    }
+
+    private Applied applyLocked(Connection conn, long key, int delta) throws SQLException {
+        String selectSql = isWarehouse(key)
+                ? "SELECT inventory_id, quantity FROM inventory "
+                        + "WHERE fruit_id = ? AND warehouse_id = ? AND shop_id IS NULL FOR UPDATE"
+                : "SELECT inventory_id, quantity FROM inventory WHERE fruit_id = ? AND shop_id = ? FOR UPDATE";
+        Applied applied = new Applied();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = conn.prepareStatement(selectSql);
+            ps.setInt(1, fruitOf(key));
+            ps.setInt(2, locationOf(key));
+            rs = ps.executeQuery();
+            int inventoryId = 0;
+            int actual = 0;
+            if (rs.next()) {
+                inventoryId = rs.getInt("inventory_id");
+                actual = rs.getInt("quantity");
+            }
+            closeQuietly(rs);
+            closeQuietly(ps);
+            rs = null;
+            ps = null;
+
+            Cell cell = table.find(key);
+            if (cell != null && actual != cell.stored) {
+                applied.external = actual - cell.stored;
+                LOGGER.log(Level.WARNING, "Inventory for {0} was changed outside the ledger: expected {1}, found {2}. "
+                        + "The difference is recorded as an EXTERNAL movement.",
+                        new Object[] { describeKey(key), cell.stored, actual });
+                ps = conn.prepareStatement("INSERT INTO stock_movements "
+                        + "(fruit_id, shop_id, warehouse_id, delta, cause) VALUES (?, ?, ?, ?, ?)");
+                bindLocation(ps, key);
+                ps.setInt(4, applied.external);
+                ps.setString(5, Cause.EXTERNAL.name());
+                ps.executeUpdate();
+                closeQuietly(ps);
+                ps = null;
+            }
+
+            applied.inventoryId = inventoryId;
+            if (actual + delta < 0) {
+                applied.stored = actual;
+                applied.held = true;
+            } else if (inventoryId != 0) {
+                ps = conn.prepareStatement("UPDATE inventory SET quantity = ? WHERE inventory_id = ?");
+                ps.setInt(1, actual + delta);
+                ps.setInt(2, inventoryId);
+                ps.executeUpdate();
+                applied.stored = actual + delta;
+            } else {
+                ps = conn.prepareStatement("INSERT INTO inventory (fruit_id, shop_id, warehouse_id, quantity) "
+                        + "VALUES (?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS);
+                bindLocation(ps, key);
+                ps.setInt(4, actual + delta);
+                ps.executeUpdate();
+                rs = ps.getGeneratedKeys();
+                if (rs.next()) {
+                    applied.inventoryId = rs.getInt(1);
+                }
+                applied.stored = actual + delta;
+            }
+            return applied;
+        } finally {
+            closeQuietly(rs);
+            closeQuietly(ps);
+        }
+    }
+
+    private static void rollbackQuietly(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.rollback();
+            } catch (SQLException ex) {
+                LOGGER.log(Level.SEVERE, "Rollback failed", ex);
+            }
+        }
+    }
+
+    private static void closeTransaction(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.setAutoCommit(true);
+                conn.close();
+            } catch (SQLException e) {
+                LOGGER.log(Level.SEVERE, "Failed to close connection", e);
+            }
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable resource) {
+        if (resource != null) {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to close resource: " + resource.getClass().getSimpleName(), e);
+            }
+        }
+    }
+
+    public long getFlushedRowCount() {
+        return flushedRows.get();
+    }
+
+    public long getFlushFailureCount() {
+        return flushFailures.get();
+    }
+
+    /** Inventory rows found changed outside the ledger by the flush. */
+    public long getExternalChangeCount() {
+        return externalChanges.get();
+    }
+
+    /** Journal rows held back after the last flush because they would take stock below zero. */
+    public int getHeldJournalRowCount() {
+        return heldRows;
+    }
+
+    public long getLeaseTimeoutMs() {
+        return leaseTimeoutMs;
+    }
+
+    public synchronized void setLeaseTimeoutMs(long leaseTimeoutMs) {
+        checkNotStarted();
+        this.leaseTimeoutMs = Math.max(1000, leaseTimeoutMs);
+    }
+
+    /** Writes the flush counters in the Prometheus text format (0.0.4). */
+    public void writePrometheus(PrintWriter out) {
+        out.append("# HELP ict_inventory_flushed_rows_total Journal rows folded into inventory.\n");
+        out.append("# TYPE ict_inventory_flushed_rows_total counter\n");
+        out.append("ict_inventory_flushed_rows_total " + flushedRows.get()).append('\n');
+        out.append("# TYPE ict_inventory_flush_failures_total counter\n");
+        out.append("ict_inventory_flush_failures_total " + flushFailures.get()).append('\n');
+        out.append("# HELP ict_inventory_external_changes_total Inventory rows found changed outside the ledger.\n");
+        out.append("# TYPE ict_inventory_external_changes_total counter\n");
+        out.append("ict_inventory_external_changes_total " + externalChanges.get()).append('\n');
+        out.append("# HELP ict_inventory_held_journal_rows Journal rows held back because they would oversell.\n");
+        out.append("# TYPE ict_inventory_held_journal_rows gauge\n");
+        out.append("ict_inventory_held_journal_rows " + heldRows).append('\n');
+        out.append("# HELP ict_inventory_ledger_fenced 1 if another instance has taken the inventory lease.\n");
+        out.append("# TYPE ict_inventory_ledger_fenced gauge\n");
+        out.append("ict_inventory_ledger_fenced " + (fenced ? 1 : 0)).append('\n');
+    }
+
+    public long getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+
+    public synchronized void setFlushIntervalMs(long flushIntervalMs) {
+        checkNotStarted();
+        this.flushIntervalMs = Math.max(10, flushIntervalMs);
+    }
+
+    public int getFlushBatchSize() {
+        return flushBatchSize;
+    }
+
+    public synchronized void setFlushBatchSize(int flushBatchSize) {
+        checkNotStarted();
+        this.flushBatchSize = Math.max(1, flushBatchSize);
+    }
+
+    private void checkNotStarted() {
+        if (started) {
+            throw new IllegalStateException("Inventory ledger settings cannot be changed after start().");
+        }
+    }
+
+    private static final AtomicIntegerFieldUpdater<Cell> QUANTITY = AtomicIntegerFieldUpdater.newUpdater(Cell.class,
+            "quantity");
+
+    /**
+     * One location's stock of one fruit. stored is the quantity the ledger
+     * last read from or wrote to the inventory row, kept by the flusher.
+     * held is set by the flusher while journal rows for the location are
+     * held back; quantity may then be below zero, by what was sold that the
+     * row did not have.
+     */
+    private static final class Cell {
+        private final long key;
+        private volatile int quantity;
+        private volatile int inventoryId;
+        private int stored;
+        private volatile boolean held;
+
+        private Cell(long key, int quantity, int inventoryId) {
+            this.key = key;
+            this.quantity = quantity;
+            this.inventoryId = inventoryId;
+            this.stored = quantity;
+        }
+
+        private void add(int delta) {
+            QUANTITY.addAndGet(this, delta);
+        }
+
+        /** What may be shown and sold: nothing while held, never below zero. */
+        private int available() {
+            return held ? 0 : Math.max(0, quantity);
+        }
+    }
+
+    /**
+     * Open-addressing index from packed long key to cell, at most half full,
+     * plus the cells of each shop and warehouse ordered by fruit id. It is
+     * never modified once published: adding a key builds a new table holding
+     * the same Cell objects, so concurrent updates are never lost and readers
+     * need no lock.
+     */
+    private static final class Table {
+        private static final Cell[] NONE = new Cell[0];
+
+        private final long[] keys;
+        private final Cell[] cells;
+        private final int mask;
+        private final int size;
+        private final Map<Long, Cell[]> byPlace;
+
+        private Table(Cell[] entries) {
+            int capacity = 16;
+            while (capacity < entries.length * 2) {
+                capacity <<= 1;
+            }
+            keys = new long[capacity];
+            cells = new Cell[capacity];
+            mask = capacity - 1;
+            for (Cell cell : entries) {
+                int i = slot(cell.key);
+                while (cells[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = cell.key;
+                cells[i] = cell;
+            }
+            size = entries.length;
+
+            Map<Long, List<Cell>> grouped = new HashMap<>();
+            for (Cell cell : entries) {
+                grouped.computeIfAbsent(placeOf(cell.key), place -> new ArrayList<>()).add(cell);
+            }
+            byPlace = new HashMap<>(grouped.size() * 2);
+            for (Map.Entry<Long, List<Cell>> entry : grouped.entrySet()) {
+                Cell[] atPlace = entry.getValue().toArray(NONE);
+                Arrays.sort(atPlace, (a, b) -> Integer.compare(fruitOf(a.key), fruitOf(b.key)));
+                byPlace.put(entry.getKey(), atPlace);
+            }
+        }
+
+        /** Every shop and warehouse with cells, by {@link InventoryLedger#placeOf}. */
+        Set<Long> places() {
+            return byPlace.keySet();
+        }
+
+        /** Cells of one shop or warehouse, by {@link InventoryLedger#placeOf}. */
+        Cell[] at(long place) {
+            Cell[] atPlace = byPlace.get(place);
+            return atPlace != null ? atPlace : NONE;
+        }
+
+        private int slot(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+
+        Cell find(long key) {
+            int i = slot(key);
+            while (cells[i] != null) {
+                if (keys[i] == key) {
+                    return cells[i];
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        Table with(Cell cell) {
+            Cell[] entries = new Cell[size + 1];
+            int n = 0;
+            for (Cell existing : cells) {
+                if (existing != null) {
+                    entries[n++] = existing;
+                }
+            }
+            entries[n] = cell;
+            return new Table(entries);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ict.db;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counts failed logins in fixed windows, per username and client address
+ * pair and per client address. Once a pair has reached maxFailures within
+ * the window, or an address has reached ADDRESS_FAILURE_FACTOR times that
+ * over any usernames, further attempts from there are refused without
+ * querying the database until the window ends.
+ * <p>
+ * A username alone is never locked, so failing a colleague's login from one
+ * terminal does not keep them out at theirs. At most MAX_TRACKED_WINDOWS
+ * windows are kept; when full, expired ones are dropped and then the oldest.
+ */
+class LoginThrottle {
+
+    private static final int MAX_TRACKED_WINDOWS = 10000;
+    private static final int ADDRESS_FAILURE_FACTOR = 4;
+
+    private final int maxFailures;
+    private final long windowMillis;
+    // Guarded by itself. Insertion order is window start order, since a
+    // window is re-inserted whenever it restarts.
+    private final LinkedHashMap<String, Window> failures = new LinkedHashMap<>();
+
+    LoginThrottle(int maxFailures, long windowMillis) {
+        this.maxFailures = maxFailures;
+        this.windowMillis = windowMillis;
+    }
+
+    boolean isThrottled(String username, String address) {
+        long now = System.currentTimeMillis();
+        synchronized (failures) {
+            return reached(failures.get(pairKey(username, address)), maxFailures, now)
+                    || reached(failures.get(addressKey(address)), maxFailures * ADDRESS_FAILURE_FACTOR, now);
+        }
+    }
+
+    void recordFailure(String username, String address) {
+        long now = System.currentTimeMillis();
+        synchronized (failures) {
+            count(pairKey(username, address), now);
+            count(addressKey(address), now);
+        }
+    }
+
+    void recordSuccess(String username, String address) {
+        synchronized (failures) {
+            failures.remove(pairKey(username, address));
+        }
+    }
+
+    private boolean reached(Window window, int limit, long now) {
+        return window != null && window.count >= limit && now - window.startedAt < windowMillis;
+    }
+
+    private void count(String key, long now) {
+        Window window = failures.get(key);
+        if (window != null && now - window.startedAt < windowMillis) {
+            window.count++;
+            return;
+        }
+        failures.remove(key);
+        failures.put(key, new Window(now));
+        if (failures.size() > MAX_TRACKED_WINDOWS) {
+            Iterator<Map.Entry<String, Window>> oldest = failures.entrySet().iterator();
+            oldest.next();
+            oldest.remove();
+            while (oldest.hasNext() && now - oldest.next().getValue().startedAt >= windowMillis) {
+                oldest.remove();
+            }
+        }
+    }
+
+    private static String pairKey(String username, String address) {
+        return username + '\u0000' + address;
+    }
+
+    private static String addressKey(String address) {
+        return '\u0000' + address;
+    }
+
+    private static final class Window {
+        private final long startedAt;
+        private int count = 1;
+
+        private Window(long startedAt) {
+            this.startedAt = startedAt;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package ict.db;
+
+import java.io.PrintWriter;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * Data source handed to the DAOs when metrics are on. Each connection it
+ * hands out is a proxy that times the borrow, counts the rows read through
+ * its statements' result sets and reports to {@link DaoMetrics} on close,
+ * under the name of the ict.db method that asked for it.
+ * <p>
+ * With a {@link SlowQueryLog}, its statements also remember their SQL text
+ * and bind values so that an execution over the threshold can be logged in
+ * full.
+ */
+final class MeteredDataSource implements DataSource {
+
+    private static final StackWalker WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+    private final DataSource delegate;
+    private final DaoMetrics metrics;
+    private final SlowQueryLog slowQueryLog;
+
+    MeteredDataSource(DataSource delegate, DaoMetrics metrics, SlowQueryLog slowQueryLog) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        String caller = callingMethod();
+        DaoMetrics.MethodMetrics method = metrics.forMethod(caller);
+        long waitStart = System.nanoTime();
+        Connection connection;
+        try {
+            connection = delegate.getConnection();
+        } catch (SQLException | RuntimeException e) {
+            metrics.recordConnectionFailure(method);
+            throw e;
+        }
+        long acquired = System.nanoTime();
+        metrics.recordConnectionWait(method, acquired - waitStart);
+        return (Connection) Proxy.newProxyInstance(MeteredDataSource.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new MeteredConnection(connection, caller, method, acquired));
+    }
+
+    /**
+     * Class.method of the first frame past this class and the DAOs' own
+     * getConnection() wrappers; lambdas are reported as their enclosing method.
+     */
+    private static String callingMethod() {
+        return WALKER.walk(frames -> frames
+                .filter(frame -> frame.getDeclaringClass() != MeteredDataSource.class
+                        && !"getConnection".equals(frame.getMethodName()))
+                .findFirst()
+                .map(frame -> frame.getDeclaringClass().getSimpleName() + "." + methodName(frame.getMethodName()))
+                .orElse("unknown"));
+    }
+
+    private static String methodName(String name) {
+        if (name.startsWith("lambda$")) {
+            int end = name.indexOf('$', 7);
+            return end > 7 ? name.substring(7, end) : name;
+        }
+        return name;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class MeteredConnection implements InvocationHandler {
+        private final Connection connection;
+        private final String caller;
+        private final DaoMetrics.MethodMetrics method;
+        private final long acquired;
+        private long rows;
+        private boolean failed;
+        private boolean closed;
+
+        private MeteredConnection(Connection connection, String caller, DaoMetrics.MethodMetrics method,
+                long acquired) {
+            this.connection = connection;
+            this.caller = caller;
+            this.method = method;
+            this.acquired = acquired;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            String name = m.getName();
+            if ("close".equals(name)) {
+                if (!closed) {
+                    closed = true;
+                    metrics.recordCall(method, System.nanoTime() - acquired, rows, failed);
+                }
+                return MeteredDataSource.invoke(connection, m, args);
+            }
+            Object result;
+            try {
+                result = MeteredDataSource.invoke(connection, m, args);
+            } catch (SQLException e) {
+                failed = true;
+                throw e;
+            }
+            if (result instanceof Statement) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                return wrap(result, m.getReturnType(), new MeteredStatement((Statement) result, this, sql));
+            }
+            return result;
+        }
+    }
+
+    private final class MeteredStatement implements InvocationHandler {
+        private final Statement statement;
+        private final MeteredConnection connection;
+        private final boolean capture;
+        private String sql;
+        private Map<Integer, Object> binds;
+        private int batchSize;
+        private Execution pending;
+
+        private MeteredStatement(Statement statement, MeteredConnection connection, String sql) {
+            this.statement = statement;
+            this.connection = connection;
+            this.capture = slowQueryLog != null && slowQueryLog.isEnabled();
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            String name = m.getName();
+            if (capture) {
+                captureCall(name, args);
+            }
+            Execution execution = capture && name.startsWith("execute") ? startExecution(args) : null;
+            Object result;
+            try {
+                result = MeteredDataSource.invoke(statement, m, args);
+            } catch (SQLException e) {
+                connection.failed = true;
+                throw e;
+            }
+            if (execution != null) {
+                execution.executed = System.nanoTime();
+                finishExecution(execution, result);
+            }
+            if (result instanceof ResultSet && ("executeQuery".equals(name) || "getResultSet".equals(name))) {
+                Execution reading = pending;
+                pending = null;
+                return wrap(result, ResultSet.class, new CountingResultSet((ResultSet) result, connection, reading));
+            }
+            return result;
+        }
+
+        private void captureCall(String name, Object[] args) {
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer
+                    && statement instanceof PreparedStatement) {
+                if (binds == null) {
+                    binds = new TreeMap<>();
+                }
+                binds.put((Integer) args[0], "setNull".equals(name) ? null : args[1]);
+            } else if ("clearParameters".equals(name)) {
+                binds = null;
+            } else if ("addBatch".equals(name)) {
+                if (args != null && args.length == 1 && sql == null) {
+                    sql = (String) args[0];
+                }
+                batchSize++;
+            } else if ("clearBatch".equals(name)) {
+                batchSize = 0;
+            } else if ("close".equals(name) && pending != null) {
+                pending.finish(-1);
+                pending = null;
+            }
+        }
+
+        private Execution startExecution(Object[] args) {
+            if (pending != null) {
+                pending.finish(-1);
+                pending = null;
+            }
+            String executed = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            Map<Integer, Object> values = binds == null ? Collections.emptyMap() : new TreeMap<>(binds);
+            return new Execution(connection.caller, executed, values, batchSize);
+        }
+
+        private void finishExecution(Execution execution, Object result) throws SQLException {
+            if (result instanceof ResultSet || Boolean.TRUE.equals(result)) {
+                // Rows are still to be read; the result set finishes it.
+                pending = execution;
+                return;
+            }
+            long rows;
+            if (result instanceof Number) {
+                rows = ((Number) result).longValue();
+            } else if (result instanceof int[] || result instanceof long[]) {
+                rows = 0;
+                int length = Array.getLength(result);
+                for (int i = 0; i < length; i++) {
+                    rows += Math.max(0, ((Number) Array.get(result, i)).longValue());
+                }
+                batchSize = 0;
+            } else {
+                rows = statement.getUpdateCount();
+            }
+            execution.finish(rows);
+        }
+    }
+
+    /** One statement execution on its way to the slow query log. */
+    private final class Execution {
+        private final String caller;
+        private final String sql;
+        private final Map<Integer, Object> binds;
+        private final int batchSize;
+        private final long started = System.nanoTime();
+        private long executed;
+        private long rows;
+        private boolean finished;
+
+        private Execution(String caller, String sql, Map<Integer, Object> binds, int batchSize) {
+            this.caller = caller;
+            this.sql = sql;
+            this.binds = binds;
+            this.batchSize = batchSize;
+        }
+
+        private void finish(long rowCount) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            long total = System.nanoTime() - started;
+            if (slowQueryLog.isSlow(total)) {
+                slowQueryLog.record(caller, sql, binds, batchSize, rowCount, executed - started, total);
+            }
+        }
+    }
+
+    private static final class CountingResultSet implements InvocationHandler {
+        private final ResultSet resultSet;
+        private final MeteredConnection connection;
+        private final Execution execution;
+
+        private CountingResultSet(ResultSet resultSet, MeteredConnection connection, Execution execution) {
+            this.resultSet = resultSet;
+            this.connection = connection;
+            this.execution = execution;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            Object result = MeteredDataSource.invoke(resultSet, m, args);
+            String name = m.getName();
+            if ("next".equals(name)) {
+                if (Boolean.TRUE.equals(result)) {
+                    connection.rows++;
+                    if (execution != null) {
+                        execution.rows++;
+                    }
+                } else if (execution != null) {
+                    execution.finish(execution.rows);
+                }
+            } else if ("close".equals(name) && execution != null) {
+                execution.finish(execution.rows);
+            }
+            return result;
+        }
+    }
+
+    /** Proxies target as the interface the caller asked for (Statement, PreparedStatement, ...). */
+    private static Object wrap(Object target, Class<?> type, InvocationHandler handler) {
+        Class<?> iface = type.isInterface() && type.isInstance(target) ? type : Statement.class;
+        return Proxy.newProxyInstance(MeteredDataSource.class.getClassLoader(), new Class<?>[] { iface }, handler);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return delegate.getConnection(username, password);
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return delegate.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        delegate.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        delegate.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return delegate.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() {
+        return Logger.getLogger(MeteredDataSource.class.getName());
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || delegate.isWrapperFor(iface);
+    }
+}
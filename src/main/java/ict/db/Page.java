@@ -0,0 +1,38 @@
+package ict.db;
+
+import java.util.List;
+
+/**
+ * One window of a server-side paged list, with the counts DataTables needs
+ * and a cursor for fetching the following window by keyset.
+ */
+public class Page<T> {
+
+    private final List<T> rows;
+    private final long totalCount;
+    private final long filteredCount;
+    private final String nextCursor;
+
+    public Page(List<T> rows, long totalCount, long filteredCount, String nextCursor) {
+        this.rows = rows;
+        this.totalCount = totalCount;
+        this.filteredCount = filteredCount;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getRows() {
+        return rows;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getFilteredCount() {
+        return filteredCount;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,53 @@
+package ict.db;
+
+/**
+ * One window of a server-side paged list: which rows (start/length), in what
+ * order (a column index of the list page) and with which search term. An
+ * optional cursor, taken from the previous page's {@link Page#getNextCursor()},
+ * lets the DAO seek straight to the window instead of skipping start rows.
+ */
+public class PageRequest {
+
+    public static final int DEFAULT_LENGTH = 25;
+    public static final int MAX_LENGTH = 500;
+
+    private final int start;
+    private final int length;
+    private final int orderColumn;
+    private final boolean ascending;
+    private final String search;
+    private final String cursor;
+
+    public PageRequest(int start, int length, int orderColumn, boolean ascending, String search, String cursor) {
+        this.start = Math.max(0, start);
+        this.length = length <= 0 ? DEFAULT_LENGTH : Math.min(length, MAX_LENGTH);
+        this.orderColumn = orderColumn;
+        this.ascending = ascending;
+        this.search = search == null || search.trim().isEmpty() ? null : search.trim();
+        this.cursor = cursor == null || cursor.isEmpty() ? null : cursor;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getOrderColumn() {
+        return orderColumn;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    public String getSearch() {
+        return search;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+}
@@ -0,0 +1,265 @@
+package ict.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Builds and runs the count and window queries behind a server-side paged
+ * list. A DAO describes its list once (select list, FROM/JOIN clause, scope
+ * filter, searchable and sortable columns) and calls {@link #fetch}.
+ *
+ * Columns registered with {@link #keyColumn} (ids and dates, never NULL) are
+ * paged by keyset: the window query seeks past the previous page's last
+ * (sort value, row id) instead of using OFFSET, so deep pages cost the same
+ * as the first one. Other sort columns, and requests without a matching
+ * cursor, fall back to LIMIT/OFFSET.
+ */
+final class PagedQuery {
+
+    private static final Logger LOGGER = Logger.getLogger(PagedQuery.class.getName());
+
+    interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    private enum KeyType {
+        NUMBER, DATE
+    }
+
+    private static final class SortColumn {
+        private final String expression;
+        private final KeyType keyType;
+
+        private SortColumn(String expression, KeyType keyType) {
+            this.expression = expression;
+            this.keyType = keyType;
+        }
+    }
+
+    private final String selectList;
+    private final String fromClause;
+    private final String rowIdExpression;
+    private final List<String> scopeConditions = new ArrayList<>();
+    private final List<Object> scopeParams = new ArrayList<>();
+    private final List<String> searchExpressions = new ArrayList<>();
+    private final Map<Integer, SortColumn> sortColumns = new HashMap<>();
+    private int defaultOrderColumn = -1;
+    private boolean defaultAscending = true;
+
+    PagedQuery(String selectList, String fromClause, String rowIdExpression) {
+        this.selectList = selectList;
+        this.fromClause = fromClause;
+        this.rowIdExpression = rowIdExpression;
+    }
+
+    /** Restricts the whole list, e.g. to the current user's shop. Counted in the total. */
+    PagedQuery where(String condition, Object... params) {
+        scopeConditions.add(condition);
+        for (Object param : params) {
+            scopeParams.add(param);
+        }
+        return this;
+    }
+
+    PagedQuery searchable(String... expressions) {
+        for (String expression : expressions) {
+            searchExpressions.add(expression);
+        }
+        return this;
+    }
+
+    /** A column sortable by OFFSET paging only (nullable or free-text values). */
+    PagedQuery sortColumn(int column, String expression) {
+        sortColumns.put(column, new SortColumn(expression, null));
+        return this;
+    }
+
+    /** A numeric id column that supports keyset paging. */
+    PagedQuery keyColumn(int column, String expression) {
+        sortColumns.put(column, new SortColumn(expression, KeyType.NUMBER));
+        return this;
+    }
+
+    /** A non-null date column that supports keyset paging. */
+    PagedQuery dateKeyColumn(int column, String expression) {
+        sortColumns.put(column, new SortColumn(expression, KeyType.DATE));
+        return this;
+    }
+
+    PagedQuery defaultOrder(int column, boolean ascending) {
+        this.defaultOrderColumn = column;
+        this.defaultAscending = ascending;
+        return this;
+    }
+
+    <T> Page<T> fetch(Connection conn, PageRequest request, RowMapper<T> mapper) throws SQLException {
+        int orderColumn = request.getOrderColumn();
+        boolean ascending = request.isAscending();
+        if (!sortColumns.containsKey(orderColumn)) {
+            orderColumn = defaultOrderColumn;
+            ascending = defaultAscending;
+        }
+        SortColumn sort = sortColumns.get(orderColumn);
+        String direction = ascending ? "ASC" : "DESC";
+
+        List<String> conditions = new ArrayList<>(scopeConditions);
+        List<Object> params = new ArrayList<>(scopeParams);
+        long totalCount = count(conn, conditions, params);
+
+        String search = request.getSearch();
+        if (search != null && !searchExpressions.isEmpty()) {
+            StringBuilder searchCondition = new StringBuilder("(");
+            for (int i = 0; i < searchExpressions.size(); i++) {
+                searchCondition.append(i == 0 ? "" : " OR ").append(searchExpressions.get(i)).append(" LIKE ?");
+                params.add("%" + escapeLike(search) + "%");
+            }
+            conditions.add(searchCondition.append(")").toString());
+        }
+        long filteredCount = conditions.size() == scopeConditions.size() ? totalCount : count(conn, conditions, params);
+
+        String[] cursorKey = sort != null && sort.keyType != null
+                ? parseCursor(request.getCursor(), orderColumn, ascending, search, sort.keyType)
+                : null;
+        if (cursorKey != null) {
+            String op = ascending ? ">" : "<";
+            if (sort.expression.equals(rowIdExpression)) {
+                conditions.add(rowIdExpression + " " + op + " ?");
+                params.add(Long.parseLong(cursorKey[1]));
+            } else {
+                conditions.add("(" + sort.expression + " " + op + " ? OR (" + sort.expression + " = ? AND "
+                        + rowIdExpression + " " + op + " ?))");
+                Object sortValue = sort.keyType == KeyType.DATE ? java.sql.Date.valueOf(cursorKey[0])
+                        : (Object) Long.parseLong(cursorKey[0]);
+                params.add(sortValue);
+                params.add(sortValue);
+                params.add(Long.parseLong(cursorKey[1]));
+            }
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT ").append(selectList);
+        if (sort != null) {
+            sql.append(", ").append(sort.expression).append(" AS page_sort_key");
+        }
+        sql.append(", ").append(rowIdExpression).append(" AS page_row_id ");
+        sql.append(fromClause).append(whereClause(conditions));
+        sql.append(" ORDER BY ");
+        if (sort != null && !sort.expression.equals(rowIdExpression)) {
+            sql.append(sort.expression).append(" ").append(direction).append(", ");
+        }
+        sql.append(rowIdExpression).append(" ").append(direction);
+        sql.append(" LIMIT ?");
+        params.add(request.getLength());
+        if (cursorKey == null && request.getStart() > 0) {
+            sql.append(" OFFSET ?");
+            params.add(request.getStart());
+        }
+
+        List<T> rows = new ArrayList<>();
+        String nextCursor = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = conn.prepareStatement(sql.toString());
+            bind(ps, params);
+            rs = ps.executeQuery();
+            String lastSortKey = null;
+            String lastRowId = null;
+            while (rs.next()) {
+                rows.add(mapper.map(rs));
+                lastSortKey = sort != null ? rs.getString("page_sort_key") : null;
+                lastRowId = rs.getString("page_row_id");
+            }
+            if (sort != null && sort.keyType != null && lastRowId != null && lastSortKey != null
+                    && rows.size() == request.getLength()) {
+                nextCursor = orderColumn + ":" + (ascending ? "a" : "d") + ":" + searchHash(search) + ":"
+                        + lastSortKey + ":" + lastRowId;
+            }
+        } finally {
+            closeQuietly(rs);
+            closeQuietly(ps);
+        }
+        return new Page<>(rows, totalCount, filteredCount, nextCursor);
+    }
+
+    private long count(Connection conn, List<String> conditions, List<Object> params) throws SQLException {
+        String sql = "SELECT COUNT(*) " + fromClause + whereClause(conditions);
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = conn.prepareStatement(sql);
+            bind(ps, params);
+            rs = ps.executeQuery();
+            return rs.next() ? rs.getLong(1) : 0;
+        } finally {
+            closeQuietly(rs);
+            closeQuietly(ps);
+        }
+    }
+
+    /**
+     * Returns {sortKey, rowId} if the cursor was issued for the same order and
+     * search, otherwise null so the caller falls back to OFFSET.
+     */
+    private static String[] parseCursor(String cursor, int orderColumn, boolean ascending, String search,
+            KeyType keyType) {
+        if (cursor == null) {
+            return null;
+        }
+        String[] parts = cursor.split(":", -1);
+        if (parts.length != 5
+                || !parts[0].equals(String.valueOf(orderColumn))
+                || !parts[1].equals(ascending ? "a" : "d")
+                || !parts[2].equals(searchHash(search))) {
+            return null;
+        }
+        try {
+            if (keyType == KeyType.DATE) {
+                java.sql.Date.valueOf(parts[3]);
+            } else {
+                Long.parseLong(parts[3]);
+            }
+            Long.parseLong(parts[4]);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "Ignoring malformed page cursor: {0}", cursor);
+            return null;
+        }
+        return new String[] { parts[3], parts[4] };
+    }
+
+    private static String searchHash(String search) {
+        return Integer.toHexString(Objects.hashCode(search));
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static String whereClause(List<String> conditions) {
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    private static void bind(PreparedStatement ps, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            ps.setObject(i + 1, params.get(i));
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable resource) {
+        if (resource != null) {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to close resource: " + resource.getClass().getSimpleName(), e);
+            }
+        }
+    }
+}
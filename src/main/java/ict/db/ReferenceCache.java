@@ -0,0 +1,209 @@
+package ict.db;
+
+import java.io.PrintWriter;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Small size-bounded, time-limited read-through cache for reference data
+ * (fruits, shops, warehouses) that changes rarely but is read on almost every
+ * request. Least recently used entries are dropped once maxSize is reached.
+ * Loaders returning null are not cached, so missing rows are re-queried.
+ * <p>
+ * Loads run outside the lock, so every invalidation is stamped with a
+ * generation number and a load that began before the latest invalidation of
+ * its key is returned to the caller but not cached; otherwise an update that
+ * commits while a stale row is being read would be overwritten by it.
+ */
+public class ReferenceCache<K, V> {
+
+    private final String name;
+    private final int maxSize;
+    private final long ttlMillis;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    // Guarded by entries. Keys in invalidation order, bounded by maxSize;
+    // forgetting one raises invalidatedBefore so a racing load still loses.
+    private final LinkedHashMap<K, Long> invalidatedAt = new LinkedHashMap<>();
+    private long generation;
+    private long invalidatedBefore;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public ReferenceCache(String name, int maxSize, long ttlMillis) {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > ReferenceCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public V get(K key, Function<K, V> loader) {
+        long now = System.currentTimeMillis();
+        long loadGeneration;
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && entry.expiresAt > now) {
+                hits.incrementAndGet();
+                return entry.value;
+            }
+            loadGeneration = generation;
+        }
+
+        misses.incrementAndGet();
+        V value = loader.apply(key);
+        put(key, value, loadGeneration);
+        return value;
+    }
+
+    /**
+     * The current invalidation generation. Callers that load several rows
+     * themselves read this before their query and pass it to
+     * {@link #put(Object, Object, long)}.
+     */
+    public long generation() {
+        synchronized (entries) {
+            return generation;
+        }
+    }
+
+    /**
+     * Caches a value loaded by a query that began at loadGeneration, unless
+     * the key was invalidated since. Returns whether the value was cached.
+     */
+    public boolean put(K key, V value, long loadGeneration) {
+        if (value == null) {
+            return false;
+        }
+        synchronized (entries) {
+            Long invalidated = invalidatedAt.get(key);
+            if (invalidatedBefore > loadGeneration
+                    || (invalidated != null && invalidated > loadGeneration)) {
+                return false;
+            }
+            entries.put(key, new Entry<>(value, System.currentTimeMillis() + ttlMillis));
+            return true;
+        }
+    }
+
+    public void invalidate(K key) {
+        synchronized (entries) {
+            generation++;
+            invalidatedAt.remove(key);
+            invalidatedAt.put(key, generation);
+            if (invalidatedAt.size() > maxSize) {
+                Iterator<Map.Entry<K, Long>> eldest = invalidatedAt.entrySet().iterator();
+                invalidatedBefore = eldest.next().getValue();
+                eldest.remove();
+            }
+            if (entries.remove(key) != null) {
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            generation++;
+            invalidatedBefore = generation;
+            invalidatedAt.clear();
+            invalidations.addAndGet(entries.size());
+            entries.clear();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    public String getStatistics() {
+        long h = hits.get();
+        long m = misses.get();
+        return name + ": size=" + size() + "/" + maxSize
+                + ", hits=" + h
+                + ", misses=" + m
+                + ", hitRatio=" + (h + m == 0 ? 0 : Math.round(h * 1000.0 / (h + m)) / 10.0) + "%"
+                + ", evictions=" + evictions.get()
+                + ", invalidations=" + invalidations.get();
+    }
+
+    /** Writes the size and hit, miss, eviction and invalidation counters of each cache, labeled by name. */
+    public static void writePrometheus(PrintWriter out, Collection<ReferenceCache<?, ?>> caches) {
+        out.append("# HELP ict_reference_cache_size Entries held by the reference data cache.\n");
+        out.append("# TYPE ict_reference_cache_size gauge\n");
+        for (ReferenceCache<?, ?> cache : caches) {
+            sample(out, "ict_reference_cache_size", cache, cache.size());
+        }
+        out.append("# TYPE ict_reference_cache_max_size gauge\n");
+        for (ReferenceCache<?, ?> cache : caches) {
+            sample(out, "ict_reference_cache_max_size", cache, cache.maxSize);
+        }
+        out.append("# TYPE ict_reference_cache_hits_total counter\n");
+        for (ReferenceCache<?, ?> cache : caches) {
+            sample(out, "ict_reference_cache_hits_total", cache, cache.getHits());
+        }
+        out.append("# TYPE ict_reference_cache_misses_total counter\n");
+        for (ReferenceCache<?, ?> cache : caches) {
+            sample(out, "ict_reference_cache_misses_total", cache, cache.getMisses());
+        }
+        out.append("# TYPE ict_reference_cache_evictions_total counter\n");
+        for (ReferenceCache<?, ?> cache : caches) {
+            sample(out, "ict_reference_cache_evictions_total", cache, cache.getEvictions());
+        }
+        out.append("# TYPE ict_reference_cache_invalidations_total counter\n");
+        for (ReferenceCache<?, ?> cache : caches) {
+            sample(out, "ict_reference_cache_invalidations_total", cache, cache.getInvalidations());
+        }
+    }
+
+    private static void sample(PrintWriter out, String metric, ReferenceCache<?, ?> cache, long value) {
+        out.append(metric).append("{cache=\"").append(cache.name).append("\"} ").append(Long.toString(value))
+                .append('\n');
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        private Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -5,15 +5,20 @@ import java.io.Serializable;
 import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.Date;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.sql.DataSource;
+
 import ict.bean.AggregatedNeedBean;
 import ict.bean.ConsumptionDataBean;
 import ict.bean.ForecastBean;
@@ -22,25 +27,23 @@ import ict.bean.ReservationBean;
 public class ReservationDB {
 
     private static final Logger LOGGER = Logger.getLogger(ReservationDB.class.getName());
-    private String dburl, username, password;
-    private FruitDB fruitDb;
-
-    public ReservationDB(String dburl, String dbUser, String dbPassword) {
-        this.dburl = dburl;
-        this.username = dbUser;
-        this.password = dbPassword;
-
-        this.fruitDb = new FruitDB(dburl, dbUser, dbPassword);
+    private final DataSource dataSource;
+    private final FruitDB fruitDb;
+    private final WarehouseDB warehouseDb;
+    private final DataVersions dataVersions;
+    private final InventoryLedger inventoryLedger;
+
+    public ReservationDB(DataSource dataSource, FruitDB fruitDb, WarehouseDB warehouseDb,
+            DataVersions dataVersions, InventoryLedger inventoryLedger) {
+        this.dataSource = dataSource;
+        this.fruitDb = fruitDb;
+        this.warehouseDb = warehouseDb;
+        this.dataVersions = dataVersions;
+        this.inventoryLedger = inventoryLedger;
     }
 
     public Connection getConnection() throws SQLException, IOException {
-        try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-        } catch (ClassNotFoundException e) {
-            LOGGER.log(Level.SEVERE, "MySQL JDBC Driver not found.", e);
-            throw new IOException("Database driver not found.", e);
-        }
-        return DriverManager.getConnection(dburl, username, password);
+        return dataSource.getConnection();
     }
 
     private void closeQuietly(AutoCloseable resource) {
@@ -70,14 +73,7 @@ public class ReservationDB {
             ps = conn.prepareStatement(sql);
             rs = ps.executeQuery();
             while (rs.next()) {
-                ReservationBean bean = new ReservationBean();
-                bean.setReservationId(rs.getInt("reservation_id"));
-                bean.setFruitId(rs.getInt("fruit_id"));
-                bean.setShopId(rs.getInt("shop_id"));
-                bean.setQuantity(rs.getInt("quantity"));
-                bean.setReservationDate(rs.getDate("reservation_date"));
-                bean.setStatus(rs.getString("status"));
-                bean.setFruitName(rs.getString("fruit_name"));
+                ReservationBean bean = mapRowToReservationBean(rs);
                 bean.setShopName(rs.getString("shop_name"));
                 reservations.add(bean);
             }
@@ -91,6 +87,39 @@ public class ReservationDB {
         return reservations;
     }
 
+    /**
+     * One window of the reservations list for DataTables server-side mode.
+     * Column indexes follow listReservations.jsp. shopId restricts the list to
+     * one shop; null lists all.
+     */
+    public Page<ReservationBean> getReservationsPage(PageRequest request, Integer shopId) {
+        PagedQuery query = new PagedQuery(
+                "r.*, f.fruit_name",
+                "FROM reservations r JOIN fruits f ON r.fruit_id = f.fruit_id",
+                "r.reservation_id")
+                .keyColumn(0, "r.reservation_id")
+                .sortColumn(1, "f.fruit_name")
+                .sortColumn(2, "r.quantity")
+                .dateKeyColumn(3, "r.reservation_date")
+                .sortColumn(4, "r.status")
+                .searchable("f.fruit_name", "r.status")
+                .defaultOrder(3, false);
+        if (shopId != null) {
+            query.where("r.shop_id = ?", shopId);
+        }
+
+        Connection conn = null;
+        try {
+            conn = getConnection();
+            return query.fetch(conn, request, ReservationDB::mapRowToReservationBean);
+        } catch (SQLException | IOException e) {
+            LOGGER.log(Level.SEVERE, "Error fetching reservations page", e);
+            return new Page<>(new ArrayList<>(), 0, 0, null);
+        } finally {
+            closeQuietly(conn);
+        }
+    }
+
     public List<ReservationBean> getReservationsForShop(int shopId) {
         List<ReservationBean> reservations = new ArrayList<>();
 
@@ -108,15 +137,7 @@ public class ReservationDB {
             ps.setInt(1, shopId);
             rs = ps.executeQuery();
             while (rs.next()) {
-                ReservationBean bean = new ReservationBean();
-                bean.setReservationId(rs.getInt("reservation_id"));
-                bean.setFruitId(rs.getInt("fruit_id"));
-                bean.setShopId(rs.getInt("shop_id"));
-                bean.setQuantity(rs.getInt("quantity"));
-                bean.setReservationDate(rs.getDate("reservation_date"));
-                bean.setStatus(rs.getString("status"));
-                bean.setFruitName(rs.getString("fruit_name"));
-
+                ReservationBean bean = mapRowToReservationBean(rs);
                 reservations.add(bean);
             }
             LOGGER.log(Level.INFO, "Fetched {0} reservations for ShopID={1}",
@@ -199,6 +220,7 @@ public class ReservationDB {
 
             if (rowsAffected > 0) {
                 conn.commit();
+                dataVersions.bump(DataVersions.Dataset.RESERVATIONS);
                 success = true;
                 LOGGER.log(Level.INFO,
                         "Successfully approved {0} reservations for FruitID={1}, Country={2}. Status set to {3}",
@@ -328,41 +350,44 @@ public class ReservationDB {
         return needs;
     }
 
-    private boolean addDeliveryRecord(int fruitId, int fromWarehouseId, int toWarehouseId, int quantity,
+    /** Returns the new delivery_id, or -1 if no row was inserted. */
+    private int addDeliveryRecord(int fruitId, int fromWarehouseId, int toWarehouseId, int quantity,
             Connection conn) throws SQLException {
         String sql = "INSERT INTO deliveries (fruit_id, from_warehouse_id, to_warehouse_id, quantity, delivery_date, status) "
                 + "VALUES (?, ?, ?, ?, CURDATE(), ?)";
         PreparedStatement ps = null;
+        ResultSet keys = null;
         String initialStatus = "Scheduled";
         try {
-            ps = conn.prepareStatement(sql);
+            ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
             ps.setInt(1, fruitId);
             ps.setInt(2, fromWarehouseId);
             ps.setInt(3, toWarehouseId);
             ps.setInt(4, quantity);
             ps.setString(5, initialStatus);
-            int rowsAffected = ps.executeUpdate();
-            return rowsAffected >= 1;
+            if (ps.executeUpdate() < 1) {
+                return -1;
+            }
+            keys = ps.getGeneratedKeys();
+            return keys.next() ? keys.getInt(1) : -1;
         } finally {
+            closeQuietly(keys);
             closeQuietly(ps);
         }
     }
 
-    private int updateReservationStatusForDelivery(int fruitId, String targetCountry, String newStatus, Connection conn)
+    private int updateReservationStatusForDelivery(List<Integer> reservationIds, String newStatus, Connection conn)
             throws SQLException {
-        String sql = "UPDATE reservations r "
-                + "JOIN shops s ON r.shop_id = s.shop_id "
-                + "SET r.status = ? "
-                + "WHERE r.fruit_id = ? AND s.country = ? AND r.status = 'Approved'";
+        String sql = "UPDATE reservations SET status = ? WHERE status = 'Approved' "
+                + "AND reservation_id IN (" + SqlLists.placeholders(reservationIds.size()) + ")";
         PreparedStatement ps = null;
         try {
             ps = conn.prepareStatement(sql);
             ps.setString(1, newStatus);
-            ps.setInt(2, fruitId);
-            ps.setString(3, targetCountry);
+            SqlLists.bindIds(ps, 2, reservationIds);
             int rowsAffected = ps.executeUpdate();
-            LOGGER.log(Level.INFO, "[TX] Updated status to {0} for {1} reservations of FruitID={2} destined for {3}",
-                    new Object[] { newStatus, rowsAffected, fruitId, targetCountry });
+            LOGGER.log(Level.INFO, "[TX] Updated status to {0} for {1} reservations",
+                    new Object[] { newStatus, rowsAffected });
             return rowsAffected;
         } finally {
             closeQuietly(ps);
@@ -371,24 +396,28 @@ public class ReservationDB {
 
     public String arrangeDeliveryTransaction(int fruitId, int fromWarehouseId, String targetCountry) {
         Connection conn = null;
+        InventoryLedger.Change stock = null;
         String statusMessage = "Delivery arrangement failed: Unknown error.";
         int quantityToDeliver = 0;
-
-        WarehouseDB localWarehouseDb = new WarehouseDB(this.dburl, this.username, this.password);
+        List<Integer> reservationIds = new ArrayList<>();
 
         try {
             conn = getConnection();
             conn.setAutoCommit(false);
 
-            String quantitySql = "SELECT SUM(r.quantity) AS total_approved "
-                    + "FROM reservations r JOIN shops s ON r.shop_id = s.shop_id "
-                    + "WHERE r.fruit_id = ? AND s.country = ? AND r.status = 'Approved'";
+            // Lock the approved reservations being shipped (reservations before inventory, as in checkout),
+            // so two concurrent arrangements cannot ship the same reservations twice.
+            String quantitySql = "SELECT reservation_id, quantity FROM reservations "
+                    + "WHERE fruit_id = ? AND status = 'Approved' "
+                    + "AND shop_id IN (SELECT shop_id FROM shops WHERE country = ?) "
+                    + "ORDER BY reservation_id FOR UPDATE";
             PreparedStatement psQty = conn.prepareStatement(quantitySql);
             psQty.setInt(1, fruitId);
             psQty.setString(2, targetCountry);
             ResultSet rsQty = psQty.executeQuery();
-            if (rsQty.next()) {
-                quantityToDeliver = rsQty.getInt("total_approved");
+            while (rsQty.next()) {
+                reservationIds.add(rsQty.getInt("reservation_id"));
+                quantityToDeliver += rsQty.getInt("quantity");
             }
             closeQuietly(rsQty);
             closeQuietly(psQty);
@@ -400,7 +429,7 @@ public class ReservationDB {
             LOGGER.log(Level.INFO, "[TX] Calculated quantity to deliver for FruitID={0}, TargetCountry={1}: {2}",
                     new Object[] { fruitId, targetCountry, quantityToDeliver });
 
-            int toWarehouseId = localWarehouseDb.findCentralWarehouseInCountry(targetCountry);
+            int toWarehouseId = warehouseDb.findCentralWarehouseInCountry(targetCountry);
             if (toWarehouseId == -1) {
                 conn.rollback();
                 return "Delivery arrangement failed: Could not find a central warehouse in " + targetCountry + ".";
@@ -408,46 +437,43 @@ public class ReservationDB {
             LOGGER.log(Level.INFO, "[TX] Found target central WarehouseID={0} for Country={1}",
                     new Object[] { toWarehouseId, targetCountry });
 
-            int currentSourceQuantity = getInventoryQuantityForWarehouse(fruitId, fromWarehouseId, conn);
-            if (currentSourceQuantity < quantityToDeliver) {
-                conn.rollback();
-                return "Delivery arrangement failed: Insufficient stock (" + currentSourceQuantity
-                        + ") at source warehouse " + fromWarehouseId + " for required quantity (" + quantityToDeliver
-                        + ").";
-            }
-            LOGGER.log(Level.INFO,
-                    "[TX] Source inventory check passed for WarehouseID={0}, FruitID={1}. Have: {2}, Need: {3}",
-                    new Object[] { fromWarehouseId, fruitId, currentSourceQuantity, quantityToDeliver });
-
-            boolean deliveryAdded = addDeliveryRecord(fruitId, fromWarehouseId, toWarehouseId, quantityToDeliver, conn);
-            if (!deliveryAdded) {
+            int deliveryId = addDeliveryRecord(fruitId, fromWarehouseId, toWarehouseId, quantityToDeliver, conn);
+            if (deliveryId == -1) {
                 conn.rollback();
                 return "Delivery arrangement failed: Could not create delivery record.";
             }
             LOGGER.log(Level.INFO, "[TX] Delivery record created.");
 
-            boolean inventoryDecreased = updateWarehouseInventory(fruitId, fromWarehouseId, -quantityToDeliver, conn);
+            String newReservationStatus = "Shipped";
+            int reservationsUpdated = updateReservationStatusForDelivery(reservationIds, newReservationStatus, conn);
 
-            if (!inventoryDecreased) {
+            if (reservationsUpdated != reservationIds.size()) {
                 conn.rollback();
-                return "Delivery arrangement failed: Could not update source warehouse inventory.";
+                LOGGER.log(Level.WARNING,
+                        "[TX] Only {0} of {1} reservations could be updated to ''{2}'' for FruitID={3}, TargetCountry={4}.",
+                        new Object[] { reservationsUpdated, reservationIds.size(), newReservationStatus, fruitId,
+                                targetCountry });
+                return "Delivery arrangement failed: Reservations changed while the delivery was being arranged.";
             }
-            LOGGER.log(Level.INFO, "[TX] Source inventory decreased.");
-
-            String newReservationStatus = "Shipped";
-            int reservationsUpdated = updateReservationStatusForDelivery(fruitId, targetCountry, newReservationStatus,
-                    conn);
+            LOGGER.log(Level.INFO, "[TX] {0} reservation statuses updated to {1}.",
+                    new Object[] { reservationsUpdated, newReservationStatus });
 
-            if (reservationsUpdated == 0) {
-                LOGGER.log(Level.WARNING,
-                        "[TX] No reservations were updated to '{0}' status for FruitID={1}, TargetCountry={2}. This might indicate an issue.",
-                        new Object[] { newReservationStatus, fruitId, targetCountry });
-            } else {
-                LOGGER.log(Level.INFO, "[TX] {0} reservation statuses updated to {1}.",
-                        new Object[] { reservationsUpdated, newReservationStatus });
+            stock = inventoryLedger.change(InventoryLedger.Cause.DELIVERY, deliveryId)
+                    .add(InventoryLedger.warehouseKey(fruitId, fromWarehouseId), -quantityToDeliver);
+            if (!stock.apply()) {
+                conn.rollback();
+                return "Delivery arrangement failed: Insufficient stock (" + stock.getShortQuantity()
+                        + ") at source warehouse " + fromWarehouseId + " for required quantity (" + quantityToDeliver
+                        + ").";
             }
+            stock.journal(conn);
+            LOGGER.log(Level.INFO, "[TX] Source inventory decreased by {0} at WarehouseID={1}.",
+                    new Object[] { quantityToDeliver, fromWarehouseId });
 
             conn.commit();
+            stock.committed();
+            dataVersions.bump(DataVersions.Dataset.RESERVATIONS, DataVersions.Dataset.INVENTORY,
+                    DataVersions.Dataset.DELIVERIES);
             statusMessage = "Delivery arranged successfully for " + quantityToDeliver + " units of Fruit ID " + fruitId
                     + " to " + targetCountry + "!";
             LOGGER.log(Level.INFO, "[TX] Delivery transaction committed successfully.");
@@ -462,6 +488,9 @@ public class ReservationDB {
                     LOGGER.log(Level.SEVERE, "Rollback failed", ex);
                 }
             }
+            if (stock != null) {
+                stock.revert();
+            }
         } finally {
             if (conn != null) {
                 try {
@@ -475,39 +504,275 @@ public class ReservationDB {
         return statusMessage;
     }
 
-    private int getInventoryQuantityForWarehouse(int fruitId, int warehouseId, Connection conn) throws SQLException {
-        int quantity = 0;
+    /** One (fruit, target country) line of a delivery plan and what became of it. */
+    public static class DeliveryManifestLineBean implements Serializable {
+
+        private int fruitId;
+        private String fruitName;
+        private String targetCountry;
+        private int toWarehouseId = -1;
+        private int quantity;
+        private int deliveryId = -1;
+        private String message;
+        private final List<Integer> reservationIds = new ArrayList<>();
+
+        public int getFruitId() {
+            return fruitId;
+        }
+
+        public void setFruitId(int fruitId) {
+            this.fruitId = fruitId;
+        }
+
+        public String getFruitName() {
+            return fruitName;
+        }
+
+        public void setFruitName(String fruitName) {
+            this.fruitName = fruitName;
+        }
+
+        public String getTargetCountry() {
+            return targetCountry;
+        }
+
+        public void setTargetCountry(String targetCountry) {
+            this.targetCountry = targetCountry;
+        }
+
+        public int getToWarehouseId() {
+            return toWarehouseId;
+        }
 
-        String sql = "SELECT quantity FROM inventory WHERE fruit_id = ? AND warehouse_id = ? AND shop_id IS NULL";
+        public void setToWarehouseId(int toWarehouseId) {
+            this.toWarehouseId = toWarehouseId;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public void setQuantity(int quantity) {
+            this.quantity = quantity;
+        }
+
+        /** The delivery row written for this line, or -1 if it was not arranged. */
+        public int getDeliveryId() {
+            return deliveryId;
+        }
+
+        public void setDeliveryId(int deliveryId) {
+            this.deliveryId = deliveryId;
+        }
+
+        public boolean isArranged() {
+            return deliveryId != -1;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+        }
+
+        public List<Integer> getReservationIds() {
+            return reservationIds;
+        }
+
+        public int getReservationCount() {
+            return reservationIds.size();
+        }
+    }
+
+    /** The order of the needs list: target country, fruit name, then fruit id. */
+    private static final Comparator<DeliveryManifestLineBean> MANIFEST_ORDER = Comparator
+            .comparing(DeliveryManifestLineBean::getTargetCountry, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER))
+            .thenComparing(DeliveryManifestLineBean::getFruitName, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER))
+            .thenComparingInt(DeliveryManifestLineBean::getFruitId);
+
+    /**
+     * Arranges every pending delivery from a source warehouse in one
+     * transaction: the needs listed by
+     * {@link #getApprovedNeedsGroupedByFruitAndCountry(int)}, but computed
+     * from the Approved reservations locked with a single query. Each
+     * (fruit, target country) line whose central warehouse exists and whose
+     * quantity the source still holds becomes one delivery; the deliveries are
+     * inserted as one batch, the reservations marked Shipped with one update
+     * and the stock decrements journaled as one batch. Lines that cannot be
+     * arranged are left Approved and reported in the returned manifest,
+     * ordered like the needs list.
+     */
+    public List<DeliveryManifestLineBean> planDeliveries(int fromWarehouseId) {
+        String lockSql = "SELECT r.reservation_id, r.fruit_id, r.quantity, "
+                + "(SELECT f.fruit_name FROM fruits f WHERE f.fruit_id = r.fruit_id) AS fruit_name, "
+                + "(SELECT s.country FROM shops s WHERE s.shop_id = r.shop_id) AS target_country "
+                + "FROM reservations r WHERE r.status = 'Approved' AND r.fruit_id IN ("
+                + "  SELECT f.fruit_id FROM fruits f JOIN warehouses w ON f.source_country = w.country "
+                + "  WHERE w.warehouse_id = ? AND w.is_source = 1) "
+                + "ORDER BY r.reservation_id FOR UPDATE";
+        String deliverySql = "INSERT INTO deliveries (fruit_id, from_warehouse_id, to_warehouse_id, quantity, "
+                + "delivery_date, status) VALUES (?, ?, ?, ?, CURDATE(), 'Scheduled')";
+        Map<Integer, Map<String, DeliveryManifestLineBean>> linesByFruit = new HashMap<>();
+        List<DeliveryManifestLineBean> manifest = new ArrayList<>();
+        Connection conn = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
+        InventoryLedger.Change stock = null;
+
         try {
-            ps = conn.prepareStatement(sql);
-            ps.setInt(1, fruitId);
-            ps.setInt(2, warehouseId);
+            conn = getConnection();
+            conn.setAutoCommit(false);
+
+            ps = conn.prepareStatement(lockSql);
+            ps.setInt(1, fromWarehouseId);
             rs = ps.executeQuery();
-            if (rs.next()) {
-                quantity = rs.getInt("quantity");
-            } else {
-                LOGGER.log(Level.WARNING, "[TX] No inventory record found for FruitID={0}, WarehouseID={1}",
-                        new Object[] { fruitId, warehouseId });
+            while (rs.next()) {
+                int quantity = rs.getInt("quantity");
+                String targetCountry = rs.getString("target_country");
+                String fruitName = rs.getString("fruit_name");
+                int fruitId = rs.getInt("fruit_id");
+                Map<String, DeliveryManifestLineBean> lines = linesByFruit.computeIfAbsent(fruitId,
+                        id -> new HashMap<>());
+                DeliveryManifestLineBean line = lines.get(targetCountry);
+                if (line == null) {
+                    line = new DeliveryManifestLineBean();
+                    line.setFruitId(fruitId);
+                    line.setFruitName(fruitName);
+                    line.setTargetCountry(targetCountry);
+                    lines.put(targetCountry, line);
+                    manifest.add(line);
+                }
+                line.setQuantity(line.getQuantity() + quantity);
+                line.getReservationIds().add(rs.getInt("reservation_id"));
+            }
+            closeQuietly(rs);
+            closeQuietly(ps);
+            rs = null;
+            ps = null;
+            manifest.sort(MANIFEST_ORDER);
+
+            // Plan against the ledger first, so only lines that can ship get a delivery row.
+            Map<Integer, Integer> remainingByFruit = new HashMap<>();
+            List<DeliveryManifestLineBean> planned = new ArrayList<>();
+            for (DeliveryManifestLineBean line : manifest) {
+                int toWarehouseId = warehouseDb.findCentralWarehouseInCountry(line.getTargetCountry());
+                Integer remaining = remainingByFruit.get(line.getFruitId());
+                int available = remaining != null ? remaining
+                        : inventoryLedger.getQuantity(InventoryLedger.warehouseKey(line.getFruitId(), fromWarehouseId));
+                if (line.getQuantity() <= 0) {
+                    line.setMessage("Delivery arrangement failed: Nothing to deliver.");
+                } else if (toWarehouseId == -1) {
+                    line.setMessage("Delivery arrangement failed: Could not find a central warehouse in "
+                            + line.getTargetCountry() + ".");
+                } else if (available < line.getQuantity()) {
+                    line.setMessage("Delivery arrangement failed: Insufficient stock (" + available
+                            + ") at source warehouse " + fromWarehouseId + " for required quantity ("
+                            + line.getQuantity() + ").");
+                } else {
+                    remainingByFruit.put(line.getFruitId(), available - line.getQuantity());
+                    line.setToWarehouseId(toWarehouseId);
+                    planned.add(line);
+                }
+            }
+            if (planned.isEmpty()) {
+                conn.rollback();
+                return manifest;
+            }
 
+            ps = conn.prepareStatement(deliverySql, Statement.RETURN_GENERATED_KEYS);
+            for (DeliveryManifestLineBean line : planned) {
+                ps.setInt(1, line.getFruitId());
+                ps.setInt(2, fromWarehouseId);
+                ps.setInt(3, line.getToWarehouseId());
+                ps.setInt(4, line.getQuantity());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            rs = ps.getGeneratedKeys();
+            List<Integer> deliveryIds = new ArrayList<>();
+            while (rs.next()) {
+                deliveryIds.add(rs.getInt(1));
+            }
+            closeQuietly(rs);
+            closeQuietly(ps);
+            rs = null;
+            ps = null;
+            if (deliveryIds.size() != planned.size()) {
+                throw new SQLException("Expected " + planned.size() + " delivery ids, got " + deliveryIds.size() + ".");
+            }
+
+            List<Integer> reservationIds = new ArrayList<>();
+            stock = inventoryLedger.change(InventoryLedger.Cause.DELIVERY, null);
+            for (int i = 0; i < planned.size(); i++) {
+                DeliveryManifestLineBean line = planned.get(i);
+                if (!stock.withdraw(InventoryLedger.warehouseKey(line.getFruitId(), fromWarehouseId),
+                        line.getQuantity(), deliveryIds.get(i))) {
+                    throw new SQLException("Stock of Fruit ID " + line.getFruitId() + " at source warehouse "
+                            + fromWarehouseId + " changed while deliveries were being planned.");
+                }
+                reservationIds.addAll(line.getReservationIds());
             }
-        } finally {
 
+            int reservationsUpdated = updateReservationStatusForDelivery(reservationIds, "Shipped", conn);
+            if (reservationsUpdated != reservationIds.size()) {
+                throw new SQLException("Only " + reservationsUpdated + " of " + reservationIds.size()
+                        + " locked reservations could be marked Shipped.");
+            }
+
+            stock.journal(conn);
+            conn.commit();
+            stock.committed();
+            dataVersions.bump(DataVersions.Dataset.RESERVATIONS, DataVersions.Dataset.INVENTORY,
+                    DataVersions.Dataset.DELIVERIES);
+            for (int i = 0; i < planned.size(); i++) {
+                DeliveryManifestLineBean line = planned.get(i);
+                line.setDeliveryId(deliveryIds.get(i));
+                line.setMessage("Delivery arranged successfully for " + line.getQuantity() + " units of "
+                        + line.getFruitName() + " to " + line.getTargetCountry() + "!");
+            }
+            LOGGER.log(Level.INFO, "[TX-PlanDeliveries] {0} of {1} deliveries arranged from WarehouseID={2}.",
+                    new Object[] { planned.size(), manifest.size(), fromWarehouseId });
+
+        } catch (SQLException | IOException e) {
+            LOGGER.log(Level.SEVERE, "Error during delivery planning for WarehouseID=" + fromWarehouseId, e);
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    LOGGER.log(Level.SEVERE, "Rollback failed", ex);
+                }
+            }
+            if (stock != null) {
+                stock.revert();
+            }
+            for (DeliveryManifestLineBean line : manifest) {
+                line.setDeliveryId(-1);
+                line.setMessage("Delivery arrangement failed: Database error occurred (" + e.getMessage() + ")");
+            }
+        } finally {
             closeQuietly(rs);
             closeQuietly(ps);
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException e) {
+                    LOGGER.log(Level.SEVERE, "Failed to close connection", e);
+                }
+            }
         }
-        return quantity;
+        return manifest;
     }
 
     public List<ConsumptionDataBean> getConsumptionSummaryByFruit(Date startDate, Date endDate) {
         List<ConsumptionDataBean> reportData = new ArrayList<>();
 
-        String sql = "SELECT f.fruit_name, SUM(r.quantity) as total_consumed "
-                + "FROM reservations r "
-                + "JOIN fruits f ON r.fruit_id = f.fruit_id "
-                + "WHERE r.status = 'Fulfilled' AND r.reservation_date BETWEEN ? AND ? "
+        String sql = "SELECT f.fruit_name, SUM(c.total_quantity) as total_consumed "
+                + "FROM consumption_daily c "
+                + "JOIN fruits f ON c.fruit_id = f.fruit_id "
+                + "WHERE c.consumption_date BETWEEN ? AND ? "
                 + "GROUP BY f.fruit_name "
                 + "ORDER BY total_consumed DESC";
 
@@ -546,46 +811,6 @@ public class ReservationDB {
         return reportData;
     }
 
-    private boolean updateWarehouseInventory(int fruitId, int warehouseId, int quantityChange, Connection conn)
-            throws SQLException {
-
-        String sql = "UPDATE inventory SET quantity = quantity + ? WHERE fruit_id = ? AND warehouse_id = ? AND shop_id IS NULL";
-
-        if (quantityChange < 0) {
-            sql += " AND quantity >= ?";
-        }
-        PreparedStatement ps = null;
-        try {
-            ps = conn.prepareStatement(sql);
-            ps.setInt(1, quantityChange);
-            ps.setInt(2, fruitId);
-            ps.setInt(3, warehouseId);
-            if (quantityChange < 0) {
-                ps.setInt(4, -quantityChange);
-            }
-
-            int rowsAffected = ps.executeUpdate();
-            if (rowsAffected == 0 && quantityChange < 0) {
-                LOGGER.log(Level.WARNING,
-                        "[TX] Update failed for decreasing warehouse inventory - possibly record missing or insufficient quantity. FruitID={0}, WarehouseID={1}",
-                        new Object[] { fruitId, warehouseId });
-                return false;
-            }
-            if (rowsAffected == 0 && quantityChange > 0) {
-
-                LOGGER.log(Level.WARNING,
-                        "[TX] Update failed for increasing warehouse inventory - record missing? FruitID={0}, WarehouseID={1}",
-                        new Object[] { fruitId, warehouseId });
-                return false;
-            }
-
-            return rowsAffected > 0;
-        } finally {
-
-            closeQuietly(ps);
-        }
-    }
-
     public List<AggregatedNeedBean> getAggregatedNeeds(String filterType, String filterValue, Date startDate,
             Date endDate) {
         List<AggregatedNeedBean> needs = new ArrayList<>();
@@ -695,40 +920,36 @@ public class ReservationDB {
                 "SELECT "
                         + "  CASE "
 
-                        + "    WHEN MONTH(r.reservation_date) IN (3, 4, 5) THEN 'Spring' "
-                        + "    WHEN MONTH(r.reservation_date) IN (6, 7, 8) THEN 'Summer' "
-                        + "    WHEN MONTH(r.reservation_date) IN (9, 10, 11) THEN 'Autumn' "
+                        + "    WHEN MONTH(c.consumption_date) IN (3, 4, 5) THEN 'Spring' "
+                        + "    WHEN MONTH(c.consumption_date) IN (6, 7, 8) THEN 'Summer' "
+                        + "    WHEN MONTH(c.consumption_date) IN (9, 10, 11) THEN 'Autumn' "
                         + "    ELSE 'Winter' "
 
                         + "  END AS season, "
                         + "  f.fruit_name, "
-                        + "  SUM(r.quantity) as total_consumed "
-                        + "FROM reservations r "
-                        + "JOIN fruits f ON r.fruit_id = f.fruit_id ");
+                        + "  SUM(c.total_quantity) as total_consumed "
+                        + "FROM consumption_daily c "
+                        + "JOIN fruits f ON c.fruit_id = f.fruit_id ");
         List<Object> params = new ArrayList<>();
 
-        if ("shop".equals(filterType) || "city".equals(filterType) || "country".equals(filterType)) {
-            sqlBuilder.append("JOIN shops s ON r.shop_id = s.shop_id ");
-            if ("shop".equals(filterType)) {
-                sqlBuilder.append("WHERE s.shop_id = ? ");
-                try {
-                    params.add(Integer.parseInt(filterValue));
-                } catch (NumberFormatException e) {
-                    return consumption;
-                }
-            } else if ("city".equals(filterType)) {
-                sqlBuilder.append("WHERE s.city = ? ");
-                params.add(filterValue);
-            } else {
-                sqlBuilder.append("WHERE s.country = ? ");
-                params.add(filterValue);
+        if ("shop".equals(filterType)) {
+            sqlBuilder.append("WHERE c.shop_id = ? ");
+            try {
+                params.add(Integer.parseInt(filterValue));
+            } catch (NumberFormatException e) {
+                return consumption;
             }
+        } else if ("city".equals(filterType)) {
+            sqlBuilder.append("WHERE c.city = ? ");
+            params.add(filterValue);
+        } else if ("country".equals(filterType)) {
+            sqlBuilder.append("WHERE c.country = ? ");
+            params.add(filterValue);
         } else {
             sqlBuilder.append("WHERE 1=1 ");
         }
 
-        sqlBuilder.append("AND r.status = 'Fulfilled' ");
-        sqlBuilder.append("AND r.reservation_date BETWEEN ? AND ? ");
+        sqlBuilder.append("AND c.consumption_date BETWEEN ? AND ? ");
         params.add(startDate);
         params.add(endDate);
 
@@ -784,18 +1005,15 @@ public class ReservationDB {
         }
 
         String sql = "SELECT "
-                + "  s.country AS target_country, "
-                + "  r.fruit_id, "
+                + "  c.country AS target_country, "
+                + "  c.fruit_id, "
                 + "  f.fruit_name, "
-                + "  SUM(r.quantity) AS total_consumed "
-                + "FROM reservations r "
-                + "JOIN fruits f ON r.fruit_id = f.fruit_id "
-                + "JOIN shops s ON r.shop_id = s.shop_id "
-                + "WHERE r.status = 'Fulfilled' "
-                + "  AND r.reservation_date BETWEEN ? AND ? "
-
-                + "GROUP BY s.country, r.fruit_id, f.fruit_name "
-                + "ORDER BY s.country, f.fruit_name";
+                + "  SUM(c.total_quantity) AS total_consumed "
+                + "FROM consumption_daily c "
+                + "JOIN fruits f ON c.fruit_id = f.fruit_id "
+                + "WHERE c.consumption_date BETWEEN ? AND ? "
+                + "GROUP BY c.country, c.fruit_id, f.fruit_name "
+                + "ORDER BY c.country, f.fruit_name";
 
         Connection conn = null;
         PreparedStatement ps = null;
@@ -836,4 +1054,16 @@ public class ReservationDB {
         return forecastData;
     }
 
-}
\ No newline at end of file
+    /** Maps a reservations row joined with fruit_name. */
+    static ReservationBean mapRowToReservationBean(ResultSet rs) throws SQLException {
+        ReservationBean bean = new ReservationBean();
+        bean.setReservationId(rs.getInt("reservation_id"));
+        bean.setFruitId(rs.getInt("fruit_id"));
+        bean.setShopId(rs.getInt("shop_id"));
+        bean.setQuantity(rs.getInt("quantity"));
+        bean.setReservationDate(rs.getDate("reservation_date"));
+        bean.setStatus(rs.getString("status"));
+        bean.setFruitName(rs.getString("fruit_name"));
+        return bean;
+    }
+}
@@ -0,0 +1,18 @@
+package ict.db;
+
+import java.io.IOException;
+
+/**
+ * Receives a report export one row at a time, as the DAO reads it from the
+ * result set, so an export of any length is never held in memory.
+ * <p>
+ * {@link #columns} is called once, after the query has executed and before
+ * the first row; a query that fails never reaches the sink. Cell values are
+ * String, Number or java.sql.Date, or null.
+ */
+public interface RowSink {
+
+    void columns(String... labels) throws IOException;
+
+    void row(Object... cells) throws IOException;
+}
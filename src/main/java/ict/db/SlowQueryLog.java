@@ -0,0 +1,309 @@
+package ict.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * Logs DAO statements that take longer than a threshold, with the calling
+ * DAO method, SQL text, bind values, row count and duration; optionally
+ * followed by the statement's EXPLAIN output.
+ * <p>
+ * Statements are timed from execute until their result set is exhausted or
+ * closed, so a query whose rows are slow to map is reported as well as one
+ * that is slow to plan. Entries go to the ict.db.SlowQueryLog logger, or to
+ * a rolling file of their own when {@link #setLogFile(String)} is set.
+ * EXPLAIN runs on a separate pooled connection on a background thread, at
+ * most once per SQL text per {@link #setExplainIntervalMs(long) interval},
+ * so a burst of slow calls never multiplies the load that caused it.
+ */
+public class SlowQueryLog {
+
+    private static final Logger LOGGER = Logger.getLogger(SlowQueryLog.class.getName());
+    private static final int MAX_VALUE_LENGTH = 200;
+
+    private final DataSource dataSource;
+    private long thresholdMs = 1000;
+    private boolean explain;
+    private long explainIntervalMs = 60000;
+    private String logFile;
+    private int logFileLimitBytes = 10 * 1024 * 1024;
+    private int logFileCount = 5;
+
+    private volatile long thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+    private FileHandler fileHandler;
+    private ThreadPoolExecutor explainer;
+    private final Map<String, Long> lastExplained = new ConcurrentHashMap<>();
+
+    /** dataSource is used only for EXPLAIN; pass the unmetered pool. */
+    public SlowQueryLog(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Starts the EXPLAIN thread and opens the log file. If the file cannot be
+     * opened the log keeps working through the parent handlers.
+     */
+    public synchronized void start() throws IOException {
+        if (explain) {
+            explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(16), r -> {
+                Thread t = new Thread(r, "ict-db-slow-query-explain");
+                t.setDaemon(true);
+                return t;
+            }, new ThreadPoolExecutor.DiscardPolicy());
+        }
+        if (logFile != null) {
+            fileHandler = new FileHandler(logFile, logFileLimitBytes, logFileCount, true);
+            fileHandler.setFormatter(new EntryFormatter());
+            LOGGER.addHandler(fileHandler);
+            LOGGER.setUseParentHandlers(false);
+        }
+        LOGGER.log(Level.CONFIG, "Slow query log started (threshold={0} ms, explain={1}, file={2})",
+                new Object[] { thresholdMs, explain, logFile });
+    }
+
+    public synchronized void shutdown() {
+        if (explainer != null) {
+            explainer.shutdownNow();
+            explainer = null;
+        }
+        if (fileHandler != null) {
+            LOGGER.removeHandler(fileHandler);
+            LOGGER.setUseParentHandlers(true);
+            fileHandler.close();
+            fileHandler = null;
+        }
+    }
+
+    boolean isEnabled() {
+        return thresholdNanos > 0;
+    }
+
+    boolean isSlow(long nanos) {
+        long threshold = thresholdNanos;
+        return threshold > 0 && nanos >= threshold;
+    }
+
+    /**
+     * Logs one slow execution. binds maps parameter index to the value that
+     * was set; batchSize is 0 for a single execution; rows is the number of
+     * rows read or affected, or -1 if unknown.
+     */
+    void record(String method, String sql, Map<Integer, Object> binds, int batchSize, long rows,
+            long executeNanos, long totalNanos) {
+        StringBuilder entry = new StringBuilder(256);
+        entry.append("Slow query in ").append(method).append(": ").append(millis(totalNanos)).append(" ms (execute ")
+                .append(millis(executeNanos)).append(" ms), ");
+        entry.append(rows < 0 ? "?" : Long.toString(rows)).append(rows == 1 ? " row" : " rows");
+        if (batchSize > 0) {
+            entry.append(", batch of ").append(batchSize);
+        }
+        entry.append("\n  SQL: ").append(sql == null ? "(unknown)" : sql.replaceAll("\\s+", " ").trim());
+        if (!binds.isEmpty()) {
+            entry.append("\n  Binds: ");
+            appendBinds(entry, binds);
+        }
+        LOGGER.log(Level.WARNING, entry.toString());
+
+        if (explain && sql != null && isExplainable(sql) && !hasStreams(binds) && claimExplain(sql)) {
+            ThreadPoolExecutor executor = explainer;
+            if (executor != null) {
+                executor.execute(() -> explain(method, sql, binds));
+            }
+        }
+    }
+
+    private boolean claimExplain(String sql) {
+        long now = System.currentTimeMillis();
+        Long last = lastExplained.get(sql);
+        if (last != null && now - last < explainIntervalMs) {
+            return false;
+        }
+        return last == null ? lastExplained.putIfAbsent(sql, now) == null : lastExplained.replace(sql, last, now);
+    }
+
+    private void explain(String method, String sql, Map<Integer, Object> binds) {
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            conn = dataSource.getConnection();
+            ps = conn.prepareStatement("EXPLAIN " + sql);
+            for (Map.Entry<Integer, Object> bind : binds.entrySet()) {
+                ps.setObject(bind.getKey(), bind.getValue());
+            }
+            rs = ps.executeQuery();
+            ResultSetMetaData meta = rs.getMetaData();
+            StringBuilder plan = new StringBuilder(256);
+            plan.append("EXPLAIN for ").append(method).append(':');
+            plan.append("\n  ");
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+                plan.append(i > 1 ? " | " : "").append(meta.getColumnLabel(i));
+            }
+            while (rs.next()) {
+                plan.append("\n  ");
+                for (int i = 1; i <= meta.getColumnCount(); i++) {
+                    String value = rs.getString(i);
+                    plan.append(i > 1 ? " | " : "").append(value == null ? "NULL" : value);
+                }
+            }
+            LOGGER.log(Level.WARNING, plan.toString());
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "EXPLAIN failed for " + method, e);
+        } finally {
+            closeQuietly(rs);
+            closeQuietly(ps);
+            closeQuietly(conn);
+        }
+    }
+
+    private static boolean isExplainable(String sql) {
+        String head = sql.trim();
+        head = head.substring(0, Math.min(8, head.length())).toUpperCase(Locale.ROOT);
+        return head.startsWith("SELECT") || head.startsWith("WITH") || head.startsWith("UPDATE")
+                || head.startsWith("DELETE") || head.startsWith("INSERT") || head.startsWith("REPLACE");
+    }
+
+    private static boolean hasStreams(Map<Integer, Object> binds) {
+        for (Object value : binds.values()) {
+            if (isStream(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isStream(Object value) {
+        return value instanceof InputStream || value instanceof Reader || value instanceof Blob
+                || value instanceof Clob;
+    }
+
+    private static void appendBinds(StringBuilder entry, Map<Integer, Object> binds) {
+        boolean first = true;
+        for (Map.Entry<Integer, Object> bind : binds.entrySet()) {
+            entry.append(first ? "" : ", ").append(bind.getKey()).append('=');
+            first = false;
+            Object value = bind.getValue();
+            if (value == null) {
+                entry.append("NULL");
+            } else if (value instanceof CharSequence) {
+                String text = value.toString();
+                if (text.length() > MAX_VALUE_LENGTH) {
+                    text = text.substring(0, MAX_VALUE_LENGTH) + "...";
+                }
+                entry.append('\'').append(text.replace("'", "''")).append('\'');
+            } else if (value instanceof byte[]) {
+                entry.append('<').append(((byte[]) value).length).append(" bytes>");
+            } else if (isStream(value)) {
+                entry.append('<').append(value.getClass().getSimpleName()).append('>');
+            } else {
+                entry.append(value);
+            }
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1e6);
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Failed to close resource", e);
+            }
+        }
+    }
+
+    /** One entry per record, prefixed with its timestamp and level. */
+    private static final class EntryFormatter extends Formatter {
+        @Override
+        public String format(LogRecord record) {
+            return Instant.ofEpochMilli(record.getMillis()) + " " + record.getLevel() + " " + formatMessage(record)
+                    + System.lineSeparator();
+        }
+    }
+
+    public long getThresholdMs() {
+        return thresholdMs;
+    }
+
+    /** Statements at or above this many milliseconds are logged; 0 turns the log off. */
+    public void setThresholdMs(long thresholdMs) {
+        this.thresholdMs = Math.max(0, thresholdMs);
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(this.thresholdMs);
+    }
+
+    public boolean isExplain() {
+        return explain;
+    }
+
+    public synchronized void setExplain(boolean explain) {
+        checkNotStarted();
+        this.explain = explain;
+    }
+
+    public long getExplainIntervalMs() {
+        return explainIntervalMs;
+    }
+
+    public void setExplainIntervalMs(long explainIntervalMs) {
+        this.explainIntervalMs = Math.max(0, explainIntervalMs);
+    }
+
+    public String getLogFile() {
+        return logFile;
+    }
+
+    /** FileHandler pattern (e.g. "%h/ict-slow-query.%g.log"); null or empty logs through the parent handlers. */
+    public synchronized void setLogFile(String logFile) {
+        checkNotStarted();
+        this.logFile = (logFile == null || logFile.trim().isEmpty()) ? null : logFile.trim();
+    }
+
+    public int getLogFileLimitBytes() {
+        return logFileLimitBytes;
+    }
+
+    public synchronized void setLogFileLimitBytes(int logFileLimitBytes) {
+        checkNotStarted();
+        this.logFileLimitBytes = Math.max(0, logFileLimitBytes);
+    }
+
+    public int getLogFileCount() {
+        return logFileCount;
+    }
+
+    public synchronized void setLogFileCount(int logFileCount) {
+        checkNotStarted();
+        this.logFileCount = Math.max(1, logFileCount);
+    }
+
+    private void checkNotStarted() {
+        if (fileHandler != null || explainer != null) {
+            throw new IllegalStateException("Slow query log file and EXPLAIN settings cannot be changed after start().");
+        }
+    }
+}
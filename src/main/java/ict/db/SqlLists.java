@@ -0,0 +1,40 @@
+package ict.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+
+/**
+ * Builds and binds the {@code IN (?, ?, ...)} lists the DAOs use for bulk
+ * statements over a set of ids.
+ */
+final class SqlLists {
+
+    private SqlLists() {
+    }
+
+    /** "?, ?, ?" with one marker per id, for an {@code IN (...)} list. */
+    static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Binds the ids in iteration order starting at parameter {@code first}
+     * and returns the index of the next parameter.
+     */
+    static int bindIds(PreparedStatement ps, int first, Collection<? extends Number> ids) throws SQLException {
+        int index = first;
+        for (Number id : ids) {
+            if (id instanceof Long) {
+                ps.setLong(index++, id.longValue());
+            } else {
+                ps.setInt(index++, id.intValue());
+            }
+        }
+        return index;
+    }
+}
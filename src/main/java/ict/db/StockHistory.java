@@ -0,0 +1,349 @@
+package ict.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import ict.bean.InventoryBean;
+
+/**
+ * Reads the stock_movements history that {@link InventoryLedger} appends
+ * to, and keeps it cheap to read.
+ * <p>
+ * A snapshot stores every location's quantity after one movement id. New
+ * snapshots are compacted from the previous one plus the movements since,
+ * on a background thread every {@link #setSnapshotIntervalMs(long)
+ * interval}, so rebuilding a location's stock at any time sums at most one
+ * interval of movements on top of the nearest snapshot. The time axis is
+ * when movements reached the inventory table (recorded_at): a rebuild at T
+ * returns what the table held at T.
+ * <p>
+ * After each snapshot the inventory table is {@link #reconcile()
+ * reconciled} against the history and any difference is logged.
+ */
+public class StockHistory {
+
+    private static final Logger LOGGER = Logger.getLogger(StockHistory.class.getName());
+
+    private final DataSource dataSource;
+    private long snapshotIntervalMs = TimeUnit.HOURS.toMillis(6);
+    private ScheduledExecutorService snapshotter;
+
+    public StockHistory(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /** Starts the snapshot thread; does nothing if the interval is 0. */
+    public synchronized void start() {
+        if (snapshotter != null || snapshotIntervalMs <= 0) {
+            return;
+        }
+        snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ict-db-stock-snapshots");
+            t.setDaemon(true);
+            return t;
+        });
+        snapshotter.scheduleWithFixedDelay(this::snapshotQuietly, snapshotIntervalMs, snapshotIntervalMs,
+                TimeUnit.MILLISECONDS);
+        LOGGER.log(Level.INFO, "Stock snapshots scheduled every {0} ms.", snapshotIntervalMs);
+    }
+
+    public synchronized void shutdown() {
+        if (snapshotter != null) {
+            snapshotter.shutdownNow();
+            snapshotter = null;
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            takeSnapshot();
+            reconcile();
+        } catch (SQLException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Stock snapshot failed; retrying on the next run.", e);
+        }
+    }
+
+    /**
+     * Stores the quantity of every location after the latest movement,
+     * computed from the previous snapshot and the movements since. Returns
+     * the new snapshot id, or -1 if nothing has moved since the last one.
+     */
+    public synchronized int takeSnapshot() throws SQLException {
+        String rowsSql = "INSERT INTO stock_snapshot_rows (snapshot_id, fruit_id, shop_id, warehouse_id, quantity) "
+                + "SELECT ?, fruit_id, shop_id, warehouse_id, SUM(quantity) FROM ("
+                + "  SELECT fruit_id, shop_id, warehouse_id, quantity FROM stock_snapshot_rows WHERE snapshot_id = ? "
+                + "  UNION ALL "
+                + "  SELECT fruit_id, shop_id, warehouse_id, delta FROM stock_movements "
+                + "  WHERE movement_id > ? AND movement_id <= ?"
+                + ") x GROUP BY fruit_id, shop_id, warehouse_id";
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(false);
+            long[] previous = findSnapshot(Long.MAX_VALUE, conn);
+            long throughId = lastMovementId(null, conn);
+            if (throughId <= previous[1]) {
+                conn.rollback();
+                return -1;
+            }
+
+            ps = conn.prepareStatement("INSERT INTO stock_snapshots (through_movement_id) VALUES (?)",
+                    Statement.RETURN_GENERATED_KEYS);
+            ps.setLong(1, throughId);
+            ps.executeUpdate();
+            rs = ps.getGeneratedKeys();
+            if (!rs.next()) {
+                throw new SQLException("No snapshot id was generated.");
+            }
+            int snapshotId = rs.getInt(1);
+            closeQuietly(rs);
+            closeQuietly(ps);
+            rs = null;
+            ps = null;
+
+            ps = conn.prepareStatement(rowsSql);
+            ps.setInt(1, snapshotId);
+            ps.setLong(2, previous[0]);
+            ps.setLong(3, previous[1]);
+            ps.setLong(4, throughId);
+            int rows = ps.executeUpdate();
+            conn.commit();
+            LOGGER.log(Level.INFO, "Stock snapshot {0} taken through movement {1} ({2} rows).",
+                    new Object[] { snapshotId, throughId, rows });
+            return snapshotId;
+        } catch (SQLException | RuntimeException e) {
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    LOGGER.log(Level.SEVERE, "Rollback failed", ex);
+                }
+            }
+            throw e;
+        } finally {
+            closeQuietly(rs);
+            closeQuietly(ps);
+            if (conn != null) {
+                try {
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException e) {
+                    LOGGER.log(Level.SEVERE, "Failed to close connection", e);
+                }
+            }
+        }
+    }
+
+    /** Stock held at a shop at the given time, by fruit name; empty before the history starts. */
+    public List<InventoryBean> getShopStockAt(int shopId, Timestamp at) throws SQLException {
+        return getStockAt(false, shopId, at);
+    }
+
+    /** Stock held at a warehouse at the given time, by fruit name; empty before the history starts. */
+    public List<InventoryBean> getWarehouseStockAt(int warehouseId, Timestamp at) throws SQLException {
+        return getStockAt(true, warehouseId, at);
+    }
+
+    private List<InventoryBean> getStockAt(boolean warehouse, int locationId, Timestamp at) throws SQLException {
+        String column = warehouse ? "warehouse_id" : "shop_id";
+        String sql = "SELECT x.fruit_id, f.fruit_name, SUM(x.quantity) AS quantity FROM ("
+                + "  SELECT fruit_id, quantity FROM stock_snapshot_rows WHERE snapshot_id = ? AND " + column + " = ? "
+                + "  UNION ALL "
+                + "  SELECT fruit_id, delta FROM stock_movements "
+                + "  WHERE " + column + " = ? AND movement_id > ? AND movement_id <= ?"
+                + ") x JOIN fruits f ON f.fruit_id = x.fruit_id "
+                + "GROUP BY x.fruit_id, f.fruit_name ORDER BY f.fruit_name";
+        List<InventoryBean> stock = new ArrayList<>();
+        Connection conn = null;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            conn = dataSource.getConnection();
+            long throughId = lastMovementId(at, conn);
+            if (throughId == 0) {
+                return stock;
+            }
+            long[] snapshot = findSnapshot(throughId, conn);
+            ps = conn.prepareStatement(sql);
+            ps.setLong(1, snapshot[0]);
+            ps.setInt(2, locationId);
+            ps.setInt(3, locationId);
+            ps.setLong(4, snapshot[1]);
+            ps.setLong(5, throughId);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                InventoryBean item = new InventoryBean();
+                item.setFruitId(rs.getInt("fruit_id"));
+                item.setFruitName(rs.getString("fruit_name"));
+                item.setShopId(warehouse ? null : locationId);
+                item.setWarehouseId(warehouse ? locationId : null);
+                item.setQuantity(rs.getInt("quantity"));
+                stock.add(item);
+            }
+        } finally {
+            closeQuietly(rs);
+            closeQuietly(ps);
+            closeQuietly(conn);
+        }
+        return stock;
+    }
+
+    /**
+     * Compares the inventory table with the latest snapshot plus the
+     * movements since, in one consistent read, and logs every location
+     * that differs. Returns the number of differences.
+     */
+    public int reconcile() throws SQLException {
+        String historySql = "SELECT fruit_id, shop_id, warehouse_id, SUM(quantity) AS quantity FROM ("
+                + "  SELECT fruit_id, shop_id, warehouse_id, quantity FROM stock_snapshot_rows WHERE snapshot_id = ? "
+                + "  UNION ALL "
+                + "  SELECT fruit_id, shop_id, warehouse_id, delta FROM stock_movements WHERE movement_id > ?"
+                + ") x GROUP BY fruit_id, shop_id, warehouse_id";
+        String inventorySql = "SELECT fruit_id, shop_id, warehouse_id, quantity FROM inventory";
+        Map<Long, Integer> history;
+        Map<Long, Integer> inventory;
+        Connection conn = null;
+        PreparedStatement ps = null;
+        try {
+            conn = dataSource.getConnection();
+            conn.setAutoCommit(false);
+            conn.setReadOnly(true);
+            long[] snapshot = findSnapshot(Long.MAX_VALUE, conn);
+            ps = conn.prepareStatement(historySql);
+            ps.setLong(1, snapshot[0]);
+            ps.setLong(2, snapshot[1]);
+            history = readQuantities(ps);
+            closeQuietly(ps);
+            ps = null;
+            ps = conn.prepareStatement(inventorySql);
+            inventory = readQuantities(ps);
+            conn.commit();
+        } finally {
+            closeQuietly(ps);
+            if (conn != null) {
+                try {
+                    conn.setReadOnly(false);
+                    conn.setAutoCommit(true);
+                    conn.close();
+                } catch (SQLException e) {
+                    LOGGER.log(Level.SEVERE, "Failed to close connection", e);
+                }
+            }
+        }
+
+        int differences = 0;
+        Map<Long, Integer> all = new HashMap<>(history);
+        for (Long key : inventory.keySet()) {
+            all.putIfAbsent(key, 0);
+        }
+        for (Long key : all.keySet()) {
+            int expected = history.getOrDefault(key, 0);
+            int actual = inventory.getOrDefault(key, 0);
+            if (expected != actual) {
+                differences++;
+                LOGGER.log(Level.WARNING, "Inventory for {0} is {1} but its movement history sums to {2}.",
+                        new Object[] { InventoryLedger.describeKey(key), actual, expected });
+            }
+        }
+        return differences;
+    }
+
+    /** Reads (fruit_id, shop_id, warehouse_id, quantity) rows keyed like the ledger. */
+    private static Map<Long, Integer> readQuantities(PreparedStatement ps) throws SQLException {
+        Map<Long, Integer> quantities = new HashMap<>();
+        ResultSet rs = null;
+        try {
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                int fruitId = rs.getInt("fruit_id");
+                int shopId = rs.getInt("shop_id");
+                long key = rs.wasNull() ? InventoryLedger.warehouseKey(fruitId, rs.getInt("warehouse_id"))
+                        : InventoryLedger.shopKey(fruitId, shopId);
+                quantities.merge(key, rs.getInt("quantity"), Integer::sum);
+            }
+        } finally {
+            closeQuietly(rs);
+        }
+        return quantities;
+    }
+
+    /** Highest movement id recorded at or before at (any time if null); 0 if there is none. */
+    private static long lastMovementId(Timestamp at, Connection conn) throws SQLException {
+        String sql = at == null ? "SELECT COALESCE(MAX(movement_id), 0) FROM stock_movements"
+                : "SELECT COALESCE(MAX(movement_id), 0) FROM stock_movements "
+                        + "WHERE recorded_at <= FROM_UNIXTIME(? / 1000)";
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = conn.prepareStatement(sql);
+            if (at != null) {
+                // Bound as epoch millis: drivers that take the server for pre-5.6.4 drop a Timestamp's fraction.
+                ps.setLong(1, at.getTime());
+            }
+            rs = ps.executeQuery();
+            return rs.next() ? rs.getLong(1) : 0;
+        } finally {
+            closeQuietly(rs);
+            closeQuietly(ps);
+        }
+    }
+
+    /**
+     * The latest snapshot taken through at most maxMovementId, as
+     * {snapshot_id, through_movement_id}; {0, 0} if there is none.
+     */
+    private static long[] findSnapshot(long maxMovementId, Connection conn) throws SQLException {
+        String sql = "SELECT snapshot_id, through_movement_id FROM stock_snapshots "
+                + "WHERE through_movement_id <= ? ORDER BY through_movement_id DESC LIMIT 1";
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = conn.prepareStatement(sql);
+            ps.setLong(1, maxMovementId);
+            rs = ps.executeQuery();
+            return rs.next() ? new long[] { rs.getLong(1), rs.getLong(2) } : new long[] { 0, 0 };
+        } finally {
+            closeQuietly(rs);
+            closeQuietly(ps);
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable resource) {
+        if (resource != null) {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to close resource: " + resource.getClass().getSimpleName(), e);
+            }
+        }
+    }
+
+    public long getSnapshotIntervalMs() {
+        return snapshotIntervalMs;
+    }
+
+    /** Time between scheduled snapshots; 0 takes them only when {@link #takeSnapshot()} is called. */
+    public synchronized void setSnapshotIntervalMs(long snapshotIntervalMs) {
+        if (snapshotter != null) {
+            throw new IllegalStateException("Stock snapshot settings cannot be changed after start().");
+        }
+        this.snapshotIntervalMs = Math.max(0, snapshotIntervalMs);
+    }
+}
@@ -1,83 +1,96 @@
 package ict.db;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.sql.DataSource;
+
 import ict.bean.UserBean;
 
 public class UserDB {
 
     private static final Logger LOGGER = Logger.getLogger(UserDB.class.getName());
-    String dburl, username, password;
-
-    public String getUrl() {
-        return dburl;
-    }
-
-    public void setUrl(String url) {
-        this.dburl = url;
-    }
-
-    public String getUsername() {
-        return username;
-    }
-
-    public void setUsername(String username) {
-        this.username = username;
-    }
-
-    public String getPassword() {
-        return password;
+    private static final int REJECTED_LOGIN_CACHE_SIZE = 1000;
+    private static final long REJECTED_LOGIN_TTL_MILLIS = 30 * 1000L;
+    private static final int LOGIN_MAX_FAILURES = 5;
+    private static final long LOGIN_FAILURE_WINDOW_MILLIS = 60 * 1000L;
+    private final DataSource dataSource;
+    private final ReferenceCache<String, Boolean> rejectedLogins = new ReferenceCache<>("rejectedLogins",
+            REJECTED_LOGIN_CACHE_SIZE, REJECTED_LOGIN_TTL_MILLIS);
+    private final LoginThrottle loginThrottle = new LoginThrottle(LOGIN_MAX_FAILURES, LOGIN_FAILURE_WINDOW_MILLIS);
+
+    public UserDB(DataSource dataSource) {
+        this.dataSource = dataSource;
     }
 
-    public void setPassword(String password) {
-        this.password = password;
+    public Connection getConnection() throws SQLException, IOException {
+        return dataSource.getConnection();
     }
 
-    public UserDB(String dburl, String dbUser, String dbPassword) {
-        this.dburl = dburl;
-        this.username = dbUser;
-        this.password = dbPassword;
+    /** Whether logins as username from the client address are refused for now. */
+    public boolean isLoginThrottled(String username, String clientAddress) {
+        return username != null && loginThrottle.isThrottled(username, clientAddress);
     }
 
-    public Connection getConnection() throws SQLException, IOException {
-        try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-        } catch (ClassNotFoundException e) {
-            LOGGER.log(Level.SEVERE, "MySQL JDBC Driver not found", e);
-            throw new SQLException("MySQL JDBC Driver not found", e);
+    /**
+     * Checks the credentials and loads the user in one query. Returns null if
+     * they do not match. The password column is never selected, so the bean
+     * that ends up in the session does not carry it.
+     *
+     * Rejected username/password pairs are remembered briefly (keyed by a
+     * hash of the password), so a terminal retrying the same wrong password
+     * at shift start does not hit the database each time. Failures count
+     * towards the throttle of the username from clientAddress.
+     */
+    public UserBean authenticate(String username, String password, String clientAddress) throws SQLException, IOException {
+        if (username == null || password == null) {
+            return null;
+        }
+        String rejectedKey = username + '\u0000' + sha256(password);
+        if (rejectedLogins.get(rejectedKey, key -> null) != null) {
+            loginThrottle.recordFailure(username, clientAddress);
+            return null;
         }
-        return DriverManager.getConnection(dburl, username, password);
-    }
-
-    public boolean isValidUser(String user, String pwd) throws SQLException, IOException {
-        boolean isValid = false;
-        String sql = "SELECT * FROM USERS WHERE username=? and password=?";
 
+        long rejectedGeneration = rejectedLogins.generation();
+        String sql = "SELECT user_id, username, userEmail, role, shop_id, warehouse_id FROM USERS "
+                + "WHERE username=? AND password=?";
+        UserBean user = null;
         Connection c = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
         try {
             c = getConnection();
             ps = c.prepareStatement(sql);
-            ps.setString(1, user);
-            ps.setString(2, pwd);
+            ps.setString(1, username);
+            ps.setString(2, password);
             rs = ps.executeQuery();
             if (rs.next()) {
-                isValid = true;
+                user = new UserBean();
+                user.setUserId(rs.getString("user_id"));
+                user.setUsername(rs.getString("username"));
+                user.setEmail(rs.getString("userEmail"));
+                user.setRole(rs.getString("role"));
+                Object shopIdObj = rs.getObject("shop_id");
+                user.setShopId(shopIdObj == null ? null : shopIdObj.toString());
+                Object warehouseIdObj = rs.getObject("warehouse_id");
+                user.setWarehouseId(warehouseIdObj == null ? null : warehouseIdObj.toString());
             }
         } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "Error validating user: " + user, e);
+            LOGGER.log(Level.SEVERE, "Error authenticating user: " + username, e);
             throw e;
         } finally {
             try {
@@ -99,7 +112,25 @@ public class UserDB {
                 LOGGER.log(Level.WARNING, "Failed to close Connection", e);
             }
         }
-        return isValid;
+
+        if (user != null) {
+            loginThrottle.recordSuccess(username, clientAddress);
+            LOGGER.log(Level.INFO, "User authenticated successfully: {0}", username);
+        } else {
+            rejectedLogins.put(rejectedKey, Boolean.TRUE, rejectedGeneration);
+            loginThrottle.recordFailure(username, clientAddress);
+            LOGGER.log(Level.WARNING, "Authentication failed for user: {0}", username);
+        }
+        return user;
+    }
+
+    private static String sha256(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
 
     public boolean addUserInfo(String id, String user, String pwd) {
@@ -118,6 +149,8 @@ public class UserDB {
             int row = ps.executeUpdate();
             if (row >= 1) {
                 isSuccess = true;
+                // A new user or password may turn a remembered rejection into a valid login.
+                rejectedLogins.invalidateAll();
                 LOGGER.log(Level.INFO, "User info added successfully for user: {0}", user);
             }
         } catch (SQLException | IOException e) {
@@ -242,6 +275,7 @@ public class UserDB {
             int row = ps.executeUpdate();
             if (row >= 1) {
                 isSuccess = true;
+                rejectedLogins.invalidateAll();
                 LOGGER.log(Level.INFO, "User updated successfully: ID={0}", userId);
             } else {
                 LOGGER.log(Level.WARNING, "User update failed: No rows affected for ID={0}", userId);
@@ -322,61 +356,6 @@ public class UserDB {
         return user;
     }
 
-    public UserBean getUser(String username, String password) {
-        String sql = "SELECT * FROM USERS WHERE username=? AND password=?";
-        UserBean user = null;
-        Connection c = null;
-        PreparedStatement ps = null;
-        ResultSet rs = null;
-
-        try {
-            c = getConnection();
-            ps = c.prepareStatement(sql);
-            ps.setString(1, username);
-
-            ps.setString(2, password);
-            rs = ps.executeQuery();
-
-            if (rs.next()) {
-                user = new UserBean();
-                user.setUserId(rs.getString("user_id"));
-                user.setUsername(rs.getString("username"));
-
-                user.setEmail(rs.getString("userEmail"));
-                user.setRole(rs.getString("role"));
-                Object shopIdObj = rs.getObject("shop_id");
-                user.setShopId(shopIdObj == null ? null : shopIdObj.toString());
-                Object warehouseIdObj = rs.getObject("warehouse_id");
-                user.setWarehouseId(warehouseIdObj == null ? null : warehouseIdObj.toString());
-                LOGGER.log(Level.INFO, "User authenticated successfully: {0}", username);
-            } else {
-                LOGGER.log(Level.WARNING, "Authentication failed for user: {0}", username);
-            }
-        } catch (SQLException | IOException e) {
-            LOGGER.log(Level.SEVERE, "Error retrieving user: " + username, e);
-        } finally {
-            try {
-                if (rs != null)
-                    rs.close();
-            } catch (SQLException e) {
-                LOGGER.log(Level.WARNING, "Failed to close ResultSet", e);
-            }
-            try {
-                if (ps != null)
-                    ps.close();
-            } catch (SQLException e) {
-                LOGGER.log(Level.WARNING, "Failed to close PreparedStatement", e);
-            }
-            try {
-                if (c != null)
-                    c.close();
-            } catch (SQLException e) {
-                LOGGER.log(Level.WARNING, "Failed to close Connection", e);
-            }
-        }
-        return user;
-    }
-
     public boolean addUser(String username, String password, String email, String role, String shopId,
             String warehouseId) {
         Connection c = null;
@@ -419,6 +398,7 @@ public class UserDB {
             int row = ps.executeUpdate();
             if (row >= 1) {
                 isSuccess = true;
+                rejectedLogins.invalidateAll();
                 LOGGER.log(Level.INFO, "User added successfully: {0}", username);
             }
         } catch (SQLException | IOException e) {
@@ -490,6 +470,49 @@ public class UserDB {
         return users;
     }
 
+    /**
+     * One window of the user list for DataTables server-side mode. Column
+     * indexes follow listUsers.jsp. role restricts the list to one role; null
+     * lists all. Passwords are not loaded.
+     */
+    public Page<UserBean> getUsersPage(PageRequest request, String role) {
+        PagedQuery query = new PagedQuery(
+                "u.user_id, u.username, u.userEmail, u.role, u.shop_id, u.warehouse_id",
+                "FROM users u",
+                "u.user_id")
+                .keyColumn(0, "u.user_id")
+                .sortColumn(1, "u.username")
+                .sortColumn(2, "u.userEmail")
+                .sortColumn(3, "u.role")
+                .sortColumn(4, "u.shop_id")
+                .sortColumn(5, "u.warehouse_id")
+                .searchable("u.username", "u.userEmail", "u.role")
+                .defaultOrder(3, true);
+        if (role != null) {
+            query.where("u.role = ?", role);
+        }
+
+        Connection c = null;
+        try {
+            c = getConnection();
+            return query.fetch(c, request, rs -> {
+                UserBean user = new UserBean();
+                user.setUserId(rs.getString("user_id"));
+                user.setUsername(rs.getString("username"));
+                user.setRole(rs.getString("role"));
+                user.setShopId(rs.getString("shop_id"));
+                user.setWarehouseId(rs.getString("warehouse_id"));
+                user.setUserEmail(rs.getString("userEmail"));
+                return user;
+            });
+        } catch (SQLException | IOException e) {
+            LOGGER.log(Level.SEVERE, "Error fetching users page", e);
+            return new Page<>(new ArrayList<>(), 0, 0, null);
+        } finally {
+            closeQuietly(c);
+        }
+    }
+
     public Map<String, List<UserBean>> getAllUsersAsMap() {
         Map<String, List<UserBean>> usersByRole = new HashMap<>();
         Connection c = null;
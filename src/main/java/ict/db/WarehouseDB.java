@@ -2,7 +2,6 @@ package ict.db;
 
 import java.io.IOException;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -11,52 +10,41 @@ import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.sql.DataSource;
+
 import ict.bean.WarehouseBean;
 
 public class WarehouseDB {
 
     private static final Logger LOGGER = Logger.getLogger(WarehouseDB.class.getName());
-    String dburl, username, password;
-
-    public WarehouseDB(String dburl, String dbUser, String dbPassword) {
-        this.dburl = dburl;
-        this.username = dbUser;
-        this.password = dbPassword;
-    }
-
-    public String getUrl() {
-        return dburl;
-    }
-
-    public void setUrl(String url) {
-        this.dburl = url;
-    }
-
-    public String getUsername() {
-        return username;
+    private static final int CACHE_MAX_SIZE = 500;
+    private static final long CACHE_TTL_MILLIS = 10 * 60 * 1000L;
+    private final DataSource dataSource;
+    private final ReferenceCache<Integer, WarehouseBean> warehouseCache = new ReferenceCache<>("warehouses",
+            CACHE_MAX_SIZE, CACHE_TTL_MILLIS);
+    private final ReferenceCache<String, Integer> centralWarehouseCache = new ReferenceCache<>(
+            "centralWarehouseByCountry", CACHE_MAX_SIZE, CACHE_TTL_MILLIS);
+    private final ReferenceCache<String, Integer> sourceWarehouseCache = new ReferenceCache<>(
+            "sourceWarehouseByCountry", CACHE_MAX_SIZE, CACHE_TTL_MILLIS);
+
+    public WarehouseDB(DataSource dataSource) {
+        this.dataSource = dataSource;
     }
 
-    public void setUsername(String username) {
-        this.username = username;
+    public ReferenceCache<Integer, WarehouseBean> getWarehouseCache() {
+        return warehouseCache;
     }
 
-    public String getPassword() {
-        return password;
+    public ReferenceCache<String, Integer> getCentralWarehouseCache() {
+        return centralWarehouseCache;
     }
 
-    public void setPassword(String password) {
-        this.password = password;
+    public ReferenceCache<String, Integer> getSourceWarehouseCache() {
+        return sourceWarehouseCache;
     }
 
     public Connection getConnection() throws SQLException, IOException {
-        try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-        } catch (ClassNotFoundException e) {
-
-            LOGGER.log(Level.SEVERE, "MySQL JDBC Driver not found", e);
-            throw new SQLException("MySQL JDBC Driver not found", e);
-        }
-        return DriverManager.getConnection(dburl, username, password);
+        return dataSource.getConnection();
     }
 
     private void closeQuietly(AutoCloseable resource) {
@@ -70,6 +58,13 @@ public class WarehouseDB {
     }
 
     public WarehouseBean getWarehouseById(int warehouseId) {
+        WarehouseBean cached = warehouseCache.get(warehouseId, this::loadWarehouseById);
+        return cached == null ? null
+                : new WarehouseBean(cached.getWarehouse_id(), cached.getWarehouse_name(), cached.getCity(),
+                        cached.getCountry(), cached.getIs_source());
+    }
+
+    private WarehouseBean loadWarehouseById(int warehouseId) {
         WarehouseBean warehouse = null;
 
         String sql = "SELECT warehouse_id, warehouse_name, city, country, is_source FROM warehouses WHERE warehouse_id = ?";
@@ -100,9 +95,27 @@ public class WarehouseDB {
     }
 
     public int findCentralWarehouseInCountry(String country) {
-        int warehouseId = -1;
+        if (country == null) {
+            return -1;
+        }
+        Integer warehouseId = centralWarehouseCache.get(country, c -> findWarehouseInCountry(c, false));
+        return warehouseId == null ? -1 : warehouseId;
+    }
+
+    public int findSourceWarehouseInCountry(String country) {
+        if (country == null) {
+            return -1;
+        }
+        Integer warehouseId = sourceWarehouseCache.get(country, c -> findWarehouseInCountry(c, true));
+        return warehouseId == null ? -1 : warehouseId;
+    }
+
+    private Integer findWarehouseInCountry(String country, boolean source) {
+        Integer warehouseId = null;
 
-        String sql = "SELECT warehouse_id FROM warehouses WHERE country = ? AND (is_source = 0 OR is_source IS NULL) LIMIT 1";
+        String sql = source
+                ? "SELECT warehouse_id FROM warehouses WHERE country = ? AND is_source = 1 LIMIT 1"
+                : "SELECT warehouse_id FROM warehouses WHERE country = ? AND (is_source = 0 OR is_source IS NULL) LIMIT 1";
         Connection conn = null;
         PreparedStatement ps = null;
         ResultSet rs = null;
@@ -116,7 +129,8 @@ public class WarehouseDB {
                 warehouseId = rs.getInt("warehouse_id");
             }
         } catch (SQLException | IOException e) {
-            LOGGER.log(Level.SEVERE, "Error finding central warehouse in country: " + country, e);
+            LOGGER.log(Level.SEVERE, "Error finding " + (source ? "source" : "central") + " warehouse in country: "
+                    + country, e);
         } finally {
             closeQuietly(rs);
             closeQuietly(ps);
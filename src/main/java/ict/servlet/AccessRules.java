@@ -0,0 +1,157 @@
+package ict.servlet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AuthFilter's access rules, compiled once at startup into an immutable
+ * character trie. A single walk over the request path finds both whether a
+ * public prefix covers it and which roles may use it; each role is one bit,
+ * so the role check is a mask test. Lookups allocate nothing.
+ */
+final class AccessRules {
+
+    /** Result of {@link #lookup} for paths anyone may open. */
+    static final int PUBLIC = -1;
+
+    private static final class Node {
+        private char[] labels = new char[0];
+        private Node[] children = new Node[0];
+        private boolean publicPrefix;
+        private boolean publicExact;
+        private int routeMask;
+
+        private Node child(char c) {
+            int index = Arrays.binarySearch(labels, c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        private Node addChild(char c) {
+            int index = Arrays.binarySearch(labels, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            int insertAt = -index - 1;
+            char[] newLabels = new char[labels.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            newLabels[insertAt] = c;
+            newChildren[insertAt] = new Node();
+            System.arraycopy(labels, insertAt, newLabels, insertAt + 1, labels.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            labels = newLabels;
+            children = newChildren;
+            return newChildren[insertAt];
+        }
+    }
+
+    private final Node root;
+    private final Map<String, Integer> roleBits;
+    private final int defaultMask;
+
+    private AccessRules(Node root, Map<String, Integer> roleBits, int defaultMask) {
+        this.root = root;
+        this.roleBits = roleBits;
+        this.defaultMask = defaultMask;
+    }
+
+    /**
+     * Returns {@link #PUBLIC} if the path needs no login, otherwise the mask
+     * of roles allowed on it. Routes without a rule are open to every known
+     * role. The path is servletPath followed by pathInfo (which may be null),
+     * walked in place rather than concatenated.
+     */
+    int lookup(String servletPath, String pathInfo) {
+        Node node = walk(root, servletPath);
+        if (node != null && !node.publicPrefix && pathInfo != null) {
+            node = walk(node, pathInfo);
+        }
+        if (node == null) {
+            return defaultMask;
+        }
+        if (node.publicPrefix || node.publicExact) {
+            return PUBLIC;
+        }
+        return node.routeMask != 0 ? node.routeMask : defaultMask;
+    }
+
+    /** Bit of the role, or 0 for roles the rules do not know. */
+    int roleBit(String role) {
+        Integer bit = role == null ? null : roleBits.get(role);
+        return bit == null ? 0 : bit;
+    }
+
+    /** Stops early at a public prefix, or returns null once the path leaves the trie. */
+    private static Node walk(Node start, String path) {
+        Node node = start;
+        for (int i = 0; i < path.length(); i++) {
+            node = node.child(path.charAt(i));
+            if (node == null || node.publicPrefix) {
+                return node;
+            }
+        }
+        return node;
+    }
+
+    static Builder builder(List<String> roles) {
+        return new Builder(roles);
+    }
+
+    static final class Builder {
+        private final Node root = new Node();
+        private final Map<String, Integer> roleBits = new HashMap<>();
+
+        private Builder(List<String> roles) {
+            if (roles.size() > 31) {
+                throw new IllegalArgumentException("At most 31 roles are supported.");
+            }
+            for (int i = 0; i < roles.size(); i++) {
+                roleBits.put(roles.get(i), 1 << i);
+            }
+        }
+
+        /** A path anyone may open. */
+        Builder publicPath(String path) {
+            insert(path).publicExact = true;
+            return this;
+        }
+
+        /** Every path starting with the prefix is open to anyone. */
+        Builder publicPrefix(String prefix) {
+            insert(prefix).publicPrefix = true;
+            return this;
+        }
+
+        Builder route(String path, String... roles) {
+            int mask = 0;
+            for (String role : roles) {
+                Integer bit = roleBits.get(role);
+                if (bit == null) {
+                    throw new IllegalArgumentException("Unknown role '" + role + "' for route " + path);
+                }
+                mask |= bit;
+            }
+            insert(path).routeMask = mask;
+            return this;
+        }
+
+        AccessRules build() {
+            int allRoles = 0;
+            for (int bit : roleBits.values()) {
+                allRoles |= bit;
+            }
+            return new AccessRules(root, Map.copyOf(roleBits), allRoles);
+        }
+
+        private Node insert(String path) {
+            Node node = root;
+            for (int i = 0; i < path.length(); i++) {
+                node = node.addChild(path.charAt(i));
+            }
+            return node;
+        }
+    }
+}
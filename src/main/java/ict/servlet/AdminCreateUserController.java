@@ -10,6 +10,7 @@ import ict.bean.BakeryShopBean;
 import ict.bean.UserBean;
 import ict.bean.WarehouseBean;
 import ict.db.BakeryShopDB;
+import ict.db.DaoRegistry;
 import ict.db.UserDB;
 import ict.db.WarehouseDB;
 import jakarta.servlet.RequestDispatcher;
@@ -30,15 +31,10 @@ public class AdminCreateUserController extends HttpServlet {
 
     @Override
     public void init() throws ServletException {
-        String dbUser = getServletContext().getInitParameter("dbUser");
-        String dbPassword = getServletContext().getInitParameter("dbPassword");
-        String dbUrl = getServletContext().getInitParameter("dbUrl");
-        if (dbUrl == null || dbUser == null) {
-            throw new ServletException("Database connection parameters missing.");
-        }
-        userDb = new UserDB(dbUrl, dbUser, dbPassword);
-        bakeryShopDb = new BakeryShopDB(dbUrl, dbUser, dbPassword);
-        warehouseDb = new WarehouseDB(dbUrl, dbUser, dbPassword);
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        userDb = daos.getUserDb();
+        bakeryShopDb = daos.getBakeryShopDb();
+        warehouseDb = daos.getWarehouseDb();
         LOGGER.log(Level.INFO, "AdminCreateUserController initialized.");
     }
 
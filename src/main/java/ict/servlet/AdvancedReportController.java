@@ -1,12 +1,17 @@
 package ict.servlet;
 
 import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import ict.bean.UserBean;
 import ict.db.BorrowingDB;
-import jakarta.servlet.RequestDispatcher;
+import ict.db.DaoRegistry;
+import ict.db.DataVersions;
+import ict.db.DataVersions.Dataset;
+import ict.servlet.Bulkheads.Workload;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
@@ -14,21 +19,20 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 
-@WebServlet(name = "AdvancedReportController", urlPatterns = { "/viewAdvancedReport" })
+@WebServlet(asyncSupported = true, name = "AdvancedReportController", urlPatterns = { "/viewAdvancedReport" })
 public class AdvancedReportController extends HttpServlet {
 
     private static final Logger LOGGER = Logger.getLogger(AdvancedReportController.class.getName());
     private BorrowingDB borrowingDb;
+    private DataVersions dataVersions;
+    private Bulkheads bulkheads;
 
     @Override
     public void init() throws ServletException {
-        String dbUser = getServletContext().getInitParameter("dbUser");
-        String dbPassword = getServletContext().getInitParameter("dbPassword");
-        String dbUrl = getServletContext().getInitParameter("dbUrl");
-        if (dbUrl == null || dbUser == null) {
-            throw new ServletException("Database connection parameters missing.");
-        }
-        borrowingDb = new BorrowingDB(dbUrl, dbUser, dbPassword);
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        borrowingDb = daos.getBorrowingDb();
+        dataVersions = daos.getDataVersions();
+        bulkheads = DatabaseContextListener.getBulkheads(getServletContext());
         LOGGER.log(Level.INFO, "AdvancedReportController initialized.");
     }
 
@@ -47,7 +51,30 @@ public class AdvancedReportController extends HttpServlet {
         if (reportType == null || reportType.isEmpty()) {
             reportType = "needs";
         }
-        Object reportData = null;
+        ReportExport.Format exportFormat = ReportExport.requestedFormat(request);
+        if (exportFormat != null && ("needs".equals(reportType) || "seasonalConsumption".equals(reportType))) {
+            String exportType = reportType;
+            bulkheads.submit(request, response, Workload.EXPORTS,
+                    () -> exportReport(response, exportFormat, exportType));
+            return;
+        }
+
+        ConditionalGet validators = new ConditionalGet(dataVersions,
+                currentUser.getUserId() + "|" + reportType,
+                Dataset.RESERVATIONS, Dataset.FRUITS);
+        if (validators.isNotModified(request, response)) {
+            return;
+        }
+
+        String selectedType = reportType;
+        bulkheads.submit(request, response, Workload.REPORTS,
+                () -> loadReport(request, response, validators, selectedType));
+    }
+
+    /** Runs on the reports bulkhead; returns the view to dispatch to. */
+    private String loadReport(HttpServletRequest request, HttpServletResponse response, ConditionalGet validators,
+            String reportType) {
+        List<?> reportData = null;
         String reportTitle = "Advanced Report";
 
         try {
@@ -73,7 +100,26 @@ public class AdvancedReportController extends HttpServlet {
         request.setAttribute("reportData", reportData);
         request.setAttribute("selectedReportType", reportType);
 
-        RequestDispatcher rd = request.getRequestDispatcher("/advancedReport.jsp");
-        rd.forward(request, response);
+        if (request.getAttribute("errorMessage") == null && reportData != null && !reportData.isEmpty()) {
+            validators.apply(response);
+        }
+
+        return "/advancedReport.jsp";
+    }
+
+    /** Runs on the exports bulkhead; streams the report as a download. */
+    private String exportReport(HttpServletResponse response, ReportExport.Format format, String reportType)
+            throws Exception {
+        boolean needs = "needs".equals(reportType);
+        ReportExport.Sink sink = ReportExport.open(response, format,
+                (needs ? "aggregated-needs-" : "seasonal-consumption-") + LocalDate.now(),
+                needs ? "Aggregated Needs" : "Seasonal Consumption");
+        if (needs) {
+            borrowingDb.exportAggregatedNeeds(sink);
+        } else {
+            borrowingDb.exportSeasonalConsumption(sink);
+        }
+        sink.finish();
+        return null;
     }
 }
@@ -1,14 +1,19 @@
 package ict.servlet;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import ict.bean.ActionOutcomeBean;
 import ict.bean.BorrowingBean;
 import ict.bean.UserBean;
 import ict.db.BorrowingDB;
+import ict.db.DaoRegistry;
+import ict.servlet.Bulkheads.Workload;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -17,21 +22,18 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 
-@WebServlet(name = "ApproveBorrowController", urlPatterns = { "/approveBorrow" })
+@WebServlet(asyncSupported = true, name = "ApproveBorrowController", urlPatterns = { "/approveBorrow" })
 public class ApproveBorrowController extends HttpServlet {
 
     private static final Logger LOGGER = Logger.getLogger(ApproveBorrowController.class.getName());
     private BorrowingDB borrowingDb;
+    private Bulkheads bulkheads;
 
     @Override
     public void init() throws ServletException {
-        String dbUser = getServletContext().getInitParameter("dbUser");
-        String dbPassword = getServletContext().getInitParameter("dbPassword");
-        String dbUrl = getServletContext().getInitParameter("dbUrl");
-        if (dbUrl == null || dbUser == null) {
-            throw new ServletException("Database connection parameters missing.");
-        }
-        borrowingDb = new BorrowingDB(dbUrl, dbUser, dbPassword);
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        borrowingDb = daos.getBorrowingDb();
+        bulkheads = DatabaseContextListener.getBulkheads(getServletContext());
         LOGGER.log(Level.INFO, "ApproveBorrowController initialized.");
     }
 
@@ -42,6 +44,8 @@ public class ApproveBorrowController extends HttpServlet {
         HttpSession session = request.getSession(false);
         UserBean currentUser = (UserBean) session.getAttribute("userInfo");
 
+        BulkOutcomes.restore(request);
+
         List<BorrowingBean> pendingRequests = Collections.emptyList();
         try {
             int lendingShopId = Integer.parseInt(currentUser.getShopId());
@@ -69,6 +73,65 @@ public class ApproveBorrowController extends HttpServlet {
         HttpSession session = request.getSession(false);
         UserBean currentUser = (UserBean) session.getAttribute("userInfo");
 
+        String action = request.getParameter("action");
+        if ("approveSelected".equals(action) || "rejectSelected".equals(action)) {
+            bulkheads.submit(request, response, Workload.TRANSACTIONS,
+                    () -> processBulkDecision(request, currentUser));
+        } else {
+            bulkheads.submit(request, response, Workload.TRANSACTIONS,
+                    () -> processDecision(request, currentUser));
+        }
+    }
+
+    /**
+     * Runs on the transactions bulkhead: approves or rejects every checked
+     * request in one transaction, keeps the per-request outcomes in the
+     * session for the next GET and redirects back with a summary.
+     */
+    private String processBulkDecision(HttpServletRequest request, UserBean currentUser) throws IOException {
+        String action = request.getParameter("action");
+        String[] selected = request.getParameterValues("selectedBorrowingIds");
+        String message;
+        boolean success = false;
+
+        try {
+            int currentShopId = Integer.parseInt(currentUser.getShopId());
+            List<Integer> borrowingIds = new ArrayList<>();
+            if (selected != null) {
+                for (String id : selected) {
+                    borrowingIds.add(Integer.parseInt(id.trim()));
+                }
+            }
+
+            if (borrowingIds.isEmpty()) {
+                message = "No borrow requests selected.";
+            } else {
+                LOGGER.log(Level.INFO, "Processing bulk action '{0}' for {1} requests by ShopID={2}",
+                        new Object[] { action, borrowingIds.size(), currentShopId });
+                boolean approve = "approveSelected".equals(action);
+                Map<Integer, ActionOutcomeBean> outcomes = borrowingDb.decideBorrowRequests(currentShopId,
+                        approve ? borrowingIds : Collections.emptyList(),
+                        approve ? Collections.emptyList() : borrowingIds);
+
+                int succeeded = BulkOutcomes.countSucceeded(outcomes.values());
+                BulkOutcomes.keep(request, outcomes.values());
+                message = succeeded + " of " + outcomes.size() + " requests " + (approve ? "approved" : "rejected")
+                        + ".";
+                success = succeeded == outcomes.size();
+            }
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.WARNING, "Invalid number format received for selected borrowing IDs.", e);
+            message = "Invalid input: Borrowing IDs must be numbers.";
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error processing bulk borrow approval/rejection.", e);
+            message = "An unexpected error occurred.";
+        }
+
+        return BulkOutcomes.redirect("approveBorrow", success, message);
+    }
+
+    /** Runs on the transactions bulkhead; redirects back with the outcome. */
+    private String processDecision(HttpServletRequest request, UserBean currentUser) throws IOException {
         String borrowingIdStr = request.getParameter("borrowingId");
         String action = request.getParameter("action");
         String message = "Action failed.";
@@ -78,38 +141,26 @@ public class ApproveBorrowController extends HttpServlet {
             int borrowingId = Integer.parseInt(borrowingIdStr);
             int currentShopId = Integer.parseInt(currentUser.getShopId());
 
-            BorrowingBean requestDetails = borrowingDb.getBorrowingById(borrowingId);
-
-            if (requestDetails == null) {
-                message = "Borrow request not found.";
-                LOGGER.log(Level.WARNING, "Attempt to {0} non-existent BorrowingID={1}",
-                        new Object[] { action, borrowingId });
-            } else if (requestDetails.getBorrowingShopId() != currentShopId) {
-                message = "Authorization denied. You can only manage requests directed to your shop.";
-                LOGGER.log(Level.WARNING,
-                        "Auth Denied: Shop {0} tried to {1} BorrowingID={2} which belongs to Shop {3}",
-                        new Object[] { currentShopId, action, borrowingId, requestDetails.getBorrowingShopId() });
-            } else if (!"Pending".equalsIgnoreCase(requestDetails.getStatus())) {
-                message = "Action failed: Request is no longer in 'Pending' status (Current: "
-                        + requestDetails.getStatus() + ").";
-                LOGGER.log(Level.WARNING, "Action '{0}' failed for BorrowingID={1}. Status is already {2}.",
-                        new Object[] { action, borrowingId, requestDetails.getStatus() });
+            LOGGER.log(Level.INFO, "Processing action '{0}' for BorrowingID={1} by ShopID={2}",
+                    new Object[] { action, borrowingId, currentShopId });
+
+            // The DAO locks the row and checks it exists, belongs to this shop and is still Pending.
+            ActionOutcomeBean outcome = null;
+            if ("approve".equals(action)) {
+                outcome = borrowingDb.approveBorrowRequest(borrowingId, currentShopId);
+            } else if ("reject".equals(action)) {
+                outcome = borrowingDb.rejectBorrowRequest(borrowingId, currentShopId);
             } else {
-                LOGGER.log(Level.INFO, "Processing action '{0}' for BorrowingID={1} by ShopID={2}",
-                        new Object[] { action, borrowingId, currentShopId });
-
-                if ("approve".equals(action)) {
-                    message = borrowingDb.approveBorrowRequest(borrowingId, currentShopId);
-                } else if ("reject".equals(action)) {
-                    message = borrowingDb.rejectBorrowRequest(borrowingId, currentShopId);
-                } else {
-                    message = "Invalid action specified.";
-                    LOGGER.log(Level.WARNING, "Invalid action received: {0}", action);
-                }
+                message = "Invalid action specified.";
+                LOGGER.log(Level.WARNING, "Invalid action received: {0}", action);
+            }
 
-                if (message.toLowerCase().contains("success") || message.toLowerCase().contains("approved")
-                        || message.toLowerCase().contains("rejected")) {
-                    success = true;
+            if (outcome != null) {
+                message = outcome.getMessage();
+                success = outcome.isSuccess();
+                if (!success) {
+                    LOGGER.log(Level.WARNING, "Action '{0}' failed for BorrowingID={1} ({2}): {3}",
+                            new Object[] { action, borrowingId, outcome.getReason(), message });
                 }
             }
 
@@ -121,13 +172,7 @@ public class ApproveBorrowController extends HttpServlet {
             message = "An unexpected error occurred.";
         }
 
-        String redirectUrl = "approveBorrow";
-        if (success) {
-            redirectUrl += "?message=" + java.net.URLEncoder.encode(message, "UTF-8");
-        } else {
-            redirectUrl += "?error=" + java.net.URLEncoder.encode(message, "UTF-8");
-        }
-        response.sendRedirect(redirectUrl);
+        return BulkOutcomes.redirect("approveBorrow", success, message);
     }
 
     @Override
@@ -1,14 +1,18 @@
 package ict.servlet;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import ict.bean.ActionOutcomeBean;
 import ict.bean.UserBean;
+import ict.db.DaoRegistry;
 import ict.db.FruitDB;
 import ict.db.ReservationDB;
 import ict.db.WarehouseDB;
+import ict.servlet.Bulkheads.Workload;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -17,27 +21,22 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 
-@WebServlet(name = "ArrangeDeliveryController", urlPatterns = { "/arrangeDelivery" })
+@WebServlet(asyncSupported = true, name = "ArrangeDeliveryController", urlPatterns = { "/arrangeDelivery" })
 public class ArrangeDeliveryController extends HttpServlet {
 
     private static final Logger LOGGER = Logger.getLogger(ArrangeDeliveryController.class.getName());
     private ReservationDB reservationDb;
     private WarehouseDB warehouseDb;
     private FruitDB fruitDb;
+    private Bulkheads bulkheads;
 
     @Override
     public void init() throws ServletException {
-        String dbUser = getServletContext().getInitParameter("dbUser");
-        String dbPassword = getServletContext().getInitParameter("dbPassword");
-        String dbUrl = getServletContext().getInitParameter("dbUrl");
-
-        if (dbUrl == null || dbUser == null) {
-            LOGGER.log(Level.SEVERE, "Database connection parameters missing in web.xml.");
-            throw new ServletException("Database connection parameters missing.");
-        }
-        reservationDb = new ReservationDB(dbUrl, dbUser, dbPassword);
-        warehouseDb = new WarehouseDB(dbUrl, dbUser, dbPassword);
-        fruitDb = new FruitDB(dbUrl, dbUser, dbPassword);
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        reservationDb = daos.getReservationDb();
+        warehouseDb = daos.getWarehouseDb();
+        fruitDb = daos.getFruitDb();
+        bulkheads = DatabaseContextListener.getBulkheads(getServletContext());
         LOGGER.log(Level.INFO, "ArrangeDeliveryController initialized.");
     }
 
@@ -55,6 +54,8 @@ public class ArrangeDeliveryController extends HttpServlet {
             return;
         }
 
+        BulkOutcomes.restore(request);
+
         try {
             int currentWarehouseId = Integer.parseInt(currentUser.getWarehouseId());
             List<ReservationDB.DeliveryNeedBean> deliveryNeeds = reservationDb
@@ -94,6 +95,61 @@ public class ArrangeDeliveryController extends HttpServlet {
             return;
         }
 
+        if ("arrangeAll".equals(request.getParameter("action"))) {
+            bulkheads.submit(request, response, Workload.TRANSACTIONS,
+                    () -> arrangeAllDeliveries(request, currentUser));
+        } else {
+            bulkheads.submit(request, response, Workload.TRANSACTIONS,
+                    () -> arrangeDelivery(request, currentUser));
+        }
+    }
+
+    /**
+     * Runs on the transactions bulkhead: arranges every pending delivery from
+     * the user's warehouse in one transaction, keeps one outcome per manifest
+     * line for the next GET and redirects back with a summary.
+     */
+    private String arrangeAllDeliveries(HttpServletRequest request, UserBean currentUser) throws IOException {
+        String message;
+        boolean success = false;
+
+        try {
+            int fromWarehouseId = Integer.parseInt(currentUser.getWarehouseId());
+            LOGGER.log(Level.INFO, "Planning all deliveries from WarehouseID={0}", fromWarehouseId);
+            List<ReservationDB.DeliveryManifestLineBean> manifest = reservationDb.planDeliveries(fromWarehouseId);
+            if (manifest.isEmpty()) {
+                message = "No approved needs found requiring delivery arrangement.";
+            } else {
+                List<ActionOutcomeBean> outcomes = new ArrayList<>();
+                int units = 0;
+                for (ReservationDB.DeliveryManifestLineBean line : manifest) {
+                    String label = line.getFruitName() + " to " + line.getTargetCountry()
+                            + (line.isArranged() ? " (Delivery ID " + line.getDeliveryId() + ")" : "");
+                    outcomes.add(line.isArranged() ? ActionOutcomeBean.succeeded(label + ": " + line.getMessage())
+                            : ActionOutcomeBean.failed(ActionOutcomeBean.Reason.CONFLICT,
+                                    label + ": " + line.getMessage()));
+                    if (line.isArranged()) {
+                        units += line.getQuantity();
+                    }
+                }
+                int arranged = BulkOutcomes.countSucceeded(outcomes);
+                BulkOutcomes.keep(request, outcomes);
+                message = arranged + " of " + manifest.size() + " deliveries arranged (" + units + " units).";
+                success = arranged == manifest.size();
+            }
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.WARNING, "Invalid Warehouse ID format for current user.", e);
+            message = "Invalid user profile (Warehouse ID).";
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error planning deliveries.", e);
+            message = "An unexpected error occurred during delivery arrangement.";
+        }
+
+        return BulkOutcomes.redirect("arrangeDelivery", success, message);
+    }
+
+    /** Runs on the transactions bulkhead; redirects back with the outcome. */
+    private String arrangeDelivery(HttpServletRequest request, UserBean currentUser) throws IOException {
         String fruitIdStr = request.getParameter("fruitId");
         String targetCountry = request.getParameter("targetCountry");
         String message = "Delivery arrangement failed.";
@@ -125,13 +181,7 @@ public class ArrangeDeliveryController extends HttpServlet {
             message = "An unexpected error occurred during delivery arrangement.";
         }
 
-        String redirectUrl = "arrangeDelivery";
-        if (success) {
-            redirectUrl += "?message=" + java.net.URLEncoder.encode(message, "UTF-8");
-        } else {
-            redirectUrl += "?error=" + java.net.URLEncoder.encode(message, "UTF-8");
-        }
-        response.sendRedirect(redirectUrl);
+        return BulkOutcomes.redirect("arrangeDelivery", success, message);
     }
 
     @Override
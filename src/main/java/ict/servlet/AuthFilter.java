@@ -1,11 +1,7 @@
 package ict.servlet;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -24,46 +20,57 @@ import jakarta.servlet.http.HttpSession;
 public class AuthFilter implements Filter {
 
     private static final Logger LOGGER = Logger.getLogger(AuthFilter.class.getName());
-    private static final Set<String> PUBLIC_PATHS = new HashSet<>(Arrays.asList(
-            "/", "/login", "/login.jsp", "/register", "/register.jsp", "/resources/", "/assignment/resources/"));
-    private static final Map<String, Set<String>> PROTECTED_RESOURCES = new HashMap<>();
     public static final String ROLE_SENIOR_MANAGEMENT = "Senior Management";
     public static final String ROLE_WAREHOUSE_STAFF = "Warehouse Staff";
     public static final String ROLE_BAKERY_SHOP_STAFF = "Bakery shop staff";
+    private AccessRules rules;
 
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
+        rules = defaultRules();
         LOGGER.info("AuthFilter initialized.");
-        Set<String> smOnly = Set.of(ROLE_SENIOR_MANAGEMENT);
-        PROTECTED_RESOURCES.put("/viewAdvancedReport", smOnly);
-        PROTECTED_RESOURCES.put("/viewConsumptionReport", smOnly);
-        PROTECTED_RESOURCES.put("/viewInventoryReport", smOnly);
-        PROTECTED_RESOURCES.put("/listUsers", smOnly);
-        PROTECTED_RESOURCES.put("/updateUser", smOnly);
-        PROTECTED_RESOURCES.put("/deleteUsers", smOnly);
-        PROTECTED_RESOURCES.put("/manageFruits", smOnly);
-        PROTECTED_RESOURCES.put("/updateFruit", smOnly);
-        PROTECTED_RESOURCES.put("/deleteFruit", smOnly);
-        PROTECTED_RESOURCES.put("/listAllInventory", smOnly);
-        PROTECTED_RESOURCES.put("/adminCreateUser", smOnly);
-        PROTECTED_RESOURCES.put("/viewForecastReport", smOnly);
-        Set<String> wsOrSm = Set.of(ROLE_WAREHOUSE_STAFF, ROLE_SENIOR_MANAGEMENT);
-        PROTECTED_RESOURCES.put("/updateWarehouseInventory", wsOrSm);
-        PROTECTED_RESOURCES.put("/needsApproval", wsOrSm);
-        PROTECTED_RESOURCES.put("/arrangeDelivery", wsOrSm);
-        PROTECTED_RESOURCES.put("/checkoutToShop", wsOrSm);
-        Set<String> bssOrSm = Set.of(ROLE_BAKERY_SHOP_STAFF, ROLE_SENIOR_MANAGEMENT);
-        PROTECTED_RESOURCES.put("/updateInventory", bssOrSm);
-        PROTECTED_RESOURCES.put("/orderFromSource", bssOrSm);
-        PROTECTED_RESOURCES.put("/listReservations", bssOrSm);
-        PROTECTED_RESOURCES.put("/batchBorrowFruit", bssOrSm);
-        PROTECTED_RESOURCES.put("/approveBorrow", bssOrSm);
-        Set<String> allStaffOrSm = Set.of(ROLE_BAKERY_SHOP_STAFF, ROLE_WAREHOUSE_STAFF, ROLE_SENIOR_MANAGEMENT);
-        PROTECTED_RESOURCES.put("/listFruits", allStaffOrSm);
-        PROTECTED_RESOURCES.put("/listBorrowings", allStaffOrSm);
-        PROTECTED_RESOURCES.put("/listDeliveries", allStaffOrSm);
-        PROTECTED_RESOURCES.put("/welcome.jsp", allStaffOrSm);
-        PROTECTED_RESOURCES.put("/viewStaffStock", allStaffOrSm);
+    }
+
+    /** The application's public paths and route-to-role table. */
+    static AccessRules defaultRules() {
+        String sm = ROLE_SENIOR_MANAGEMENT;
+        String ws = ROLE_WAREHOUSE_STAFF;
+        String bss = ROLE_BAKERY_SHOP_STAFF;
+        return AccessRules.builder(List.of(sm, ws, bss))
+                .publicPath("/")
+                .publicPath("/login")
+                .publicPath("/login.jsp")
+                .publicPath("/register")
+                .publicPath("/register.jsp")
+                .publicPrefix("/resources/")
+                .publicPrefix("/assignment/resources/")
+                .route("/viewAdvancedReport", sm)
+                .route("/viewConsumptionReport", sm)
+                .route("/viewInventoryReport", sm)
+                .route("/listUsers", sm)
+                .route("/updateUser", sm)
+                .route("/deleteUsers", sm)
+                .route("/manageFruits", sm)
+                .route("/updateFruit", sm)
+                .route("/deleteFruit", sm)
+                .route("/listAllInventory", sm)
+                .route("/adminCreateUser", sm)
+                .route("/viewForecastReport", sm)
+                .route("/updateWarehouseInventory", ws, sm)
+                .route("/needsApproval", ws, sm)
+                .route("/arrangeDelivery", ws, sm)
+                .route("/checkoutToShop", ws, sm)
+                .route("/updateInventory", bss, sm)
+                .route("/orderFromSource", bss, sm)
+                .route("/listReservations", bss, sm)
+                .route("/batchBorrowFruit", bss, sm)
+                .route("/approveBorrow", bss, sm)
+                .route("/listFruits", bss, ws, sm)
+                .route("/listBorrowings", bss, ws, sm)
+                .route("/listDeliveries", bss, ws, sm)
+                .route("/welcome.jsp", bss, ws, sm)
+                .route("/viewStaffStock", bss, ws, sm)
+                .build();
     }
 
     @Override
@@ -72,57 +79,34 @@ public class AuthFilter implements Filter {
 
         HttpServletRequest httpRequest = (HttpServletRequest) request;
         HttpServletResponse httpResponse = (HttpServletResponse) response;
-        HttpSession session = httpRequest.getSession(false);
-        String path = httpRequest.getRequestURI().substring(httpRequest.getContextPath().length());
-        String servletPath = httpRequest.getServletPath();
-        boolean isPublic = false;
-        if (PUBLIC_PATHS.contains(servletPath)) {
-            isPublic = true;
-        } else {
-            for (String publicPrefix : PUBLIC_PATHS) {
-                if (publicPrefix.endsWith("/") && path.startsWith(publicPrefix)) {
-                    isPublic = true;
-                    break;
-                }
-            }
-        }
-        if (isPublic) {
+        int allowedRoles = rules.lookup(httpRequest.getServletPath(), httpRequest.getPathInfo());
+        if (allowedRoles == AccessRules.PUBLIC) {
             chain.doFilter(request, response);
             return;
         }
+        HttpSession session = httpRequest.getSession(false);
         UserBean currentUser = null;
         if (session != null) {
             currentUser = (UserBean) session.getAttribute("userInfo");
         }
         if (currentUser == null) {
-            LOGGER.log(Level.WARNING, "Authentication required for path: {0}. Redirecting to login.", path);
+            LOGGER.log(Level.WARNING, "Authentication required for path: {0}. Redirecting to login.",
+                    httpRequest.getRequestURI());
             httpResponse.sendRedirect(httpRequest.getContextPath() + "/login.jsp?error=AuthenticationRequired");
             return;
         }
         String userRole = currentUser.getRole();
         if (userRole == null || userRole.trim().isEmpty()) {
             LOGGER.log(Level.SEVERE, "User {0} has missing role in session. Denying access to {1}",
-                    new Object[] { currentUser.getUsername(), path });
+                    new Object[] { currentUser.getUsername(), httpRequest.getRequestURI() });
             httpResponse.sendRedirect(httpRequest.getContextPath() + "/login.jsp?error=UserRoleMissing");
             return;
         }
-        boolean authorized = false;
-        Set<String> allowedRoles = PROTECTED_RESOURCES.get(servletPath);
-        if (allowedRoles != null) {
-            if (allowedRoles.contains(userRole)) {
-                authorized = true;
-            }
-        } else {
-            if (ROLE_SENIOR_MANAGEMENT.equals(userRole) || ROLE_WAREHOUSE_STAFF.equals(userRole)
-                    || ROLE_BAKERY_SHOP_STAFF.equals(userRole)) {
-                authorized = true;
-            }
-        }
-        if (authorized) {
+        if ((allowedRoles & rules.roleBit(userRole)) != 0) {
             chain.doFilter(request, response);
         } else {
             LOGGER.log(Level.WARNING, "Authorization denied for User {0} (Role: {1}) accessing path: {2}",
-                    new Object[] { currentUser.getUsername(), userRole, path });
+                    new Object[] { currentUser.getUsername(), userRole, httpRequest.getRequestURI() });
             request.setAttribute("errorMessage", "You do not have permission to access this resource.");
             RequestDispatcher rd = request.getRequestDispatcher("/accessDenied.jsp");
             if (rd != null) {
@@ -13,6 +13,8 @@ import ict.bean.BorrowableFruitInfoBean;
 import ict.bean.UserBean;
 import ict.db.BakeryShopDB;
 import ict.db.BorrowingDB;
+import ict.db.DaoRegistry;
+import ict.servlet.Bulkheads.Workload;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -21,23 +23,20 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 
-@WebServlet(name = "BatchBorrowController", urlPatterns = { "/batchBorrowFruit" })
+@WebServlet(asyncSupported = true, name = "BatchBorrowController", urlPatterns = { "/batchBorrowFruit" })
 public class BatchBorrowController extends HttpServlet {
 
     private static final Logger LOGGER = Logger.getLogger(BatchBorrowController.class.getName());
     private BorrowingDB borrowingDb;
     private BakeryShopDB bakeryShopDb;
+    private Bulkheads bulkheads;
 
     @Override
     public void init() throws ServletException {
-        String dbUser = getServletContext().getInitParameter("dbUser");
-        String dbPassword = getServletContext().getInitParameter("dbPassword");
-        String dbUrl = getServletContext().getInitParameter("dbUrl");
-        if (dbUrl == null || dbUser == null) {
-            throw new ServletException("Database connection parameters missing.");
-        }
-        borrowingDb = new BorrowingDB(dbUrl, dbUser, dbPassword);
-        bakeryShopDb = new BakeryShopDB(dbUrl, dbUser, dbPassword);
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        borrowingDb = daos.getBorrowingDb();
+        bakeryShopDb = daos.getBakeryShopDb();
+        bulkheads = DatabaseContextListener.getBulkheads(getServletContext());
         LOGGER.log(Level.INFO, "BatchBorrowController initialized.");
     }
 
@@ -99,6 +98,12 @@ public class BatchBorrowController extends HttpServlet {
             return;
         }
 
+        bulkheads.submit(request, response, Workload.TRANSACTIONS,
+                () -> submitBorrowRequests(request, currentUser));
+    }
+
+    /** Runs on the transactions bulkhead; redirects back with the outcome. */
+    private String submitBorrowRequests(HttpServletRequest request, UserBean currentUser) throws IOException {
         String message = "Borrow request submission failed.";
         boolean success = false;
         List<Integer> requestedFruitIds = new ArrayList<>();
@@ -161,7 +166,7 @@ public class BatchBorrowController extends HttpServlet {
         } else {
             redirectUrl += "?error=" + java.net.URLEncoder.encode(message, "UTF-8");
         }
-        response.sendRedirect(redirectUrl);
+        return Bulkheads.REDIRECT + redirectUrl;
     }
 
     @Override
@@ -0,0 +1,57 @@
+package ict.servlet;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import ict.bean.ActionOutcomeBean;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * Post/redirect/get for the bulk actions. The POST keeps one outcome per
+ * item in the session and redirects back with a summary in ?message= or
+ * ?error=; the next GET moves the outcomes into the request, where
+ * outcomes.jsp lists them.
+ */
+final class BulkOutcomes {
+
+    static final String ATTRIBUTE = "bulkOutcomes";
+
+    private BulkOutcomes() {
+    }
+
+    /** Keeps the outcomes for the GET that follows the redirect. */
+    static void keep(HttpServletRequest request, Collection<ActionOutcomeBean> outcomes) {
+        request.getSession().setAttribute(ATTRIBUTE, new ArrayList<>(outcomes));
+    }
+
+    /** Moves outcomes kept by the previous POST, if any, into the request. */
+    static void restore(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        Object outcomes = session != null ? session.getAttribute(ATTRIBUTE) : null;
+        if (outcomes != null) {
+            session.removeAttribute(ATTRIBUTE);
+            request.setAttribute(ATTRIBUTE, outcomes);
+        }
+    }
+
+    static int countSucceeded(Collection<ActionOutcomeBean> outcomes) {
+        int succeeded = 0;
+        for (ActionOutcomeBean outcome : outcomes) {
+            if (outcome.isSuccess()) {
+                succeeded++;
+            }
+        }
+        return succeeded;
+    }
+
+    /**
+     * The bulkhead view that redirects to the page with the message as
+     * ?message= on success, ?error= otherwise.
+     */
+    static String redirect(String page, boolean success, String message) throws UnsupportedEncodingException {
+        return Bulkheads.REDIRECT + page + (success ? "?message=" : "?error=") + URLEncoder.encode(message, "UTF-8");
+    }
+}
@@ -0,0 +1,322 @@
+package ict.servlet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * One bounded executor per workload class, so that slow month-end reports,
+ * report downloads and stock-moving transactions each get a fixed share of
+ * threads (and thus of pooled connections) and never wait on each other or
+ * on the container's request threads.
+ *
+ * Controllers validate the request on the container thread and then
+ * {@link #submit} the database work. The request runs in async mode: a full
+ * queue is answered with 503 immediately, and work still queued after the
+ * workload's timeout is dropped from the queue and answered with 503. Work
+ * that has started is never timed out; it runs to the end and answers the
+ * request, since a transaction abandoned mid-way may still commit and a 503
+ * would invite the client to submit it again.
+ */
+final class Bulkheads {
+
+    private static final Logger LOGGER = Logger.getLogger(Bulkheads.class.getName());
+
+    enum Workload {
+        REPORTS("bulkheadReport", 4, 20, 60000L),
+        TRANSACTIONS("bulkheadTransaction", 8, 50, 30000L),
+        /** CSV/XLSX report downloads, which hold a connection while the client reads the file. */
+        EXPORTS("bulkheadExport", 2, 10, 1800000L);
+
+        private final String parameterPrefix;
+        private final int defaultThreads;
+        private final int defaultQueueDepth;
+        private final long defaultTimeoutMs;
+
+        Workload(String parameterPrefix, int defaultThreads, int defaultQueueDepth, long defaultTimeoutMs) {
+            this.parameterPrefix = parameterPrefix;
+            this.defaultThreads = defaultThreads;
+            this.defaultQueueDepth = defaultQueueDepth;
+            this.defaultTimeoutMs = defaultTimeoutMs;
+        }
+
+        String getParameterPrefix() {
+            return parameterPrefix;
+        }
+
+        int getDefaultThreads() {
+            return defaultThreads;
+        }
+
+        int getDefaultQueueDepth() {
+            return defaultQueueDepth;
+        }
+
+        long getDefaultTimeoutMs() {
+            return defaultTimeoutMs;
+        }
+    }
+
+    /** Returned view prefix that answers with a redirect to the rest of the string. */
+    static final String REDIRECT = "redirect:";
+
+    /** Database work run on a bulkhead thread. */
+    interface Work {
+        /**
+         * Returns the view to dispatch to, {@link #REDIRECT} plus a location
+         * to redirect to, or null if the work has streamed the response body
+         * itself (the report downloads). Only the last may write to the
+         * response; everything else is answered by the bulkhead.
+         */
+        String run() throws Exception;
+    }
+
+    private static final class Bulkhead {
+        private final ThreadPoolExecutor executor;
+        private final long timeoutMs;
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong timedOut = new AtomicLong();
+
+        private Bulkhead(ThreadPoolExecutor executor, long timeoutMs) {
+            this.executor = executor;
+            this.timeoutMs = timeoutMs;
+        }
+    }
+
+    private final Map<Workload, Bulkhead> bulkheads = new EnumMap<>(Workload.class);
+    private final ScheduledThreadPoolExecutor deadlines = newDeadlineExecutor();
+
+    void configure(Workload workload, int threads, int queueDepth, long timeoutMs) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueDepth)), threadFactory(workload),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        Bulkhead previous = bulkheads.put(workload, new Bulkhead(executor, timeoutMs));
+        if (previous != null) {
+            previous.executor.shutdown();
+        }
+        LOGGER.log(Level.INFO, "Bulkhead {0}: threads={1}, queueDepth={2}, timeoutMs={3}",
+                new Object[] { workload, threads, queueDepth, timeoutMs });
+    }
+
+    void submit(HttpServletRequest request, HttpServletResponse response, Workload workload, Work work)
+            throws IOException {
+        Bulkhead bulkhead = bulkheads.get(workload);
+        AsyncContext asyncContext = request.startAsync(request, response);
+        // The queue deadline below replaces the container's timeout, which would also fire on running work.
+        asyncContext.setTimeout(0);
+        // Set by whichever comes first: the work starting, the queue deadline, or the client going away.
+        AtomicBoolean claimed = new AtomicBoolean();
+        AtomicBoolean finished = new AtomicBoolean();
+        Future<?>[] future = new Future<?>[1];
+        ScheduledFuture<?>[] deadline = new ScheduledFuture<?>[1];
+
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                // The container completes the request; queued work is dropped, started work still finishes.
+                finished.set(true);
+                if (claimed.compareAndSet(false, true)) {
+                    dequeue(bulkhead, future[0], deadline[0]);
+                }
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+
+        try {
+            future[0] = bulkhead.executor.submit(() -> {
+                if (claimed.compareAndSet(false, true)) {
+                    cancel(deadline[0]);
+                    run(request, response, asyncContext, finished, work);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            bulkhead.rejected.incrementAndGet();
+            LOGGER.log(Level.WARNING, "{0} bulkhead is full, rejecting {1}",
+                    new Object[] { workload, request.getRequestURI() });
+            if (claimed.compareAndSet(false, true) && finished.compareAndSet(false, true)) {
+                sendUnavailable(response, "The server is busy. Please try again shortly.");
+                asyncContext.complete();
+            }
+            return;
+        }
+
+        deadline[0] = deadlines.schedule(() -> {
+            if (claimed.compareAndSet(false, true) && finished.compareAndSet(false, true)) {
+                dequeue(bulkhead, future[0], null);
+                bulkhead.timedOut.incrementAndGet();
+                LOGGER.log(Level.WARNING, "{0} request still queued after {1} ms: {2}",
+                        new Object[] { workload, bulkhead.timeoutMs, request.getRequestURI() });
+                try {
+                    sendUnavailable(response, "The server is busy. Please try again shortly.");
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to send timeout response.", e);
+                }
+                asyncContext.complete();
+            }
+        }, bulkhead.timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Drops work that has not started from its executor's queue. */
+    private static void dequeue(Bulkhead bulkhead, Future<?> future, ScheduledFuture<?> deadline) {
+        cancel(deadline);
+        if (future != null) {
+            future.cancel(false);
+            bulkhead.executor.remove((Runnable) future);
+        }
+    }
+
+    private static void cancel(ScheduledFuture<?> deadline) {
+        if (deadline != null) {
+            deadline.cancel(false);
+        }
+    }
+
+    private static void run(HttpServletRequest request, HttpServletResponse response, AsyncContext asyncContext,
+            AtomicBoolean finished, Work work) {
+        String view = null;
+        boolean failed = false;
+        try {
+            view = work.run();
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Async work failed for " + request.getRequestURI(), e);
+            failed = true;
+        }
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            if (failed) {
+                if (!response.isCommitted()) {
+                    response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                }
+            } else if (view != null && view.startsWith(REDIRECT)) {
+                response.sendRedirect(view.substring(REDIRECT.length()));
+            } else if (view != null) {
+                asyncContext.dispatch(view);
+                return;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to send response for " + request.getRequestURI(), e);
+        }
+        asyncContext.complete();
+    }
+
+    private static void sendUnavailable(HttpServletResponse response, String message) throws IOException {
+        if (!response.isCommitted()) {
+            response.setHeader("Retry-After", "5");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, message);
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor newDeadlineExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "bulkhead-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    private static ThreadFactory threadFactory(Workload workload) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "bulkhead-" + workload.name().toLowerCase() + "-"
+                    + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    String getStatistics() {
+        StringBuilder statistics = new StringBuilder();
+        for (Map.Entry<Workload, Bulkhead> entry : bulkheads.entrySet()) {
+            Bulkhead bulkhead = entry.getValue();
+            statistics.append(statistics.length() == 0 ? "" : "; ")
+                    .append(entry.getKey()).append(": active=").append(bulkhead.executor.getActiveCount())
+                    .append(", queued=").append(bulkhead.executor.getQueue().size())
+                    .append(", completed=").append(bulkhead.executor.getCompletedTaskCount())
+                    .append(", rejected=").append(bulkhead.rejected.get())
+                    .append(", timedOut=").append(bulkhead.timedOut.get());
+        }
+        return statistics.toString();
+    }
+
+    /** Per-workload executor gauges and counters in the Prometheus text format. */
+    void writePrometheus(PrintWriter out) {
+        out.append("# HELP ict_bulkhead_active Requests running on the workload's executor.\n");
+        out.append("# TYPE ict_bulkhead_active gauge\n");
+        for (Map.Entry<Workload, Bulkhead> entry : bulkheads.entrySet()) {
+            sample(out, "ict_bulkhead_active", entry.getKey(), entry.getValue().executor.getActiveCount());
+        }
+        out.append("# HELP ict_bulkhead_queued Requests waiting for a thread.\n");
+        out.append("# TYPE ict_bulkhead_queued gauge\n");
+        for (Map.Entry<Workload, Bulkhead> entry : bulkheads.entrySet()) {
+            sample(out, "ict_bulkhead_queued", entry.getKey(), entry.getValue().executor.getQueue().size());
+        }
+        out.append("# TYPE ict_bulkhead_rejected_total counter\n");
+        for (Map.Entry<Workload, Bulkhead> entry : bulkheads.entrySet()) {
+            sample(out, "ict_bulkhead_rejected_total", entry.getKey(), entry.getValue().rejected.get());
+        }
+        out.append("# HELP ict_bulkhead_timed_out_total Requests dropped after waiting out the queue timeout.\n");
+        out.append("# TYPE ict_bulkhead_timed_out_total counter\n");
+        for (Map.Entry<Workload, Bulkhead> entry : bulkheads.entrySet()) {
+            sample(out, "ict_bulkhead_timed_out_total", entry.getKey(), entry.getValue().timedOut.get());
+        }
+    }
+
+    private static void sample(PrintWriter out, String name, Workload workload, long value) {
+        out.append(name).append("{workload=\"").append(workload.name().toLowerCase()).append("\"} ")
+                .append(Long.toString(value)).append('\n');
+    }
+
+    void shutdown() {
+        deadlines.shutdownNow();
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            bulkhead.executor.shutdown();
+        }
+        for (Bulkhead bulkhead : bulkheads.values()) {
+            try {
+                if (!bulkhead.executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    bulkhead.executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                bulkhead.executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        LOGGER.log(Level.INFO, "Bulkheads shut down. {0}", getStatistics());
+    }
+}
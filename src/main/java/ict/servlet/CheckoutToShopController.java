@@ -1,15 +1,21 @@
 package ict.servlet;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import ict.bean.ActionOutcomeBean;
 import ict.bean.ReservationBean;
 import ict.bean.UserBean;
 import ict.bean.WarehouseBean;
 import ict.db.BorrowingDB;
+import ict.db.DaoRegistry;
 import ict.db.WarehouseDB;
+import ict.servlet.Bulkheads.Workload;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -18,25 +24,20 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 
-@WebServlet(name = "CheckoutToShopController", urlPatterns = { "/checkoutToShop" })
+@WebServlet(asyncSupported = true, name = "CheckoutToShopController", urlPatterns = { "/checkoutToShop" })
 public class CheckoutToShopController extends HttpServlet {
 
     private static final Logger LOGGER = Logger.getLogger(CheckoutToShopController.class.getName());
     private BorrowingDB borrowingDb;
     private WarehouseDB warehouseDb;
+    private Bulkheads bulkheads;
 
     @Override
     public void init() throws ServletException {
-        String dbUser = getServletContext().getInitParameter("dbUser");
-        String dbPassword = getServletContext().getInitParameter("dbPassword");
-        String dbUrl = getServletContext().getInitParameter("dbUrl");
-
-        if (dbUrl == null || dbUser == null) {
-            LOGGER.log(Level.SEVERE, "Database connection parameters missing in web.xml.");
-            throw new ServletException("Database connection parameters missing.");
-        }
-        borrowingDb = new BorrowingDB(dbUrl, dbUser, dbPassword);
-        warehouseDb = new WarehouseDB(dbUrl, dbUser, dbPassword);
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        borrowingDb = daos.getBorrowingDb();
+        warehouseDb = daos.getWarehouseDb();
+        bulkheads = DatabaseContextListener.getBulkheads(getServletContext());
         LOGGER.log(Level.INFO, "CheckoutToShopController initialized.");
     }
 
@@ -56,6 +57,8 @@ public class CheckoutToShopController extends HttpServlet {
             return;
         }
 
+        BulkOutcomes.restore(request);
+
         try {
             int currentWarehouseId = Integer.parseInt(currentUser.getWarehouseId());
 
@@ -72,6 +75,11 @@ public class CheckoutToShopController extends HttpServlet {
                 fulfillableList = borrowingDb.getFulfillableReservationsForWarehouse(currentWarehouseId);
                 LOGGER.log(Level.INFO, "Fetched {0} fulfillable reservations for Central WarehouseID={1}.",
                         new Object[] { (fulfillableList != null ? fulfillableList.size() : 0), currentWarehouseId });
+                Map<Integer, String> fulfillableShops = new LinkedHashMap<>();
+                for (ReservationBean reservation : fulfillableList) {
+                    fulfillableShops.putIfAbsent(reservation.getShopId(), reservation.getShopName());
+                }
+                request.setAttribute("fulfillableShops", fulfillableShops);
             }
 
         } catch (NumberFormatException e) {
@@ -105,6 +113,82 @@ public class CheckoutToShopController extends HttpServlet {
             return;
         }
 
+        String action = request.getParameter("action");
+        if ("checkoutSelected".equals(action) || "checkoutShop".equals(action)) {
+            bulkheads.submit(request, response, Workload.TRANSACTIONS,
+                    () -> checkoutInBulk(request, currentUser));
+        } else {
+            bulkheads.submit(request, response, Workload.TRANSACTIONS,
+                    () -> checkout(request, currentUser));
+        }
+    }
+
+    /**
+     * Runs on the transactions bulkhead: checks out the checked reservations,
+     * or all fulfillable ones of the chosen shop, in one transaction; keeps the
+     * per-reservation outcomes in the session for the next GET and redirects
+     * back with a summary.
+     */
+    private String checkoutInBulk(HttpServletRequest request, UserBean currentUser) throws IOException {
+        String action = request.getParameter("action");
+        String message;
+        boolean success = false;
+
+        try {
+            int centralWarehouseId = Integer.parseInt(currentUser.getWarehouseId());
+            WarehouseBean currentWarehouse = warehouseDb.getWarehouseById(centralWarehouseId);
+            boolean isCentral = (currentWarehouse != null
+                    && ("0".equals(currentWarehouse.getIs_source()) || currentWarehouse.getIs_source() == null));
+
+            Map<Integer, ActionOutcomeBean> outcomes = null;
+            if (!isCentral) {
+                message = "Action not allowed from a source warehouse.";
+                LOGGER.log(Level.WARNING,
+                        "POST denied to /checkoutToShop. User's Warehouse (ID={0}) is a source warehouse.",
+                        centralWarehouseId);
+            } else if ("checkoutShop".equals(action)) {
+                int shopId = Integer.parseInt(request.getParameter("shopId"));
+                LOGGER.log(Level.INFO, "Processing checkout of all fulfillable reservations for ShopID={0} "
+                        + "from Central WarehouseID={1}", new Object[] { shopId, centralWarehouseId });
+                outcomes = borrowingDb.checkoutFulfillableForShop(shopId, centralWarehouseId);
+                message = outcomes.isEmpty() ? "No fulfillable reservations found for the selected shop." : null;
+            } else {
+                List<Integer> reservationIds = new ArrayList<>();
+                String[] selected = request.getParameterValues("selectedReservationIds");
+                if (selected != null) {
+                    for (String id : selected) {
+                        reservationIds.add(Integer.parseInt(id.trim()));
+                    }
+                }
+                if (reservationIds.isEmpty()) {
+                    message = "No reservations selected.";
+                } else {
+                    LOGGER.log(Level.INFO, "Processing checkout of {0} reservations from Central WarehouseID={1}",
+                            new Object[] { reservationIds.size(), centralWarehouseId });
+                    outcomes = borrowingDb.checkoutReservations(reservationIds, centralWarehouseId);
+                    message = null;
+                }
+            }
+
+            if (message == null) {
+                int succeeded = BulkOutcomes.countSucceeded(outcomes.values());
+                BulkOutcomes.keep(request, outcomes.values());
+                message = succeeded + " of " + outcomes.size() + " reservations checked out.";
+                success = succeeded == outcomes.size();
+            }
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.WARNING, "Invalid number format received for bulk checkout.", e);
+            message = "Invalid input: Reservation and shop IDs must be numbers.";
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error processing bulk checkout.", e);
+            message = "An unexpected error occurred during checkout.";
+        }
+
+        return BulkOutcomes.redirect("checkoutToShop", success, message);
+    }
+
+    /** Runs on the transactions bulkhead; redirects back with the outcome. */
+    private String checkout(HttpServletRequest request, UserBean currentUser) throws IOException {
         String reservationIdStr = request.getParameter("reservationId");
         String message = "Checkout failed.";
         boolean success = false;
@@ -139,13 +223,7 @@ public class CheckoutToShopController extends HttpServlet {
             message = "An unexpected error occurred during checkout.";
         }
 
-        String redirectUrl = "checkoutToShop";
-        if (success) {
-            redirectUrl += "?message=" + java.net.URLEncoder.encode(message, "UTF-8");
-        } else {
-            redirectUrl += "?error=" + java.net.URLEncoder.encode(message, "UTF-8");
-        }
-        response.sendRedirect(redirectUrl);
+        return BulkOutcomes.redirect("checkoutToShop", success, message);
     }
 
     @Override
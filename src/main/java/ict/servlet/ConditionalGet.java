@@ -0,0 +1,77 @@
+package ict.servlet;
+
+import ict.db.DataVersions;
+import ict.db.DataVersions.Dataset;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * ETag / Last-Modified handling for pages built from versioned datasets.
+ * The validators are computed from {@link DataVersions} alone, so a
+ * revalidation that ends in 304 never touches the database.
+ *
+ * The variant string must capture everything else the page depends on (the
+ * user, the resolved parameters). Validators are only attached after the page
+ * data was loaded without error and is non-empty: the DAOs report database
+ * errors as empty results, and such a page must not be revalidated into
+ * staying empty once the database is back.
+ */
+final class ConditionalGet {
+
+    private final String etag;
+    private final long lastModified;
+
+    ConditionalGet(DataVersions versions, String variant, Dataset... datasets) {
+        this.etag = "W/\"" + versions.tag(datasets) + "-" + Integer.toHexString(variant.hashCode()) + "\"";
+        this.lastModified = versions.getLastModified(datasets) / 1000 * 1000;
+    }
+
+    /**
+     * Sends 304 Not Modified and returns true if the client's copy is still
+     * current. If-Modified-Since is only consulted when no If-None-Match was
+     * sent.
+     */
+    boolean isNotModified(HttpServletRequest request, HttpServletResponse response) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        boolean notModified;
+        if (ifNoneMatch != null) {
+            notModified = matches(ifNoneMatch);
+        } else {
+            long ifModifiedSince;
+            try {
+                ifModifiedSince = request.getDateHeader("If-Modified-Since");
+            } catch (IllegalArgumentException e) {
+                ifModifiedSince = -1;
+            }
+            notModified = ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+        }
+        if (notModified) {
+            apply(response);
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        }
+        return notModified;
+    }
+
+    void apply(HttpServletResponse response) {
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", lastModified);
+        response.setHeader("Cache-Control", "private, no-cache");
+        response.setHeader("Vary", "Cookie");
+    }
+
+    private boolean matches(String ifNoneMatch) {
+        String opaque = opaqueTag(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if ("*".equals(tag) || opaque.equals(opaqueTag(tag))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Weak comparison: W/"x" and "x" match. */
+    private static String opaqueTag(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+}
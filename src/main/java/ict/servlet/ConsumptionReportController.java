@@ -11,7 +11,10 @@ import java.util.logging.Logger;
 import ict.bean.ConsumptionDataBean;
 import ict.bean.UserBean;
 import ict.db.BorrowingDB;
-import jakarta.servlet.RequestDispatcher;
+import ict.db.DaoRegistry;
+import ict.db.DataVersions;
+import ict.db.DataVersions.Dataset;
+import ict.servlet.Bulkheads.Workload;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
@@ -19,23 +22,20 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 
-@WebServlet(name = "ConsumptionReportController", urlPatterns = { "/viewConsumptionReport" })
+@WebServlet(asyncSupported = true, name = "ConsumptionReportController", urlPatterns = { "/viewConsumptionReport" })
 public class ConsumptionReportController extends HttpServlet {
 
     private static final Logger LOGGER = Logger.getLogger(ConsumptionReportController.class.getName());
     private BorrowingDB borrowingDb;
+    private DataVersions dataVersions;
+    private Bulkheads bulkheads;
 
     @Override
     public void init() throws ServletException {
-        String dbUser = getServletContext().getInitParameter("dbUser");
-        String dbPassword = getServletContext().getInitParameter("dbPassword");
-        String dbUrl = getServletContext().getInitParameter("dbUrl");
-
-        if (dbUrl == null || dbUser == null) {
-            LOGGER.log(Level.SEVERE, "Database connection parameters missing in web.xml.");
-            throw new ServletException("Database connection parameters missing.");
-        }
-        borrowingDb = new BorrowingDB(dbUrl, dbUser, dbPassword);
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        borrowingDb = daos.getBorrowingDb();
+        dataVersions = daos.getDataVersions();
+        bulkheads = DatabaseContextListener.getBulkheads(getServletContext());
         LOGGER.log(Level.INFO, "ConsumptionReportController initialized.");
     }
 
@@ -75,6 +75,32 @@ public class ConsumptionReportController extends HttpServlet {
             startDate = Date.valueOf(endDate.toLocalDate().minusDays(30));
         }
 
+        ReportExport.Format exportFormat = ReportExport.requestedFormat(request);
+        if (exportFormat != null) {
+            Date exportStart = startDate;
+            Date exportEnd = endDate;
+            boolean reservations = "reservations".equals(request.getParameter("detail"));
+            bulkheads.submit(request, response, Workload.EXPORTS,
+                    () -> exportReport(response, exportFormat, exportStart, exportEnd, reservations));
+            return;
+        }
+
+        ConditionalGet validators = new ConditionalGet(dataVersions,
+                currentUser.getUserId() + "|" + startDate + "|" + endDate + "|" + request.getQueryString(),
+                Dataset.RESERVATIONS, Dataset.FRUITS);
+        if (validators.isNotModified(request, response)) {
+            return;
+        }
+
+        Date reportStart = startDate;
+        Date reportEnd = endDate;
+        bulkheads.submit(request, response, Workload.REPORTS,
+                () -> loadReport(request, response, validators, reportStart, reportEnd));
+    }
+
+    /** Runs on the reports bulkhead; returns the view to dispatch to. */
+    private String loadReport(HttpServletRequest request, HttpServletResponse response, ConditionalGet validators,
+            Date startDate, Date endDate) {
         List<ConsumptionDataBean> reportData = Collections.emptyList();
         try {
             reportData = borrowingDb.getConsumptionSummaryByFruit(startDate, endDate);
@@ -89,8 +115,26 @@ public class ConsumptionReportController extends HttpServlet {
         request.setAttribute("selectedStartDate", startDate.toString());
         request.setAttribute("selectedEndDate", endDate.toString());
 
-        RequestDispatcher rd = request.getRequestDispatcher("/consumptionReport.jsp");
-        rd.forward(request, response);
+        if (request.getAttribute("errorMessage") == null && !reportData.isEmpty()) {
+            validators.apply(response);
+        }
+
+        return "/consumptionReport.jsp";
+    }
+
+    /** Runs on the exports bulkhead; streams the report as a download. */
+    private String exportReport(HttpServletResponse response, ReportExport.Format format, Date startDate,
+            Date endDate, boolean reservations) throws Exception {
+        ReportExport.Sink sink = ReportExport.open(response, format,
+                (reservations ? "fulfilled-reservations-" : "consumption-") + startDate + "-to-" + endDate,
+                reservations ? "Fulfilled Reservations" : "Consumption");
+        if (reservations) {
+            borrowingDb.exportFulfilledReservations(startDate, endDate, sink);
+        } else {
+            borrowingDb.exportConsumptionSummary(startDate, endDate, sink);
+        }
+        sink.finish();
+        return null;
     }
 
     @Override
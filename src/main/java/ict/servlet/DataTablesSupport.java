@@ -0,0 +1,124 @@
+package ict.servlet;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import ict.db.Page;
+import ict.db.PageRequest;
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Request parsing and JSON output for jQuery DataTables' server-side
+ * processing protocol, shared by the list controllers. The list page is
+ * served as plain HTML; DataTables then calls the same URL with a draw
+ * parameter for each window of rows.
+ */
+final class DataTablesSupport {
+
+    private DataTablesSupport() {
+    }
+
+    static boolean isDataTablesRequest(HttpServletRequest request) {
+        return request.getParameter("draw") != null;
+    }
+
+    static PageRequest toPageRequest(HttpServletRequest request) {
+        return new PageRequest(
+                intParameter(request, "start", 0),
+                intParameter(request, "length", PageRequest.DEFAULT_LENGTH),
+                intParameter(request, "order[0][column]", -1),
+                !"desc".equalsIgnoreCase(request.getParameter("order[0][dir]")),
+                request.getParameter("search[value]"),
+                request.getParameter("cursor"));
+    }
+
+    /**
+     * Everything the window of rows depends on: all parameters except the
+     * draw counter and jQuery's cache buster, in a stable order.
+     */
+    static String variant(HttpServletRequest request) {
+        StringBuilder variant = new StringBuilder();
+        for (Map.Entry<String, String[]> parameter : new TreeMap<>(request.getParameterMap()).entrySet()) {
+            if (!"draw".equals(parameter.getKey()) && !"_".equals(parameter.getKey())) {
+                variant.append(parameter.getKey()).append('=')
+                        .append(String.join(",", parameter.getValue())).append('&');
+            }
+        }
+        return variant.toString();
+    }
+
+    /**
+     * Writes one page as DataTables JSON. toCells turns a row into its cell
+     * values in table column order; dates are written as yyyy-MM-dd.
+     */
+    static <T> void writePage(HttpServletRequest request, HttpServletResponse response, Page<T> page,
+            Function<T, Object[]> toCells) throws IOException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        JsonArrayBuilder data = Json.createArrayBuilder();
+        for (T row : page.getRows()) {
+            JsonArrayBuilder cells = Json.createArrayBuilder();
+            for (Object value : toCells.apply(row)) {
+                if (value == null) {
+                    cells.addNull();
+                } else if (value instanceof Integer || value instanceof Long) {
+                    cells.add(((Number) value).longValue());
+                } else if (value instanceof Date) {
+                    cells.add(dateFormat.format((Date) value));
+                } else {
+                    cells.add(value.toString());
+                }
+            }
+            data.add(cells);
+        }
+
+        JsonObjectBuilder json = Json.createObjectBuilder()
+                .add("draw", intParameter(request, "draw", 0))
+                .add("recordsTotal", page.getTotalCount())
+                .add("recordsFiltered", page.getFilteredCount())
+                .add("data", data);
+        if (page.getNextCursor() != null) {
+            json.add("nextCursor", page.getNextCursor());
+        }
+        write(response, json);
+    }
+
+    /** Reports an error in the form DataTables shows to the user. */
+    static void writeError(HttpServletRequest request, HttpServletResponse response, String message)
+            throws IOException {
+        write(response, Json.createObjectBuilder()
+                .add("draw", intParameter(request, "draw", 0))
+                .add("recordsTotal", 0)
+                .add("recordsFiltered", 0)
+                .add("data", Json.createArrayBuilder())
+                .add("error", message));
+    }
+
+    private static void write(HttpServletResponse response, JsonObjectBuilder json) throws IOException {
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        if (!response.containsHeader("Cache-Control")) {
+            response.setHeader("Cache-Control", "no-store");
+        }
+        response.getWriter().write(json.build().toString());
+    }
+
+    private static int intParameter(HttpServletRequest request, String name, int defaultValue) {
+        String value = request.getParameter(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
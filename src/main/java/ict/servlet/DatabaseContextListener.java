@@ -0,0 +1,164 @@
+package ict.servlet;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ict.db.ConnectionPool;
+import ict.db.DaoRegistry;
+import ict.db.InventoryLedger;
+import ict.db.ReferenceCache;
+import ict.db.SlowQueryLog;
+import ict.db.StockHistory;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebListener;
+
+@WebListener
+public class DatabaseContextListener implements ServletContextListener {
+
+    private static final Logger LOGGER = Logger.getLogger(DatabaseContextListener.class.getName());
+    public static final String CONNECTION_POOL_ATTRIBUTE = "ict.db.connectionPool";
+    public static final String DAO_REGISTRY_ATTRIBUTE = "ict.db.daoRegistry";
+    static final String BULKHEADS_ATTRIBUTE = "ict.servlet.bulkheads";
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        ServletContext context = sce.getServletContext();
+        String dbUser = context.getInitParameter("dbUser");
+        String dbPassword = context.getInitParameter("dbPassword");
+        String dbUrl = context.getInitParameter("dbUrl");
+        if (dbUrl == null || dbUser == null) {
+            LOGGER.log(Level.SEVERE, "Database connection parameters missing in web.xml.");
+            return;
+        }
+
+        ConnectionPool pool = new ConnectionPool(dbUrl, dbUser, dbPassword == null ? "" : dbPassword);
+        pool.setMaxPoolSize(getIntParameter(context, "dbPoolMaxSize", pool.getMaxPoolSize()));
+        pool.setMinIdle(getIntParameter(context, "dbPoolMinIdle", pool.getMinIdle()));
+        pool.setConnectionTimeoutMs(getLongParameter(context, "dbPoolConnectionTimeoutMs",
+                pool.getConnectionTimeoutMs()));
+        pool.setIdleTimeoutMs(getLongParameter(context, "dbPoolIdleTimeoutMs", pool.getIdleTimeoutMs()));
+        pool.setValidationIntervalMs(getLongParameter(context, "dbPoolValidationIntervalMs",
+                pool.getValidationIntervalMs()));
+        pool.setLeakDetectionThresholdMs(getLongParameter(context, "dbPoolLeakDetectionThresholdMs",
+                pool.getLeakDetectionThresholdMs()));
+        try {
+            pool.start();
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to start database connection pool.", e);
+            return;
+        }
+
+        SlowQueryLog slowQueryLog = new SlowQueryLog(pool);
+        slowQueryLog.setThresholdMs(getLongParameter(context, "slowQueryThresholdMs", slowQueryLog.getThresholdMs()));
+        slowQueryLog.setExplain(Boolean.parseBoolean(context.getInitParameter("slowQueryExplain")));
+        slowQueryLog.setExplainIntervalMs(getLongParameter(context, "slowQueryExplainIntervalMs",
+                slowQueryLog.getExplainIntervalMs()));
+        slowQueryLog.setLogFile(context.getInitParameter("slowQueryLogFile"));
+        slowQueryLog.setLogFileLimitBytes(getIntParameter(context, "slowQueryLogFileLimitBytes",
+                slowQueryLog.getLogFileLimitBytes()));
+        slowQueryLog.setLogFileCount(getIntParameter(context, "slowQueryLogFileCount", slowQueryLog.getLogFileCount()));
+        try {
+            slowQueryLog.start();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not open slow query log file; slow queries go to the server log.", e);
+        }
+        DaoRegistry registry = new DaoRegistry(pool, slowQueryLog);
+        InventoryLedger ledger = registry.getInventoryLedger();
+        ledger.setFlushIntervalMs(getLongParameter(context, "inventoryFlushIntervalMs", ledger.getFlushIntervalMs()));
+        ledger.setFlushBatchSize(getIntParameter(context, "inventoryFlushBatchSize", ledger.getFlushBatchSize()));
+        ledger.setLeaseTimeoutMs(getLongParameter(context, "inventoryLeaseTimeoutMs", ledger.getLeaseTimeoutMs()));
+        try {
+            ledger.start();
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Failed to load the inventory ledger.", e);
+            slowQueryLog.shutdown();
+            pool.shutdown();
+            return;
+        }
+        StockHistory stockHistory = registry.getStockHistory();
+        stockHistory.setSnapshotIntervalMs(getLongParameter(context, "stockSnapshotIntervalMs",
+                stockHistory.getSnapshotIntervalMs()));
+        stockHistory.start();
+        // Published only once everything behind it is up, so a failed start
+        // never leaves a shut-down pool reachable from the context.
+        context.setAttribute(CONNECTION_POOL_ATTRIBUTE, pool);
+        context.setAttribute(DAO_REGISTRY_ATTRIBUTE, registry);
+        LOGGER.log(Level.INFO, "DAO registry initialized.");
+
+        Bulkheads bulkheads = new Bulkheads();
+        for (Bulkheads.Workload workload : Bulkheads.Workload.values()) {
+            String prefix = workload.getParameterPrefix();
+            bulkheads.configure(workload,
+                    getIntParameter(context, prefix + "Threads", workload.getDefaultThreads()),
+                    getIntParameter(context, prefix + "QueueDepth", workload.getDefaultQueueDepth()),
+                    getLongParameter(context, prefix + "TimeoutMs", workload.getDefaultTimeoutMs()));
+        }
+        context.setAttribute(BULKHEADS_ATTRIBUTE, bulkheads);
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        ServletContext context = sce.getServletContext();
+        Object pool = context.getAttribute(CONNECTION_POOL_ATTRIBUTE);
+        Object bulkheads = context.getAttribute(BULKHEADS_ATTRIBUTE);
+        context.removeAttribute(BULKHEADS_ATTRIBUTE);
+        if (bulkheads instanceof Bulkheads) {
+            ((Bulkheads) bulkheads).shutdown();
+        }
+        Object registry = context.getAttribute(DAO_REGISTRY_ATTRIBUTE);
+        context.removeAttribute(DAO_REGISTRY_ATTRIBUTE);
+        if (registry instanceof DaoRegistry) {
+            for (ReferenceCache<?, ?> cache : ((DaoRegistry) registry).getReferenceCaches()) {
+                LOGGER.log(Level.INFO, "Reference cache {0}", cache.getStatistics());
+            }
+            ((DaoRegistry) registry).getStockHistory().shutdown();
+            ((DaoRegistry) registry).getInventoryLedger().shutdown();
+            if (((DaoRegistry) registry).getSlowQueryLog() != null) {
+                ((DaoRegistry) registry).getSlowQueryLog().shutdown();
+            }
+        }
+        context.removeAttribute(CONNECTION_POOL_ATTRIBUTE);
+        if (pool instanceof ConnectionPool) {
+            ((ConnectionPool) pool).shutdown();
+        }
+    }
+
+    public static DaoRegistry getDaoRegistry(ServletContext context) throws ServletException {
+        Object registry = context.getAttribute(DAO_REGISTRY_ATTRIBUTE);
+        if (!(registry instanceof DaoRegistry)) {
+            throw new ServletException("Database layer is not initialized. Check the db* parameters in web.xml.");
+        }
+        return (DaoRegistry) registry;
+    }
+
+    static Bulkheads getBulkheads(ServletContext context) throws ServletException {
+        Object bulkheads = context.getAttribute(BULKHEADS_ATTRIBUTE);
+        if (!(bulkheads instanceof Bulkheads)) {
+            throw new ServletException("Request executors are not initialized. Check the db* parameters in web.xml.");
+        }
+        return (Bulkheads) bulkheads;
+    }
+
+    private static int getIntParameter(ServletContext context, String name, int defaultValue) {
+        return (int) getLongParameter(context, name, defaultValue);
+    }
+
+    private static long getLongParameter(ServletContext context, String name, long defaultValue) {
+        String value = context.getInitParameter(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.WARNING, "Invalid value ''{0}'' for context-param {1}; using default {2}.",
+                    new Object[] { value, name, defaultValue });
+            return defaultValue;
+        }
+    }
+}
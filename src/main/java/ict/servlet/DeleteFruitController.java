@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import ict.db.DaoRegistry;
 import ict.db.FruitDB;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -20,15 +21,8 @@ public class DeleteFruitController extends HttpServlet {
 
     @Override
     public void init() throws ServletException {
-        String dbUser = getServletContext().getInitParameter("dbUser");
-        String dbPassword = getServletContext().getInitParameter("dbPassword");
-        String dbUrl = getServletContext().getInitParameter("dbUrl");
-
-        if (dbUrl == null || dbUser == null) {
-            LOGGER.log(Level.SEVERE, "Database connection parameters missing in web.xml for DeleteFruitController.");
-            throw new ServletException("Database connection parameters missing.");
-        }
-        fruitDb = new FruitDB(dbUrl, dbUser, dbPassword);
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        fruitDb = daos.getFruitDb();
         LOGGER.log(Level.INFO, "DeleteFruitController initialized.");
     }
 
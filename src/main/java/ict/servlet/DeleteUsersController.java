@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import ict.db.DaoRegistry;
 import ict.db.UserDB;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -17,11 +18,9 @@ public class DeleteUsersController extends HttpServlet {
     private UserDB db;
 
     @Override
-    public void init() {
-        String dbUser = this.getServletContext().getInitParameter("dbUser");
-        String dbPassword = this.getServletContext().getInitParameter("dbPassword");
-        String dbUrl = this.getServletContext().getInitParameter("dbUrl");
-        db = new UserDB(dbUrl, dbUser, dbPassword);
+    public void init() throws ServletException {
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        db = daos.getUserDb();
     }
 
     @Override
@@ -11,7 +11,10 @@ import java.util.logging.Logger;
 import ict.bean.ForecastBean;
 import ict.bean.UserBean;
 import ict.db.BorrowingDB;
-import jakarta.servlet.RequestDispatcher;
+import ict.db.DaoRegistry;
+import ict.db.DataVersions;
+import ict.db.DataVersions.Dataset;
+import ict.servlet.Bulkheads.Workload;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
@@ -19,21 +22,20 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 
-@WebServlet(name = "ForecastReportController", urlPatterns = { "/viewForecastReport" })
+@WebServlet(asyncSupported = true, name = "ForecastReportController", urlPatterns = { "/viewForecastReport" })
 public class ForecastReportController extends HttpServlet {
 
     private static final Logger LOGGER = Logger.getLogger(ForecastReportController.class.getName());
     private BorrowingDB borrowingDb;
+    private DataVersions dataVersions;
+    private Bulkheads bulkheads;
 
     @Override
     public void init() throws ServletException {
-        String dbUser = getServletContext().getInitParameter("dbUser");
-        String dbPassword = getServletContext().getInitParameter("dbPassword");
-        String dbUrl = getServletContext().getInitParameter("dbUrl");
-        if (dbUrl == null || dbUser == null) {
-            throw new ServletException("Database connection parameters missing.");
-        }
-        borrowingDb = new BorrowingDB(dbUrl, dbUser, dbPassword);
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        borrowingDb = daos.getBorrowingDb();
+        dataVersions = daos.getDataVersions();
+        bulkheads = DatabaseContextListener.getBulkheads(getServletContext());
         LOGGER.log(Level.INFO, "ForecastReportController initialized.");
     }
 
@@ -74,6 +76,31 @@ public class ForecastReportController extends HttpServlet {
             startDate = Date.valueOf(endDate.toLocalDate().minusDays(90));
         }
 
+        ReportExport.Format exportFormat = ReportExport.requestedFormat(request);
+        if (exportFormat != null) {
+            Date exportStart = startDate;
+            Date exportEnd = endDate;
+            bulkheads.submit(request, response, Workload.EXPORTS,
+                    () -> exportReport(response, exportFormat, exportStart, exportEnd));
+            return;
+        }
+
+        ConditionalGet validators = new ConditionalGet(dataVersions,
+                currentUser.getUserId() + "|" + startDate + "|" + endDate + "|" + request.getQueryString(),
+                Dataset.RESERVATIONS, Dataset.FRUITS);
+        if (validators.isNotModified(request, response)) {
+            return;
+        }
+
+        Date reportStart = startDate;
+        Date reportEnd = endDate;
+        bulkheads.submit(request, response, Workload.REPORTS,
+                () -> loadReport(request, response, validators, reportStart, reportEnd));
+    }
+
+    /** Runs on the reports bulkhead; returns the view to dispatch to. */
+    private String loadReport(HttpServletRequest request, HttpServletResponse response, ConditionalGet validators,
+            Date startDate, Date endDate) {
         List<ForecastBean> forecastData = Collections.emptyList();
         try {
             forecastData = borrowingDb.getAverageDailyConsumptionByFruitAndCountry(startDate, endDate);
@@ -88,8 +115,21 @@ public class ForecastReportController extends HttpServlet {
         request.setAttribute("selectedStartDate", startDate.toString());
         request.setAttribute("selectedEndDate", endDate.toString());
 
-        RequestDispatcher rd = request.getRequestDispatcher("/forecastReport.jsp");
-        rd.forward(request, response);
+        if (request.getAttribute("errorMessage") == null && !forecastData.isEmpty()) {
+            validators.apply(response);
+        }
+
+        return "/forecastReport.jsp";
+    }
+
+    /** Runs on the exports bulkhead; streams the report as a download. */
+    private String exportReport(HttpServletResponse response, ReportExport.Format format, Date startDate,
+            Date endDate) throws Exception {
+        ReportExport.Sink sink = ReportExport.open(response, format,
+                "forecast-" + startDate + "-to-" + endDate, "Forecast");
+        borrowingDb.exportAverageDailyConsumption(startDate, endDate, sink);
+        sink.finish();
+        return null;
     }
 
     @Override
@@ -1,6 +1,7 @@
 package ict.servlet;
 
 import java.io.IOException;
+import java.time.LocalDate;
 import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
@@ -9,7 +10,10 @@ import java.util.logging.Logger;
 import ict.bean.InventorySummaryBean;
 import ict.bean.UserBean;
 import ict.db.BorrowingDB;
-import jakarta.servlet.RequestDispatcher;
+import ict.db.DaoRegistry;
+import ict.db.DataVersions;
+import ict.db.DataVersions.Dataset;
+import ict.servlet.Bulkheads.Workload;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
@@ -17,21 +21,20 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 
-@WebServlet(name = "InventoryReportController", urlPatterns = { "/viewInventoryReport" })
+@WebServlet(asyncSupported = true, name = "InventoryReportController", urlPatterns = { "/viewInventoryReport" })
 public class InventoryReportController extends HttpServlet {
 
     private static final Logger LOGGER = Logger.getLogger(InventoryReportController.class.getName());
     private BorrowingDB borrowingDb;
+    private DataVersions dataVersions;
+    private Bulkheads bulkheads;
 
     @Override
     public void init() throws ServletException {
-        String dbUser = getServletContext().getInitParameter("dbUser");
-        String dbPassword = getServletContext().getInitParameter("dbPassword");
-        String dbUrl = getServletContext().getInitParameter("dbUrl");
-        if (dbUrl == null || dbUser == null) {
-            throw new ServletException("Database connection parameters missing in web.xml.");
-        }
-        borrowingDb = new BorrowingDB(dbUrl, dbUser, dbPassword);
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        borrowingDb = daos.getBorrowingDb();
+        dataVersions = daos.getDataVersions();
+        bulkheads = DatabaseContextListener.getBulkheads(getServletContext());
         LOGGER.log(Level.INFO, "InventoryReportController initialized.");
     }
 
@@ -52,6 +55,29 @@ public class InventoryReportController extends HttpServlet {
             groupBy = "sourceCountry";
         }
 
+        ReportExport.Format exportFormat = ReportExport.requestedFormat(request);
+        if (exportFormat != null) {
+            String exportGroupBy = groupBy;
+            bulkheads.submit(request, response, Workload.EXPORTS,
+                    () -> exportReport(response, exportFormat, exportGroupBy));
+            return;
+        }
+
+        ConditionalGet validators = new ConditionalGet(dataVersions,
+                currentUser.getUserId() + "|" + groupBy,
+                Dataset.INVENTORY, Dataset.FRUITS);
+        if (validators.isNotModified(request, response)) {
+            return;
+        }
+
+        String reportGroupBy = groupBy;
+        bulkheads.submit(request, response, Workload.REPORTS,
+                () -> loadReport(request, response, validators, reportGroupBy));
+    }
+
+    /** Runs on the reports bulkhead; returns the view to dispatch to. */
+    private String loadReport(HttpServletRequest request, HttpServletResponse response, ConditionalGet validators,
+            String groupBy) {
         List<InventorySummaryBean> reportData = Collections.emptyList();
         String reportTitle = "Inventory Report";
         String groupByLabel = "Group";
@@ -91,8 +117,21 @@ public class InventoryReportController extends HttpServlet {
         request.setAttribute("inventoryReportData", reportData);
         request.setAttribute("selectedGroupBy", groupBy);
 
-        RequestDispatcher rd = request.getRequestDispatcher("/inventoryReport.jsp");
-        rd.forward(request, response);
+        if (request.getAttribute("errorMessage") == null && !reportData.isEmpty()) {
+            validators.apply(response);
+        }
+
+        return "/inventoryReport.jsp";
+    }
+
+    /** Runs on the exports bulkhead; streams the report as a download. */
+    private String exportReport(HttpServletResponse response, ReportExport.Format format, String groupBy)
+            throws Exception {
+        ReportExport.Sink sink = ReportExport.open(response, format,
+                "inventory-by-" + groupBy + "-" + LocalDate.now(), "Inventory");
+        borrowingDb.exportInventorySummary(groupBy, sink);
+        sink.finish();
+        return null;
     }
 
     @Override
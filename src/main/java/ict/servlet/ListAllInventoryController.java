@@ -1,14 +1,16 @@
 package ict.servlet;
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import ict.bean.InventoryBean;
 import ict.bean.UserBean;
 import ict.db.BorrowingDB;
+import ict.db.DaoRegistry;
+import ict.db.DataVersions;
+import ict.db.DataVersions.Dataset;
+import ict.db.Page;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -22,16 +24,13 @@ public class ListAllInventoryController extends HttpServlet {
 
     private static final Logger LOGGER = Logger.getLogger(ListAllInventoryController.class.getName());
     private BorrowingDB borrowingDb;
+    private DataVersions dataVersions;
 
     @Override
     public void init() throws ServletException {
-        String dbUser = getServletContext().getInitParameter("dbUser");
-        String dbPassword = getServletContext().getInitParameter("dbPassword");
-        String dbUrl = getServletContext().getInitParameter("dbUrl");
-        if (dbUrl == null || dbUser == null) {
-            throw new ServletException("Database connection parameters missing in web.xml.");
-        }
-        borrowingDb = new BorrowingDB(dbUrl, dbUser, dbPassword);
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        borrowingDb = daos.getBorrowingDb();
+        dataVersions = daos.getDataVersions();
         LOGGER.log(Level.INFO, "ListAllInventoryController initialized.");
     }
 
@@ -47,16 +46,24 @@ public class ListAllInventoryController extends HttpServlet {
             return;
         }
 
-        List<InventoryBean> inventoryList = Collections.emptyList();
-        try {
-            inventoryList = borrowingDb.getAllInventory();
-            LOGGER.log(Level.INFO, "Fetched all inventory for Senior Management.");
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error fetching all inventory.", e);
-            request.setAttribute("errorMessage", "Error retrieving inventory data.");
+        if (DataTablesSupport.isDataTablesRequest(request)) {
+            ConditionalGet validators = new ConditionalGet(dataVersions,
+                    currentUser.getUserId() + "|" + DataTablesSupport.variant(request),
+                    Dataset.INVENTORY, Dataset.FRUITS);
+            if (validators.isNotModified(request, response)) {
+                return;
+            }
+            Page<InventoryBean> page = borrowingDb.getInventoryPage(DataTablesSupport.toPageRequest(request));
+            if (page.getTotalCount() > 0) {
+                validators.apply(response);
+            }
+            DataTablesSupport.writePage(request, response, page, item -> new Object[] {
+                    item.getLocationName(), item.getFruitName(), item.getQuantity(), item.getInventoryId(),
+                    item.getShopId() != null ? item.getShopId() : "N/A",
+                    item.getWarehouseId() != null ? item.getWarehouseId() : "N/A" });
+            return;
         }
 
-        request.setAttribute("inventoryList", inventoryList);
         RequestDispatcher rd = request.getRequestDispatcher("/listAllInventory.jsp");
         rd.forward(request, response);
     }
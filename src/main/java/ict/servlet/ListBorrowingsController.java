@@ -1,14 +1,14 @@
 package ict.servlet;
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import ict.bean.BorrowingBean;
 import ict.bean.UserBean;
 import ict.db.BorrowingDB;
+import ict.db.DaoRegistry;
+import ict.db.Page;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -25,13 +25,8 @@ public class ListBorrowingsController extends HttpServlet {
 
     @Override
     public void init() throws ServletException {
-        String dbUser = getServletContext().getInitParameter("dbUser");
-        String dbPassword = getServletContext().getInitParameter("dbPassword");
-        String dbUrl = getServletContext().getInitParameter("dbUrl");
-        if (dbUrl == null || dbUser == null) {
-            throw new ServletException("Database connection parameters missing.");
-        }
-        borrowingDb = new BorrowingDB(dbUrl, dbUser, dbPassword);
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        borrowingDb = daos.getBorrowingDb();
         LOGGER.log(Level.INFO, "ListBorrowingsController initialized.");
     }
 
@@ -42,7 +37,9 @@ public class ListBorrowingsController extends HttpServlet {
         HttpSession session = request.getSession(false);
         UserBean currentUser = (session != null) ? (UserBean) session.getAttribute("userInfo") : null;
         String listTitle = "Borrowing Records";
-        List<BorrowingBean> borrowingList = Collections.emptyList();
+        String errorMessage = null;
+        boolean allowed = false;
+        Integer shopId = null;
 
         if (currentUser == null) {
             response.sendRedirect(request.getContextPath() + "/login.jsp?error=LoginRequired");
@@ -54,25 +51,36 @@ public class ListBorrowingsController extends HttpServlet {
         try {
             if ("Senior Management".equalsIgnoreCase(userRole)) {
                 listTitle = "All Borrowing Records";
-                borrowingList = borrowingDb.getAllBorrowings();
+                allowed = true;
             } else if ("Bakery shop staff".equalsIgnoreCase(userRole) && currentUser.getShopId() != null) {
                 listTitle = "My Shop's Borrowing Records";
-                int shopId = Integer.parseInt(currentUser.getShopId());
-                borrowingList = borrowingDb.getAllBorrowingsForShop(shopId);
+                shopId = Integer.parseInt(currentUser.getShopId());
+                allowed = true;
             } else {
                 LOGGER.log(Level.INFO, "User role ({0}) does not have access to borrowing list.", userRole);
-                request.setAttribute("errorMessage", "Your role does not have access to view borrowing records.");
+                errorMessage = "Your role does not have access to view borrowing records.";
             }
-
         } catch (NumberFormatException e) {
             LOGGER.log(Level.SEVERE, "Invalid Shop ID format for user: " + currentUser.getUsername(), e);
-            request.setAttribute("errorMessage", "Invalid user profile (Shop ID).");
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error fetching borrowing records.", e);
-            request.setAttribute("errorMessage", "Error retrieving borrowing data.");
+            errorMessage = "Invalid user profile (Shop ID).";
         }
 
-        request.setAttribute("borrowingList", borrowingList);
+        if (DataTablesSupport.isDataTablesRequest(request)) {
+            if (!allowed) {
+                DataTablesSupport.writeError(request, response, errorMessage);
+                return;
+            }
+            Page<BorrowingBean> page = borrowingDb.getBorrowingsPage(DataTablesSupport.toPageRequest(request), shopId);
+            DataTablesSupport.writePage(request, response, page, borrow -> new Object[] {
+                    borrow.getBorrowingId(), borrow.getFruitName(), borrow.getBorrowingShopName(),
+                    borrow.getReceivingShopName(), borrow.getQuantity(), borrow.getBorrowingDate(),
+                    borrow.getStatus() });
+            return;
+        }
+
+        if (errorMessage != null) {
+            request.setAttribute("errorMessage", errorMessage);
+        }
         request.setAttribute("listTitle", listTitle);
         RequestDispatcher rd = request.getRequestDispatcher("/listBorrowings.jsp");
         rd.forward(request, response);
@@ -1,14 +1,14 @@
 package ict.servlet;
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import ict.bean.DeliveryBean;
 import ict.bean.UserBean;
+import ict.db.DaoRegistry;
 import ict.db.DeliveryDB;
+import ict.db.Page;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -25,13 +25,8 @@ public class ListDeliveriesController extends HttpServlet {
 
     @Override
     public void init() throws ServletException {
-        String dbUser = getServletContext().getInitParameter("dbUser");
-        String dbPassword = getServletContext().getInitParameter("dbPassword");
-        String dbUrl = getServletContext().getInitParameter("dbUrl");
-        if (dbUrl == null || dbUser == null) {
-            throw new ServletException("Database connection parameters missing.");
-        }
-        deliveryDb = new DeliveryDB(dbUrl, dbUser, dbPassword);
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        deliveryDb = daos.getDeliveryDb();
         LOGGER.log(Level.INFO, "ListDeliveriesController initialized.");
     }
 
@@ -42,7 +37,9 @@ public class ListDeliveriesController extends HttpServlet {
         HttpSession session = request.getSession(false);
         UserBean currentUser = (session != null) ? (UserBean) session.getAttribute("userInfo") : null;
         String listTitle = "Delivery Records";
-        List<DeliveryBean> deliveryList = Collections.emptyList();
+        String errorMessage = null;
+        boolean allowed = false;
+        Integer warehouseId = null;
 
         if (currentUser == null) {
             response.sendRedirect(request.getContextPath() + "/login.jsp?error=LoginRequired");
@@ -54,25 +51,37 @@ public class ListDeliveriesController extends HttpServlet {
         try {
             if ("Senior Management".equalsIgnoreCase(userRole)) {
                 listTitle = "All Delivery Records";
-                deliveryList = deliveryDb.getAllDeliveries();
+                allowed = true;
             } else if ("Warehouse Staff".equalsIgnoreCase(userRole) && currentUser.getWarehouseId() != null) {
                 listTitle = "My Warehouse Delivery Records";
-                int warehouseId = Integer.parseInt(currentUser.getWarehouseId());
-                deliveryList = deliveryDb.getDeliveriesForWarehouse(warehouseId);
+                warehouseId = Integer.parseInt(currentUser.getWarehouseId());
+                allowed = true;
             } else {
                 LOGGER.log(Level.INFO, "User role ({0}) does not have access to delivery list.", userRole);
-                request.setAttribute("errorMessage", "Your role does not have access to view delivery records.");
+                errorMessage = "Your role does not have access to view delivery records.";
             }
-
         } catch (NumberFormatException e) {
             LOGGER.log(Level.SEVERE, "Invalid Warehouse ID format for user: " + currentUser.getUsername(), e);
-            request.setAttribute("errorMessage", "Invalid user profile (Warehouse ID).");
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error fetching delivery records.", e);
-            request.setAttribute("errorMessage", "Error retrieving delivery data.");
+            errorMessage = "Invalid user profile (Warehouse ID).";
         }
 
-        request.setAttribute("deliveryList", deliveryList);
+        if (DataTablesSupport.isDataTablesRequest(request)) {
+            if (!allowed) {
+                DataTablesSupport.writeError(request, response, errorMessage);
+                return;
+            }
+            Page<DeliveryBean> page = deliveryDb.getDeliveriesPage(DataTablesSupport.toPageRequest(request),
+                    warehouseId);
+            DataTablesSupport.writePage(request, response, page, delivery -> new Object[] {
+                    delivery.getDeliveryId(), delivery.getFruitName(), delivery.getFromWarehouseName(),
+                    delivery.getToWarehouseName(), delivery.getQuantity(), delivery.getDeliveryDate(),
+                    delivery.getStatus() });
+            return;
+        }
+
+        if (errorMessage != null) {
+            request.setAttribute("errorMessage", errorMessage);
+        }
         request.setAttribute("listTitle", listTitle);
         RequestDispatcher rd = request.getRequestDispatcher("/listDeliveries.jsp");
         rd.forward(request, response);
@@ -6,6 +6,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import ict.bean.FruitBean;
+import ict.db.DaoRegistry;
 import ict.db.FruitDB;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletException;
@@ -23,16 +24,8 @@ public class ListFruitsController extends HttpServlet {
 
     @Override
     public void init() throws ServletException {
-        String dbUser = getServletContext().getInitParameter("dbUser");
-        String dbPassword = getServletContext().getInitParameter("dbPassword");
-        String dbUrl = getServletContext().getInitParameter("dbUrl");
-
-        if (dbUrl == null || dbUser == null) {
-            LOGGER.log(Level.SEVERE, "Database connection parameters missing in web.xml for ListFruitsController.");
-            throw new ServletException("Database connection parameters missing.");
-        }
-
-        fruitDb = new FruitDB(dbUrl, dbUser, dbPassword);
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        fruitDb = daos.getFruitDb();
         LOGGER.log(Level.INFO, "ListFruitsController initialized.");
     }
 
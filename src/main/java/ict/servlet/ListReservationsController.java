@@ -1,12 +1,13 @@
 package ict.servlet;
 
 import java.io.IOException;
-import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import ict.bean.ReservationBean;
 import ict.bean.UserBean;
+import ict.db.DaoRegistry;
+import ict.db.Page;
 import ict.db.ReservationDB;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletException;
@@ -24,15 +25,8 @@ public class ListReservationsController extends HttpServlet {
 
     @Override
     public void init() throws ServletException {
-        String dbUser = getServletContext().getInitParameter("dbUser");
-        String dbPassword = getServletContext().getInitParameter("dbPassword");
-        String dbUrl = getServletContext().getInitParameter("dbUrl");
-
-        if (dbUrl == null || dbUser == null) {
-            LOGGER.log(Level.SEVERE, "Database connection parameters missing in web.xml.");
-            throw new ServletException("Database connection parameters missing.");
-        }
-        reservationDb = new ReservationDB(dbUrl, dbUser, dbPassword);
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        reservationDb = daos.getReservationDb();
         LOGGER.log(Level.INFO, "ListReservationsController initialized.");
     }
 
@@ -49,29 +43,32 @@ public class ListReservationsController extends HttpServlet {
             return;
         }
 
+        int currentShopId;
         try {
-            int currentShopId = Integer.parseInt(currentUser.getShopId());
-
-            List<ReservationBean> reservations = reservationDb.getReservationsForShop(currentShopId);
-
-            request.setAttribute("reservationList", reservations);
-            LOGGER.log(Level.INFO, "Fetched {0} reservations for ShopID={1}. Forwarding to listReservations.jsp",
-                    new Object[] { reservations.size(), currentShopId });
-
-            RequestDispatcher rd = request.getRequestDispatcher("/listReservations.jsp");
-            rd.forward(request, response);
-
+            currentShopId = Integer.parseInt(currentUser.getShopId());
         } catch (NumberFormatException e) {
             LOGGER.log(Level.SEVERE, "Invalid Shop ID format for current user: " + currentUser.getShopId(), e);
+            if (DataTablesSupport.isDataTablesRequest(request)) {
+                DataTablesSupport.writeError(request, response, "Invalid user profile (Shop ID).");
+                return;
+            }
             request.setAttribute("errorMessage", "Invalid user profile (Shop ID). Cannot display reservations.");
             RequestDispatcher rd = request.getRequestDispatcher("/listReservations.jsp");
             rd.forward(request, response);
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error fetching reservations.", e);
-            request.setAttribute("errorMessage", "An error occurred while retrieving reservations.");
-            RequestDispatcher rd = request.getRequestDispatcher("/listReservations.jsp");
-            rd.forward(request, response);
+            return;
         }
+
+        if (DataTablesSupport.isDataTablesRequest(request)) {
+            Page<ReservationBean> page = reservationDb.getReservationsPage(DataTablesSupport.toPageRequest(request),
+                    currentShopId);
+            DataTablesSupport.writePage(request, response, page, res -> new Object[] {
+                    res.getReservationId(), res.getFruitName(), res.getQuantity(), res.getReservationDate(),
+                    res.getStatus() != null ? res.getStatus() : "Unknown" });
+            return;
+        }
+
+        RequestDispatcher rd = request.getRequestDispatcher("/listReservations.jsp");
+        rd.forward(request, response);
     }
 
     @Override
@@ -1,13 +1,12 @@
 package ict.servlet;
 
 import java.io.IOException;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import ict.bean.UserBean;
+import ict.db.DaoRegistry;
+import ict.db.Page;
 import ict.db.UserDB;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletException;
@@ -25,13 +24,8 @@ public class ListUsersController extends HttpServlet {
 
     @Override
     public void init() throws ServletException {
-        String dbUser = getServletContext().getInitParameter("dbUser");
-        String dbPassword = getServletContext().getInitParameter("dbPassword");
-        String dbUrl = getServletContext().getInitParameter("dbUrl");
-        if (dbUrl == null || dbUser == null) {
-            throw new ServletException("Database connection parameters missing.");
-        }
-        userDb = new UserDB(dbUrl, dbUser, dbPassword);
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        userDb = daos.getUserDb();
         LOGGER.log(Level.INFO, "ListUsersController initialized.");
     }
 
@@ -47,31 +41,34 @@ public class ListUsersController extends HttpServlet {
             return;
         }
 
-        Map<String, List<UserBean>> usersByRole = Collections.emptyMap();
         String listTitle = "User List";
+        String roleFilter = null;
+        String userRole = currentUser.getRole();
 
-        try {
-            String userRole = currentUser.getRole();
-
-            if ("Senior Management".equalsIgnoreCase(userRole)) {
-                listTitle = "All Users";
-                usersByRole = userDb.getAllUsersAsMap();
-                LOGGER.log(Level.INFO, "Fetching all users for Senior Management.");
-            } else if (userRole != null && !userRole.trim().isEmpty()) {
-                listTitle = "Users with Role: " + userRole;
-                usersByRole = userDb.getUsersGroupedByRole(userRole);
-                LOGGER.log(Level.INFO, "Fetching users for role: {0}", userRole);
-            } else {
-                LOGGER.log(Level.WARNING, "User {0} has missing role, cannot list users.", currentUser.getUsername());
-                request.setAttribute("errorMessage", "Your user profile is missing role information.");
+        if ("Senior Management".equalsIgnoreCase(userRole)) {
+            listTitle = "All Users";
+        } else if (userRole != null && !userRole.trim().isEmpty()) {
+            listTitle = "Users with Role: " + userRole;
+            roleFilter = userRole;
+        } else {
+            LOGGER.log(Level.WARNING, "User {0} has missing role, cannot list users.", currentUser.getUsername());
+            if (DataTablesSupport.isDataTablesRequest(request)) {
+                DataTablesSupport.writeError(request, response, "Your user profile is missing role information.");
+                return;
             }
+            request.setAttribute("errorMessage", "Your user profile is missing role information.");
+        }
 
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error fetching user list.", e);
-            request.setAttribute("errorMessage", "Error retrieving user data.");
+        if (DataTablesSupport.isDataTablesRequest(request)) {
+            Page<UserBean> page = userDb.getUsersPage(DataTablesSupport.toPageRequest(request), roleFilter);
+            DataTablesSupport.writePage(request, response, page, user -> new Object[] {
+                    user.getUserId(), user.getUsername(), user.getUserEmail(), user.getRole(),
+                    user.getShopId() != null ? user.getShopId() : "N/A",
+                    user.getWarehouseId() != null ? user.getWarehouseId() : "N/A",
+                    user.getUserId() });
+            return;
         }
 
-        request.setAttribute("usersByRole", usersByRole);
         request.setAttribute("listTitle", listTitle);
         RequestDispatcher rd = request.getRequestDispatcher("/listUsers.jsp");
         rd.forward(request, response);
@@ -6,6 +6,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import ict.bean.UserBean;
+import ict.db.DaoRegistry;
 import ict.db.UserDB;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -19,11 +20,9 @@ public class LoginController extends HttpServlet {
 
     private UserDB db;
 
-    public void init() {
-        String dbUser = this.getServletContext().getInitParameter("dbUser");
-        String dbPassword = this.getServletContext().getInitParameter("dbPassword");
-        String dbUrl = this.getServletContext().getInitParameter("dbUrl");
-        db = new UserDB(dbUrl, dbUser, dbPassword);
+    public void init() throws ServletException {
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        db = daos.getUserDb();
     }
 
     @Override
@@ -39,14 +38,20 @@ public class LoginController extends HttpServlet {
         } else {
             String username = request.getParameter("username");
             String password = request.getParameter("password");
+            String clientAddress = request.getRemoteAddr();
             String targetURL;
 
             try {
-                if (db.isValidUser(username, password)) {
+                UserBean bean = db.isLoginThrottled(username, clientAddress) ? null
+                        : db.authenticate(username, password, clientAddress);
+                if (bean != null) {
                     HttpSession session = request.getSession();
-                    UserBean bean = db.getUser(username, password);
                     session.setAttribute("userInfo", bean);
                     targetURL = "/welcome.jsp";
+                } else if (db.isLoginThrottled(username, clientAddress)) {
+                    request.setAttribute("errorMessage",
+                            "Too many failed login attempts. Please wait a minute and try again.");
+                    targetURL = "/";
                 } else {
                     request.setAttribute("errorMessage", "Invalid username or password.");
                     targetURL = "/";
@@ -0,0 +1,96 @@
+package ict.servlet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ict.bean.UserBean;
+import ict.db.DaoMetrics;
+import ict.db.DaoRegistry;
+import ict.db.InventoryLedger;
+import ict.db.ReferenceCache;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+/**
+ * Prometheus scrape endpoint: per-DAO-method latency, connection wait and
+ * row histograms, pool gauges, inventory flush counters, reference data
+ * cache counters and bulkhead counters.
+ *
+ * A scraper authenticates with "Authorization: Bearer &lt;metricsToken&gt;"
+ * (context-param; empty disables token access). Senior Management can also
+ * open it from a logged-in session.
+ */
+@WebServlet(name = "MetricsServlet", urlPatterns = { "/metrics" })
+public class MetricsServlet extends HttpServlet {
+
+    private static final Logger LOGGER = Logger.getLogger(MetricsServlet.class.getName());
+    private DaoMetrics daoMetrics;
+    private InventoryLedger inventoryLedger;
+    private List<ReferenceCache<?, ?>> referenceCaches;
+    private Bulkheads bulkheads;
+    private byte[] expectedAuthorization;
+
+    @Override
+    public void init() throws ServletException {
+        DaoRegistry registry = DatabaseContextListener.getDaoRegistry(getServletContext());
+        daoMetrics = registry.getDaoMetrics();
+        inventoryLedger = registry.getInventoryLedger();
+        referenceCaches = registry.getReferenceCaches();
+        bulkheads = DatabaseContextListener.getBulkheads(getServletContext());
+        String token = getServletContext().getInitParameter("metricsToken");
+        if (token != null && !token.trim().isEmpty()) {
+            expectedAuthorization = ("Bearer " + token.trim()).getBytes(StandardCharsets.UTF_8);
+        }
+        LOGGER.log(Level.INFO, "MetricsServlet initialized (token access {0}).",
+                expectedAuthorization == null ? "disabled" : "enabled");
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        if (!isAuthorized(request)) {
+            LOGGER.log(Level.WARNING, "Unauthorized access attempt to GET /metrics from {0}.",
+                    request.getRemoteAddr());
+            if (expectedAuthorization != null) {
+                response.setHeader("WWW-Authenticate", "Bearer");
+                response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            } else {
+                response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            }
+            return;
+        }
+
+        response.setContentType("text/plain; version=0.0.4");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+        PrintWriter out = response.getWriter();
+        daoMetrics.writePrometheus(out);
+        inventoryLedger.writePrometheus(out);
+        ReferenceCache.writePrometheus(out, referenceCaches);
+        bulkheads.writePrometheus(out);
+    }
+
+    private boolean isAuthorized(HttpServletRequest request) {
+        String authorization = request.getHeader("Authorization");
+        if (expectedAuthorization != null && authorization != null) {
+            return MessageDigest.isEqual(expectedAuthorization, authorization.getBytes(StandardCharsets.UTF_8));
+        }
+        HttpSession session = request.getSession(false);
+        UserBean currentUser = (session != null) ? (UserBean) session.getAttribute("userInfo") : null;
+        return currentUser != null && "Senior Management".equalsIgnoreCase(currentUser.getRole());
+    }
+
+    @Override
+    public String getServletInfo() {
+        return "Prometheus metrics for the DAO layer, connection pool, caches and bulkheads";
+    }
+}
@@ -9,6 +9,7 @@ import java.util.logging.Logger;
 import ict.bean.AggregatedNeedBean;
 import ict.bean.UserBean;
 import ict.bean.WarehouseBean;
+import ict.db.DaoRegistry;
 import ict.db.ReservationDB;
 import ict.db.WarehouseDB;
 import jakarta.servlet.RequestDispatcher;
@@ -28,16 +29,9 @@ public class NeedsApprovalController extends HttpServlet {
 
     @Override
     public void init() throws ServletException {
-        String dbUser = getServletContext().getInitParameter("dbUser");
-        String dbPassword = getServletContext().getInitParameter("dbPassword");
-        String dbUrl = getServletContext().getInitParameter("dbUrl");
-
-        if (dbUrl == null || dbUser == null) {
-            LOGGER.log(Level.SEVERE, "Database connection parameters missing in web.xml.");
-            throw new ServletException("Database connection parameters missing.");
-        }
-        reservationDb = new ReservationDB(dbUrl, dbUser, dbPassword);
-        warehouseDb = new WarehouseDB(dbUrl, dbUser, dbPassword);
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        reservationDb = daos.getReservationDb();
+        warehouseDb = daos.getWarehouseDb();
         LOGGER.log(Level.INFO, "NeedsApprovalController initialized.");
     }
 
@@ -7,9 +7,12 @@ import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import ict.bean.ActionOutcomeBean;
 import ict.bean.OrderableFruitBean;
 import ict.bean.UserBean;
 import ict.db.BorrowingDB;
+import ict.db.DaoRegistry;
+import ict.servlet.Bulkheads.Workload;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -18,21 +21,18 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 
-@WebServlet(name = "OrderFromSourceController", urlPatterns = { "/orderFromSource" })
+@WebServlet(asyncSupported = true, name = "OrderFromSourceController", urlPatterns = { "/orderFromSource" })
 public class OrderFromSourceController extends HttpServlet {
 
     private static final Logger LOGGER = Logger.getLogger(OrderFromSourceController.class.getName());
     private BorrowingDB borrowingDb;
+    private Bulkheads bulkheads;
 
     @Override
     public void init() throws ServletException {
-        String dbUser = getServletContext().getInitParameter("dbUser");
-        String dbPassword = getServletContext().getInitParameter("dbPassword");
-        String dbUrl = getServletContext().getInitParameter("dbUrl");
-        if (dbUrl == null || dbUser == null) {
-            throw new ServletException("Database connection parameters missing.");
-        }
-        borrowingDb = new BorrowingDB(dbUrl, dbUser, dbPassword);
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        borrowingDb = daos.getBorrowingDb();
+        bulkheads = DatabaseContextListener.getBulkheads(getServletContext());
         LOGGER.log(Level.INFO, "OrderFromSourceController initialized.");
     }
 
@@ -74,6 +74,12 @@ public class OrderFromSourceController extends HttpServlet {
             return;
         }
 
+        bulkheads.submit(request, response, Workload.TRANSACTIONS,
+                () -> placeOrder(request, currentUser));
+    }
+
+    /** Runs on the transactions bulkhead; redirects back with the outcome. */
+    private String placeOrder(HttpServletRequest request, UserBean currentUser) throws IOException {
         String message = "Order processing failed.";
         boolean success = false;
         List<Integer> orderedFruitIds = new ArrayList<>();
@@ -109,10 +115,10 @@ public class OrderFromSourceController extends HttpServlet {
             } else {
                 LOGGER.log(Level.INFO, "Processing order for ShopID={0} with {1} items.",
                         new Object[] { shopId, orderedFruitIds.size() });
-                message = borrowingDb.createMultipleReservations(shopId, orderedFruitIds, orderedQuantities);
-                if (message.toLowerCase().contains("success")) {
-                    success = true;
-                }
+                ActionOutcomeBean outcome = borrowingDb.createMultipleReservations(shopId, orderedFruitIds,
+                        orderedQuantities);
+                message = outcome.getMessage();
+                success = outcome.isSuccess();
             }
 
         } catch (NumberFormatException e) {
@@ -129,7 +135,7 @@ public class OrderFromSourceController extends HttpServlet {
         } else {
             redirectUrl += "?error=" + java.net.URLEncoder.encode(message, "UTF-8");
         }
-        response.sendRedirect(redirectUrl);
+        return Bulkheads.REDIRECT + redirectUrl;
     }
 
     @Override
@@ -2,6 +2,7 @@ package ict.servlet;
 
 import java.io.IOException;
 
+import ict.db.DaoRegistry;
 import ict.db.UserDB;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -14,11 +15,9 @@ public class RegisterController extends HttpServlet {
 
     private UserDB db;
 
-    public void init() {
-        String dbUser = this.getServletContext().getInitParameter("dbUser");
-        String dbPassword = this.getServletContext().getInitParameter("dbPassword");
-        String dbUrl = this.getServletContext().getInitParameter("dbUrl");
-        db = new UserDB(dbUrl, dbUser, dbPassword);
+    public void init() throws ServletException {
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        db = daos.getUserDb();
     }
 
     @Override
@@ -0,0 +1,361 @@
+package ict.servlet;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import ict.db.RowSink;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * CSV and XLSX downloads of the management reports. A report controller
+ * that sees an export parameter hands the DAO a {@link Sink} from
+ * {@link #open}; the DAO streams rows into it straight from the result set,
+ * and the sink writes each one to the response output stream, so an export
+ * holds one row in memory however many it has.
+ *
+ * The response headers are set when the column labels arrive, i.e. once the
+ * query has run, so a query that fails is still answered with an error page
+ * rather than a truncated file.
+ */
+final class ReportExport {
+
+    enum Format {
+        CSV("text/csv", ".csv"),
+        XLSX("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", ".xlsx");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+    }
+
+    /** A RowSink that writes to the response; {@link #finish()} ends the file. */
+    abstract static class Sink implements RowSink {
+        private final HttpServletResponse response;
+        private final Format format;
+        private final String fileName;
+
+        Sink(HttpServletResponse response, Format format, String fileName) {
+            this.response = response;
+            this.format = format;
+            this.fileName = fileName;
+        }
+
+        @Override
+        public final void columns(String... labels) throws IOException {
+            response.setContentType(format.contentType);
+            if (format == Format.CSV) {
+                response.setCharacterEncoding("UTF-8");
+            }
+            response.setHeader("Content-Disposition",
+                    "attachment; filename=\"" + fileName + format.extension + "\"");
+            response.setHeader("Cache-Control", "no-store");
+            start(response, labels);
+        }
+
+        abstract void start(HttpServletResponse response, String[] labels) throws IOException;
+
+        abstract void finish() throws IOException;
+    }
+
+    private ReportExport() {
+    }
+
+    /** The format asked for by the export parameter (csv or xlsx), or null for the HTML report. */
+    static Format requestedFormat(HttpServletRequest request) {
+        String export = request.getParameter("export");
+        if ("csv".equalsIgnoreCase(export)) {
+            return Format.CSV;
+        }
+        if ("xlsx".equalsIgnoreCase(export)) {
+            return Format.XLSX;
+        }
+        return null;
+    }
+
+    /**
+     * A sink writing format to response as fileName plus the format's
+     * extension; sheetName names the XLSX worksheet.
+     */
+    static Sink open(HttpServletResponse response, Format format, String fileName, String sheetName) {
+        return format == Format.CSV ? new CsvSink(response, fileName) : new XlsxSink(response, fileName, sheetName);
+    }
+
+    /**
+     * RFC 4180 CSV in UTF-8 with a byte order mark, so that Excel opens
+     * non-ASCII shop and city names correctly.
+     */
+    private static final class CsvSink extends Sink {
+        private Writer out;
+
+        private CsvSink(HttpServletResponse response, String fileName) {
+            super(response, Format.CSV, fileName);
+        }
+
+        @Override
+        void start(HttpServletResponse response, String[] labels) throws IOException {
+            out = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+            out.write('\uFEFF');
+            row((Object[]) labels);
+        }
+
+        @Override
+        public void row(Object... cells) throws IOException {
+            for (int i = 0; i < cells.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                Object cell = cells[i];
+                if (cell instanceof BigDecimal) {
+                    out.write(((BigDecimal) cell).toPlainString());
+                } else if (cell instanceof Number) {
+                    out.write(cell.toString());
+                } else if (cell != null) {
+                    writeText(cell.toString());
+                }
+            }
+            out.write("\r\n");
+        }
+
+        /**
+         * Quotes text that needs it, and defuses text a spreadsheet would
+         * read as a formula (a shop named "=HYPERLINK(...)").
+         */
+        private void writeText(String text) throws IOException {
+            if (!text.isEmpty() && "=+-@\t\r".indexOf(text.charAt(0)) >= 0) {
+                text = "'" + text;
+            }
+            if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0
+                    && text.indexOf('\r') < 0) {
+                out.write(text);
+                return;
+            }
+            out.write('"');
+            out.write(text.replace("\"", "\"\""));
+            out.write('"');
+        }
+
+        @Override
+        void finish() throws IOException {
+            out.flush();
+        }
+    }
+
+    /**
+     * SpreadsheetML written directly into a zip stream, one worksheet entry
+     * at a time with inline strings, so no shared-strings table or workbook
+     * model is built up in memory. A result longer than Excel's row limit
+     * continues on another worksheet; the workbook parts that list the
+     * worksheets are written last, once their number is known.
+     */
+    private static final class XlsxSink extends Sink {
+        private static final int MAX_ROWS_PER_SHEET = 1048576;
+        private static final int STYLE_HEADER = 1;
+        private static final int STYLE_DATE = 2;
+        private static final LocalDate EPOCH = LocalDate.of(1899, 12, 30);
+        private static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+        private static final String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+        private static final String PACKAGE_REL_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+
+        private final String sheetName;
+        private ZipOutputStream zip;
+        private Writer out;
+        private String[] labels;
+        private int sheets;
+        private int rowNumber;
+
+        private XlsxSink(HttpServletResponse response, String fileName, String sheetName) {
+            super(response, Format.XLSX, fileName);
+            String name = sheetName.replaceAll("[\\[\\]:*?/\\\\]", " ").trim();
+            this.sheetName = name.isEmpty() ? "Sheet" : name;
+        }
+
+        @Override
+        void start(HttpServletResponse response, String[] labels) throws IOException {
+            this.labels = labels;
+            zip = new ZipOutputStream(response.getOutputStream(), StandardCharsets.UTF_8);
+            out = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8));
+            startSheet();
+        }
+
+        private void startSheet() throws IOException {
+            sheets++;
+            zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + sheets + ".xml"));
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+            out.write("<worksheet xmlns=\"" + MAIN_NS + "\"><sheetViews><sheetView workbookViewId=\"0\">"
+                    + "<pane ySplit=\"1\" topLeftCell=\"A2\" activePane=\"bottomLeft\" state=\"frozen\"/>"
+                    + "</sheetView></sheetViews><sheetData>");
+            rowNumber = 0;
+            writeRow(labels, STYLE_HEADER);
+        }
+
+        private void endSheet() throws IOException {
+            out.write("</sheetData></worksheet>");
+            out.flush();
+            zip.closeEntry();
+        }
+
+        @Override
+        public void row(Object... cells) throws IOException {
+            if (rowNumber == MAX_ROWS_PER_SHEET) {
+                endSheet();
+                startSheet();
+            }
+            writeRow(cells, 0);
+        }
+
+        private void writeRow(Object[] cells, int style) throws IOException {
+            rowNumber++;
+            out.write("<row r=\"");
+            out.write(Integer.toString(rowNumber));
+            out.write("\">");
+            for (int i = 0; i < cells.length; i++) {
+                Object cell = cells[i];
+                if (cell == null) {
+                    continue;
+                }
+                String ref = columnName(i) + rowNumber;
+                if (cell instanceof java.sql.Date) {
+                    long serial = ChronoUnit.DAYS.between(EPOCH, ((java.sql.Date) cell).toLocalDate());
+                    out.write("<c r=\"" + ref + "\" s=\"" + STYLE_DATE + "\"><v>" + serial + "</v></c>");
+                } else if (cell instanceof Number) {
+                    String value = cell instanceof BigDecimal ? ((BigDecimal) cell).toPlainString() : cell.toString();
+                    out.write("<c r=\"" + ref + "\"" + styleAttribute(style) + "><v>" + value + "</v></c>");
+                } else {
+                    out.write("<c r=\"" + ref + "\" t=\"inlineStr\"" + styleAttribute(style)
+                            + "><is><t xml:space=\"preserve\">");
+                    writeEscaped(cell.toString());
+                    out.write("</t></is></c>");
+                }
+            }
+            out.write("</row>");
+        }
+
+        private static String styleAttribute(int style) {
+            return style == 0 ? "" : " s=\"" + style + "\"";
+        }
+
+        /** A, B, ..., Z, AA, AB, ... for the zero-based column index. */
+        private static String columnName(int index) {
+            StringBuilder name = new StringBuilder();
+            for (int n = index + 1; n > 0; n = (n - 1) / 26) {
+                name.insert(0, (char) ('A' + (n - 1) % 26));
+            }
+            return name.toString();
+        }
+
+        /** Escapes markup and drops characters XML 1.0 does not allow. */
+        private void writeEscaped(String text) throws IOException {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '&':
+                        out.write("&amp;");
+                        break;
+                    case '<':
+                        out.write("&lt;");
+                        break;
+                    case '>':
+                        out.write("&gt;");
+                        break;
+                    default:
+                        if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+                            if (c != 0xFFFE && c != 0xFFFF) {
+                                out.write(c);
+                            }
+                        }
+                }
+            }
+        }
+
+        @Override
+        void finish() throws IOException {
+            endSheet();
+            writeEntry("[Content_Types].xml", contentTypes());
+            writeEntry("_rels/.rels", "<Relationships xmlns=\"" + PACKAGE_REL_NS + "\">"
+                    + "<Relationship Id=\"rId1\" Type=\"" + REL_NS + "/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                    + "</Relationships>");
+            writeEntry("xl/workbook.xml", workbook());
+            writeEntry("xl/_rels/workbook.xml.rels", workbookRelationships());
+            writeEntry("xl/styles.xml", "<styleSheet xmlns=\"" + MAIN_NS + "\">"
+                    + "<fonts count=\"2\"><font><sz val=\"11\"/><name val=\"Calibri\"/></font>"
+                    + "<font><b/><sz val=\"11\"/><name val=\"Calibri\"/></font></fonts>"
+                    + "<fills count=\"2\"><fill><patternFill patternType=\"none\"/></fill>"
+                    + "<fill><patternFill patternType=\"gray125\"/></fill></fills>"
+                    + "<borders count=\"1\"><border><left/><right/><top/><bottom/><diagonal/></border></borders>"
+                    + "<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/>"
+                    + "</cellStyleXfs><cellXfs count=\"3\">"
+                    + "<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>"
+                    + "<xf numFmtId=\"0\" fontId=\"1\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\"/>"
+                    + "<xf numFmtId=\"14\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\""
+                    + " applyNumberFormat=\"1\"/></cellXfs>"
+                    + "<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>"
+                    + "</styleSheet>");
+            zip.finish();
+            zip.flush();
+        }
+
+        private String contentTypes() {
+            StringBuilder xml = new StringBuilder(
+                    "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                            + "<Default Extension=\"rels\""
+                            + " ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                            + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                            + "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/"
+                            + "vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>"
+                            + "<Override PartName=\"/xl/styles.xml\" ContentType=\"application/"
+                            + "vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+            for (int i = 1; i <= sheets; i++) {
+                xml.append("<Override PartName=\"/xl/worksheets/sheet").append(i).append(".xml\" ContentType=\"")
+                        .append("application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+            }
+            return xml.append("</Types>").toString();
+        }
+
+        private String workbook() {
+            StringBuilder xml = new StringBuilder("<workbook xmlns=\"" + MAIN_NS + "\" xmlns:r=\"" + REL_NS
+                    + "\"><sheets>");
+            for (int i = 1; i <= sheets; i++) {
+                String suffix = i == 1 ? "" : " (" + i + ")";
+                String name = sheetName.length() + suffix.length() > 31
+                        ? sheetName.substring(0, 31 - suffix.length()) + suffix
+                        : sheetName + suffix;
+                xml.append("<sheet name=\"").append(name.replace("&", "&amp;").replace("<", "&lt;")
+                        .replace("\"", "&quot;")).append("\" sheetId=\"").append(i).append("\" r:id=\"rId")
+                        .append(i).append("\"/>");
+            }
+            return xml.append("</sheets></workbook>").toString();
+        }
+
+        private String workbookRelationships() {
+            StringBuilder xml = new StringBuilder("<Relationships xmlns=\"" + PACKAGE_REL_NS + "\">");
+            for (int i = 1; i <= sheets; i++) {
+                xml.append("<Relationship Id=\"rId").append(i).append("\" Type=\"").append(REL_NS)
+                        .append("/worksheet\" Target=\"worksheets/sheet").append(i).append(".xml\"/>");
+            }
+            xml.append("<Relationship Id=\"rId").append(sheets + 1).append("\" Type=\"").append(REL_NS)
+                    .append("/styles\" Target=\"styles.xml\"/>");
+            return xml.append("</Relationships>").toString();
+        }
+
+        private void writeEntry(String name, String xml) throws IOException {
+            zip.putNextEntry(new ZipEntry(name));
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+            out.write(xml);
+            out.flush();
+            zip.closeEntry();
+        }
+    }
+}
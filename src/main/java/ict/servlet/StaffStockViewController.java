@@ -12,6 +12,7 @@ import ict.bean.UserBean;
 import ict.bean.WarehouseBean;
 import ict.db.BakeryShopDB;
 import ict.db.BorrowingDB;
+import ict.db.DaoRegistry;
 import ict.db.WarehouseDB;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletException;
@@ -31,15 +32,10 @@ public class StaffStockViewController extends HttpServlet {
 
     @Override
     public void init() throws ServletException {
-        String dbUser = getServletContext().getInitParameter("dbUser");
-        String dbPassword = getServletContext().getInitParameter("dbPassword");
-        String dbUrl = getServletContext().getInitParameter("dbUrl");
-        if (dbUrl == null || dbUser == null) {
-            throw new ServletException("Database connection parameters missing.");
-        }
-        borrowingDb = new BorrowingDB(dbUrl, dbUser, dbPassword);
-        bakeryShopDb = new BakeryShopDB(dbUrl, dbUser, dbPassword);
-        warehouseDb = new WarehouseDB(dbUrl, dbUser, dbPassword);
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        borrowingDb = daos.getBorrowingDb();
+        bakeryShopDb = daos.getBakeryShopDb();
+        warehouseDb = daos.getWarehouseDb();
         LOGGER.log(Level.INFO, "StaffStockViewController initialized.");
     }
 
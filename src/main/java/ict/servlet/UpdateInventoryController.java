@@ -8,6 +8,7 @@ import ict.bean.FruitBean;
 import ict.bean.InventoryBean;
 import ict.bean.UserBean;
 import ict.db.BorrowingDB;
+import ict.db.DaoRegistry;
 import ict.db.FruitDB;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletException;
@@ -26,15 +27,9 @@ public class UpdateInventoryController extends HttpServlet {
 
     @Override
     public void init() throws ServletException {
-        String dbUser = getServletContext().getInitParameter("dbUser");
-        String dbPassword = getServletContext().getInitParameter("dbPassword");
-        String dbUrl = getServletContext().getInitParameter("dbUrl");
-
-        if (dbUrl == null || dbUser == null) {
-            throw new ServletException("Database connection parameters missing.");
-        }
-        borrowingDb = new BorrowingDB(dbUrl, dbUser, dbPassword);
-        fruitDb = new FruitDB(dbUrl, dbUser, dbPassword);
+        DaoRegistry daos = DatabaseContextListener.getDaoRegistry(getServletContext());
+        borrowingDb = daos.getBorrowingDb();
+        fruitDb = daos.getFruitDb();
     }
 
     @Override
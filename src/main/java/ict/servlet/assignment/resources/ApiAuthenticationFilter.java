@@ -0,0 +1,95 @@
+package ict.servlet.assignment.resources;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ict.bean.UserBean;
+import ict.db.UserDB;
+import jakarta.annotation.Priority;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.Provider;
+
+/**
+ * Authenticates calls to the JSON API. Browser pages that already hold a
+ * login session are accepted as-is; terminals and scanners send HTTP Basic
+ * credentials with each request instead of keeping a session. The ping
+ * endpoint stays open.
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION)
+public class ApiAuthenticationFilter implements ContainerRequestFilter {
+
+    private static final Logger LOGGER = Logger.getLogger(ApiAuthenticationFilter.class.getName());
+    private static final String BASIC_PREFIX = "Basic ";
+
+    @Context
+    private HttpServletRequest httpRequest;
+
+    @Context
+    private ServletContext servletContext;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) throws IOException {
+        if (requestContext.getUriInfo().getPath().startsWith("jakartaee10")) {
+            return;
+        }
+
+        HttpSession session = httpRequest.getSession(false);
+        UserBean user = (session != null) ? (UserBean) session.getAttribute("userInfo") : null;
+        if (user == null) {
+            user = authenticateBasic(requestContext.getHeaderString(HttpHeaders.AUTHORIZATION));
+        }
+        if (user == null) {
+            requestContext.abortWith(Response.fromResponse(
+                    ApiSupport.error(Response.Status.UNAUTHORIZED, "Authentication required."))
+                    .header(HttpHeaders.WWW_AUTHENTICATE, "Basic realm=\"assignment\", charset=\"UTF-8\"")
+                    .build());
+            return;
+        }
+        httpRequest.setAttribute(ApiSupport.USER_ATTRIBUTE, user);
+    }
+
+    private UserBean authenticateBasic(String authorization) {
+        if (authorization == null || !authorization.regionMatches(true, 0, BASIC_PREFIX, 0, BASIC_PREFIX.length())) {
+            return null;
+        }
+        String credentials;
+        try {
+            credentials = new String(Base64.getDecoder().decode(authorization.substring(BASIC_PREFIX.length()).trim()),
+                    StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "Malformed Basic credentials.");
+            return null;
+        }
+        int colon = credentials.indexOf(':');
+        if (colon <= 0) {
+            return null;
+        }
+        String username = credentials.substring(0, colon);
+        UserDB userDb = ApiSupport.daos(servletContext).getUserDb();
+        String clientAddress = httpRequest.getRemoteAddr();
+        if (userDb.isLoginThrottled(username, clientAddress)) {
+            return null;
+        }
+        try {
+            return userDb.authenticate(username, credentials.substring(colon + 1), clientAddress);
+        } catch (SQLException | IOException e) {
+            LOGGER.log(Level.SEVERE, "Database error during API authentication.", e);
+            throw new WebApplicationException(ApiSupport.error(Response.Status.SERVICE_UNAVAILABLE,
+                    "Authentication is temporarily unavailable."));
+        }
+    }
+}
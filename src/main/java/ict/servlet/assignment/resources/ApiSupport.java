@@ -0,0 +1,148 @@
+package ict.servlet.assignment.resources;
+
+import ict.bean.ActionOutcomeBean;
+import ict.bean.InventoryBean;
+import ict.bean.UserBean;
+import ict.db.DaoRegistry;
+import ict.db.DataVersions;
+import ict.db.DataVersions.Dataset;
+import ict.servlet.DatabaseContextListener;
+import jakarta.json.Json;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.json.JsonStructure;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Helpers shared by the JSON resources: DAO lookup, the authenticated user,
+ * compact JSON encoding and conditional GET handling.
+ *
+ * Responses are written without whitespace and omit null fields; a POS
+ * terminal polling its shop's stock gets a 304 with no body, and no query,
+ * while nothing has changed.
+ */
+final class ApiSupport {
+
+    static final String USER_ATTRIBUTE = "ict.api.user";
+
+    private ApiSupport() {
+    }
+
+    static DaoRegistry daos(ServletContext context) {
+        try {
+            return DatabaseContextListener.getDaoRegistry(context);
+        } catch (ServletException e) {
+            throw new WebApplicationException(error(Response.Status.SERVICE_UNAVAILABLE, e.getMessage()));
+        }
+    }
+
+    /** The user the authentication filter accepted for this request. */
+    static UserBean currentUser(HttpServletRequest request) {
+        return (UserBean) request.getAttribute(USER_ATTRIBUTE);
+    }
+
+    static Integer parseId(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static boolean isSeniorManagement(UserBean user) {
+        return "Senior Management".equalsIgnoreCase(user.getRole());
+    }
+
+    static JsonObject inventoryJson(InventoryBean item) {
+        JsonObjectBuilder json = Json.createObjectBuilder();
+        // Rebuilt history rows have no inventory row behind them.
+        if (item.getInventoryId() != 0) {
+            json.add("id", item.getInventoryId());
+        }
+        json.add("fruitId", item.getFruitId())
+                .add("fruit", item.getFruitName())
+                .add("qty", item.getQuantity());
+        if (item.getShopId() != null) {
+            json.add("shopId", item.getShopId());
+        }
+        if (item.getWarehouseId() != null) {
+            json.add("warehouseId", item.getWarehouseId());
+        }
+        if (item.getSourceCountry() != null) {
+            json.add("sourceCountry", item.getSourceCountry());
+        }
+        return json.build();
+    }
+
+    /**
+     * Entity tag for a read of the given datasets. It is derived from the
+     * dataset versions alone, so a matching If-None-Match can be answered
+     * before any query runs. The variant names what was read.
+     */
+    static EntityTag versionTag(DataVersions versions, String variant, Dataset... datasets) {
+        return new EntityTag(versions.tag(datasets) + "-" + Integer.toHexString(variant.hashCode()), true);
+    }
+
+    /** A 304 response if the client's If-None-Match names the tag, otherwise null. */
+    static Response notModified(Request request, EntityTag tag) {
+        Response.ResponseBuilder notModified = request.evaluatePreconditions(tag);
+        return notModified == null ? null : notModified.cacheControl(revalidate()).build();
+    }
+
+    /** 200 with the body; tag may be null when the result must not be revalidated. */
+    static Response ok(JsonStructure body, EntityTag tag) {
+        Response.ResponseBuilder ok = Response.ok(body.toString(), MediaType.APPLICATION_JSON_TYPE);
+        if (tag != null) {
+            ok.tag(tag).cacheControl(revalidate());
+        }
+        return ok.build();
+    }
+
+    static Response error(Response.Status status, String message) {
+        return Response.status(status)
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .entity(Json.createObjectBuilder().add("error", message).build().toString())
+                .build();
+    }
+
+    /** The error response for an action that did not go through, with the status its reason calls for. */
+    static Response failed(ActionOutcomeBean outcome) {
+        return error(status(outcome.getReason()), outcome.getMessage());
+    }
+
+    static Response.Status status(ActionOutcomeBean.Reason reason) {
+        if (reason == null) {
+            return Response.Status.INTERNAL_SERVER_ERROR;
+        }
+        switch (reason) {
+            case INVALID:
+                return Response.Status.BAD_REQUEST;
+            case NOT_FOUND:
+                return Response.Status.NOT_FOUND;
+            case NOT_AUTHORIZED:
+                return Response.Status.FORBIDDEN;
+            case CONFLICT:
+                return Response.Status.CONFLICT;
+            default:
+                return Response.Status.INTERNAL_SERVER_ERROR;
+        }
+    }
+
+    private static CacheControl revalidate() {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setPrivate(true);
+        cacheControl.setNoCache(true);
+        return cacheControl;
+    }
+}
@@ -0,0 +1,127 @@
+package ict.servlet.assignment.resources;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ict.bean.ActionOutcomeBean;
+import ict.bean.UserBean;
+import ict.db.BorrowingDB;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonObjectBuilder;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Approves borrow requests addressed to the caller's shop, the API
+ * counterpart of /approveBorrow.
+ *
+ * POST borrowings/{id}/approval approves one request. POST
+ * borrowings/approvals with {"ids":[..]} approves several in one
+ * transaction and reports each outcome; a request with insufficient stock
+ * fails on its own without holding back the others.
+ */
+@Path("borrowings")
+@Produces(MediaType.APPLICATION_JSON)
+public class BorrowingResource {
+
+    private static final Logger LOGGER = Logger.getLogger(BorrowingResource.class.getName());
+    private static final int MAX_IDS = 200;
+
+    @Context
+    private ServletContext servletContext;
+
+    @Context
+    private HttpServletRequest httpRequest;
+
+    @POST
+    @Path("{borrowingId}/approval")
+    public Response approve(@PathParam("borrowingId") int borrowingId) {
+        Integer lendingShopId = ApiSupport.parseId(ApiSupport.currentUser(httpRequest).getShopId());
+        if (lendingShopId == null) {
+            return ApiSupport.error(Response.Status.FORBIDDEN, "Only shop staff can approve borrow requests.");
+        }
+        ActionOutcomeBean outcome = approveOne(borrowingId, lendingShopId);
+        if (!outcome.isSuccess()) {
+            return ApiSupport.failed(outcome);
+        }
+        return Response.ok(result(borrowingId, outcome).toString()).build();
+    }
+
+    @POST
+    @Path("approvals")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response approveAll(JsonObject body) {
+        Integer lendingShopId = ApiSupport.parseId(ApiSupport.currentUser(httpRequest).getShopId());
+        if (lendingShopId == null) {
+            return ApiSupport.error(Response.Status.FORBIDDEN, "Only shop staff can approve borrow requests.");
+        }
+        Set<Integer> ids = new LinkedHashSet<>();
+        try {
+            JsonArray array = body == null ? null : body.getJsonArray("ids");
+            if (array == null || array.isEmpty() || array.size() > MAX_IDS) {
+                return ApiSupport.error(Response.Status.BAD_REQUEST,
+                        "ids must hold between 1 and " + MAX_IDS + " borrowing ids.");
+            }
+            for (JsonNumber id : array.getValuesAs(JsonNumber.class)) {
+                ids.add(id.intValueExact());
+            }
+        } catch (ClassCastException | ArithmeticException e) {
+            return ApiSupport.error(Response.Status.BAD_REQUEST, "ids must be integers.");
+        }
+
+        BorrowingDB borrowingDb = ApiSupport.daos(servletContext).getBorrowingDb();
+        Map<Integer, ActionOutcomeBean> outcomes = borrowingDb.decideBorrowRequests(lendingShopId,
+                new ArrayList<>(ids), Collections.emptyList());
+        JsonArrayBuilder results = Json.createArrayBuilder();
+        int approved = 0;
+        for (Map.Entry<Integer, ActionOutcomeBean> entry : outcomes.entrySet()) {
+            if (entry.getValue().isSuccess()) {
+                approved++;
+            }
+            results.add(result(entry.getKey(), entry.getValue()));
+        }
+        LOGGER.log(Level.INFO, "API bulk approval by ShopID={0}: {1} of {2} approved",
+                new Object[] { lendingShopId, approved, ids.size() });
+        return Response.ok(Json.createObjectBuilder()
+                .add("approved", approved)
+                .add("failed", ids.size() - approved)
+                .add("results", results)
+                .build().toString())
+                .build();
+    }
+
+    private ActionOutcomeBean approveOne(int borrowingId, int lendingShopId) {
+        BorrowingDB borrowingDb = ApiSupport.daos(servletContext).getBorrowingDb();
+        ActionOutcomeBean outcome = borrowingDb.approveBorrowRequest(borrowingId, lendingShopId);
+        LOGGER.log(Level.INFO, "API approval of BorrowingID={0} by ShopID={1}: {2}",
+                new Object[] { borrowingId, lendingShopId, outcome.getMessage() });
+        return outcome;
+    }
+
+    private static JsonObject result(int borrowingId, ActionOutcomeBean outcome) {
+        JsonObjectBuilder json = Json.createObjectBuilder()
+                .add("id", borrowingId)
+                .add("ok", outcome.isSuccess());
+        if (outcome.getReason() != null) {
+            json.add("reason", outcome.getReason().name());
+        }
+        return json.add("message", outcome.getMessage()).build();
+    }
+}
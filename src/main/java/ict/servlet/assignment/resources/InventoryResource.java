@@ -0,0 +1,199 @@
+package ict.servlet.assignment.resources;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ict.bean.InventoryBean;
+import ict.bean.UserBean;
+import ict.db.DaoRegistry;
+import ict.db.DataVersions.Dataset;
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.EntityTag;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Request;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Stock levels for machine clients, replacing scrapes of /viewStaffStock.
+ *
+ * GET inventory?shop=1&shop=2&warehouse=3 reads several locations in one
+ * query; without parameters it returns the caller's own shop or warehouse.
+ * Staff may read only their own location, Senior Management any location.
+ * All reads honour If-None-Match without querying while the inventory is
+ * unchanged.
+ * <p>
+ * GET inventory/shops/1?at=2025-04-01T18:00:00 (or with an offset, e.g.
+ * ...T18:00:00Z) rebuilds what the shop held at that time from the stock
+ * movement history instead; warehouses likewise. A time without an offset
+ * is server local time. POST inventory/snapshots takes a history snapshot
+ * at once, e.g. before a stock count, for Senior Management.
+ */
+@Path("inventory")
+@Produces(MediaType.APPLICATION_JSON)
+public class InventoryResource {
+
+    private static final Logger LOGGER = Logger.getLogger(InventoryResource.class.getName());
+
+    @Context
+    private ServletContext servletContext;
+
+    @Context
+    private HttpServletRequest httpRequest;
+
+    @Context
+    private Request request;
+
+    @GET
+    public Response getInventory(@QueryParam("shop") List<Integer> shopIds,
+            @QueryParam("warehouse") List<Integer> warehouseIds) {
+        UserBean user = ApiSupport.currentUser(httpRequest);
+        Set<Integer> shops = new LinkedHashSet<>(shopIds);
+        Set<Integer> warehouses = new LinkedHashSet<>(warehouseIds);
+        if (shops.isEmpty() && warehouses.isEmpty()) {
+            Integer ownShop = ApiSupport.parseId(user.getShopId());
+            Integer ownWarehouse = ApiSupport.parseId(user.getWarehouseId());
+            if (ownShop != null) {
+                shops.add(ownShop);
+            } else if (ownWarehouse != null) {
+                warehouses.add(ownWarehouse);
+            } else {
+                return ApiSupport.error(Response.Status.BAD_REQUEST,
+                        "Specify at least one shop or warehouse parameter.");
+            }
+        }
+        return read(user, shops, warehouses);
+    }
+
+    @GET
+    @Path("shops/{shopId}")
+    public Response getShopInventory(@PathParam("shopId") int shopId, @QueryParam("at") String at) {
+        UserBean user = ApiSupport.currentUser(httpRequest);
+        if (at != null) {
+            return readAt(user, false, shopId, at);
+        }
+        return read(user, Set.of(shopId), Set.of());
+    }
+
+    @GET
+    @Path("warehouses/{warehouseId}")
+    public Response getWarehouseInventory(@PathParam("warehouseId") int warehouseId, @QueryParam("at") String at) {
+        UserBean user = ApiSupport.currentUser(httpRequest);
+        if (at != null) {
+            return readAt(user, true, warehouseId, at);
+        }
+        return read(user, Set.of(), Set.of(warehouseId));
+    }
+
+    @POST
+    @Path("snapshots")
+    public Response takeSnapshot() {
+        UserBean user = ApiSupport.currentUser(httpRequest);
+        if (!ApiSupport.isSeniorManagement(user)) {
+            return ApiSupport.error(Response.Status.FORBIDDEN, "Only Senior Management can take stock snapshots.");
+        }
+        try {
+            int snapshotId = ApiSupport.daos(servletContext).getStockHistory().takeSnapshot();
+            if (snapshotId == -1) {
+                return ApiSupport.ok(Json.createObjectBuilder()
+                        .add("message", "No stock has moved since the last snapshot.").build(), null);
+            }
+            return ApiSupport.ok(Json.createObjectBuilder().add("snapshotId", snapshotId).build(), null);
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Error taking a stock snapshot", e);
+            return ApiSupport.error(Response.Status.INTERNAL_SERVER_ERROR, "The snapshot could not be taken.");
+        }
+    }
+
+    /** One location's stock rebuilt from the movement history as of at. */
+    private Response readAt(UserBean user, boolean warehouse, int locationId, String at) {
+        if (!mayRead(user, warehouse ? Set.of() : Set.of(locationId), warehouse ? Set.of(locationId) : Set.of())) {
+            return ApiSupport.error(Response.Status.FORBIDDEN, "You may only read your own location's stock.");
+        }
+        Timestamp time;
+        try {
+            time = parseTime(at);
+        } catch (DateTimeParseException e) {
+            return ApiSupport.error(Response.Status.BAD_REQUEST,
+                    "at must be an ISO-8601 date-time, e.g. 2025-04-01T18:00:00 or 2025-04-01T10:00:00Z.");
+        }
+
+        List<InventoryBean> items;
+        try {
+            DaoRegistry daos = ApiSupport.daos(servletContext);
+            items = warehouse ? daos.getStockHistory().getWarehouseStockAt(locationId, time)
+                    : daos.getStockHistory().getShopStockAt(locationId, time);
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Error rebuilding stock of " + (warehouse ? "WarehouseID=" : "ShopID=")
+                    + locationId + " at " + time, e);
+            return ApiSupport.error(Response.Status.INTERNAL_SERVER_ERROR, "The stock history could not be read.");
+        }
+        JsonArrayBuilder array = Json.createArrayBuilder();
+        for (InventoryBean item : items) {
+            array.add(ApiSupport.inventoryJson(item));
+        }
+        return ApiSupport.ok(Json.createObjectBuilder().add("at", time.toInstant().toString()).add("items", array)
+                .build(), null);
+    }
+
+    private static Timestamp parseTime(String value) {
+        try {
+            return Timestamp.from(OffsetDateTime.parse(value).toInstant());
+        } catch (DateTimeParseException e) {
+            return Timestamp.valueOf(LocalDateTime.parse(value));
+        }
+    }
+
+    private static boolean mayRead(UserBean user, Set<Integer> shopIds, Set<Integer> warehouseIds) {
+        if (ApiSupport.isSeniorManagement(user)) {
+            return true;
+        }
+        Integer ownShop = ApiSupport.parseId(user.getShopId());
+        Integer ownWarehouse = ApiSupport.parseId(user.getWarehouseId());
+        return (shopIds.isEmpty() || (shopIds.size() == 1 && shopIds.contains(ownShop)))
+                && (warehouseIds.isEmpty() || (warehouseIds.size() == 1 && warehouseIds.contains(ownWarehouse)));
+    }
+
+    private Response read(UserBean user, Set<Integer> shopIds, Set<Integer> warehouseIds) {
+        if (shopIds.size() + warehouseIds.size() > 200) {
+            return ApiSupport.error(Response.Status.BAD_REQUEST, "At most 200 locations per request.");
+        }
+        if (!mayRead(user, shopIds, warehouseIds)) {
+            return ApiSupport.error(Response.Status.FORBIDDEN, "You may only read your own location's stock.");
+        }
+
+        DaoRegistry daos = ApiSupport.daos(servletContext);
+        EntityTag tag = ApiSupport.versionTag(daos.getDataVersions(), shopIds + "|" + warehouseIds,
+                Dataset.INVENTORY, Dataset.FRUITS);
+        Response notModified = ApiSupport.notModified(request, tag);
+        if (notModified != null) {
+            return notModified;
+        }
+
+        List<InventoryBean> items = daos.getBorrowingDb().getInventoryForLocations(new ArrayList<>(shopIds),
+                new ArrayList<>(warehouseIds));
+        JsonArrayBuilder array = Json.createArrayBuilder();
+        for (InventoryBean item : items) {
+            array.add(ApiSupport.inventoryJson(item));
+        }
+        return ApiSupport.ok(Json.createObjectBuilder().add("items", array).build(), items.isEmpty() ? null : tag);
+    }
+}
@@ -0,0 +1,100 @@
+package ict.servlet.assignment.resources;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ict.bean.ActionOutcomeBean;
+import ict.bean.UserBean;
+import jakarta.json.Json;
+import jakarta.json.JsonArray;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonValue;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+
+/**
+ * Creates reservations from source warehouses, the API counterpart of
+ * /orderFromSource. One POST carries any number of lines and is reserved in
+ * a single transaction:
+ *
+ * <pre>{"shopId":3,"items":[{"fruitId":1,"qty":20},{"fruitId":4,"qty":5}]}</pre>
+ *
+ * shopId defaults to the caller's shop; only Senior Management may order
+ * for another shop.
+ */
+@Path("reservations")
+@Consumes(MediaType.APPLICATION_JSON)
+@Produces(MediaType.APPLICATION_JSON)
+public class ReservationResource {
+
+    private static final Logger LOGGER = Logger.getLogger(ReservationResource.class.getName());
+    private static final int MAX_ITEMS = 500;
+
+    @Context
+    private ServletContext servletContext;
+
+    @Context
+    private HttpServletRequest httpRequest;
+
+    @POST
+    public Response createReservations(JsonObject body) {
+        UserBean user = ApiSupport.currentUser(httpRequest);
+        if (body == null) {
+            return ApiSupport.error(Response.Status.BAD_REQUEST, "Request body is required.");
+        }
+
+        Integer ownShop = ApiSupport.parseId(user.getShopId());
+        Integer shopId = ownShop;
+        if (body.containsKey("shopId") && body.get("shopId").getValueType() == JsonValue.ValueType.NUMBER) {
+            shopId = body.getInt("shopId");
+        }
+        if (shopId == null) {
+            return ApiSupport.error(Response.Status.BAD_REQUEST, "shopId is required.");
+        }
+        boolean bakeryStaff = "Bakery shop staff".equalsIgnoreCase(user.getRole());
+        if (!ApiSupport.isSeniorManagement(user) && !(bakeryStaff && shopId.equals(ownShop))) {
+            return ApiSupport.error(Response.Status.FORBIDDEN, "You may only order for your own shop.");
+        }
+
+        List<Integer> fruitIds = new ArrayList<>();
+        List<Integer> quantities = new ArrayList<>();
+        try {
+            JsonArray items = body.getJsonArray("items");
+            if (items == null || items.isEmpty() || items.size() > MAX_ITEMS) {
+                return ApiSupport.error(Response.Status.BAD_REQUEST,
+                        "items must hold between 1 and " + MAX_ITEMS + " lines.");
+            }
+            for (JsonObject item : items.getValuesAs(JsonObject.class)) {
+                fruitIds.add(item.getInt("fruitId"));
+                quantities.add(item.getInt("qty"));
+            }
+        } catch (ClassCastException | NullPointerException e) {
+            return ApiSupport.error(Response.Status.BAD_REQUEST,
+                    "Each item needs numeric fruitId and qty fields.");
+        }
+
+        ActionOutcomeBean outcome = ApiSupport.daos(servletContext).getBorrowingDb()
+                .createMultipleReservations(shopId, fruitIds, quantities);
+        LOGGER.log(Level.INFO, "API reservation for ShopID={0} by {1}: {2}",
+                new Object[] { shopId, user.getUsername(), outcome.getMessage() });
+        if (!outcome.isSuccess()) {
+            return ApiSupport.failed(outcome);
+        }
+        return Response.status(Response.Status.CREATED)
+                .entity(Json.createObjectBuilder()
+                        .add("shopId", shopId)
+                        .add("lines", fruitIds.size())
+                        .add("message", outcome.getMessage())
+                        .build().toString())
+                .build();
+    }
+}
@@ -63,6 +63,8 @@
                 
             </select>
             <button type="submit">Generate Report</button>
+            <button type="submit" name="export" value="csv">Export CSV</button>
+            <button type="submit" name="export" value="xlsx">Export Excel</button>
         </form>
 
         
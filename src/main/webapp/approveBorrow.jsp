@@ -49,10 +49,19 @@
         <c:if test="${not empty param.message}"> <div class="message"><c:out value="${param.message}" /></div> </c:if>
         <c:if test="${not empty param.error}"> <div class="error-message"><c:out value="${param.error}" /></div> </c:if>
         <c:if test="${not empty errorMessage}"> <div class="error-message"><c:out value="${errorMessage}" /></div> </c:if>
+        <%@ include file="outcomes.jsp" %>
+
+        <form id="bulkDecisionForm" action="<c:url value='/approveBorrow'/>" method="POST">
+            <button type="submit" name="action" value="approveSelected" class="action-button approve-btn"
+                    onclick="return confirm('Approve all selected requests?');">Approve Selected</button>
+            <button type="submit" name="action" value="rejectSelected" class="action-button reject-btn"
+                    onclick="return confirm('Reject all selected requests?');">Reject Selected</button>
+        </form>
 
         <table id="approveBorrowTable" class="display">
             <thead>
                 <tr>
+                    <th><input type="checkbox" id="selectAll" title="Select all"></th>
                     <th>Request ID</th>
                     <th>Requesting Shop</th>
                     <th>Fruit</th>
@@ -64,6 +73,7 @@
             <tbody>
                 <c:forEach var="req" items="${pendingBorrowRequests}">
                     <tr>
+                        <td><input type="checkbox" name="selectedBorrowingIds" value="${req.borrowingId}" form="bulkDecisionForm"></td>
                         <td><c:out value="${req.borrowingId}"/></td>
                         <td><c:out value="${req.receivingShopName}"/> (ID: <c:out value="${req.receivingShopId}"/>)</td>
                         <td><c:out value="${req.fruitName}"/></td>
@@ -91,7 +101,7 @@
                 </c:forEach>
                 <c:if test="${empty pendingBorrowRequests && empty errorMessage}">
                     <tr>
-                        <td colspan="6">No pending borrow requests found for your shop.</td>
+                        <td colspan="7">No pending borrow requests found for your shop.</td>
                     </tr>
                 </c:if>
             </tbody>
@@ -100,8 +110,24 @@
 
     <script>
         $(document).ready( function () {
-            $('#approveBorrowTable').DataTable({
-                 "order": [[ 4, "asc" ]] 
+            var table = $('#approveBorrowTable').DataTable({
+                 "order": [[ 5, "asc" ]],
+                 "columnDefs": [{ "orderable": false, "targets": 0 }]
+            });
+            // Every row matching the search, on all pages, not only the page shown.
+            $('#selectAll').on('change', function () {
+                $(table.rows({ search: 'applied' }).nodes()).find('input[name="selectedBorrowingIds"]')
+                        .prop('checked', this.checked);
+            });
+            // DataTables detaches the rows of other pages, so their boxes would not be posted; carry them over.
+            $('#bulkDecisionForm').on('submit', function () {
+                var form = $(this);
+                form.find('input.offPageSelection').remove();
+                table.$('input[name="selectedBorrowingIds"]:checked').each(function () {
+                    if (!document.body.contains(this)) {
+                        form.append($('<input type="hidden" class="offPageSelection" name="selectedBorrowingIds">').val(this.value));
+                    }
+                });
             });
         });
     </script>
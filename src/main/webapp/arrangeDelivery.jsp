@@ -60,6 +60,18 @@
             <div class="error-message"><c:out value="${errorMessage}" /></div>
         </c:if>
 
+        <%@ include file="outcomes.jsp" %>
+
+        <c:if test="${not empty deliveryNeedsList}">
+            <form action="<c:url value='/arrangeDelivery'/>" method="POST">
+                <input type="hidden" name="action" value="arrangeAll">
+                <button type="submit" class="checkout-button"
+                        onclick="return confirm('Arrange delivery for every need listed below in one go? This will update inventory and reservations.');">
+                    Arrange All Deliveries
+                </button>
+            </form>
+        </c:if>
+
         <table id="deliveryNeedsTable" class="display">
             <thead>
                 <tr>
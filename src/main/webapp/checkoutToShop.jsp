@@ -57,10 +57,33 @@
         <c:if test="${not empty errorMessage}">
             <div class="error-message"><c:out value="${errorMessage}" /></div>
         </c:if>
+        <%@ include file="outcomes.jsp" %>
+
+        <c:if test="${not empty fulfillableList}">
+            <form id="bulkCheckoutForm" action="<c:url value='/checkoutToShop'/>" method="POST" style="display:inline;">
+                <button type="submit" name="action" value="checkoutSelected" class="checkout-button"
+                        onclick="return confirm('Checkout all selected reservations? This updates inventory and status.');">
+                    Checkout Selected
+                </button>
+            </form>
+            <form action="<c:url value='/checkoutToShop'/>" method="POST" style="display:inline; margin-left: 20px;">
+                <input type="hidden" name="action" value="checkoutShop">
+                <select name="shopId" required>
+                    <c:forEach var="shop" items="${fulfillableShops}">
+                        <option value="${shop.key}"><c:out value="${shop.value}"/></option>
+                    </c:forEach>
+                </select>
+                <button type="submit" class="checkout-button"
+                        onclick="return confirm('Checkout every fulfillable reservation for this shop?');">
+                    Checkout All for Shop
+                </button>
+            </form>
+        </c:if>
 
         <table id="checkoutTable" class="display">
             <thead>
                 <tr>
+                    <th><input type="checkbox" id="selectAll" title="Select all"></th>
                     <th>Res. ID</th>
                     <th>Fruit</th>
                     <th>Destination Shop</th>
@@ -72,6 +95,7 @@
             <tbody>
                 <c:forEach var="res" items="${fulfillableList}">
                     <tr>
+                        <td><input type="checkbox" name="selectedReservationIds" value="${res.reservationId}" form="bulkCheckoutForm"></td>
                         <td><c:out value="${res.reservationId}"/></td>
                         <td><c:out value="${res.fruitName}"/></td>
                         <td><c:out value="${res.shopName}"/></td>
@@ -95,7 +119,7 @@
                 </c:forEach>
                 <c:if test="${empty fulfillableList && empty errorMessage}">
                     <tr>
-                        <td colspan="6">No reservations found ready for checkout from this warehouse.</td>
+                        <td colspan="7">No reservations found ready for checkout from this warehouse.</td>
                     </tr>
                 </c:if>
             </tbody>
@@ -106,7 +130,11 @@
     <script>
         $(document).ready( function () {
             $('#checkoutTable').DataTable({
-                 "order": [[ 2, "asc" ],[1, "asc"]] 
+                 "order": [[ 3, "asc" ],[2, "asc"]],
+                 "columnDefs": [{ "orderable": false, "targets": 0 }]
+            });
+            $('#selectAll').on('change', function () {
+                $('input[name="selectedReservationIds"]').prop('checked', this.checked);
             });
         });
     </script>
@@ -83,6 +83,10 @@
                 <input type="date" id="endDate" name="endDate"
                     value="${selectedEndDate}">
                 <button type="submit">Apply Filter</button>
+                <label><input type="checkbox" name="detail" value="reservations">
+                    Export individual reservations</label>
+                <button type="submit" name="export" value="csv">Export CSV</button>
+                <button type="submit" name="export" value="xlsx">Export Excel</button>
             </form>
 
             <div class="chart-container">
@@ -56,6 +56,8 @@
             <label for="endDate">To:</label>
             <input type="date" id="endDate" name="endDate" value="${selectedEndDate}">
             <button type="submit">Generate Forecast</button>
+            <button type="submit" name="export" value="csv">Export CSV</button>
+            <button type="submit" name="export" value="xlsx">Export Excel</button>
         </form>
 
         <table id="forecastTable" class="display">
@@ -58,6 +58,8 @@
                 <option value="country" ${selectedGroupBy == 'country' ? 'selected' : ''}>Location Country</option>
             </select>
             <button type="submit">Generate Report</button>
+            <button type="submit" name="export" value="csv">Export CSV</button>
+            <button type="submit" name="export" value="xlsx">Export Excel</button>
         </form>
 
         <table id="inventoryReportTable" class="display">
@@ -0,0 +1,78 @@
+/*
+ * DataTables options for the server-side paged list pages (listBorrowings,
+ * listDeliveries, listAllInventory, listReservations, listUsers).
+ *
+ * The controller answers DataTables' ajax requests with one window of rows
+ * plus a nextCursor. When the user moves on to the directly following page
+ * with the same order and search, the cursor is sent back so the server can
+ * seek by key instead of counting off `start` rows.
+ *
+ * Windows that came with an ETag are kept and revalidated with
+ * If-None-Match; on 304 the kept rows are redrawn without the server
+ * querying the database. jQuery's cache buster keeps the browser's own
+ * cache out of the way, since it would replay a stale draw counter.
+ */
+function pagedTableEscape(value) {
+    return String(value === null || value === undefined ? '' : value)
+        .replace(/&/g, '&amp;').replace(/</g, '&lt;').replace(/>/g, '&gt;')
+        .replace(/"/g, '&quot;').replace(/'/g, '&#39;');
+}
+
+function pagedTableOptions(url, options) {
+    var cursors = {};
+    var responses = {};
+    var responseCount = 0;
+
+    function windowKey(request, start) {
+        var order = request.order && request.order.length ? request.order[0] : {};
+        return start + '|' + order.column + '|' + order.dir + '|' + (request.search ? request.search.value : '');
+    }
+
+    var settings = $.extend(true, {
+        serverSide: true,
+        processing: true,
+        searchDelay: 400,
+        ajax: function (data, callback) {
+            var cursor = cursors[windowKey(data, data.start)];
+            if (cursor) {
+                data.cursor = cursor;
+            }
+            var responseKey = JSON.stringify($.extend({}, data, { draw: 0 }));
+            var cached = responses[responseKey];
+            $.ajax({
+                url: url,
+                data: data,
+                dataType: 'json',
+                cache: false,
+                headers: cached ? { 'If-None-Match': cached.etag } : {},
+                success: function (json, status, xhr) {
+                    if (xhr.status === 304 && cached) {
+                        json = cached.json;
+                    } else if (xhr.getResponseHeader('ETag')) {
+                        if (++responseCount > 100) {
+                            responses = {};
+                            responseCount = 1;
+                        }
+                        responses[responseKey] = { etag: xhr.getResponseHeader('ETag'), json: json };
+                    }
+                    if (json.error) {
+                        alert(json.error);
+                    }
+                    if (json.nextCursor) {
+                        cursors[windowKey(data, data.start + data.length)] = json.nextCursor;
+                    }
+                    callback($.extend({}, json, { draw: data.draw }));
+                },
+                error: function (xhr) {
+                    callback({ draw: data.draw, recordsTotal: 0, recordsFiltered: 0, data: [] });
+                    alert('Could not load the table data (HTTP ' + xhr.status + ').');
+                }
+            });
+        }
+    }, options);
+    // Page-specific renderers come first so they win over the escaping default.
+    settings.columnDefs = ((options && options.columnDefs) || []).concat([
+        { targets: '_all', render: function (data) { return pagedTableEscape(data); } }
+    ]);
+    return settings;
+}
@@ -11,6 +11,7 @@
     <script src="https://code.jquery.com/jquery-3.6.0.min.js"></script>
     <link rel="stylesheet" type="text/css" href="https://cdn.datatables.net/1.13.6/css/jquery.dataTables.min.css">
     <script type="text/javascript" charset="utf8" src="https://cdn.datatables.net/1.13.6/js/jquery.dataTables.min.js"></script>
+    <script src="${pageContext.request.contextPath}/js/pagedTable.js"></script>
     <style>
         body { font-family: sans-serif; margin: 20px; background-color: #f4f4f4; }
         .container { background-color: #fff; padding: 20px; border-radius: 8px; box-shadow: 0 0 10px rgba(0,0,0,0.1); max-width: 1000px; margin: auto; }
@@ -52,32 +53,16 @@
                     <th>Warehouse ID</th> 
                 </tr>
             </thead>
-            <tbody>
-                <c:forEach var="item" items="${inventoryList}">
-                    <tr>
-                        <td><c:out value="${item.locationName}"/></td>
-                        <td><c:out value="${item.fruitName}"/></td>
-                        <td><c:out value="${item.quantity}"/></td>
-                        <td><c:out value="${item.inventoryId}"/></td>
-                        <td><c:out value="${item.shopId != null ? item.shopId : 'N/A'}"/></td>
-                        <td><c:out value="${item.warehouseId != null ? item.warehouseId : 'N/A'}"/></td>
-                    </tr>
-                </c:forEach>
-                <c:if test="${empty inventoryList && empty errorMessage}">
-                    <tr>
-                        <td colspan="6">No inventory records found.</td>
-                    </tr>
-                </c:if>
-            </tbody>
+            <tbody></tbody>
         </table>
 
     </div>
 
     <script>
         $(document).ready( function () {
-            $('#allInventoryTable').DataTable({
-                 "order": [[ 0, "asc" ], [1, "asc"]] 
-            });
+            $('#allInventoryTable').DataTable(pagedTableOptions('listAllInventory', {
+                 "order": [[ 0, "asc" ]]
+            }));
         });
     </script>
 
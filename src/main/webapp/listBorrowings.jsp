@@ -13,6 +13,7 @@
     <script src="https://code.jquery.com/jquery-3.6.0.min.js"></script>
     <link rel="stylesheet" type="text/css" href="https://cdn.datatables.net/1.11.5/css/jquery.dataTables.css">
     <script type="text/javascript" charset="utf8" src="https://cdn.datatables.net/1.11.5/js/jquery.dataTables.js"></script>
+    <script src="${pageContext.request.contextPath}/js/pagedTable.js"></script>
     <style>
         body { font-family: sans-serif; margin: 20px; background-color: #f4f4f4; }
         .container { background-color: #fff; padding: 20px; border-radius: 8px; box-shadow: 0 0 10px rgba(0,0,0,0.1); max-width: 1100px; margin: auto; }
@@ -60,24 +61,7 @@
                     <%-- Add Actions like 'Mark Returned' if needed later --%>
                 </tr>
             </thead>
-            <tbody>
-                <c:forEach var="borrow" items="${borrowingList}">
-                    <tr>
-                        <td><c:out value="${borrow.borrowingId}"/></td>
-                        <td><c:out value="${borrow.fruitName}"/></td>
-                        <td><c:out value="${borrow.borrowingShopName}"/></td>
-                        <td><c:out value="${borrow.receivingShopName}"/></td>
-                        <td><c:out value="${borrow.quantity}"/></td>
-                        <td><fmt:formatDate value="${borrow.borrowingDate}" pattern="yyyy-MM-dd" /></td>
-                        <td><c:out value="${borrow.status}"/></td>
-                    </tr>
-                </c:forEach>
-                <c:if test="${empty borrowingList && empty errorMessage}">
-                    <tr>
-                        <td colspan="7">No borrowing records found.</td>
-                    </tr>
-                </c:if>
-            </tbody>
+            <tbody></tbody>
         </table>
 
     
@@ -85,9 +69,9 @@
 
     <script>
         $(document).ready( function () {
-            $('#borrowingsTable').DataTable({
-                 "order": [[ 5, "desc" ]] 
-            });
+            $('#borrowingsTable').DataTable(pagedTableOptions('listBorrowings', {
+                 "order": [[ 5, "desc" ]]
+            }));
         });
     </script>
 
@@ -12,6 +12,7 @@
     <script src="https://code.jquery.com/jquery-3.6.0.min.js"></script>
     <link rel="stylesheet" type="text/css" href="https://cdn.datatables.net/1.11.5/css/jquery.dataTables.css">
     <script type="text/javascript" charset="utf8" src="https://cdn.datatables.net/1.11.5/js/jquery.dataTables.js"></script>
+    <script src="${pageContext.request.contextPath}/js/pagedTable.js"></script>
     <style>
         body { font-family: sans-serif; margin: 20px; background-color: #f4f4f4; }
         .container { background-color: #fff; padding: 20px; border-radius: 8px; box-shadow: 0 0 10px rgba(0,0,0,0.1); max-width: 1100px; margin: auto; }
@@ -58,24 +59,7 @@
                     <%-- Add Actions like 'Mark Received' if needed later --%>
                 </tr>
             </thead>
-            <tbody>
-                <c:forEach var="delivery" items="${deliveryList}">
-                    <tr>
-                        <td><c:out value="${delivery.deliveryId}"/></td>
-                        <td><c:out value="${delivery.fruitName}"/></td>
-                        <td><c:out value="${delivery.fromWarehouseName}"/></td>
-                        <td><c:out value="${delivery.toWarehouseName}"/></td>
-                        <td><c:out value="${delivery.quantity}"/></td>
-                        <td><fmt:formatDate value="${delivery.deliveryDate}" pattern="yyyy-MM-dd" /></td>
-                        <td><c:out value="${delivery.status}"/></td>
-                    </tr>
-                </c:forEach>
-                <c:if test="${empty deliveryList && empty errorMessage}">
-                    <tr>
-                        <td colspan="7">No delivery records found.</td>
-                    </tr>
-                </c:if>
-            </tbody>
+            <tbody></tbody>
         </table>
 
        
@@ -83,9 +67,9 @@
 
     <script>
         $(document).ready( function () {
-            $('#deliveriesTable').DataTable({
-                 "order": [[ 5, "desc" ]] 
-            });
+            $('#deliveriesTable').DataTable(pagedTableOptions('listDeliveries', {
+                 "order": [[ 5, "desc" ]]
+            }));
         });
     </script>
 
@@ -14,6 +14,7 @@
     <script src="https://code.jquery.com/jquery-3.6.0.min.js"></script>
     <link rel="stylesheet" type="text/css" href="https://cdn.datatables.net/1.11.5/css/jquery.dataTables.css">
     <script type="text/javascript" charset="utf8" src="https://cdn.datatables.net/1.11.5/js/jquery.dataTables.js"></script>
+    <script src="${pageContext.request.contextPath}/js/pagedTable.js"></script>
 
     <style>
         body { font-family: sans-serif; margin: 0px; background-color: #f4f4f4; }
@@ -66,38 +67,23 @@
                     <th>Status</th>
                 </tr>
             </thead>
-            <tbody>
-                <c:forEach var="res" items="${reservationList}">
-                    <tr>
-                        <td><c:out value="${res.reservationId}"/></td>
-                        <td><c:out value="${res.fruitName}"/></td>
-                        <td><c:out value="${res.quantity}"/></td>
-                        <td>
-                            <fmt:formatDate value="${res.reservationDate}" pattern="yyyy-MM-dd" />
-                        </td>
-                        <td>
-                            <c:set var="statusClass" value="${res.status != null ? fn:toLowerCase(res.status) : 'unknown'}" />
-                            <span class="status-${statusClass}">
-                                <c:out value="${res.status != null ? res.status : 'Unknown'}"/>
-                            </span>
-                        </td>
-                    </tr>
-                </c:forEach>
-                <c:if test="${empty reservationList}">
-                    <tr>
-                        <td colspan="5">You have no reservation records.</td>
-                    </tr>
-                </c:if>
-            </tbody>
+            <tbody></tbody>
         </table>
 
     </div>
 
     <script>
         $(document).ready( function () {
-            $('#reservationsTable').DataTable({
-                 "order": [[ 3, "desc" ]] 
-            });
+            $('#reservationsTable').DataTable(pagedTableOptions('listReservations', {
+                 "order": [[ 3, "desc" ]],
+                 "columnDefs": [
+                     { "targets": 4, "render": function (data) {
+                         var status = data ? String(data) : 'Unknown';
+                         return '<span class="status-' + pagedTableEscape(status.toLowerCase()) + '">'
+                                 + pagedTableEscape(status) + '</span>';
+                     } }
+                 ]
+            }));
         });
     </script>
 
@@ -52,59 +52,41 @@
         <a href="<c:url value='/adminCreateUser'/>" class="create-user-button">Create New User</a>
     </c:if>
 
-    <c:choose>
-        <c:when test="${not empty usersByRole}">
-            <table id="userTable" class="display">
-                <thead>
-                    <tr>
-                        <th>User ID</th>
-                        <th>Username</th>
-                        <th>Email</th>
-                        <th>Role</th>
-                        <th>Shop ID</th>
-                        <th>Warehouse ID</th>
-                        <th data-orderable="false">Actions</th>
-                    </tr>
-                </thead>
-                <tbody>
-                  
-                    <c:forEach var="roleEntry" items="${usersByRole}">
-                       
-                        <c:forEach var="user" items="${roleEntry.value}">
-                            <tr id="user-row-${user.userId}" class="user-data-row">
-                                <td><c:out value="${user.userId}"/></td>
-                                <td><c:out value="${user.username}"/></td>
-                                <td><c:out value="${user.userEmail}"/></td>
-                                <td><c:out value="${user.role}"/></td>
-                                <td><c:out value="${user.shopId != null ? user.shopId : 'N/A'}"/></td>
-                                <td><c:out value="${user.warehouseId != null ? user.warehouseId : 'N/A'}"/></td>
-                                <td class="actions">
-                                    <a href="updateUser?userId=${user.userId}" class="update">Update</a>
-                                    <button type="button" class="delete" onclick="deleteUser('${user.userId}')">Delete</button>
-                                </td>
-                            </tr>
-                        </c:forEach>
-                    </c:forEach>
-                </tbody>
-            </table>
-        </c:when>
-        <c:otherwise>
-            <c:if test="${empty requestScope.errorMessage}">
-                 <p>No users found matching the criteria.</p>
-            </c:if>
-        </c:otherwise>
-    </c:choose>
+    <c:if test="${empty requestScope.errorMessage}">
+        <table id="userTable" class="display">
+            <thead>
+                <tr>
+                    <th>User ID</th>
+                    <th>Username</th>
+                    <th>Email</th>
+                    <th>Role</th>
+                    <th>Shop ID</th>
+                    <th>Warehouse ID</th>
+                    <th data-orderable="false">Actions</th>
+                </tr>
+            </thead>
+            <tbody></tbody>
+        </table>
+    </c:if>
 
 
     <script src="https://code.jquery.com/jquery-3.7.0.min.js"></script>
     <script src="https://cdn.datatables.net/1.13.6/js/jquery.dataTables.min.js"></script>
+    <script src="${pageContext.request.contextPath}/js/pagedTable.js"></script>
 
     
     <script>
         $(document).ready(function() {
-            $('#userTable').DataTable({
-                 "order": [[ 3, "asc" ], [1, "asc"]] 
-            });
+            $('#userTable').DataTable(pagedTableOptions('listUsers', {
+                 "order": [[ 3, "asc" ]],
+                 "columnDefs": [
+                     { "targets": 6, "render": function (data) {
+                         var userId = parseInt(data, 10);
+                         return '<a href="updateUser?userId=' + userId + '" class="update">Update</a> '
+                                 + '<button type="button" class="delete" onclick="deleteUser(' + userId + ')">Delete</button>';
+                     } }
+                 ]
+            }));
         });
 
         function deleteUser(userId) {
@@ -132,7 +114,7 @@
                     console.log('Delete response:', result);
                     if (result.success) {
                         alert(result.message || 'User deleted successfully.');
-                        location.reload();
+                        $('#userTable').DataTable().ajax.reload(null, false);
                     } else {
                         $('#jsErrorDiv').text('Error deleting user: ' + (result.message || 'Failed. Check server logs.')).show();
                     }
@@ -0,0 +1,15 @@
+<%-- Per-item outcomes of the last bulk action, kept by BulkOutcomes across the redirect. --%>
+<%@ taglib uri="http://java.sun.com/jsp/jstl/core" prefix="c" %>
+<c:if test="${not empty bulkOutcomes}">
+    <style>
+        .outcomes { list-style: none; padding: 0; }
+        .outcomes li { padding: 4px 8px; margin-bottom: 2px; border-radius: 4px; }
+        .outcome-ok { background-color: #d4edda; color: #155724; }
+        .outcome-failed { background-color: #f8d7da; color: #721c24; }
+    </style>
+    <ul class="outcomes">
+        <c:forEach var="outcome" items="${bulkOutcomes}">
+            <li class="${outcome.success ? 'outcome-ok' : 'outcome-failed'}"><c:out value="${outcome.message}"/></li>
+        </c:forEach>
+    </ul>
+</c:if>